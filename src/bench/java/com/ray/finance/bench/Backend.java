@@ -0,0 +1,46 @@
+package com.ray.finance.bench;
+
+import com.ray.finance.repo.CsvExpenseRepository;
+import com.ray.finance.repo.ExpenseRepository;
+import com.ray.finance.repo.SqliteExpenseRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/** Repository backends the benchmarks are parameterized over. */
+public enum Backend {
+    CSV {
+        @Override
+        public ExpenseRepository open(Path dir) {
+            return new CsvExpenseRepository(dir.resolve("expenses.csv"));
+        }
+    },
+    SQLITE {
+        @Override
+        public ExpenseRepository open(Path dir) {
+            return new SqliteExpenseRepository(dir.resolve("finance.db"));
+        }
+    };
+
+    public abstract ExpenseRepository open(Path dir);
+
+    static Path tempDir() throws IOException {
+        return Files.createTempDirectory("finance-bench");
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
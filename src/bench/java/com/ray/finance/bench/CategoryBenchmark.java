@@ -0,0 +1,26 @@
+package com.ray.finance.bench;
+
+import com.ray.finance.model.Category;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CategoryBenchmark {
+
+    // exact names, mixed case with padding, and misses that fall back to OTHER
+    private final String[] inputs = {"GROCERIES", "rent", " Utilities ", "HEALTHCARE", "unknown", "OTHER", "Transportation"};
+    private int i;
+
+    @Benchmark
+    public Category fromString() {
+        String s = inputs[i];
+        i = (i + 1) % inputs.length;
+        return Category.fromString(s);
+    }
+}
@@ -0,0 +1,97 @@
+package com.ray.finance.bench;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.FieldCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.CharArrayWriter;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-row field work of the CSV readers and writers, JDK parsers and
+ * formatters against FieldCodec. Fields sit in one char buffer, as the
+ * tokenizer holds them, so the JDK side pays for the strings it needs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CodecBenchmark {
+
+    private static final int ROWS = 1024;
+
+    private final char[] chars = new char[ROWS * 48];
+    private final int[] starts = new int[ROWS * 3];
+    private final int[] lengths = new int[ROWS * 3];
+    private Expense[] expenses;
+    private final char[] out = new char[64];
+    private final CharArrayWriter writer = new CharArrayWriter(64);
+    private int i;
+
+    @Setup
+    public void setUp() {
+        List<Expense> rows = new LedgerGenerator(42).generate(ROWS);
+        expenses = rows.toArray(new Expense[0]);
+        int at = 0;
+        for (int r = 0; r < ROWS; r++) {
+            Expense e = expenses[r];
+            String[] fields = {e.getDate().toString(), e.getAmount().toPlainString(),
+                    r % 3 == 0 ? e.getCategory().name().toLowerCase() : e.getCategory().name()};
+            for (int f = 0; f < 3; f++) {
+                fields[f].getChars(0, fields[f].length(), chars, at);
+                starts[r * 3 + f] = at;
+                lengths[r * 3 + f] = fields[f].length();
+                at += fields[f].length();
+            }
+        }
+    }
+
+    private int next() {
+        i = (i + 1) & (ROWS - 1);
+        return i * 3;
+    }
+
+    @Benchmark
+    public void parseJdk(Blackhole bh) {
+        int f = next();
+        bh.consume(LocalDate.parse(new String(chars, starts[f], lengths[f])));
+        bh.consume(new BigDecimal(new String(chars, starts[f + 1], lengths[f + 1])));
+        bh.consume(Category.fromString(new String(chars, starts[f + 2], lengths[f + 2])));
+    }
+
+    @Benchmark
+    public void parseCodec(Blackhole bh) {
+        int f = next();
+        bh.consume(FieldCodec.parseDate(chars, starts[f], lengths[f]));
+        bh.consume(FieldCodec.parseAmount(chars, starts[f + 1], lengths[f + 1]));
+        bh.consume(FieldCodec.parseCategory(chars, starts[f + 2], lengths[f + 2]));
+    }
+
+    @Benchmark
+    public int formatJdk() {
+        Expense e = expenses[next() / 3];
+        writer.reset();
+        writer.append(e.getDate().toString());
+        writer.write(',');
+        writer.append(e.getAmount().toPlainString());
+        return writer.size();
+    }
+
+    @Benchmark
+    public int formatCodec() {
+        Expense e = expenses[next() / 3];
+        writer.reset();
+        int n = FieldCodec.formatDate(e.getDate(), out, 0);
+        out[n++] = ',';
+        n = FieldCodec.formatAmount(e.getAmount(), out, n);
+        writer.write(out, 0, n);
+        return writer.size();
+    }
+}
@@ -0,0 +1,102 @@
+package com.ray.finance.bench;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.repo.ExpenseFilter;
+import com.ray.finance.repo.ExpenseRepository;
+import com.ray.finance.repo.LedgerExporter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports a whole ledger of rows rows to gzip-compressed CSV with LedgerExporter
+ * on threads threads, against one GZIPOutputStream fed row by row (gzipStream),
+ * and to uncompressed CSV.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ExportBenchmark {
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"CSV", "SQLITE"})
+    public Backend backend;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Path dir;
+    private Path target;
+    private ExpenseRepository repo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Backend.tempDir();
+        target = dir.resolve("export.csv.gz");
+        repo = backend.open(dir);
+        LedgerGenerator generator = new LedgerGenerator(42);
+        for (int done = 0; done < rows; done += 100_000) {
+            List<Expense> batch = new ArrayList<>(100_000);
+            for (int i = done; i < Math.min(rows, done + 100_000); i++) batch.add(generator.next(i));
+            repo.insertAll(batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repo.close();
+        Backend.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public LedgerExporter.ExportReport parallelGzip() throws Exception {
+        return new LedgerExporter(repo, threads, LedgerExporter.DEFAULT_BLOCK_SIZE)
+                .export(ExpenseFilter.ALL, LedgerExporter.Format.CSV, true, target);
+    }
+
+    @Benchmark
+    public LedgerExporter.ExportReport plain() throws Exception {
+        return new LedgerExporter(repo, threads, LedgerExporter.DEFAULT_BLOCK_SIZE)
+                .export(ExpenseFilter.ALL, LedgerExporter.Format.CSV, false, target);
+    }
+
+    @Benchmark
+    public long gzipStream() throws Exception {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(target), 1 << 16), StandardCharsets.UTF_8), 1 << 16)) {
+            repo.forEach(e -> {
+                try {
+                    out.write(e.getId());
+                    out.write(',');
+                    out.write(e.getDate().toString());
+                    out.write(',');
+                    out.write(e.getAmount().toPlainString());
+                    out.write(',');
+                    out.write(e.getCategory().name());
+                    out.write(",\"");
+                    out.write(e.getNote().replace("\"", "\"\""));
+                    out.write("\"\n");
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+        return Files.size(target);
+    }
+}
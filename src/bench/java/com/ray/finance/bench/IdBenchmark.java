@@ -0,0 +1,78 @@
+package com.ray.finance.bench;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.IdGenerator;
+import com.ray.finance.repo.SqliteExpenseRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending batches of 1000 rows to a SQLite ledger that already holds rows,
+ * with random text ids like the old scheme's (16 hex digits here, as 8 would
+ * collide at this size), which land all over the legacy_id index, against
+ * time-ordered generated ids, which go straight to the end of the rowid tree.
+ * nextId measures the generator alone, from several threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IdBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"RANDOM_HEX", "GENERATED"})
+    public String ids;
+
+    private final IdGenerator generator = new IdGenerator(1, System::currentTimeMillis);
+    private final SplittableRandom random = new SplittableRandom(7);
+    private Path dir;
+    private SqliteExpenseRepository repo;
+    private List<Expense> template;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Backend.tempDir();
+        repo = new SqliteExpenseRepository(dir.resolve("ids.db"));
+        template = new LedgerGenerator(42).generate(BATCH);
+        for (int done = 0; done < rows; done += BATCH) repo.insertAll(batch());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repo.close();
+        Backend.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void insertBatch() throws Exception {
+        repo.insertAll(batch());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(4)
+    public long nextId() {
+        return generator.nextId();
+    }
+
+    private List<Expense> batch() {
+        List<Expense> out = new ArrayList<>(BATCH);
+        for (Expense e : template) {
+            String id = ids.equals("GENERATED") ? generator.next() : String.format("%016x", random.nextLong());
+            out.add(new Expense(id, e.getDate(), e.getAmount(), e.getCategory(), e.getNote()));
+        }
+        return out;
+    }
+}
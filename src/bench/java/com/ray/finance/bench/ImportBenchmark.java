@@ -0,0 +1,87 @@
+package com.ray.finance.bench;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.repo.CsvBulkImporter;
+import com.ray.finance.repo.CsvExpenseRepository;
+import com.ray.finance.repo.DuplicateIndex;
+import com.ray.finance.repo.ExpenseRepository;
+import com.ray.finance.repo.SqliteExpenseRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CsvBulkImporter on a statement of rows rows, into an empty ledger, with and
+ * without duplicate detection (NONE, NEW: every row is new, REPEAT: the same
+ * statement imported a second time, so every row is a duplicate).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ImportBenchmark {
+
+    public enum Dedup { NONE, NEW, REPEAT }
+
+    @Param({"1000000", "10000000"})
+    public int rows;
+
+    @Param({"CSV", "SQLITE"})
+    public Backend backend;
+
+    @Param({"NONE", "NEW", "REPEAT"})
+    public Dedup dedup;
+
+    private Path statementDir;
+    private Path statement;
+    private Path dir;
+    private ExpenseRepository repo;
+    private DuplicateIndex index;
+
+    @Setup(Level.Trial)
+    public void writeStatement() throws Exception {
+        statementDir = Backend.tempDir();
+        statement = statementDir.resolve("statement.csv");
+        CsvExpenseRepository writer = new CsvExpenseRepository(statement);
+        LedgerGenerator generator = new LedgerGenerator(42);
+        for (int done = 0; done < rows; done += 100_000) {
+            List<Expense> batch = new ArrayList<>(100_000);
+            for (int i = done; i < Math.min(rows, done + 100_000); i++) batch.add(generator.next(i));
+            writer.insertAll(batch);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void openLedger() throws Exception {
+        dir = Backend.tempDir();
+        repo = backend.open(dir);
+        index = dedup == Dedup.NONE ? null : duplicateIndex();
+        if (dedup == Dedup.REPEAT) new CsvBulkImporter(repo, index).importFile(statement);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeLedger() throws Exception {
+        repo.close();
+        Backend.deleteRecursively(dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStatement() throws Exception {
+        Backend.deleteRecursively(statementDir);
+    }
+
+    @Benchmark
+    public CsvBulkImporter.ImportReport importStatement() throws Exception {
+        return new CsvBulkImporter(repo, index).importFile(statement);
+    }
+
+    private DuplicateIndex duplicateIndex() throws Exception {
+        if (repo instanceof SqliteExpenseRepository sqlite) return sqlite.duplicateIndex();
+        return DuplicateIndex.forLedger(dir.resolve("expenses.csv"));
+    }
+}
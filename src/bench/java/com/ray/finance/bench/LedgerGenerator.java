@@ -0,0 +1,97 @@
+package com.ray.finance.bench;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic ledgers shaped like a household's spending: many
+ * small grocery and transport rows, weekend-heavy entertainment, rent and
+ * utilities once a month, and log-normally distributed amounts.
+ */
+public final class LedgerGenerator {
+
+    private static final Category[] CATEGORIES = Category.values();
+    // Relative frequency, indexed by Category ordinal
+    private static final double[] WEIGHTS = {
+            0.34, // GROCERIES
+            0.01, // RENT
+            0.04, // UTILITIES
+            0.22, // TRANSPORTATION
+            0.18, // ENTERTAINMENT
+            0.06, // HEALTHCARE
+            0.15  // OTHER
+    };
+    // Median amount in dollars per category
+    private static final double[] MEDIANS = {45, 1400, 90, 12, 30, 60, 25};
+
+    private static final String[] MERCHANTS = {
+            "Corner Market", "Whole Foods", "Trader Joe's", "Shell", "Metro card", "Uber",
+            "Netflix", "Cinema", "Pharmacy", "Dr. Lee", "Amazon", "Hardware store",
+            "Coffee, to go", "City Power & Light", "Water \"utility\"", "Landlord", ""
+    };
+
+    private final SplittableRandom random;
+    private final LocalDate start;
+    private final int days;
+
+    public LedgerGenerator(long seed) {
+        this(seed, LocalDate.of(2016, 1, 1), LocalDate.of(2025, 12, 31));
+    }
+
+    public LedgerGenerator(long seed, LocalDate start, LocalDate end) {
+        this.random = new SplittableRandom(seed);
+        this.start = start;
+        this.days = (int) (end.toEpochDay() - start.toEpochDay()) + 1;
+    }
+
+    public List<Expense> generate(int rows) {
+        List<Expense> out = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) out.add(next(i));
+        return out;
+    }
+
+    public Expense next(long n) {
+        Category category = pickCategory();
+        LocalDate date = pickDate(category);
+        BigDecimal amount = pickAmount(category);
+        String note = MERCHANTS[random.nextInt(MERCHANTS.length)];
+        return new Expense(String.format("%08x", n), date, amount, category, note);
+    }
+
+    private Category pickCategory() {
+        double r = random.nextDouble();
+        for (int i = 0; i < WEIGHTS.length; i++) {
+            r -= WEIGHTS[i];
+            if (r < 0) return CATEGORIES[i];
+        }
+        return Category.OTHER;
+    }
+
+    private LocalDate pickDate(Category category) {
+        LocalDate date = start.plusDays(random.nextInt(days));
+        if (category == Category.RENT) return date.withDayOfMonth(1);
+        if (category == Category.ENTERTAINMENT && random.nextDouble() < 0.6) {
+            // pull most entertainment onto the following weekend
+            while (date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                date = date.plusDays(1);
+            }
+        }
+        return date;
+    }
+
+    private BigDecimal pickAmount(Category category) {
+        // log-normal around the category median, sigma 0.8
+        double gaussian = random.nextDouble() + random.nextDouble() + random.nextDouble()
+                + random.nextDouble() + random.nextDouble() + random.nextDouble() - 3.0;
+        double dollars = MEDIANS[category.ordinal()] * Math.exp(0.8 * gaussian * Math.sqrt(2));
+        long cents = Math.max(1, Math.round(dollars * 100));
+        return BigDecimal.valueOf(cents, 2);
+    }
+}
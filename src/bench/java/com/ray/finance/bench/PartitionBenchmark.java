@@ -0,0 +1,89 @@
+package com.ray.finance.bench;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.repo.ExpenseFilter;
+import com.ray.finance.repo.ExpenseQuery;
+import com.ray.finance.repo.ExpenseRepository;
+import com.ray.finance.repo.PartitionedSqliteExpenseRepository;
+import com.ray.finance.repo.SqliteExpenseRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A ten-year ledger (2016-2025) in one SQLite file against one file per year
+ * with 2016-2024 sealed: the latest page, one month of the current year, a
+ * month of a closed year, and a filtered count over every year, which the
+ * partitioned ledger runs on all files in parallel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PartitionBenchmark {
+
+    private static final ExpenseFilter ENTERTAINMENT = new ExpenseFilter(null, null, Set.of(Category.ENTERTAINMENT));
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"SINGLE", "PARTITIONED"})
+    public String layout;
+
+    private Path dir;
+    private ExpenseRepository repo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Backend.tempDir();
+        repo = layout.equals("SINGLE")
+                ? new SqliteExpenseRepository(dir.resolve("finance.db"))
+                : new PartitionedSqliteExpenseRepository(dir.resolve("ledger.d"));
+        LedgerGenerator generator = new LedgerGenerator(42);
+        for (int done = 0; done < rows; done += 100_000) {
+            List<Expense> batch = new ArrayList<>(100_000);
+            for (int i = done; i < Math.min(rows, done + 100_000); i++) batch.add(generator.next(i));
+            repo.insertAll(batch);
+        }
+        if (repo instanceof PartitionedSqliteExpenseRepository partitioned) {
+            partitioned.sealBefore(LocalDate.of(2025, 1, 1));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repo.close();
+        Backend.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public List<Expense> latestPage() throws Exception {
+        return repo.query(ExpenseQuery.of(ExpenseFilter.ALL, 50));
+    }
+
+    @Benchmark
+    public List<Expense> currentMonth() throws Exception {
+        return repo.findByDateRange(LocalDate.of(2025, 11, 1), LocalDate.of(2025, 11, 30));
+    }
+
+    @Benchmark
+    public BigDecimal closedMonthSum() throws Exception {
+        return repo.sumByMonth(YearMonth.of(2019, 6));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int countAllYears() throws Exception {
+        return repo.count(ENTERTAINMENT);
+    }
+}
@@ -0,0 +1,59 @@
+package com.ray.finance.bench;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.repo.ExpenseRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Full-ledger reads and writes: findAll, streaming forEach and saveAll. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class RepositoryBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"CSV", "SQLITE"})
+    public Backend backend;
+
+    private Path dir;
+    private ExpenseRepository repo;
+    private List<Expense> ledger;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Backend.tempDir();
+        repo = backend.open(dir);
+        ledger = new LedgerGenerator(42).generate(rows);
+        repo.saveAll(ledger);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repo.close();
+        Backend.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public List<Expense> findAll() throws Exception {
+        return repo.findAll();
+    }
+
+    @Benchmark
+    public void forEach(Blackhole bh) throws Exception {
+        repo.forEach(bh::consume);
+    }
+
+    @Benchmark
+    public void saveAll() throws Exception {
+        repo.saveAll(ledger);
+    }
+}
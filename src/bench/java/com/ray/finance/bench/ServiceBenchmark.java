@@ -0,0 +1,73 @@
+package com.ray.finance.bench;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.repo.ExpenseRepository;
+import com.ray.finance.service.ExpenseService;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExpenseService entry points. With cached=false every summary goes to the
+ * repository, which shows what the aggregate cache saves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class ServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"CSV", "SQLITE"})
+    public Backend backend;
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private static final YearMonth MONTH = YearMonth.of(2021, 6);
+
+    private Path dir;
+    private ExpenseRepository repo;
+    private ExpenseService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Backend.tempDir();
+        repo = backend.open(dir);
+        LedgerGenerator generator = new LedgerGenerator(42);
+        repo.saveAll(generator.generate(rows));
+        service = new ExpenseService(repo, cached);
+        service.monthlyTotal(MONTH); // builds the aggregate outside the measurement
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repo.close();
+        Backend.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public Expense addExpense() throws Exception {
+        return service.addExpense(LocalDate.of(2021, 6, 15), new BigDecimal("12.34"), Category.GROCERIES, "bench");
+    }
+
+    @Benchmark
+    public BigDecimal monthlyTotal() throws Exception {
+        return service.monthlyTotal(MONTH);
+    }
+
+    @Benchmark
+    public Map<Category, BigDecimal> monthlyByCategory() throws Exception {
+        return service.monthlyByCategory(MONTH);
+    }
+}
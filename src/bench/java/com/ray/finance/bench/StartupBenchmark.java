@@ -0,0 +1,145 @@
+package com.ray.finance.bench;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.repo.ExpenseFilter;
+import com.ray.finance.repo.ExpenseRepository;
+import com.ray.finance.repo.ExpenseSort;
+import com.ray.finance.service.ExpenseService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Cold start, measured end to end: each invocation launches a fresh JVM
+ * that opens the ledger, answers the month summary the desktop app shows
+ * first and reads the first table page, then exits. The variants are the
+ * fast-start pieces: the persisted aggregate snapshot (otherwise the summary
+ * scans the ledger) and an AppCDS archive trained on the same probe.
+ *
+ * CDS only accepts jars on the classpath, so class directories (the build
+ * output) are packed into jars first, for both variants alike.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+public class StartupBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    @Param({"CSV", "SQLITE"})
+    public Backend backend;
+
+    @Param({"true", "false"})
+    public boolean snapshot;
+
+    @Param({"true", "false"})
+    public boolean cds;
+
+    static final YearMonth MONTH = YearMonth.of(2021, 6);
+    static final String SNAPSHOT_FILE = "summary.snapshot";
+
+    private Path dir;
+    private List<String> command;
+    private String classpath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Backend.tempDir();
+        try (ExpenseRepository repo = backend.open(dir)) {
+            repo.saveAll(new LedgerGenerator(42).generate(rows));
+            ExpenseService service = new ExpenseService(repo);
+            service.monthlyTotal(MONTH);
+            service.saveAggregateSnapshot(dir.resolve(SNAPSHOT_FILE));
+        }
+        classpath = jarredClasspath();
+        if (cds) {
+            Path archive = dir.resolve("probe.jsa");
+            run(probe("-XX:ArchiveClassesAtExit=" + archive));
+            command = probe("-XX:SharedArchiveFile=" + archive);
+        } else {
+            command = probe("-Xshare:auto");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Backend.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void firstSummaryAndPage() throws Exception {
+        run(command);
+    }
+
+    private List<String> probe(String cdsOption) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        cmd.add(cdsOption);
+        cmd.add("-cp");
+        cmd.add(classpath);
+        cmd.add(Probe.class.getName());
+        cmd.add(backend.name());
+        cmd.add(dir.toString());
+        cmd.add(Boolean.toString(snapshot));
+        return cmd;
+    }
+
+    private String jarredClasspath() throws IOException {
+        List<String> entries = new ArrayList<>();
+        int n = 0;
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            Path path = Path.of(entry);
+            if (!Files.isDirectory(path)) {
+                entries.add(entry);
+                continue;
+            }
+            Path jar = dir.resolve("classes-" + n++ + ".jar");
+            try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+                 Stream<Path> files = Files.walk(path)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    out.putNextEntry(new JarEntry(path.relativize(file).toString().replace(File.separatorChar, '/')));
+                    Files.copy(file, out);
+                    out.closeEntry();
+                }
+            }
+            entries.add(jar.toString());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static void run(List<String> cmd) throws IOException, InterruptedException {
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        int exit = p.waitFor();
+        if (exit != 0) throw new IllegalStateException("startup probe exited with " + exit + ": " + cmd);
+    }
+
+    /** What the desktop app does before it is usable, without the window. */
+    public static final class Probe {
+        public static void main(String[] args) throws Exception {
+            Backend backend = Backend.valueOf(args[0]);
+            Path dir = Path.of(args[1]);
+            try (ExpenseRepository repo = backend.open(dir)) {
+                ExpenseService service = new ExpenseService(repo);
+                if (Boolean.parseBoolean(args[2])) service.loadAggregateSnapshot(dir.resolve(SNAPSHOT_FILE));
+                BigDecimal total = service.monthlyTotal(MONTH);
+                List<Expense> page = repo.findPage(ExpenseFilter.ALL, ExpenseSort.NEWEST_FIRST, 0, 200);
+                System.out.println(total + " " + page.size());
+            }
+        }
+    }
+}
@@ -1,25 +1,123 @@
 package com.ray.finance;
 
+import com.ray.finance.metrics.MetricsDumper;
+import com.ray.finance.metrics.MetricsRegistry;
 import com.ray.finance.model.Category;
 import com.ray.finance.model.Expense;
+import com.ray.finance.report.ReportFormatter;
+import com.ray.finance.report.ReportRequest;
+import com.ray.finance.report.Rollup;
+import com.ray.finance.repo.BinaryExpenseRepository;
+import com.ray.finance.repo.CsvBulkImporter;
 import com.ray.finance.repo.CsvExpenseRepository;
+import com.ray.finance.repo.DuplicateIndex;
+import com.ray.finance.repo.ExpenseFilter;
+import com.ray.finance.repo.ExpenseRepository;
+import com.ray.finance.repo.InstrumentedExpenseRepository;
+import com.ray.finance.repo.JournaledCsvExpenseRepository;
+import com.ray.finance.repo.LedgerExporter;
+import com.ray.finance.repo.PartitionedSqliteExpenseRepository;
+import com.ray.finance.repo.SqliteExpenseRepository;
 import com.ray.finance.service.ExpenseService;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.util.List;
+import java.util.EnumSet;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 
 public class App {
 
     public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("convert")) {
+            convert(Path.of(args[1]), Path.of(args[2]));
+            return;
+        }
+        if ((args.length == 3 || args.length == 5 || args.length == 6) && args[0].equals("export")) {
+            export(args);
+            return;
+        }
         Path csvPath = Path.of("data", "expenses.csv");
-        ExpenseService service = new ExpenseService(new CsvExpenseRepository(csvPath));
+        // -Dfinance.metrics=true collects; -Dfinance.metrics.dump=<file.csv> also writes a snapshot every 10 s
+        MetricsRegistry metrics = MetricsRegistry.global();
+        metrics.registerMBean();
+        String dumpPath = System.getProperty("finance.metrics.dump");
+        MetricsDumper dumper = dumpPath == null ? null
+                : MetricsDumper.toCsv(metrics, Path.of(dumpPath), Duration.ofSeconds(10));
+        try (ExpenseRepository repo = new InstrumentedExpenseRepository(new JournaledCsvExpenseRepository(csvPath), "csv")) {
+            ExpenseService service = new ExpenseService(repo);
+            // Summaries start from the totals saved at the last exit while a fresh scan catches up
+            Path snapshot = csvPath.resolveSibling("expenses.csv.summary");
+            if (service.loadAggregateSnapshot(snapshot)) {
+                Thread rebuild = new Thread(() -> {
+                    try {
+                        service.rebuildAggregates();
+                    } catch (IOException e) {
+                        System.err.println("Could not rebuild summaries: " + e.getMessage());
+                    }
+                }, "aggregate-rebuild");
+                rebuild.setDaemon(true);
+                rebuild.start();
+            }
+            run(repo, csvPath, service, new Scanner(System.in));
+            service.saveAggregateSnapshot(snapshot);
+        } finally {
+            // closed after the repository, so the final snapshot includes its last writes
+            if (dumper != null) dumper.close();
+        }
+    }
+
+    /** Copies one ledger into another; the format follows the extension (.csv, .db, .bin, .d for a partition directory). */
+    private static void convert(Path from, Path to) throws Exception {
+        long start = System.nanoTime();
+        try (ExpenseRepository source = open(from); ExpenseRepository target = open(to)) {
+            if (target instanceof BinaryExpenseRepository binary) {
+                binary.load(source);
+            } else if (source instanceof BinaryExpenseRepository binary) {
+                binary.flushTo(target);
+            } else {
+                target.saveAll(source.findAll());
+            }
+        }
+        System.out.printf("Converted %s -> %s in %d ms%n", from, to, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * export <ledger> <target> [<from> <to> [<CATEGORY,...>]]: the target's extension picks
+     * the format (.csv, .jsonl) and .gz compresses it; "-" leaves a date bound open.
+     */
+    private static void export(String[] args) throws Exception {
+        ExpenseFilter filter = ExpenseFilter.ALL;
+        if (args.length >= 5) {
+            filter = filter.withDates(args[3].equals("-") ? null : LocalDate.parse(args[3]),
+                    args[4].equals("-") ? null : LocalDate.parse(args[4]));
+        }
+        if (args.length == 6) {
+            Set<Category> categories = EnumSet.noneOf(Category.class);
+            for (String name : args[5].split(",")) categories.add(Category.valueOf(name.trim().toUpperCase()));
+            filter = filter.withCategories(categories);
+        }
+        try (ExpenseRepository source = open(Path.of(args[1]))) {
+            System.out.println(new LedgerExporter(source).export(filter, Path.of(args[2])));
+        }
+    }
 
-        Scanner sc = new Scanner(System.in);
+    private static ExpenseRepository open(Path path) throws Exception {
+        String name = path.getFileName().toString();
+        if (name.endsWith(".csv")) return new CsvExpenseRepository(path);
+        if (name.endsWith(".db")) return new SqliteExpenseRepository(path);
+        if (name.endsWith(".bin")) return new BinaryExpenseRepository(path);
+        if (name.endsWith(".d")) return new PartitionedSqliteExpenseRepository(path);
+        throw new IllegalArgumentException("Unknown ledger format: " + path);
+    }
 
+    private static void run(ExpenseRepository repo, Path ledger, ExpenseService service, Scanner sc) {
         while (true) {
             printMenu();
             String choice = sc.nextLine().trim();
@@ -28,6 +126,9 @@ public class App {
                 case "1" -> addExpenseFlow(service, sc);
                 case "2" -> listAllFlow(service);
                 case "3" -> monthlySummaryFlow(service, sc);
+                case "4" -> bulkImportFlow(repo, service, ledger, sc);
+                case "5" -> searchFlow(service, sc);
+                case "6" -> reportFlow(service, sc);
                 case "q", "Q" -> {
                     System.out.println("Bye 👋");
                     return;
@@ -42,6 +143,9 @@ public class App {
         System.out.println("1) Add expense");
         System.out.println("2) List all expenses");
         System.out.println("3) Monthly summary");
+        System.out.println("4) Bulk import CSV");
+        System.out.println("5) Search notes");
+        System.out.println("6) Reports");
         System.out.println("Q) Quit");
         System.out.print("Choose: ");
     }
@@ -113,4 +217,70 @@ public class App {
             System.out.println("Error: " + ex.getMessage());
         }
     }
+
+    private static void bulkImportFlow(ExpenseRepository repo, ExpenseService service, Path ledger, Scanner sc) {
+        try {
+            System.out.print("CSV file to import: ");
+            Path source = Path.of(sc.nextLine().trim());
+
+            // rows already brought in by an earlier import of an overlapping statement are skipped
+            try {
+                var report = new CsvBulkImporter(repo, DuplicateIndex.forLedger(ledger)).importFile(source);
+                System.out.println(report);
+            } finally {
+                // the importer writes to the repository directly, so the summaries have to be rescanned,
+                // also after a failed import that kept its earlier batches
+                service.rebuildAggregates();
+            }
+
+        } catch (Exception ex) {
+            System.out.println("Error: " + ex.getMessage());
+        }
+    }
+
+    private static void searchFlow(ExpenseService service, Scanner sc) {
+        try {
+            System.out.print("Search notes for: ");
+            String text = sc.nextLine().trim();
+
+            int page = 20;
+            for (int offset = 0; ; offset += page) {
+                List<Expense> hits = service.search(text, offset, page);
+                if (hits.isEmpty()) {
+                    if (offset == 0) System.out.println("No matching expenses.");
+                    return;
+                }
+                for (Expense e : hits) System.out.println(e);
+                if (hits.size() < page) return;
+
+                System.out.print("More? (y/N): ");
+                if (!sc.nextLine().trim().equalsIgnoreCase("y")) return;
+            }
+        } catch (Exception ex) {
+            System.out.println("Error: " + ex.getMessage());
+        }
+    }
+
+    private static void reportFlow(ExpenseService service, Scanner sc) {
+        try {
+            System.out.print("Years to cover (default 10): ");
+            String years = sc.nextLine().trim();
+
+            System.out.print("Rollups " + java.util.Arrays.toString(Rollup.values())
+                    + " (comma separated, default YEAR,QUARTER,ROLLING_12_MONTHS): ");
+            String line = sc.nextLine().trim();
+            Set<Rollup> rollups = EnumSet.noneOf(Rollup.class);
+            if (line.isEmpty()) {
+                rollups.addAll(List.of(Rollup.YEAR, Rollup.QUARTER, Rollup.ROLLING_12_MONTHS));
+            } else {
+                for (String name : line.split(",")) rollups.add(Rollup.valueOf(name.trim().toUpperCase()));
+            }
+
+            ReportRequest request = ReportRequest.lastYears(years.isEmpty() ? 10 : Integer.parseInt(years),
+                    LocalDate.now(), rollups);
+            System.out.print(ReportFormatter.format(service.report(request)));
+        } catch (Exception ex) {
+            System.out.println("Error: " + ex.getMessage());
+        }
+    }
 }
@@ -0,0 +1,34 @@
+package com.ray.finance.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Monotonic count (rows, bytes, hits); adds are dropped while the registry is disabled. */
+public final class Counter {
+
+    private final MetricsRegistry registry;
+    private final LongAdder value = new LongAdder();
+
+    Counter(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    public boolean isEnabled() {
+        return registry.isEnabled();
+    }
+
+    public void increment() {
+        if (registry.isEnabled()) value.increment();
+    }
+
+    public void add(long n) {
+        if (registry.isEnabled()) value.add(n);
+    }
+
+    public long value() {
+        return value.sum();
+    }
+
+    void reset() {
+        value.reset();
+    }
+}
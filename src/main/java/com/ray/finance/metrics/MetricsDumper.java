@@ -0,0 +1,88 @@
+package com.ray.finance.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a registry snapshot every period on a daemon thread, either as
+ * timestamp,name,value rows appended to a CSV file or as one line per
+ * metric to a PrintStream. Nothing is written while the registry is disabled.
+ * close() stops the schedule and writes a final snapshot.
+ */
+public final class MetricsDumper implements AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(MetricsDumper.class.getName());
+
+    private final MetricsRegistry registry;
+    private final Path csvPath;
+    private final PrintStream log;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "metrics-dumper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Appends to csvPath, writing the header if the file is new. */
+    public static MetricsDumper toCsv(MetricsRegistry registry, Path csvPath, Duration period) {
+        return new MetricsDumper(registry, csvPath, null, period);
+    }
+
+    public static MetricsDumper toLog(MetricsRegistry registry, PrintStream log, Duration period) {
+        return new MetricsDumper(registry, null, log, period);
+    }
+
+    private MetricsDumper(MetricsRegistry registry, Path csvPath, PrintStream log, Duration period) {
+        if (period.isNegative() || period.isZero()) throw new IllegalArgumentException("period must be > 0");
+        this.registry = registry;
+        this.csvPath = csvPath;
+        this.log = log;
+        long millis = period.toMillis();
+        timer.scheduleAtFixedRate(this::dumpQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void dump() throws IOException {
+        if (!registry.isEnabled()) return;
+        Instant now = Instant.now();
+        Map<String, Double> values = registry.getValues();
+        if (log != null) {
+            values.forEach((name, value) -> log.printf("metrics %s %s=%s%n", now, name, MetricsRegistry.format(value)));
+            return;
+        }
+        if (csvPath.toAbsolutePath().getParent() != null) Files.createDirectories(csvPath.toAbsolutePath().getParent());
+        boolean isNew = !Files.exists(csvPath);
+        try (BufferedWriter out = Files.newBufferedWriter(csvPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (isNew) {
+                out.write("timestamp,name,value");
+                out.newLine();
+            }
+            for (Map.Entry<String, Double> e : values.entrySet()) {
+                out.write(now + "," + e.getKey() + "," + MetricsRegistry.format(e.getValue()));
+                out.newLine();
+            }
+        }
+    }
+
+    private void dumpQuietly() {
+        try {
+            dump();
+        } catch (IOException | RuntimeException e) {
+            LOG.log(System.Logger.Level.WARNING, "Metrics dump failed", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        timer.shutdownNow();
+        dump();
+    }
+}
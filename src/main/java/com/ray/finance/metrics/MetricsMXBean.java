@@ -0,0 +1,15 @@
+package com.ray.finance.metrics;
+
+import java.util.Map;
+
+/** JMX view of a MetricsRegistry (com.ray.finance:type=Metrics). */
+public interface MetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, Double> getValues();
+
+    /** Zeroes counters and timers; gauges are read live and are not affected. */
+    void reset();
+}
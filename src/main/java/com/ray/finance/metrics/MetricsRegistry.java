@@ -0,0 +1,113 @@
+package com.ray.finance.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * In-process metrics: named counters, latency timers and gauges. Metrics are
+ * created once and held in static or instance fields by the code they
+ * measure; recording is then a volatile read when the registry is disabled
+ * and a few uncontended atomic adds when it is enabled.
+ *
+ * The global registry starts enabled when the finance.metrics system
+ * property is true, and can be switched at runtime (JMX, the FX panel).
+ */
+public final class MetricsRegistry implements MetricsMXBean {
+
+    public static final String OBJECT_NAME = "com.ray.finance:type=Metrics";
+
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry(Boolean.getBoolean("finance.metrics"));
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+
+    public MetricsRegistry(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter(this));
+    }
+
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, n -> new Timer(this));
+    }
+
+    /** A value read on every snapshot; replaces any gauge of the same name. */
+    public void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /** hits / (hits + misses), 0 before the first event. */
+    public void ratio(String name, Counter hits, Counter misses) {
+        gauge(name, () -> {
+            long h = hits.value();
+            long total = h + misses.value();
+            return total == 0 ? 0 : (double) h / total;
+        });
+    }
+
+    /**
+     * Every value by name, sorted. A timer t contributes t.count, t.rows and
+     * t.meanMicros, t.p50Micros, t.p90Micros, t.p99Micros, t.maxMicros.
+     */
+    @Override
+    public Map<String, Double> getValues() {
+        Map<String, Double> out = new TreeMap<>();
+        counters.forEach((name, c) -> out.put(name, (double) c.value()));
+        timers.forEach((name, t) -> t.snapshot().putInto(name, out));
+        gauges.forEach((name, g) -> {
+            try {
+                out.put(name, g.getAsDouble());
+            } catch (RuntimeException e) {
+                out.put(name, Double.NaN); // a gauge over a closed resource must not break the snapshot
+            }
+        });
+        return out;
+    }
+
+    @Override
+    public void reset() {
+        counters.values().forEach(Counter::reset);
+        timers.values().forEach(Timer::reset);
+    }
+
+    /** Whole numbers without a fraction, the rest with three decimals. */
+    public static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /** Registers this registry with the platform MBean server; a second call is a no-op. */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException ignored) {
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+    }
+}
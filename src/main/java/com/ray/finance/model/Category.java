@@ -10,11 +10,6 @@ public enum Category {
     OTHER;
 
     public static Category fromString(String value) {
-        if (value == null) return OTHER;
-        String normalized = value.trim().toUpperCase();
-        for (Category c : values()) {
-            if (c.name().equals(normalized)) return c;
-        }
-        return OTHER;
+        return value == null ? OTHER : FieldCodec.parseCategory(value);
     }
 }
@@ -27,7 +27,6 @@ public final class Expense {
 
     @Override
     public String toString() {
-        return String.format("%s | %s | $%s | %s | %s",
-                id, date, amount, category, note);
+        return id + " | " + date + " | $" + amount + " | " + category + " | " + note;
     }
 }
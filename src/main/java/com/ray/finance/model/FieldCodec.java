@@ -0,0 +1,236 @@
+package com.ray.finance.model;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Parses and formats the date, amount and category fields of an expense
+ * straight from and into char or byte buffers, without the intermediate
+ * strings of LocalDate.parse, new BigDecimal(String) and Category.fromString.
+ *
+ * The fast paths cover what the ledger files hold: yyyy-MM-dd dates, plain
+ * decimals with at most two places and the category names in any case.
+ * Anything else falls back to the JDK parsers, so results and errors are the
+ * same as theirs.
+ */
+public final class FieldCodec {
+
+    private static final long DAYS_0000_TO_1970 = 719_528L;
+    private static final int MAX_DIGITS = 17;
+    private static final long[] POW10 = {1, 10, 100};
+
+    private FieldCodec() {}
+
+    public static LocalDate parseDate(char[] s, int off, int len) {
+        int ymd = isoDate(s, off, len);
+        return ymd < 0 ? LocalDate.parse(new String(s, off, len)) : LocalDate.of(ymd / 10_000, ymd / 100 % 100, ymd % 100);
+    }
+
+    public static LocalDate parseDate(byte[] s, int off, int len) {
+        int ymd = isoDate(s, off, len);
+        return ymd < 0 ? LocalDate.parse(utf8(s, off, len)) : LocalDate.of(ymd / 10_000, ymd / 100 % 100, ymd % 100);
+    }
+
+    /** Epoch day of an ISO date, without creating a LocalDate on the fast path. */
+    public static long parseEpochDay(byte[] s, int off, int len) {
+        int ymd = isoDate(s, off, len);
+        return ymd < 0 ? LocalDate.parse(utf8(s, off, len)).toEpochDay() : epochDay(ymd / 10_000, ymd / 100 % 100, ymd % 100);
+    }
+
+    /** Same value and scale as new BigDecimal(String) would give. */
+    public static BigDecimal parseAmount(char[] s, int off, int len) {
+        long unscaled = 0;
+        int scale = -1;
+        int digits = 0;
+        int i = off, end = off + len;
+        boolean negative = i < end && s[i] == '-';
+        if (i < end && (s[i] == '-' || s[i] == '+')) i++;
+        for (; i < end; i++) {
+            char c = s[i];
+            if (c >= '0' && c <= '9') {
+                if (++digits > MAX_DIGITS || scale == Money.SCALE) break;
+                unscaled = unscaled * 10 + (c - '0');
+                if (scale >= 0) scale++;
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < end || digits == 0) return new BigDecimal(s, off, len);
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, Math.max(scale, 0));
+    }
+
+    public static BigDecimal parseAmount(byte[] s, int off, int len) {
+        long unscaled = 0;
+        int scale = -1;
+        int digits = 0;
+        int i = off, end = off + len;
+        boolean negative = i < end && s[i] == '-';
+        if (i < end && (s[i] == '-' || s[i] == '+')) i++;
+        for (; i < end; i++) {
+            byte c = s[i];
+            if (c >= '0' && c <= '9') {
+                if (++digits > MAX_DIGITS || scale == Money.SCALE) break;
+                unscaled = unscaled * 10 + (c - '0');
+                if (scale >= 0) scale++;
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < end || digits == 0) return new BigDecimal(utf8(s, off, len));
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, Math.max(scale, 0));
+    }
+
+    /** Like Category.fromString: surrounding whitespace and case are ignored, unknown names are OTHER. */
+    public static Category parseCategory(CharSequence s) {
+        int from = 0, to = s.length();
+        while (from < to && s.charAt(from) <= ' ') from++;
+        while (to > from && s.charAt(to - 1) <= ' ') to--;
+        Category c = candidate(to - from, from < to ? s.charAt(from) : 0);
+        if (c == null) return Category.OTHER;
+        String name = c.name();
+        for (int k = 0; k < name.length(); k++) {
+            if (!sameLetter(s.charAt(from + k), name.charAt(k))) return Category.OTHER;
+        }
+        return c;
+    }
+
+    public static Category parseCategory(char[] s, int off, int len) {
+        int from = off, to = off + len;
+        while (from < to && s[from] <= ' ') from++;
+        while (to > from && s[to - 1] <= ' ') to--;
+        Category c = candidate(to - from, from < to ? s[from] : 0);
+        if (c == null) return Category.OTHER;
+        String name = c.name();
+        for (int k = 0; k < name.length(); k++) {
+            if (!sameLetter(s[from + k], name.charAt(k))) return Category.OTHER;
+        }
+        return c;
+    }
+
+    public static Category parseCategory(byte[] s, int off, int len) {
+        int from = off, to = off + len;
+        while (from < to && s[from] <= ' ' && s[from] >= 0) from++;
+        while (to > from && s[to - 1] <= ' ' && s[to - 1] >= 0) to--;
+        Category c = candidate(to - from, from < to ? s[from] : 0);
+        if (c == null) return Category.OTHER;
+        String name = c.name();
+        for (int k = 0; k < name.length(); k++) {
+            if (!sameLetter(s[from + k], name.charAt(k))) return Category.OTHER;
+        }
+        return c;
+    }
+
+    /**
+     * Writes date as yyyy-MM-dd at out[off] and returns the offset after it,
+     * or -1 for years outside 0..9999, which LocalDate.toString writes differently.
+     */
+    public static int formatDate(LocalDate date, char[] out, int off) {
+        int y = date.getYear();
+        if (y < 0 || y > 9999) return -1;
+        out[off] = (char) ('0' + y / 1000);
+        out[off + 1] = (char) ('0' + y / 100 % 10);
+        out[off + 2] = (char) ('0' + y / 10 % 10);
+        out[off + 3] = (char) ('0' + y % 10);
+        out[off + 4] = '-';
+        out[off + 5] = (char) ('0' + date.getMonthValue() / 10);
+        out[off + 6] = (char) ('0' + date.getMonthValue() % 10);
+        out[off + 7] = '-';
+        out[off + 8] = (char) ('0' + date.getDayOfMonth() / 10);
+        out[off + 9] = (char) ('0' + date.getDayOfMonth() % 10);
+        return off + 10;
+    }
+
+    /**
+     * Writes amount as toPlainString would at out[off], which needs room for 22
+     * chars, and returns the offset after it; -1 if the scale is not 0..2 or the
+     * value does not fit in a long, for which the caller should use toPlainString.
+     */
+    public static int formatAmount(BigDecimal amount, char[] out, int off) {
+        int scale = amount.scale();
+        if (scale < 0 || scale > Money.SCALE || amount.precision() > 18) return -1;
+        long unscaled = amount.movePointRight(scale).longValue();
+        if (unscaled < 0) {
+            out[off++] = '-';
+            unscaled = -unscaled;
+        }
+        long whole = unscaled / POW10[scale];
+        long fraction = unscaled % POW10[scale];
+        int digits = 1;
+        for (long w = whole; w >= 10; w /= 10) digits++;
+        for (int i = off + digits - 1; i >= off; i--, whole /= 10) out[i] = (char) ('0' + whole % 10);
+        off += digits;
+        if (scale == 0) return off;
+        out[off++] = '.';
+        for (int i = off + scale - 1; i >= off; i--, fraction /= 10) out[i] = (char) ('0' + fraction % 10);
+        return off + scale;
+    }
+
+    /** Same as LocalDate.of(year, month, day).toEpochDay() for years 0..9999. */
+    static long epochDay(int year, int month, int day) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12 + day - 1;
+        if (month > 2) total -= isLeap(year) ? 1 : 2;
+        return total - DAYS_0000_TO_1970;
+    }
+
+    /** yyyymmdd of a valid yyyy-MM-dd date, or -1 for anything else. */
+    private static int isoDate(char[] s, int off, int len) {
+        if (len != 10 || s[off + 4] != '-' || s[off + 7] != '-') return -1;
+        int y = 0, m = 0, d = 0;
+        for (int i = 0; i < 4; i++) y = digit(y, s[off + i]);
+        for (int i = 5; i < 7; i++) m = digit(m, s[off + i]);
+        for (int i = 8; i < 10; i++) d = digit(d, s[off + i]);
+        return valid(y, m, d) ? y * 10_000 + m * 100 + d : -1;
+    }
+
+    private static int isoDate(byte[] s, int off, int len) {
+        if (len != 10 || s[off + 4] != '-' || s[off + 7] != '-') return -1;
+        int y = 0, m = 0, d = 0;
+        for (int i = 0; i < 4; i++) y = digit(y, s[off + i]);
+        for (int i = 5; i < 7; i++) m = digit(m, s[off + i]);
+        for (int i = 8; i < 10; i++) d = digit(d, s[off + i]);
+        return valid(y, m, d) ? y * 10_000 + m * 100 + d : -1;
+    }
+
+    /** Appends a decimal digit; a non-digit poisons the value so that valid() fails. */
+    private static int digit(int value, int c) {
+        return c >= '0' && c <= '9' && value >= 0 ? value * 10 + (c - '0') : -1;
+    }
+
+    private static boolean valid(int y, int m, int d) {
+        if (y < 0 || m < 1 || m > 12 || d < 1) return false;
+        int length = m == 2 ? (isLeap(y) ? 29 : 28) : m == 4 || m == 6 || m == 9 || m == 11 ? 30 : 31;
+        return d <= length;
+    }
+
+    private static boolean isLeap(int y) {
+        return (y & 3) == 0 && (y % 100 != 0 || y % 400 == 0);
+    }
+
+    /** The only category a name of this length and first letter can be, or null. */
+    private static Category candidate(int length, int first) {
+        return switch (length) {
+            case 4 -> Category.RENT;
+            case 5 -> Category.OTHER;
+            case 9 -> (first | 0x20) == 'u' ? Category.UTILITIES : Category.GROCERIES;
+            case 10 -> Category.HEALTHCARE;
+            case 13 -> Category.ENTERTAINMENT;
+            case 14 -> Category.TRANSPORTATION;
+            default -> null;
+        };
+    }
+
+    /** ASCII case-insensitive match against an upper-case letter. */
+    private static boolean sameLetter(int c, char upper) {
+        return (c | 0x20) == (upper | 0x20);
+    }
+
+    private static String utf8(byte[] s, int off, int len) {
+        return new String(s, off, len, StandardCharsets.UTF_8);
+    }
+}
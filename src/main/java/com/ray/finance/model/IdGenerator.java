@@ -0,0 +1,104 @@
+package com.ray.finance.model;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-ordered 64-bit expense ids: 41 bits of milliseconds since 2024-01-01
+ * (good until 2093), 10 bits of node and a 12-bit sequence within the
+ * millisecond. Ids are written as plain decimal strings.
+ *
+ * Within a generator ids strictly increase: a compare-and-set on the last
+ * (millisecond, sequence) pair hands each caller its own value, a clock that
+ * steps back is ignored, and a sequence that runs out borrows the next
+ * millisecond. Processes are kept apart by the node, set with -Dfinance.node.
+ * Give every process that writes to the same ledger its own node to rule out
+ * collisions. Without it the node is drawn at random: two processes share one
+ * with odds of 1 in 1024 (about n^2/2048 for n processes), and even then ids
+ * only collide if both hand out the same sequence in the same millisecond.
+ * Process ids are not used since containers and restarts repeat them.
+ *
+ * Ids created before this scheme (8 hex characters) stay valid; ORDER sorts
+ * them before every generated id.
+ */
+public final class IdGenerator {
+
+    public static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    /** Legacy ids by string, then numeric ids by value. */
+    public static final Comparator<String> ORDER = (a, b) -> {
+        long x = numeric(a), y = numeric(b);
+        if (x < 0 && y < 0) return a.compareTo(b);
+        return Long.compare(x, y);
+    };
+
+    private static final IdGenerator GLOBAL = new IdGenerator(defaultNode(), System::currentTimeMillis);
+
+    private final long node;
+    private final LongSupplier clock;
+    // (millis since EPOCH_MILLIS << SEQUENCE_BITS) | sequence of the last id handed out
+    private final AtomicLong last = new AtomicLong();
+
+    public IdGenerator(int node, LongSupplier clock) {
+        if (node < 0 || node > MAX_NODE) throw new IllegalArgumentException("node must be 0.." + MAX_NODE);
+        this.node = node;
+        this.clock = clock;
+    }
+
+    /** The generator shared by everything in this process. */
+    public static IdGenerator global() {
+        return GLOBAL;
+    }
+
+    public long nextId() {
+        while (true) {
+            long prev = last.get();
+            long next = (clock.getAsLong() - EPOCH_MILLIS) << SEQUENCE_BITS;
+            if (next <= prev) next = prev + 1;
+            if (last.compareAndSet(prev, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1 << SEQUENCE_BITS) - 1);
+                return millis << (NODE_BITS + SEQUENCE_BITS) | node << SEQUENCE_BITS | sequence;
+            }
+        }
+    }
+
+    public String next() {
+        return Long.toString(nextId());
+    }
+
+    /** When a generated id was created; meaningless for legacy ids. */
+    public static Instant timestamp(long id) {
+        return Instant.ofEpochMilli(EPOCH_MILLIS + (id >>> (NODE_BITS + SEQUENCE_BITS)));
+    }
+
+    /**
+     * The value of an id written as a canonical positive decimal long (no sign,
+     * no leading zeros), or -1 for anything else, such as a legacy hex id.
+     */
+    public static long numeric(String id) {
+        int n = id.length();
+        if (n == 0 || n > 19 || id.charAt(0) == '0') return -1;
+        long value = 0;
+        for (int i = 0; i < n; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+            if (value < 0) return -1; // past Long.MAX_VALUE
+        }
+        return value;
+    }
+
+    private static int defaultNode() {
+        String configured = System.getProperty("finance.node");
+        if (configured != null) return Integer.parseInt(configured.trim());
+        return new SecureRandom().nextInt(MAX_NODE + 1);
+    }
+}
@@ -0,0 +1,25 @@
+package com.ray.finance.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversions between BigDecimal amounts and integer minor units (cents),
+ * which is how amounts are stored and summed by the repositories.
+ */
+public final class Money {
+    public static final int SCALE = 2;
+
+    private Money() {}
+
+    public static long toCents(BigDecimal amount) {
+        try {
+            return amount.movePointRight(SCALE).longValueExact();
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("amount has more than " + SCALE + " decimal places: " + amount, ex);
+        }
+    }
+
+    public static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+}
@@ -0,0 +1,562 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.Money;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Ledger stored as fixed-width binary records plus a string heap, read through
+ * memory maps. Opening only validates the header, so it costs the same for ten
+ * rows or ten million; rows are decoded as they are visited and the summaries
+ * run over the raw records without building Expense objects.
+ *
+ * ledger.bin holds a 64-byte header and one 32-byte record per row:
+ *   long cents, long id ref, long note ref, int epoch day, byte category
+ *   (-1 once deleted), 3 bytes padding.
+ * Refs point into ledger.bin.heap.N as [int length][UTF-8 bytes]. The header
+ * records the row count and heap size last committed, so a torn append is
+ * truncated away on open (and rows that never reached the disk are dropped),
+ * and the heap generation N, so saveAll can write a whole new pair and switch
+ * over with one atomic move.
+ *
+ * Updates are done in place (a changed note or id is appended to the heap);
+ * deletes leave a tombstone. A single process should own the files.
+ */
+public final class BinaryExpenseRepository implements ExpenseRepository {
+
+    static final int VERSION = 1;
+    private static final int MAGIC = 0x45585042; // "EXPB"
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 32;
+
+    // Header fields
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_RECORD_SIZE = 8;
+    private static final int H_COUNT = 16;
+    private static final int H_HEAP_GENERATION = 24;
+    private static final int H_HEAP_SIZE = 32;
+
+    // Record fields
+    private static final int R_CENTS = 0;
+    private static final int R_ID = 8;
+    private static final int R_NOTE = 16;
+    private static final int R_DAY = 24;
+    private static final int R_CATEGORY = 28;
+
+    private static final byte DELETED = -1;
+    private static final Category[] CATEGORIES = Category.values();
+    private static final int COPY_BATCH = 50_000;
+
+    private final Path path;
+    private FileChannel records;
+    private FileChannel heap;
+    private long heapGeneration;
+    private long count;
+    private long heapSize;
+
+    private MappedByteBuffer recordMap;
+    private long mappedCount = -1;
+    private MappedByteBuffer heapMap;
+    private long mappedHeap = -1;
+
+    // built on first use by id
+    private Map<String, Integer> rowById;
+    // built on first search, refs are rows; inserts are added, deletes and note edits drop it
+    private NoteIndex noteIndex;
+
+    public BinaryExpenseRepository(Path path) throws IOException {
+        this.path = path;
+        Path dir = path.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        if (!Files.exists(path)) writeEmpty(path, 0);
+        open();
+    }
+
+    private void open() throws IOException {
+        records = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (records.read(header, header.position()) <= 0) break;
+        }
+        if (header.position() < HEADER_SIZE || header.getInt(H_MAGIC) != MAGIC) {
+            records.close();
+            throw new IOException("Not a binary ledger: " + path);
+        }
+        int version = header.getInt(H_VERSION);
+        if (version != VERSION || header.getInt(H_RECORD_SIZE) != RECORD_SIZE) {
+            records.close();
+            throw new IOException("Unsupported binary ledger version " + version + ": " + path);
+        }
+        count = header.getLong(H_COUNT);
+        heapGeneration = header.getLong(H_HEAP_GENERATION);
+        heapSize = header.getLong(H_HEAP_SIZE);
+
+        heap = FileChannel.open(heapPath(heapGeneration), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Files shorter than the header says lost a write that never reached the disk: keep the rows that did
+        long committedCount = count;
+        long committedHeap = heapSize;
+        heapSize = Math.min(heapSize, heap.size());
+        count = Math.min(count, (records.size() - HEADER_SIZE) / RECORD_SIZE);
+        while (count > 0 && !(fits(count - 1, R_ID) && fits(count - 1, R_NOTE))) count--;
+        if (count != committedCount || heapSize != committedHeap) {
+            writeCounts();
+            records.force(false);
+        }
+        // Anything past the committed sizes is a torn append
+        if (records.size() > HEADER_SIZE + count * RECORD_SIZE) records.truncate(HEADER_SIZE + count * RECORD_SIZE);
+        if (heap.size() > heapSize) heap.truncate(heapSize);
+        recordMap = null;
+        mappedCount = -1;
+        heapMap = null;
+        mappedHeap = -1;
+        rowById = null;
+        noteIndex = null;
+    }
+
+    /** Replaces the contents with everything in source, streaming it in batches. */
+    public synchronized void load(ExpenseRepository source) throws IOException {
+        replace(staging -> {
+            List<Expense> batch = new ArrayList<>(COPY_BATCH);
+            IOException[] failure = {null};
+            source.forEach(e -> {
+                if (failure[0] != null) return;
+                batch.add(e);
+                if (batch.size() == COPY_BATCH) {
+                    try {
+                        staging.insertAll(batch);
+                    } catch (IOException ex) {
+                        failure[0] = ex;
+                    }
+                    batch.clear();
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+            staging.insertAll(batch);
+        });
+    }
+
+    /** Replaces the contents of target with this ledger in one saveAll, so a failure leaves target as it was. */
+    public synchronized void flushTo(ExpenseRepository target) throws IOException {
+        mapRecords();
+        List<Expense> all = new ArrayList<>((int) count);
+        for (int row = 0; row < count; row++) {
+            if (!isDeleted(row)) all.add(row(row));
+        }
+        target.saveAll(all);
+    }
+
+    /** Live rows. */
+    public synchronized int size() throws IOException {
+        mapRecords();
+        int live = 0;
+        for (int row = 0; row < count; row++) {
+            if (!isDeleted(row)) live++;
+        }
+        return live;
+    }
+
+    // ---- reads
+
+    @Override
+    public List<Expense> findAll() throws IOException {
+        List<Expense> out = new ArrayList<>();
+        forEach(out::add);
+        return out;
+    }
+
+    @Override
+    public synchronized void forEach(Consumer<? super Expense> action) throws IOException {
+        mapRecords();
+        for (int row = 0; row < count; row++) {
+            if (!isDeleted(row)) action.accept(row(row));
+        }
+    }
+
+    @Override
+    public synchronized Optional<Expense> findById(String id) throws IOException {
+        Integer row = rowById().get(id);
+        return row == null ? Optional.empty() : Optional.of(row(row));
+    }
+
+    @Override
+    public synchronized List<Expense> findByDateRange(LocalDate from, LocalDate to) throws IOException {
+        mapRecords();
+        long lo = from.toEpochDay();
+        long hi = to.toEpochDay();
+        List<Expense> out = new ArrayList<>();
+        for (int row = 0; row < count; row++) {
+            int day = day(row);
+            if (day >= lo && day <= hi && !isDeleted(row)) out.add(row(row));
+        }
+        out.sort(Comparator.comparing(Expense::getDate).reversed());
+        return out;
+    }
+
+    @Override
+    public synchronized List<Expense> search(String text, int offset, int limit) throws IOException {
+        List<Expense> out = new ArrayList<>();
+        for (NoteIndex.Hit hit : noteIndex().search(text, offset, limit)) out.add(row((int) hit.ref()));
+        return out;
+    }
+
+    /** Dates, categories and amounts are compared on the raw record; notes are never decoded. */
+    @Override
+    public synchronized int count(ExpenseFilter filter) throws IOException {
+        mapRecords();
+        long lo = filter.from() == null ? Long.MIN_VALUE : filter.from().toEpochDay();
+        long hi = filter.to() == null ? Long.MAX_VALUE : filter.to().toEpochDay();
+        long minCents = filter.minAmount() == null ? Long.MIN_VALUE
+                : filter.minAmount().movePointRight(Money.SCALE).setScale(0, RoundingMode.CEILING).longValueExact();
+        long maxCents = filter.maxAmount() == null ? Long.MAX_VALUE
+                : filter.maxAmount().movePointRight(Money.SCALE).setScale(0, RoundingMode.FLOOR).longValueExact();
+        boolean[] wanted = new boolean[CATEGORIES.length];
+        for (Category c : CATEGORIES) wanted[c.ordinal()] = filter.categories().isEmpty() || filter.categories().contains(c);
+
+        int n = 0;
+        for (int row = 0; row < count; row++) {
+            int base = offset(row);
+            byte c = recordMap.get(base + R_CATEGORY);
+            if (c == DELETED || !wanted[c]) continue;
+            int day = recordMap.getInt(base + R_DAY);
+            long cents = recordMap.getLong(base + R_CENTS);
+            if (day >= lo && day <= hi && cents >= minCents && cents <= maxCents) n++;
+        }
+        return n;
+    }
+
+    @Override
+    public BigDecimal sumByMonth(YearMonth month) throws IOException {
+        long total = 0;
+        for (long cents : monthTotals(month)[0]) total += cents;
+        return Money.fromCents(total);
+    }
+
+    @Override
+    public Map<Category, BigDecimal> sumByMonthAndCategory(YearMonth month) throws IOException {
+        long[][] totals = monthTotals(month);
+        Map<Category, BigDecimal> map = new EnumMap<>(Category.class);
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            if (totals[1][c] > 0) map.put(CATEGORIES[c], Money.fromCents(totals[0][c]));
+        }
+        return map;
+    }
+
+    /** Records file mtime and row count. */
+    @Override
+    public synchronized long dataVersion() throws IOException {
+        return Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS) * 31 + count;
+    }
+
+    /** Cents and row counts per category ordinal, in one pass over the raw records. */
+    private synchronized long[][] monthTotals(YearMonth month) throws IOException {
+        mapRecords();
+        long lo = month.atDay(1).toEpochDay();
+        long hi = month.atEndOfMonth().toEpochDay();
+        long[] cents = new long[CATEGORIES.length];
+        long[] rows = new long[CATEGORIES.length];
+        for (int row = 0; row < count; row++) {
+            int base = offset(row);
+            int day = recordMap.getInt(base + R_DAY);
+            byte c = recordMap.get(base + R_CATEGORY);
+            if (day >= lo && day <= hi && c != DELETED) {
+                cents[c] += recordMap.getLong(base + R_CENTS);
+                rows[c]++;
+            }
+        }
+        return new long[][]{cents, rows};
+    }
+
+    // ---- writes
+
+    @Override
+    public synchronized void saveAll(List<Expense> expenses) throws IOException {
+        replace(staging -> staging.insertAll(expenses));
+    }
+
+    @FunctionalInterface
+    private interface Contents {
+        void writeTo(BinaryExpenseRepository staging) throws IOException;
+    }
+
+    /**
+     * Writes the new records and heap as a complete, fsynced pair beside the
+     * live one (ledger.bin.tmp and the next heap generation), then switches
+     * over with one atomic move of the records file. Until the move the old
+     * pair is untouched, so a crash or a failing source leaves it as it was.
+     */
+    private void replace(Contents contents) throws IOException {
+        long generation = heapGeneration + 1;
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Path newHeap = heapPath(generation);
+        Files.deleteIfExists(newHeap);
+        writeEmpty(tmp, generation);
+        BinaryExpenseRepository staging = new BinaryExpenseRepository(tmp);
+        Path stagedHeap = staging.heapPath(generation);
+        try {
+            try {
+                contents.writeTo(staging);
+                staging.heap.force(true);
+                staging.records.force(true);
+            } finally {
+                staging.close();
+            }
+            // Not live until the records file naming its generation is moved in
+            Files.move(stagedHeap, newHeap, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            Files.deleteIfExists(stagedHeap);
+            throw e;
+        }
+
+        close();
+        Path oldHeap = heapPath(heapGeneration);
+        CsvExpenseRepository.commitTemp(tmp, path);
+        open();
+        Files.deleteIfExists(oldHeap);
+    }
+
+    @Override
+    public void insert(Expense expense) throws IOException {
+        insertAll(List.of(expense));
+    }
+
+    /** Heap strings and records are written and synced first; bumping the header count commits them. */
+    @Override
+    public synchronized void insertAll(List<Expense> expenses) throws IOException {
+        if (expenses.isEmpty()) return;
+        Map<String, Integer> index = rowById();
+        Set<String> batchIds = new HashSet<>(Math.max(16, expenses.size() * 4 / 3));
+        for (Expense e : expenses) {
+            if (index.containsKey(e.getId()) || !batchIds.add(e.getId())) {
+                throw new IllegalArgumentException("duplicate expense id: " + e.getId());
+            }
+        }
+
+        ByteBuffer strings = ByteBuffer.allocate(64 * expenses.size());
+        ByteBuffer rows = ByteBuffer.allocate(RECORD_SIZE * expenses.size());
+        long heapEnd = heapSize;
+        for (Expense e : expenses) {
+            long cents = Money.toCents(e.getAmount());
+            int day = Math.toIntExact(e.getDate().toEpochDay());
+            long idRef = heapEnd + strings.position();
+            strings = putString(strings, e.getId());
+            long noteRef = heapEnd + strings.position();
+            strings = putString(strings, e.getNote());
+
+            rows.putLong(cents).putLong(idRef).putLong(noteRef).putInt(day)
+                    .put((byte) e.getCategory().ordinal()).put(new byte[3]);
+        }
+        strings.flip();
+        rows.flip();
+        writeFully(heap, strings, heapSize);
+        writeFully(records, rows, HEADER_SIZE + count * RECORD_SIZE);
+        // On disk before the header counts them, or a crash could commit rows that never arrived
+        heap.force(false);
+        records.force(false);
+
+        long firstRow = count;
+        heapSize += strings.limit();
+        count += expenses.size();
+        writeCounts();
+        for (int i = 0; i < expenses.size(); i++) index.put(expenses.get(i).getId(), (int) (firstRow + i));
+        if (noteIndex != null) {
+            for (int i = 0; i < expenses.size(); i++) noteIndex.add(firstRow + i, expenses.get(i).getNote());
+        }
+    }
+
+    @Override
+    public synchronized boolean update(Expense expense) throws IOException {
+        Integer row = rowById().get(expense.getId());
+        if (row == null) return false;
+
+        long cents = Money.toCents(expense.getAmount());
+        int day = Math.toIntExact(expense.getDate().toEpochDay());
+        long noteRef = recordMap.getLong(offset(row) + R_NOTE);
+        if (!readString(noteRef).equals(expense.getNote())) {
+            ByteBuffer note = putString(ByteBuffer.allocate(64), expense.getNote());
+            note.flip();
+            noteRef = heapSize;
+            writeFully(heap, note, heapSize);
+            heap.force(false);
+            heapSize += note.limit();
+            writeCounts();
+            noteIndex = null;
+        }
+        ByteBuffer rec = ByteBuffer.allocate(RECORD_SIZE);
+        rec.putLong(cents).putLong(recordMap.getLong(offset(row) + R_ID)).putLong(noteRef).putInt(day)
+                .put((byte) expense.getCategory().ordinal()).put(new byte[3]);
+        rec.flip();
+        writeFully(records, rec, HEADER_SIZE + (long) row * RECORD_SIZE);
+        records.force(false);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean delete(String id) throws IOException {
+        Integer row = rowById().remove(id);
+        if (row == null) return false;
+        writeFully(records, ByteBuffer.wrap(new byte[]{DELETED}), HEADER_SIZE + (long) row * RECORD_SIZE + R_CATEGORY);
+        records.force(false);
+        noteIndex = null;
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        recordMap = null;
+        heapMap = null;
+        if (records != null) records.close();
+        if (heap != null) heap.close();
+    }
+
+    // ---- record access
+
+    private Map<String, Integer> rowById() throws IOException {
+        if (rowById == null) {
+            mapRecords();
+            Map<String, Integer> index = new HashMap<>(Math.max(16, (int) (count * 4 / 3)));
+            for (int row = 0; row < count; row++) {
+                if (!isDeleted(row)) index.put(readString(recordMap.getLong(offset(row) + R_ID)), row);
+            }
+            rowById = index;
+        }
+        mapRecords();
+        return rowById;
+    }
+
+    private NoteIndex noteIndex() throws IOException {
+        mapRecords();
+        if (noteIndex == null) {
+            NoteIndex index = new NoteIndex();
+            for (int row = 0; row < count; row++) {
+                if (!isDeleted(row)) index.add(row, readString(recordMap.getLong(offset(row) + R_NOTE)));
+            }
+            noteIndex = index;
+        }
+        return noteIndex;
+    }
+
+    private Expense row(int row) throws IOException {
+        int base = offset(row);
+        String id = readString(recordMap.getLong(base + R_ID));
+        String note = readString(recordMap.getLong(base + R_NOTE));
+        return new Expense(id, LocalDate.ofEpochDay(recordMap.getInt(base + R_DAY)),
+                Money.fromCents(recordMap.getLong(base + R_CENTS)), CATEGORIES[recordMap.get(base + R_CATEGORY)], note);
+    }
+
+    /** True if the string row's field refers to lies within the committed heap; used before anything is mapped. */
+    private boolean fits(long row, int field) throws IOException {
+        ByteBuffer ref = ByteBuffer.allocate(8);
+        readFully(records, ref, HEADER_SIZE + row * RECORD_SIZE + field);
+        long at = ref.getLong(0);
+        if (at < 0 || at + 4 > heapSize) return false;
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(heap, length, at);
+        return at + 4 + length.getInt(0) <= heapSize;
+    }
+
+    private boolean isDeleted(int row) {
+        return recordMap.get(offset(row) + R_CATEGORY) == DELETED;
+    }
+
+    private int day(int row) {
+        return recordMap.getInt(offset(row) + R_DAY);
+    }
+
+    private static int offset(int row) {
+        return HEADER_SIZE + row * RECORD_SIZE;
+    }
+
+    private String readString(long ref) throws IOException {
+        mapHeap();
+        int at = (int) ref;
+        byte[] bytes = new byte[heapMap.getInt(at)];
+        heapMap.get(at + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Maps the committed records; a no-op unless rows were appended since the last call. */
+    private void mapRecords() throws IOException {
+        if (mappedCount == count) return;
+        long bytes = HEADER_SIZE + count * RECORD_SIZE;
+        if (bytes > Integer.MAX_VALUE) throw new IOException("Binary ledger too large to map: " + count + " rows");
+        recordMap = records.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+        mappedCount = count;
+    }
+
+    private void mapHeap() throws IOException {
+        if (mappedHeap == heapSize) return;
+        if (heapSize > Integer.MAX_VALUE) throw new IOException("Binary ledger heap too large to map: " + heapSize + " bytes");
+        heapMap = heap.map(FileChannel.MapMode.READ_ONLY, 0, heapSize);
+        mappedHeap = heapSize;
+    }
+
+    private void writeCounts() throws IOException {
+        ByteBuffer counts = ByteBuffer.allocate(24);
+        counts.putLong(count).putLong(heapGeneration).putLong(heapSize).flip();
+        writeFully(records, counts, H_COUNT);
+    }
+
+    private Path heapPath(long generation) {
+        return path.resolveSibling(path.getFileName() + ".heap." + generation);
+    }
+
+    private static void writeEmpty(Path file, long heapGeneration) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(H_MAGIC, MAGIC)
+                .putInt(H_VERSION, VERSION)
+                .putInt(H_RECORD_SIZE, RECORD_SIZE)
+                .putLong(H_COUNT, 0)
+                .putLong(H_HEAP_GENERATION, heapGeneration)
+                .putLong(H_HEAP_SIZE, 0);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(ch, header, 0);
+            ch.force(true);
+        }
+    }
+
+    private static ByteBuffer putString(ByteBuffer buf, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (buf.remaining() < 4 + bytes.length) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + 4 + bytes.length));
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+        return buf.putInt(bytes.length).put(bytes);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        long at = position;
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, at);
+            if (n < 0) throw new IOException("Unexpected end of binary ledger");
+            at += n;
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        long at = position;
+        while (buf.hasRemaining()) at += ch.write(buf, at);
+    }
+}
@@ -0,0 +1,108 @@
+package com.ray.finance.repo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bloom filter over 64-bit fingerprints, which are already well mixed, so the
+ * probes are derived from the two halves of the key (Kirsch-Mitzenmacher)
+ * instead of hashing it again. Sized for about 1% false positives at its
+ * capacity; the bit count is a power of two so a probe is a mask, not a division.
+ *
+ * Reads may run concurrently; adds must not run alongside anything else.
+ */
+final class BloomFilter {
+
+    private static final int MAGIC = 0x45584246; // "EXBF"
+    private static final int HEADER = 24;
+    private static final int HASHES = 7;
+    private static final int BITS_PER_KEY = 10;
+
+    private final long[] words;
+    private final long mask;
+    private final long capacity;
+    private long entries;
+
+    BloomFilter(long capacity) {
+        long bits = Long.highestOneBit(Math.max(64, capacity * BITS_PER_KEY - 1) << 1);
+        this.words = new long[(int) (bits >>> 6)];
+        this.mask = bits - 1;
+        this.capacity = capacity;
+    }
+
+    private BloomFilter(long[] words, long capacity, long entries) {
+        this.words = words;
+        this.mask = ((long) words.length << 6) - 1;
+        this.capacity = capacity;
+        this.entries = entries;
+    }
+
+    void add(long key) {
+        int h1 = (int) key;
+        int h2 = (int) (key >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + (long) i * h2) & mask;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        entries++;
+    }
+
+    boolean mightContain(long key) {
+        int h1 = (int) key;
+        int h2 = (int) (key >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + (long) i * h2) & mask;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /** Keys added, counting repeats. */
+    long entries() { return entries; }
+
+    /** Past this many keys the false-positive rate climbs; rebuild larger. */
+    long capacity() { return capacity; }
+
+    void writeTo(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + words.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(words.length).putLong(capacity).putLong(entries);
+        buf.asLongBuffer().put(words);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** The filter saved at path, or null if there is none or it is unreadable. */
+    static BloomFilter readFrom(Path path) throws IOException {
+        if (!Files.exists(path)) return null;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER || size > Integer.MAX_VALUE) return null;
+            ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (buf.hasRemaining() && ch.read(buf) >= 0) { }
+            buf.flip();
+            if (buf.getInt() != MAGIC) return null;
+            int n = buf.getInt();
+            long capacity = buf.getLong();
+            long entries = buf.getLong();
+            if (n <= 0 || Integer.bitCount(n) != 1 || size != HEADER + n * 8L) return null;
+            long[] words = new long[n];
+            buf.asLongBuffer().get(words);
+            return new BloomFilter(words, capacity, entries);
+        }
+    }
+}
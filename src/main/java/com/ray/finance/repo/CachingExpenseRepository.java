@@ -0,0 +1,299 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.metrics.MetricsRegistry;
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Write-through LRU cache in front of another repository. It caches single
+ * expenses by id, whole-month slices (findByDateRange over exactly one month,
+ * which also answers the monthly sums) and findAll when it fits the byte budget.
+ *
+ * Writes go to the delegate first and then invalidate the affected months.
+ * Before each read and each write the delegate's dataVersion() is compared
+ * with the last one seen, so changes made by other processes flush the cache.
+ * After a write of its own the version may stay put (backends that cannot see
+ * changes) or move by one (SQLite's data_version); any other movement could
+ * hide someone else's change, so the whole cache is dropped.
+ */
+public final class CachingExpenseRepository implements ExpenseRepository {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    public record CacheStats(long hits, long misses, long evictions, int entries, long estimatedBytes) {
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private static final Object ALL = new Object();
+
+    private record Entry(Object value, long bytes) {}
+
+    private final ExpenseRepository delegate;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long seenVersion;
+
+    public CachingExpenseRepository(ExpenseRepository delegate) throws IOException {
+        this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    public CachingExpenseRepository(ExpenseRepository delegate, int maxEntries, long maxBytes) throws IOException {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be >= 1");
+        if (maxBytes < 1) throw new IllegalArgumentException("maxBytes must be >= 1");
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        // seenVersion is taken by the first read: the cache is empty until then, and
+        // constructing stays free of I/O
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, entries.size(), bytes);
+    }
+
+    /** Publishes stats() as prefix.hits, .misses, .hitRatio, .evictions, .entries and .bytes gauges. */
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".hits", () -> stats().hits());
+        registry.gauge(prefix + ".misses", () -> stats().misses());
+        registry.gauge(prefix + ".hitRatio", () -> stats().hitRatio());
+        registry.gauge(prefix + ".evictions", () -> stats().evictions());
+        registry.gauge(prefix + ".entries", () -> stats().entries());
+        registry.gauge(prefix + ".bytes", () -> stats().estimatedBytes());
+    }
+
+    /** Drops every cached entry. */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    // ---- reads
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized List<Expense> findAll() throws IOException {
+        checkExternalChanges();
+        Entry cached = get(ALL);
+        if (cached != null) return new ArrayList<>((List<Expense>) cached.value());
+
+        List<Expense> all = delegate.findAll();
+        put(ALL, List.copyOf(all), estimate(all));
+        return all;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void forEach(Consumer<? super Expense> action) throws IOException {
+        checkExternalChanges();
+        Entry cached = get(ALL);
+        if (cached != null) {
+            ((List<Expense>) cached.value()).forEach(action);
+        } else {
+            delegate.forEach(action);
+        }
+    }
+
+    @Override
+    public synchronized Optional<Expense> findById(String id) throws IOException {
+        checkExternalChanges();
+        Entry cached = get(id);
+        if (cached != null) return Optional.of((Expense) cached.value());
+
+        Optional<Expense> found = delegate.findById(id);
+        found.ifPresent(e -> put(id, e, estimate(e)));
+        return found;
+    }
+
+    @Override
+    public synchronized List<Expense> findByDateRange(LocalDate from, LocalDate to) throws IOException {
+        YearMonth month = YearMonth.from(from);
+        if (from.getDayOfMonth() != 1 || !to.equals(month.atEndOfMonth())) {
+            checkExternalChanges();
+            return delegate.findByDateRange(from, to);
+        }
+        return new ArrayList<>(monthSlice(month));
+    }
+
+    @Override
+    public synchronized int count(ExpenseFilter filter) throws IOException {
+        checkExternalChanges();
+        return delegate.count(filter);
+    }
+
+    @Override
+    public synchronized List<Expense> findPage(ExpenseFilter filter, ExpenseSort sort, int offset, int limit) throws IOException {
+        checkExternalChanges();
+        return delegate.findPage(filter, sort, offset, limit);
+    }
+
+    @Override
+    public synchronized List<Expense> query(ExpenseQuery query) throws IOException {
+        checkExternalChanges();
+        return delegate.query(query);
+    }
+
+    @Override
+    public synchronized List<Expense> search(String text, int offset, int limit) throws IOException {
+        checkExternalChanges();
+        return delegate.search(text, offset, limit);
+    }
+
+    @Override
+    public synchronized BigDecimal sumByMonth(YearMonth month) throws IOException {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Expense e : monthSlice(month)) total = total.add(e.getAmount());
+        return total;
+    }
+
+    @Override
+    public synchronized Map<Category, BigDecimal> sumByMonthAndCategory(YearMonth month) throws IOException {
+        Map<Category, BigDecimal> map = new EnumMap<>(Category.class);
+        for (Expense e : monthSlice(month)) map.merge(e.getCategory(), e.getAmount(), BigDecimal::add);
+        return map;
+    }
+
+    @Override
+    public long dataVersion() throws IOException {
+        return delegate.dataVersion();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Expense> monthSlice(YearMonth month) throws IOException {
+        checkExternalChanges();
+        Entry cached = get(month);
+        if (cached != null) return (List<Expense>) cached.value();
+
+        List<Expense> slice = List.copyOf(delegate.findByDateRange(month.atDay(1), month.atEndOfMonth()));
+        put(month, slice, estimate(slice));
+        return slice;
+    }
+
+    // ---- writes
+
+    @Override
+    public synchronized void saveAll(List<Expense> expenses) throws IOException {
+        delegate.saveAll(expenses);
+        invalidateAll();
+        seenVersion = delegate.dataVersion();
+    }
+
+    @Override
+    public synchronized void insert(Expense expense) throws IOException {
+        checkExternalChanges();
+        delegate.insert(expense);
+        afterWrite(null, expense);
+    }
+
+    @Override
+    public synchronized void insertAll(List<Expense> expenses) throws IOException {
+        checkExternalChanges();
+        delegate.insertAll(expenses);
+        afterOwnWrite();
+        for (Expense e : expenses) invalidate(YearMonth.from(e.getDate()));
+        invalidate(ALL);
+    }
+
+    @Override
+    public synchronized boolean update(Expense expense) throws IOException {
+        Expense previous = findById(expense.getId()).orElse(null);
+        if (!delegate.update(expense)) return false;
+        afterWrite(previous, expense);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean delete(String id) throws IOException {
+        Expense previous = findById(id).orElse(null);
+        if (!delegate.delete(id)) return false;
+        invalidate(id);
+        afterWrite(previous, null);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private void afterWrite(Expense before, Expense after) throws IOException {
+        afterOwnWrite();
+        if (before != null) invalidate(YearMonth.from(before.getDate()));
+        if (after != null) {
+            invalidate(YearMonth.from(after.getDate()));
+            put(after.getId(), after, estimate(after));
+        }
+        invalidate(ALL);
+    }
+
+    /** Takes the version after a write of ours; seenVersion was read just before it. */
+    private void afterOwnWrite() throws IOException {
+        long version = delegate.dataVersion();
+        if (version != seenVersion && version != seenVersion + 1) invalidateAll();
+        seenVersion = version;
+    }
+
+    // ---- LRU bookkeeping
+
+    private void checkExternalChanges() throws IOException {
+        long version = delegate.dataVersion();
+        if (version != seenVersion) {
+            invalidateAll();
+            seenVersion = version;
+        }
+    }
+
+    private Entry get(Object key) {
+        Entry e = entries.get(key);
+        if (e != null) hits++;
+        else misses++;
+        return e;
+    }
+
+    private void put(Object key, Object value, long size) {
+        if (size > maxBytes) return; // would evict everything else and still not fit
+        Entry old = entries.put(key, new Entry(value, size));
+        if (old != null) bytes -= old.bytes();
+        bytes += size;
+
+        Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            Map.Entry<Object, Entry> eldest = it.next();
+            if (eldest.getKey() == key) continue;
+            bytes -= eldest.getValue().bytes();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private void invalidate(Object key) {
+        Entry old = entries.remove(key);
+        if (old != null) bytes -= old.bytes();
+    }
+
+    private static long estimate(List<Expense> expenses) {
+        long total = 64 + 8L * expenses.size();
+        for (Expense e : expenses) total += estimate(e);
+        return total;
+    }
+
+    /** Rough retained size: object headers, LocalDate, BigDecimal and two strings. */
+    private static long estimate(Expense e) {
+        return 200 + 2L * (e.getId().length() + e.getNote().length());
+    }
+}
@@ -0,0 +1,341 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.IdGenerator;
+import com.ray.finance.model.Money;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * In-memory ledger stored column-wise in primitive arrays: epoch days, amounts
+ * in cents and category ordinals. Notes are dictionary-encoded since most of
+ * them repeat (merchant names, "rent", ...). Aggregates are plain loops over
+ * the arrays and allocate nothing per row.
+ *
+ * Generated ids are kept as longs and looked up through a primitive hash
+ * table; legacy ids get a negative code from a dictionary like the notes'.
+ *
+ * Note search indexes the dictionary rather than the rows: a query scores each
+ * distinct note once, then one pass over the note codes picks the rows.
+ *
+ * Deletes leave a tombstone that is reclaimed once they make up half the rows.
+ * Use load/flushTo to move data to and from a persistent repository. Methods
+ * are synchronized on the repository, so it may be shared between threads.
+ */
+public final class ColumnarExpenseRepository implements ExpenseRepository {
+    private static final byte DELETED = -1;
+    private static final Category[] CATEGORIES = Category.values();
+
+    private long[] ids = new long[16];
+    private int[] days = new int[16];
+    private long[] cents = new long[16];
+    private byte[] categories = new byte[16];
+    private int[] noteRefs = new int[16];
+    private int size;
+    private int deleted;
+
+    private LongIntMap rowById = new LongIntMap();
+    private List<String> legacyIds = new ArrayList<>();
+    private Map<String, Integer> legacyCodes = new HashMap<>();
+    private List<String> noteDict = new ArrayList<>();
+    private Map<String, Integer> noteCodes = new HashMap<>();
+    private NoteIndex noteIndex = new NoteIndex();
+
+    public static ColumnarExpenseRepository loadFrom(ExpenseRepository source) throws IOException {
+        ColumnarExpenseRepository repo = new ColumnarExpenseRepository();
+        repo.load(source);
+        return repo;
+    }
+
+    /**
+     * Replaces the contents with everything in source. The rows are read into
+     * a new ledger without holding the lock and swapped in at the end, so a
+     * failing source leaves the contents as they were.
+     */
+    public void load(ExpenseRepository source) throws IOException {
+        ColumnarExpenseRepository loaded = new ColumnarExpenseRepository();
+        source.forEach(loaded::append);
+        takeOver(loaded);
+    }
+
+    /** Replaces the contents of target with this ledger. */
+    public synchronized void flushTo(ExpenseRepository target) throws IOException {
+        target.saveAll(findAll());
+    }
+
+    public synchronized int size() {
+        return size - deleted;
+    }
+
+    @Override
+    public synchronized List<Expense> findAll() {
+        List<Expense> out = new ArrayList<>(size());
+        forEach(out::add);
+        return out;
+    }
+
+    @Override
+    public synchronized void forEach(Consumer<? super Expense> action) {
+        for (int i = 0; i < size; i++) {
+            if (categories[i] != DELETED) action.accept(row(i));
+        }
+    }
+
+    @Override
+    public synchronized Optional<Expense> findById(String id) {
+        int row = rowOf(id);
+        return row == LongIntMap.MISSING ? Optional.empty() : Optional.of(row(row));
+    }
+
+    /** Replaces the contents; a rejected list leaves them as they were. */
+    @Override
+    public synchronized void saveAll(List<Expense> expenses) {
+        validate(expenses, false);
+        clear();
+        for (Expense e : expenses) append(e);
+    }
+
+    @Override
+    public synchronized void insert(Expense expense) {
+        insertAll(List.of(expense));
+    }
+
+    /** Adds every expense or, if any is rejected, none. */
+    @Override
+    public synchronized void insertAll(List<Expense> expenses) {
+        validate(expenses, true);
+        for (Expense e : expenses) append(e);
+    }
+
+    @Override
+    public synchronized boolean update(Expense expense) {
+        int row = rowOf(expense.getId());
+        if (row == LongIntMap.MISSING) return false;
+        set(row, expense);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean delete(String id) {
+        int row = rowOf(id);
+        if (row == LongIntMap.MISSING) return false;
+        rowById.remove(ids[row]);
+        categories[row] = DELETED;
+        deleted++;
+        if (deleted > 16 && deleted * 2 > size) compact();
+        return true;
+    }
+
+    @Override
+    public synchronized List<Expense> findByDateRange(LocalDate from, LocalDate to) {
+        int lo = (int) from.toEpochDay();
+        int hi = (int) to.toEpochDay();
+        List<Expense> out = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int d = days[i];
+            if (d >= lo && d <= hi && categories[i] != DELETED) out.add(row(i));
+        }
+        out.sort(Comparator.comparing(Expense::getDate).reversed());
+        return out;
+    }
+
+    @Override
+    public synchronized List<Expense> search(String text, int offset, int limit) {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must be >= 0");
+        double[] scores = new double[noteDict.size()];
+        Arrays.fill(scores, Double.NaN);
+        for (NoteIndex.Hit hit : noteIndex.search(text, 0, Integer.MAX_VALUE)) scores[(int) hit.ref()] = hit.score();
+
+        // best score, then newest, then the most recently added row
+        Comparator<Integer> order = Comparator.<Integer>comparingDouble(r -> scores[noteRefs[r]]).reversed()
+                .thenComparing(Comparator.<Integer>comparingInt(r -> days[r]).reversed())
+                .thenComparing(Comparator.<Integer>naturalOrder().reversed());
+        int keep = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        PriorityQueue<Integer> top = new PriorityQueue<>(Math.max(1, Math.min(keep, 1024)), order.reversed());
+        for (int i = 0; i < size && keep > 0; i++) {
+            if (categories[i] == DELETED || Double.isNaN(scores[noteRefs[i]])) continue;
+            if (top.size() < keep) {
+                top.add(i);
+            } else if (order.compare(i, top.peek()) < 0) {
+                top.poll();
+                top.add(i);
+            }
+        }
+        List<Integer> rows = new ArrayList<>(top);
+        rows.sort(order);
+        List<Expense> out = new ArrayList<>();
+        for (int i = offset; i < rows.size(); i++) out.add(row(rows.get(i)));
+        return out;
+    }
+
+    @Override
+    public synchronized BigDecimal sumByMonth(YearMonth month) {
+        return Money.fromCents(sumCents((int) month.atDay(1).toEpochDay(), (int) month.atEndOfMonth().toEpochDay()));
+    }
+
+    @Override
+    public synchronized Map<Category, BigDecimal> sumByMonthAndCategory(YearMonth month) {
+        long[] byCat = new long[CATEGORIES.length];
+        boolean[] seen = new boolean[CATEGORIES.length];
+        int lo = (int) month.atDay(1).toEpochDay();
+        int hi = (int) month.atEndOfMonth().toEpochDay();
+        for (int i = 0; i < size; i++) {
+            int d = days[i];
+            byte c = categories[i];
+            if (d >= lo && d <= hi && c != DELETED) {
+                byCat[c] += cents[i];
+                seen[c] = true;
+            }
+        }
+        Map<Category, BigDecimal> map = new EnumMap<>(Category.class);
+        for (int c = 0; c < byCat.length; c++) {
+            if (seen[c]) map.put(CATEGORIES[c], Money.fromCents(byCat[c]));
+        }
+        return map;
+    }
+
+    /** Total cents for fromDay <= epoch day <= toDay. */
+    public synchronized long sumCents(int fromDay, int toDay) {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            int d = days[i];
+            if (d >= fromDay && d <= toDay && categories[i] != DELETED) total += cents[i];
+        }
+        return total;
+    }
+
+    private Expense row(int i) {
+        long id = ids[i];
+        return new Expense(id >= 0 ? Long.toString(id) : legacyIds.get((int) (-1 - id)), LocalDate.ofEpochDay(days[i]), Money.fromCents(cents[i]),
+                CATEGORIES[categories[i]], noteDict.get(noteRefs[i]));
+    }
+
+    /**
+     * Throws for anything append() would reject: a repeated id, within expenses
+     * or (when existing) already stored, or an amount or date the columns cannot hold.
+     */
+    private void validate(List<Expense> expenses, boolean existing) {
+        Set<String> seen = new HashSet<>();
+        for (Expense e : expenses) {
+            if (!seen.add(e.getId()) || existing && rowOf(e.getId()) != LongIntMap.MISSING) {
+                throw new IllegalArgumentException("duplicate expense id: " + e.getId());
+            }
+            Money.toCents(e.getAmount());
+            Math.toIntExact(e.getDate().toEpochDay());
+        }
+    }
+
+    private void append(Expense e) {
+        long id = key(e.getId());
+        if (rowById.get(id) != LongIntMap.MISSING) {
+            throw new IllegalArgumentException("duplicate expense id: " + e.getId());
+        }
+        if (size == days.length) grow();
+        ids[size] = id;
+        set(size, e);
+        rowById.put(id, size);
+        size++;
+    }
+
+    /** The row holding id, or LongIntMap.MISSING. */
+    private int rowOf(String id) {
+        long numeric = IdGenerator.numeric(id);
+        if (numeric >= 0) return rowById.get(numeric);
+        Integer code = legacyCodes.get(id);
+        return code == null ? LongIntMap.MISSING : rowById.get(-1L - code);
+    }
+
+    /** The value stored in ids for id: the id itself, or -1 - its legacy code. */
+    private long key(String id) {
+        long numeric = IdGenerator.numeric(id);
+        if (numeric >= 0) return numeric;
+        Integer code = legacyCodes.get(id);
+        if (code == null) {
+            code = legacyIds.size();
+            legacyIds.add(id);
+            legacyCodes.put(id, code);
+        }
+        return -1L - code;
+    }
+
+    private void set(int i, Expense e) {
+        // convert first so a rejected amount leaves the row untouched
+        long amount = Money.toCents(e.getAmount());
+        int day = Math.toIntExact(e.getDate().toEpochDay());
+        days[i] = day;
+        cents[i] = amount;
+        categories[i] = (byte) e.getCategory().ordinal();
+        noteRefs[i] = noteCode(e.getNote());
+    }
+
+    private int noteCode(String note) {
+        Integer code = noteCodes.get(note);
+        if (code == null) {
+            code = noteDict.size();
+            noteDict.add(note);
+            noteCodes.put(note, code);
+            noteIndex.add(code, note);
+        }
+        return code;
+    }
+
+    private void grow() {
+        int capacity = days.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        days = Arrays.copyOf(days, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        categories = Arrays.copyOf(categories, capacity);
+        noteRefs = Arrays.copyOf(noteRefs, capacity);
+    }
+
+    private void compact() {
+        int w = 0;
+        for (int r = 0; r < size; r++) {
+            if (categories[r] == DELETED) continue;
+            if (w != r) {
+                ids[w] = ids[r];
+                days[w] = days[r];
+                cents[w] = cents[r];
+                categories[w] = categories[r];
+                noteRefs[w] = noteRefs[r];
+                rowById.put(ids[w], w);
+            }
+            w++;
+        }
+        size = w;
+        deleted = 0;
+    }
+
+    private synchronized void takeOver(ColumnarExpenseRepository other) {
+        ids = other.ids;
+        days = other.days;
+        cents = other.cents;
+        categories = other.categories;
+        noteRefs = other.noteRefs;
+        size = other.size;
+        deleted = other.deleted;
+        rowById = other.rowById;
+        legacyIds = other.legacyIds;
+        legacyCodes = other.legacyCodes;
+        noteDict = other.noteDict;
+        noteCodes = other.noteCodes;
+        noteIndex = other.noteIndex;
+    }
+
+    private void clear() {
+        size = 0;
+        deleted = 0;
+        rowById.clear();
+        legacyIds.clear();
+        legacyCodes.clear();
+        noteDict.clear();
+        noteCodes.clear();
+        noteIndex = new NoteIndex();
+    }
+}
@@ -0,0 +1,383 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.FieldCodec;
+import com.ray.finance.model.Money;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulk loader for large CSV files in the id,date,amount,category,note layout.
+ *
+ * The file is memory-mapped and cut into chunks that are parsed in parallel.
+ * Chunk boundaries must not fall inside a quoted field, so a first parallel pass
+ * counts quotes per raw chunk; the running parity tells each chunk whether it
+ * starts inside quotes, and it then moves its start to the next record break.
+ * Parsed rows go to the target repository via insertAll in large batches (one
+ * transaction each for SQLite). Rows from different chunks may arrive in any order.
+ *
+ * The import is not atomic. If an insertAll fails, no further batches are
+ * started and importFile rethrows the failure, but the batches already
+ * inserted stay in the target.
+ *
+ * Given a DuplicateIndex, rows whose fingerprint an earlier import recorded
+ * are skipped, and each batch's fingerprints are recorded with it, so a failed
+ * import can be run again and loads only what is missing. Rows of one file are
+ * never duplicates of each other, so two identical purchases on a statement
+ * both load; the fingerprints this import recorded are held for that (16 to
+ * 32 bytes per row).
+ */
+public final class CsvBulkImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 50_000;
+
+    private static final long MIN_CHUNK = 1L << 20;
+    private static final long MAX_CHUNK = 64L << 20;
+    // nextRecordStart maps this much past a boundary at first, doubling until it finds a record break
+    private static final int ALIGN_WINDOW = 64 << 10;
+
+    public record ImportReport(long rows, long badRows, long duplicates, Duration elapsed) {
+        public double rowsPerSecond() {
+            double seconds = elapsed.toNanos() / 1e9;
+            return seconds == 0 ? rows : rows / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d rows (%d bad, %d duplicates skipped) in %.2fs, %.0f rows/sec",
+                    rows, badRows, duplicates, elapsed.toNanos() / 1e9, rowsPerSecond());
+        }
+    }
+
+    private final ExpenseRepository target;
+    private final int parallelism;
+    private final int batchSize;
+    private final DuplicateIndex duplicates;
+    private final long chunkSize;
+
+    public CsvBulkImporter(ExpenseRepository target) {
+        this(target, null);
+    }
+
+    /** duplicates may be null to load every row. */
+    public CsvBulkImporter(ExpenseRepository target, DuplicateIndex duplicates) {
+        this(target, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE, duplicates);
+    }
+
+    public CsvBulkImporter(ExpenseRepository target, int parallelism, int batchSize) {
+        this(target, parallelism, batchSize, null);
+    }
+
+    public CsvBulkImporter(ExpenseRepository target, int parallelism, int batchSize, DuplicateIndex duplicates) {
+        this(target, parallelism, batchSize, duplicates, 0);
+    }
+
+    /** chunkSize 0 sizes chunks from the file size; tests pass tiny chunks to put boundaries everywhere. */
+    CsvBulkImporter(ExpenseRepository target, int parallelism, int batchSize, DuplicateIndex duplicates, long chunkSize) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be >= 1");
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be >= 1");
+        if (chunkSize < 0) throw new IllegalArgumentException("chunkSize must be >= 0");
+        this.target = target;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.duplicates = duplicates;
+        this.chunkSize = chunkSize;
+    }
+
+    public ImportReport importFile(Path csvPath) throws IOException {
+        long started = System.nanoTime();
+        LongAdder rows = new LongAdder();
+        LongAdder badRows = new LongAdder();
+        LongAdder duplicateRows = new LongAdder();
+        AtomicBoolean failed = new AtomicBoolean();
+        LongHashSet imported = new LongHashSet();
+        if (duplicates != null) duplicates.recover(target);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel ch = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > 0) {
+                long chunk = chunkSize > 0 ? chunkSize
+                        : Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / (parallelism * 4L)));
+                int n = (int) ((size + chunk - 1) / chunk);
+                long[] raw = new long[n + 1];
+                for (int i = 0; i < n; i++) raw[i] = i * chunk;
+                raw[n] = size;
+
+                // Pass 1: quote parity of each raw chunk
+                List<Callable<Boolean>> parityTasks = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    long from = raw[i], to = raw[i + 1];
+                    parityTasks.add(() -> oddQuotes(ch, from, to));
+                }
+                List<Boolean> odd = run(pool, parityTasks);
+
+                // Pass 2: move every boundary to the next record break outside quotes
+                List<Callable<Long>> alignTasks = new ArrayList<>(n);
+                boolean inQuotes = false;
+                for (int i = 0; i < n; i++) {
+                    long from = raw[i];
+                    boolean startsInQuotes = inQuotes;
+                    alignTasks.add(() -> from == 0 ? 0L : nextRecordStart(ch, from, size, startsInQuotes));
+                    inQuotes ^= odd.get(i);
+                }
+                List<Long> starts = run(pool, alignTasks);
+
+                // Pass 3: parse and load
+                List<Callable<Void>> parseTasks = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    long from = starts.get(i);
+                    long to = i + 1 < n ? starts.get(i + 1) : size;
+                    if (to <= from) continue;
+                    parseTasks.add(() -> parseChunk(ch, from, to, from == 0, rows, badRows, duplicateRows,
+                            imported, failed));
+                }
+                run(pool, parseTasks);
+            }
+        } finally {
+            pool.shutdown();
+            if (duplicates != null) duplicates.save();
+        }
+        return new ImportReport(rows.sum(), badRows.sum(), duplicateRows.sum(),
+                Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    private static <T> List<T> run(ForkJoinPool pool, List<Callable<T>> tasks) throws IOException {
+        List<T> out = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> f : pool.invokeAll(tasks)) out.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException u) throw u.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Import failed: " + cause.getMessage(), cause);
+        }
+        return out;
+    }
+
+    private static MappedByteBuffer map(FileChannel ch, long from, long to) throws IOException {
+        return ch.map(FileChannel.MapMode.READ_ONLY, from, Math.min(to - from, Integer.MAX_VALUE));
+    }
+
+    private static boolean oddQuotes(FileChannel ch, long from, long to) throws IOException {
+        MappedByteBuffer buf = map(ch, from, to);
+        int count = 0;
+        for (int i = 0, len = buf.limit(); i < len; i++) {
+            if (buf.get(i) == '"') count++;
+        }
+        return (count & 1) == 1;
+    }
+
+    /**
+     * The first record start at or after from. Records are short, so a small
+     * window is mapped first and only a long quoted field makes it grow.
+     */
+    private static long nextRecordStart(FileChannel ch, long from, long size, boolean inQuotes) throws IOException {
+        long at = from;
+        long window = ALIGN_WINDOW;
+        while (at < size) {
+            long end = Math.min(size, at + window);
+            MappedByteBuffer buf = map(ch, at, end);
+            for (int i = 0, len = buf.limit(); i < len; i++) {
+                byte b = buf.get(i);
+                if (b == '"') inQuotes = !inQuotes;
+                else if (b == '\n' && !inQuotes) return at + i + 1;
+            }
+            at += buf.limit();
+            window = Math.min(window * 2, Integer.MAX_VALUE);
+        }
+        return size;
+    }
+
+    /** Loads the rows of one chunk. */
+    private Void parseChunk(FileChannel ch, long from, long to, boolean first, LongAdder rows, LongAdder badRows,
+                            LongAdder duplicateRows, LongHashSet imported, AtomicBoolean failed) throws IOException {
+        MappedByteBuffer buf = map(ch, from, to);
+        RecordParser parser = new RecordParser(buf);
+        List<Expense> batch = new ArrayList<>(Math.min(batchSize, 4096));
+
+        boolean skipHeader = first;
+        while (parser.next()) {
+            if (skipHeader) {
+                skipHeader = false;
+                if (parser.fieldEquals(0, "id")) continue;
+            }
+            if (parser.isBlank()) continue;
+            Expense e = parser.toExpense();
+            if (e == null) {
+                badRows.increment();
+                continue;
+            }
+            batch.add(e);
+            if (batch.size() >= batchSize) {
+                if (!flush(batch, rows, duplicateRows, imported, failed)) break;
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) flush(batch, rows, duplicateRows, imported, failed);
+        return null;
+    }
+
+    /**
+     * Inserts batch, less the rows an earlier import recorded, with their
+     * fingerprints; false, without inserting, once another chunk's insert has
+     * failed. That chunk reports the failure, the others just stop.
+     */
+    private boolean flush(List<Expense> batch, LongAdder rows, LongAdder duplicateRows, LongHashSet imported,
+                          AtomicBoolean failed) {
+        // Repositories are not required to be thread-safe, and the check must see the batches before it
+        synchronized (target) {
+            if (failed.get()) return false;
+            try {
+                if (duplicates == null) {
+                    target.insertAll(batch);
+                    rows.add(batch.size());
+                    return true;
+                }
+                List<Expense> fresh = new ArrayList<>(batch.size());
+                long[] keys = new long[batch.size()];
+                for (Expense e : batch) {
+                    long fingerprint = DuplicateIndex.fingerprint(e);
+                    if (!imported.contains(fingerprint) && duplicates.contains(fingerprint)) {
+                        duplicateRows.increment();
+                        continue;
+                    }
+                    keys[fresh.size()] = fingerprint;
+                    fresh.add(e);
+                }
+                int n = fresh.size();
+                for (int i = 0; i < n; i++) imported.add(keys[i]);
+                if (n > 0) duplicates.insertAll(target, fresh, keys, n);
+                rows.add(n);
+                return true;
+            } catch (IOException e) {
+                failed.set(true);
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                failed.set(true);
+                throw e;
+            }
+        }
+    }
+
+    /** Byte-level RFC 4180 record splitter over one mapped chunk. */
+    private static final class RecordParser {
+        private final MappedByteBuffer buf;
+        private final int limit;
+        private int pos;
+
+        private byte[] bytes = new byte[256];
+        private int length;
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private int fields;
+
+        RecordParser(MappedByteBuffer buf) {
+            this.buf = buf;
+            this.limit = buf.limit();
+        }
+
+        boolean next() {
+            fields = 0;
+            length = 0;
+            if (pos >= limit) return false;
+
+            while (true) {
+                int start = length;
+                int c = read();
+                if (c == '"') {
+                    while (true) {
+                        c = read();
+                        if (c == -1) break;
+                        if (c == '"') {
+                            c = read();
+                            if (c != '"') break;
+                        }
+                        append((byte) c);
+                    }
+                }
+                while (c != -1 && c != ',' && c != '\n' && c != '\r') {
+                    append((byte) c);
+                    c = read();
+                }
+                endField(start);
+                if (c == ',') continue;
+                if (c == '\r' && pos < limit && buf.get(pos) == '\n') pos++;
+                return true;
+            }
+        }
+
+        boolean isBlank() {
+            if (fields > 1) return false;
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != ' ' && bytes[i] != '\t') return false;
+            }
+            return true;
+        }
+
+        boolean fieldEquals(int i, String ascii) {
+            if (i >= fields || ends[i] - starts[i] != ascii.length()) return false;
+            for (int k = 0; k < ascii.length(); k++) {
+                if (bytes[starts[i] + k] != ascii.charAt(k)) return false;
+            }
+            return true;
+        }
+
+        /** Builds an Expense from the current record, or null if it is malformed. */
+        Expense toExpense() {
+            if (fields < 5) return null;
+            try {
+                BigDecimal amount = FieldCodec.parseAmount(bytes, starts[2], ends[2] - starts[2]);
+                // rejects fractions of a cent before they reach the target
+                if (amount.scale() > Money.SCALE) Money.toCents(amount);
+                return new Expense(field(0), FieldCodec.parseDate(bytes, starts[1], ends[1] - starts[1]), amount,
+                        FieldCodec.parseCategory(bytes, starts[3], ends[3] - starts[3]), field(4));
+            } catch (RuntimeException ex) {
+                return null;
+            }
+        }
+
+        private String field(int i) {
+            return new String(bytes, starts[i], ends[i] - starts[i], StandardCharsets.UTF_8);
+        }
+
+        private int read() {
+            return pos < limit ? buf.get(pos++) & 0xFF : -1;
+        }
+
+        private void append(byte b) {
+            if (length == bytes.length) bytes = Arrays.copyOf(bytes, length * 2);
+            bytes[length++] = b;
+        }
+
+        private void endField(int start) {
+            if (fields == starts.length) {
+                starts = Arrays.copyOf(starts, fields * 2);
+                ends = Arrays.copyOf(ends, fields * 2);
+            }
+            starts[fields] = start;
+            ends[fields] = length;
+            fields++;
+        }
+    }
+}
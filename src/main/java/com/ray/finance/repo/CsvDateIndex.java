@@ -0,0 +1,284 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.FieldCodec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Sidecar date index for a CSV ledger (expenses.csv.idx): the byte offset of
+ * every row, sorted by date. Date-bounded reads binary-search it and seek to
+ * just the matching rows instead of parsing the whole file.
+ *
+ * The index records the size, mtime and file key of the CSV it was built
+ * from. Any write changes at least one of them (rewrites replace the file).
+ * When the same file has only grown, the appended bytes are indexed and
+ * merged in; otherwise a stale index is rebuilt with one byte-level scan on
+ * the next read. A file key can come back after a rewrite, so growth only
+ * counts as an append if the mtime did not go back and the last TAIL_BYTES
+ * indexed are unchanged.
+ *
+ * A row whose date does not parse fails the build with the same exception
+ * the row reader throws for it, rather than being left out of range reads.
+ */
+final class CsvDateIndex {
+
+    /** Rows of one date, in file order; return false to stop the scan. */
+    @FunctionalInterface
+    interface DayVisitor {
+        boolean visit(List<Expense> rows) throws IOException;
+    }
+
+    private static final int MAGIC = 0x45584958; // "EXIX"
+    private static final int VERSION = 1;
+    // Entries pack (epochDay + DAY_BIAS) into the top 24 bits and the offset into the low 40
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final long DAY_BIAS = 1L << 23;
+    private static final long MIN_DAY = -DAY_BIAS;
+    private static final long MAX_DAY = DAY_BIAS - 1;
+    private static final int TAIL_BYTES = 4096;
+
+    private record Fingerprint(long size, long mtime, long fileKey) {}
+
+    private final Path csvPath;
+    private final Path indexPath;
+    private Fingerprint built;
+    private long builtTail; // tailChecksum(built.size())
+    private long[] entries;
+
+    CsvDateIndex(Path csvPath) {
+        this.csvPath = csvPath;
+        this.indexPath = csvPath.resolveSibling(csvPath.getFileName() + ".idx");
+    }
+
+    /** Visits rows with from <= date <= to (null is open), newest date first. */
+    void scan(LocalDate from, LocalDate to, DayVisitor visitor) throws IOException {
+        long fromDay = from == null ? MIN_DAY : Math.max(MIN_DAY, from.toEpochDay());
+        long toDay = to == null ? MAX_DAY : Math.min(MAX_DAY, to.toEpochDay());
+        if (fromDay > toDay) return;
+
+        // Opened before the freshness check, so the rows read are from the file the index describes
+        try (FileChannel ch = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long[] index = entries();
+            RowReader reader = new RowReader(ch);
+            int i = (toDay == MAX_DAY ? index.length : lowerBound(index, pack(toDay + 1, 0))) - 1;
+            while (i >= 0 && day(index[i]) >= fromDay) {
+                long day = day(index[i]);
+                int first = i;
+                while (first > 0 && day(index[first - 1]) == day) first--;
+
+                List<Expense> rows = new ArrayList<>(i - first + 1);
+                for (int k = first; k <= i; k++) {
+                    Expense e = reader.readAt(index[k] & OFFSET_MASK);
+                    if (e != null) rows.add(e);
+                }
+                if (!rows.isEmpty() && !visitor.visit(rows)) return;
+                i = first - 1;
+            }
+        }
+    }
+
+    private synchronized long[] entries() throws IOException {
+        Fingerprint current = fingerprint();
+        if (entries != null && current.equals(built)) return entries;
+
+        long[] loaded;
+        if (entries != null && current.fileKey() != 0 && current.fileKey() == built.fileKey()
+                && current.size() > built.size() && current.mtime() >= built.mtime()
+                && tailChecksum(built.size()) == builtTail) {
+            // Only appended to since: index the new bytes instead of the whole file
+            loaded = merge(entries, build(built.size(), current.size()));
+        } else {
+            loaded = load(current);
+        }
+        if (loaded == null) {
+            loaded = build(0, current.size());
+            try {
+                save(current, loaded);
+            } catch (IOException ignored) {
+                // A read-only directory only costs the next process a rebuild
+            }
+        }
+        entries = loaded;
+        built = current;
+        builtTail = tailChecksum(current.size());
+        return entries;
+    }
+
+    /** CRC32 of the TAIL_BYTES bytes before size, or fewer if the file is shorter. */
+    private long tailChecksum(long size) throws IOException {
+        int length = (int) Math.min(size, TAIL_BYTES);
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        try (FileChannel ch = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, size - length + buf.position()) < 0) break; // shrank since
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.flip());
+        return crc.getValue();
+    }
+
+    private Fingerprint fingerprint() throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(csvPath, BasicFileAttributes.class);
+        return new Fingerprint(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                Objects.hashCode(attrs.fileKey()));
+    }
+
+    private long[] load(Fingerprint expected) throws IOException {
+        if (!Files.exists(indexPath)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            Fingerprint stored = new Fingerprint(in.readLong(), in.readLong(), in.readLong());
+            if (!stored.equals(expected)) return null;
+            long[] loaded = new long[in.readInt()];
+            for (int i = 0; i < loaded.length; i++) loaded[i] = in.readLong();
+            return loaded;
+        } catch (EOFException truncated) {
+            return null;
+        }
+    }
+
+    private void save(Fingerprint fingerprint, long[] index) throws IOException {
+        Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint.size());
+            out.writeLong(fingerprint.mtime());
+            out.writeLong(fingerprint.fileKey());
+            out.writeInt(index.length);
+            for (long entry : index) out.writeLong(entry);
+        }
+        CsvExpenseRepository.commitTemp(tmp, indexPath);
+    }
+
+    /**
+     * One pass over bytes start (a record boundary) to size: quotes are toggled
+     * rather than parsed, which is enough to find record boundaries and the
+     * date field.
+     */
+    private long[] build(long start, long size) throws IOException {
+        long[] out = new long[1024];
+        int count = 0;
+        byte[] date = new byte[16];
+        try (FileChannel ch = FileChannel.open(csvPath, StandardOpenOption.READ);
+             InputStream in = new BufferedInputStream(Channels.newInputStream(ch.position(start)), 1 << 16)) {
+            long recordStart = start;
+            int field = 0;
+            int dateLength = 0;
+            boolean quoted = false;
+            boolean header = start == 0;
+            for (long pos = start; pos <= size; pos++) {
+                int b = pos < size ? in.read() : '\n';
+                if (b == -1) { // shrank while we read; end the last record here
+                    b = '\n';
+                    pos = size;
+                }
+                if (b == '"') {
+                    quoted = !quoted;
+                    continue;
+                }
+                if (quoted) {
+                    if (field == 1 && dateLength < date.length) date[dateLength++] = (byte) b;
+                    continue;
+                }
+                if (b == ',') {
+                    field++;
+                } else if (b == '\n') {
+                    if (!header && field >= 4) {
+                        long day = FieldCodec.parseEpochDay(date, 0, dateLength);
+                        if (day < MIN_DAY || day > MAX_DAY) {
+                            throw new IOException("Date outside the indexable range in the row at byte "
+                                    + recordStart + " of " + csvPath);
+                        }
+                        if (count == out.length) out = Arrays.copyOf(out, count * 2);
+                        out[count++] = pack(day, recordStart);
+                    }
+                    if (field > 0) header = false;
+                    recordStart = pos + 1;
+                    field = 0;
+                    dateLength = 0;
+                } else if (field == 1 && b != '\r' && dateLength < date.length) {
+                    date[dateLength++] = (byte) b;
+                }
+            }
+        }
+        CsvExpenseRepository.BYTES_READ.add(size - start);
+        long[] index = Arrays.copyOf(out, count);
+        Arrays.sort(index);
+        return index;
+    }
+
+    private static long[] merge(long[] a, long[] b) {
+        long[] out = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < out.length; k++) {
+            out[k] = j == b.length || (i < a.length && a[i] <= b[j]) ? a[i++] : b[j++];
+        }
+        return out;
+    }
+
+    /**
+     * Reads rows at byte offsets of one channel. A row that starts where the
+     * previous one ended is read on from the same reader; only a jump seeks
+     * and starts a new one.
+     */
+    static final class RowReader {
+        private final FileChannel ch;
+        private CsvTokenizer tokenizer;
+        private long base;
+
+        RowReader(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        Expense readAt(long offset) throws IOException {
+            if (tokenizer == null || base + tokenizer.bytesRead() != offset) {
+                ch.position(offset);
+                // Not closed: that would close the channel, which the caller still needs
+                tokenizer = new CsvTokenizer(Channels.newReader(ch, StandardCharsets.UTF_8), 512);
+                base = offset;
+            }
+            if (!tokenizer.next() || tokenizer.fieldCount() < 5) return null;
+            return CsvExpenseRepository.toExpense(tokenizer, 0);
+        }
+    }
+
+    private static long pack(long day, long offset) {
+        return ((day + DAY_BIAS) << OFFSET_BITS) | offset;
+    }
+
+    private static long day(long entry) {
+        return (entry >>> OFFSET_BITS) - DAY_BIAS;
+    }
+
+    /** First position whose entry is >= key. */
+    private static int lowerBound(long[] index, long key) {
+        int lo = 0;
+        int hi = index.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -1,65 +1,348 @@
 package com.ray.finance.repo;
 
+import com.ray.finance.metrics.Counter;
+import com.ray.finance.metrics.MetricsRegistry;
 import com.ray.finance.model.Category;
 import com.ray.finance.model.Expense;
+import com.ray.finance.model.FieldCodec;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Reads and writes stream row by row, so files larger than the heap can be
+ * scanned, summed or rewritten at constant memory. Only findAll materializes
+ * the whole ledger.
+ *
+ * Writes are serialized on the instance; reads need no lock because rewrites
+ * replace the file atomically. Date-bounded queries go through a sidecar
+ * CsvDateIndex and only parse the rows in range; note search goes through an
+ * in-memory CsvSearchIndex.
+ *
+ * Bytes parsed and written by every CSV ledger in the process are counted
+ * as csv.bytesRead and csv.bytesWritten in the global MetricsRegistry.
+ */
 public final class CsvExpenseRepository implements ExpenseRepository {
+    static final String HEADER = "id,date,amount,category,note";
+    static final Counter BYTES_READ = MetricsRegistry.global().counter("csv.bytesRead");
+    static final Counter BYTES_WRITTEN = MetricsRegistry.global().counter("csv.bytesWritten");
+    private static final ThreadLocal<char[]> ROW_BUFFER = ThreadLocal.withInitial(() -> new char[64]);
+
+    /** Writes the content of a replacement file; returning false abandons it. */
+    @FunctionalInterface
+    interface FileBody {
+        boolean write(BufferedWriter writer) throws IOException;
+    }
+
     private final Path csvPath;
+    private final CsvDateIndex index;
+    private final CsvSearchIndex searchIndex;
 
     public CsvExpenseRepository(Path csvPath) {
         this.csvPath = csvPath;
+        this.index = new CsvDateIndex(csvPath);
+        this.searchIndex = new CsvSearchIndex(csvPath);
     }
 
     @Override
     public List<Expense> findAll() throws IOException {
+        List<Expense> expenses = new ArrayList<>();
+        forEach(expenses::add);
+        return expenses;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Expense> action) throws IOException {
         ensureFileExistsWithHeader();
 
-        List<Expense> expenses = new ArrayList<>();
-        try (BufferedReader reader = Files.newBufferedReader(csvPath)) {
-            String line;
-            boolean isFirst = true;
-            while ((line = reader.readLine()) != null) {
-                if (isFirst) { // header
-                    isFirst = false;
-                    continue;
-                }
-                if (line.trim().isEmpty()) continue;
+        try (Reader reader = Files.newBufferedReader(csvPath)) {
+            CsvTokenizer tokenizer = new CsvTokenizer(reader);
+            tokenizer.next(); // header
+            Expense e;
+            while ((e = readExpense(tokenizer)) != null) action.accept(e);
+            BYTES_READ.add(tokenizer.bytesRead());
+        }
+    }
 
-                // id,date,amount,category,note
-                String[] parts = splitCsvLine(line);
-                if (parts.length < 5) continue;
+    @Override
+    public List<Expense> findByDateRange(LocalDate from, LocalDate to) throws IOException {
+        ensureFileExistsWithHeader();
+
+        List<Expense> out = new ArrayList<>();
+        index.scan(from, to, rows -> {
+            out.addAll(rows);
+            return true;
+        });
+        return out;
+    }
+
+    /** Rows with from <= date <= to (null is open) through the date index, one date at a time, newest first. */
+    void scan(LocalDate from, LocalDate to, CsvDateIndex.DayVisitor visitor) throws IOException {
+        ensureFileExistsWithHeader();
+        index.scan(from, to, visitor);
+    }
+
+    /** Walks the date index newest first and stops as soon as the page is full. */
+    @Override
+    public List<Expense> query(ExpenseQuery query) throws IOException {
+        ensureFileExistsWithHeader();
+
+        List<Expense> out = new ArrayList<>();
+        if (query.limit() == 0) return out;
+        LocalDate to = query.filter().to();
+        if (query.after() != null && (to == null || query.after().date().isBefore(to))) to = query.after().date();
+        index.scan(query.filter().from(), to, rows -> {
+            rows.sort(ExpenseQuery.ORDER);
+            for (Expense e : rows) {
+                if (!query.matches(e)) continue;
+                out.add(e);
+                if (out.size() == query.limit()) return false;
+            }
+            return true;
+        });
+        return out;
+    }
 
-                String id = parts[0];
-                LocalDate date = LocalDate.parse(parts[1]);
-                BigDecimal amount = new BigDecimal(parts[2]);
-                Category category = Category.fromString(parts[3]);
-                String note = parts[4];
+    @Override
+    public int count(ExpenseFilter filter) throws IOException {
+        if (filter.from() == null && filter.to() == null) return ExpenseRepository.super.count(filter);
+        ensureFileExistsWithHeader();
 
-                expenses.add(new Expense(id, date, amount, category, note));
+        int[] n = {0};
+        index.scan(filter.from(), filter.to(), rows -> {
+            for (Expense e : rows) {
+                if (filter.matches(e)) n[0]++;
             }
+            return true;
+        });
+        return n[0];
+    }
+
+    @Override
+    public List<Expense> search(String text, int offset, int limit) throws IOException {
+        ensureFileExistsWithHeader();
+        return searchIndex.search(text, offset, limit);
+    }
+
+    @Override
+    public BigDecimal sumByMonth(YearMonth month) throws IOException {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Expense e : findByDateRange(month.atDay(1), month.atEndOfMonth())) total = total.add(e.getAmount());
+        return total;
+    }
+
+    @Override
+    public Map<Category, BigDecimal> sumByMonthAndCategory(YearMonth month) throws IOException {
+        Map<Category, BigDecimal> map = new EnumMap<>(Category.class);
+        for (Expense e : findByDateRange(month.atDay(1), month.atEndOfMonth())) {
+            map.merge(e.getCategory(), e.getAmount(), BigDecimal::add);
         }
-        return expenses;
+        return map;
+    }
+
+    /**
+     * Lazily parsed rows; close the stream (try-with-resources) to release the file.
+     * I/O errors during iteration surface as UncheckedIOException.
+     */
+    public Stream<Expense> stream() throws IOException {
+        ensureFileExistsWithHeader();
+
+        Reader reader = Files.newBufferedReader(csvPath);
+        CsvTokenizer tokenizer = new CsvTokenizer(reader);
+        Iterator<Expense> it = new Iterator<>() {
+            private boolean started;
+            private Expense next;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) return true;
+                try {
+                    if (!started) {
+                        started = true;
+                        tokenizer.next(); // header
+                    }
+                    next = readExpense(tokenizer);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return next != null;
+            }
+
+            @Override
+            public Expense next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Expense e = next;
+                next = null;
+                return e;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
     }
 
     @Override
-    public void saveAll(List<Expense> expenses) throws IOException {
+    public synchronized void saveAll(List<Expense> expenses) throws IOException {
         ensureFileExistsWithHeader();
 
-        try (BufferedWriter writer = Files.newBufferedWriter(csvPath)) {
-            writer.write("id,date,amount,category,note");
+        // A crash mid-write leaves the old ledger in place rather than a truncated one
+        writeAtomically(csvPath, writer -> {
+            writer.write(HEADER);
             writer.newLine();
             for (Expense e : expenses) {
-                writer.write(toCsvLine(e));
+                writeRow(writer, e);
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public void insert(Expense expense) throws IOException {
+        insertAll(List.of(expense));
+    }
+
+    @Override
+    public synchronized void insertAll(List<Expense> expenses) throws IOException {
+        ensureFileExistsWithHeader();
+        boolean needsNewline = !endsWithNewline();
+        long sizeBefore = BYTES_WRITTEN.isEnabled() ? Files.size(csvPath) : 0;
+
+        // O(1) in the ledger size: only the new rows are written
+        try (BufferedWriter writer = Files.newBufferedWriter(csvPath, StandardOpenOption.APPEND)) {
+            if (needsNewline) writer.newLine();
+            for (Expense e : expenses) {
+                writeRow(writer, e);
+            }
+        }
+        if (BYTES_WRITTEN.isEnabled()) BYTES_WRITTEN.add(Files.size(csvPath) - sizeBefore);
+    }
+
+    @Override
+    public synchronized boolean update(Expense expense) throws IOException {
+        // CSV rows are variable width, so changing one means rewriting the file
+        return rewrite(e -> e.getId().equals(expense.getId()) ? expense : e);
+    }
+
+    @Override
+    public synchronized boolean delete(String id) throws IOException {
+        return rewrite(e -> e.getId().equals(id) ? null : e);
+    }
+
+    /**
+     * Streams the file through a temp file, replacing each row with change(row)
+     * (null drops it). The original is only replaced if some row changed.
+     */
+    private boolean rewrite(UnaryOperator<Expense> change) throws IOException {
+        ensureFileExistsWithHeader();
+
+        return writeAtomically(csvPath, writer -> {
+            boolean changed = false;
+            try (Reader reader = Files.newBufferedReader(csvPath)) {
+                CsvTokenizer tokenizer = new CsvTokenizer(reader);
+                tokenizer.next(); // header
+                writer.write(HEADER);
                 writer.newLine();
+
+                Expense e;
+                while ((e = readExpense(tokenizer)) != null) {
+                    Expense out = change.apply(e);
+                    if (out != e) changed = true;
+                    if (out != null) writeRow(writer, out);
+                }
+                BYTES_READ.add(tokenizer.bytesRead());
             }
+            return changed;
+        });
+    }
+
+    /**
+     * Replaces target with what body writes: the content goes to a temp file
+     * that is fsynced and then atomically moved over target, so readers and
+     * crashes see either the old file or the new one.
+     */
+    static boolean writeAtomically(Path target, FileBody body) throws IOException {
+        Path tmp = writeTemp(target, body);
+        if (tmp == null) return false;
+        commitTemp(tmp, target);
+        return true;
+    }
+
+    /** First half of writeAtomically: the fsynced temp file, or null if body declined. */
+    static Path writeTemp(Path target, FileBody body) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        boolean keep;
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            BufferedWriter writer = new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8));
+            keep = body.write(writer);
+            writer.flush();
+            if (keep) {
+                ch.force(true);
+                BYTES_WRITTEN.add(ch.size());
+            }
+        }
+        if (!keep) {
+            Files.delete(tmp);
+            return null;
+        }
+        return tmp;
+    }
+
+    static void commitTemp(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.toAbsolutePath().getParent());
+    }
+
+    /** Makes a rename durable. Not every platform can open a directory, hence best effort. */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /** File modification time and size; changes with every write, ours included. */
+    @Override
+    public long dataVersion() throws IOException {
+        if (!Files.exists(csvPath)) return 0;
+        BasicFileAttributes attrs = Files.readAttributes(csvPath, BasicFileAttributes.class);
+        return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS) * 31 + attrs.size();
+    }
+
+    private boolean endsWithNewline() throws IOException {
+        try (FileChannel ch = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size == 0) return true;
+            ByteBuffer last = ByteBuffer.allocate(1);
+            ch.read(last, size - 1);
+            return last.get(0) == '\n';
         }
     }
 
@@ -67,53 +350,85 @@ public final class CsvExpenseRepository implements ExpenseRepository {
         if (Files.exists(csvPath)) return;
         Files.createDirectories(csvPath.getParent());
         try (BufferedWriter writer = Files.newBufferedWriter(csvPath)) {
-            writer.write("id,date,amount,category,note");
+            writer.write(HEADER);
             writer.newLine();
         }
     }
 
-    private String toCsvLine(Expense e) {
-        // escape quotes in note and wrap note in quotes
-        String safeNote = e.getNote().replace("\"", "\"\"");
-        return String.join(",",
-                e.getId(),
-                e.getDate().toString(),
-                e.getAmount().toPlainString(),
-                e.getCategory().name(),
-                "\"" + safeNote + "\""
-        );
-    }
-
-    private String[] splitCsvLine(String line) {
-        // Simple CSV split that handles the last field being quoted (note)
-        // Expected: 4 commas total.
-        // id,date,amount,category,"note..."
-        List<String> out = new ArrayList<>(5);
-
-        int firstQuote = line.indexOf('"');
-        if (firstQuote == -1) {
-            // no quotes -> split normally
-            String[] parts = line.split(",", -1);
-            for (String p : parts) out.add(p);
-            while (out.size() < 5) out.add("");
-            return out.toArray(new String[0]);
+    /** Next well-formed row, or null at end of input. Blank and short rows are skipped. */
+    static Expense readExpense(CsvTokenizer tokenizer) throws IOException {
+        while (tokenizer.next()) {
+            if (tokenizer.isBlankRecord()) continue;
+
+            // id,date,amount,category,note
+            if (tokenizer.fieldCount() < 5) continue;
+
+            return toExpense(tokenizer, 0);
         }
+        return null;
+    }
 
-        String before = line.substring(0, firstQuote);
-        String quoted = line.substring(firstQuote);
+    /** The expense in the five fields starting at first. */
+    static Expense toExpense(CsvTokenizer tokenizer, int first) {
+        String id = tokenizer.field(first);
+        LocalDate date = tokenizer.date(first + 1);
+        BigDecimal amount = tokenizer.amount(first + 2);
+        Category category = tokenizer.category(first + 3);
+        String note = tokenizer.field(first + 4);
 
-        String[] firstParts = before.split(",", -1);
-        for (String p : firstParts) out.add(p);
+        return new Expense(id, date, amount, category, note);
+    }
 
-        // remove surrounding quotes if present
-        String note = quoted;
-        if (note.startsWith("\"") && note.endsWith("\"") && note.length() >= 2) {
-            note = note.substring(1, note.length() - 1);
+    static void writeRow(Writer writer, Expense e) throws IOException {
+        writeField(writer, e.getId(), false);
+        // ,date,amount,CATEGORY, in one write, formatted into a per-thread buffer
+        char[] buf = ROW_BUFFER.get();
+        int n = 0;
+        buf[n++] = ',';
+        int end = FieldCodec.formatDate(e.getDate(), buf, n);
+        if (end < 0) {
+            writer.write(buf, 0, n);
+            writer.write(e.getDate().toString());
+            n = 0;
+        } else {
+            n = end;
+        }
+        buf[n++] = ',';
+        end = FieldCodec.formatAmount(e.getAmount(), buf, n);
+        if (end < 0) {
+            writer.write(buf, 0, n);
+            writer.write(e.getAmount().toPlainString());
+            n = 0;
+        } else {
+            n = end;
         }
-        note = note.replace("\"\"", "\""); // unescape
-        out.add(note);
+        buf[n++] = ',';
+        String category = e.getCategory().name();
+        category.getChars(0, category.length(), buf, n);
+        n += category.length();
+        buf[n++] = ',';
+        writer.write(buf, 0, n);
+        // note is always quoted, as in files written by earlier versions
+        writeField(writer, e.getNote(), true);
+        writer.write(System.lineSeparator());
+    }
 
-        while (out.size() < 5) out.add("");
-        return out.toArray(new String[0]);
+    private static void writeField(Writer writer, String value, boolean alwaysQuote) throws IOException {
+        boolean quote = alwaysQuote;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') writer.write('"');
+            writer.write(c);
+        }
+        writer.write('"');
     }
 }
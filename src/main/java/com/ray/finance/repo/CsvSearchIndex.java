@@ -0,0 +1,75 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Expense;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Note search for a CSV ledger: a NoteIndex whose refs are the byte offsets of
+ * the rows, so a page of hits is read back with a few seeks.
+ *
+ * The index lives in memory and follows the file. Growth of the same file
+ * (appends, ours or another process's) is indexed incrementally from where
+ * the last pass stopped; a replaced or shrunk file is indexed from scratch.
+ */
+final class CsvSearchIndex {
+
+    private final Path csvPath;
+    private NoteIndex notes;
+    private Object fileKey;
+    private long indexedSize;
+    private long indexedMtime;
+
+    CsvSearchIndex(Path csvPath) {
+        this.csvPath = csvPath;
+    }
+
+    synchronized List<Expense> search(String text, int offset, int limit) throws IOException {
+        try (FileChannel ch = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            catchUp(ch);
+            CsvDateIndex.RowReader reader = new CsvDateIndex.RowReader(ch);
+            List<Expense> out = new ArrayList<>();
+            for (NoteIndex.Hit hit : notes.search(text, offset, limit)) {
+                Expense e = reader.readAt(hit.ref());
+                if (e != null) out.add(e);
+            }
+            return out;
+        }
+    }
+
+    private void catchUp(FileChannel ch) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(csvPath, BasicFileAttributes.class);
+        long mtime = attrs.lastModifiedTime().toMillis();
+        boolean sameFile = notes != null && attrs.fileKey() != null && Objects.equals(attrs.fileKey(), fileKey);
+        if (sameFile && attrs.size() == indexedSize) return;
+        // Without a file key an append cannot be told from a rewrite, so only an untouched file is reused
+        if (notes != null && attrs.fileKey() == null && attrs.size() == indexedSize && mtime == indexedMtime) return;
+
+        if (!sameFile || attrs.size() < indexedSize) {
+            notes = new NoteIndex();
+            indexedSize = 0;
+        }
+        ch.position(indexedSize);
+        // Not closed: that would close the channel, which the caller still needs
+        CsvTokenizer tokenizer = new CsvTokenizer(Channels.newReader(ch, StandardCharsets.UTF_8));
+        if (indexedSize == 0) tokenizer.next(); // header
+        while (tokenizer.next()) {
+            if (tokenizer.isBlankRecord() || tokenizer.fieldCount() < 5) continue;
+            notes.add(indexedSize + tokenizer.recordOffset(), tokenizer.field(4));
+        }
+        indexedSize += tokenizer.bytesRead();
+        CsvExpenseRepository.BYTES_READ.add(tokenizer.bytesRead());
+        indexedMtime = mtime;
+        fileKey = attrs.fileKey();
+    }
+}
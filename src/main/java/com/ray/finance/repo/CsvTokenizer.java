@@ -0,0 +1,161 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.FieldCodec;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Single-pass RFC 4180 tokenizer. Quoted fields may contain commas, doubled
+ * quotes and line breaks. Field contents of the current record live in one
+ * reusable char buffer, so memory stays bounded by the longest record rather
+ * than the file size, and no strings are created until a field is asked for.
+ * Date, amount and category fields are decoded in place by FieldCodec.
+ *
+ * It also counts the UTF-8 bytes consumed, so callers reading a UTF-8 file
+ * can note where each record starts and seek back to it later.
+ */
+final class CsvTokenizer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader in;
+    private final char[] buf;
+    private int pos;
+    private int limit;
+
+    private char[] chars = new char[256];
+    private int length;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int fields;
+    private long bytes;
+    private long recordOffset;
+
+    CsvTokenizer(Reader in) {
+        this(in, BUFFER_SIZE);
+    }
+
+    /** A small buffer suits reading a single record at a known offset. */
+    CsvTokenizer(Reader in, int bufferSize) {
+        this.in = in;
+        this.buf = new char[bufferSize];
+    }
+
+    /** Advances to the next record; returns false at end of input. */
+    boolean next() throws IOException {
+        fields = 0;
+        length = 0;
+        recordOffset = bytes;
+        int c = read();
+        if (c == -1) return false;
+
+        while (true) {
+            int start = length;
+            if (c == '"') {
+                while (true) {
+                    c = read();
+                    if (c == -1) break;
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') break; // closing quote
+                    }
+                    append((char) c);
+                }
+                // Lenient: keep anything between the closing quote and the delimiter
+                while (c != -1 && c != ',' && c != '\n' && c != '\r') {
+                    append((char) c);
+                    c = read();
+                }
+            } else {
+                while (c != -1 && c != ',' && c != '\n' && c != '\r') {
+                    append((char) c);
+                    c = read();
+                }
+            }
+            endField(start);
+
+            if (c == ',') {
+                c = read();
+                if (c == -1 || c == '\n' || c == '\r') {
+                    endField(length); // trailing empty field
+                } else {
+                    continue;
+                }
+            }
+            if (c == '\r' && peek() == '\n') read();
+            return true;
+        }
+    }
+
+    int fieldCount() { return fields; }
+
+    /** UTF-8 byte offset of the current record, relative to where reading started. */
+    long recordOffset() { return recordOffset; }
+
+    /** UTF-8 bytes consumed so far, i.e. the end of the current record. */
+    long bytesRead() { return bytes; }
+
+    String field(int i) {
+        return new String(chars, starts[i], ends[i] - starts[i]);
+    }
+
+    LocalDate date(int i) {
+        return FieldCodec.parseDate(chars, starts[i], ends[i] - starts[i]);
+    }
+
+    BigDecimal amount(int i) {
+        return FieldCodec.parseAmount(chars, starts[i], ends[i] - starts[i]);
+    }
+
+    Category category(int i) {
+        return FieldCodec.parseCategory(chars, starts[i], ends[i] - starts[i]);
+    }
+
+    boolean isBlankRecord() {
+        if (fields > 1) return false;
+        for (int i = 0; i < length; i++) {
+            if (!Character.isWhitespace(chars[i])) return false;
+        }
+        return true;
+    }
+
+    private void append(char c) {
+        if (length == chars.length) chars = Arrays.copyOf(chars, length * 2);
+        chars[length++] = c;
+    }
+
+    private void endField(int start) {
+        if (fields == starts.length) {
+            starts = Arrays.copyOf(starts, fields * 2);
+            ends = Arrays.copyOf(ends, fields * 2);
+        }
+        starts[fields] = start;
+        ends[fields] = length;
+        fields++;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        char c = buf[pos++];
+        // a surrogate pair is 4 bytes, counted as 2 + 2
+        bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos];
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) return false;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+}
@@ -0,0 +1,176 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.Money;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fingerprints of the rows imported into a ledger, so that importing an
+ * overlapping bank statement again skips the rows that are already there.
+ *
+ * A fingerprint is a 64-bit hash of the date, the amount in cents, the
+ * category and the note with case and runs of whitespace folded. Lookups go
+ * to a Bloom filter first, which answers most new rows without touching the
+ * exact store; only its hits, real duplicates and about 1% of new rows, are
+ * confirmed there. The exact store is a sorted sidecar file for file-based
+ * ledgers (forLedger) and a table for SQLite (SqliteExpenseRepository.duplicateIndex).
+ * The filter is saved next to the ledger and rebuilt from the exact store
+ * whenever the two disagree.
+ *
+ * Importers record fingerprints batch by batch with insertAll, together with
+ * the rows: SQLite writes both in one transaction, and the sidecar file
+ * journals the keys before the rows go in, so recover can settle a batch
+ * that a crash interrupted.
+ *
+ * Only imports record fingerprints. Expenses added by hand are not
+ * fingerprinted, and deleting an imported row does not forget it.
+ */
+public final class DuplicateIndex {
+
+    private static final String FINGERPRINTS_SUFFIX = ".fingerprints";
+    private static final String BLOOM_SUFFIX = ".bloom";
+    private static final long MIN_CAPACITY = 1 << 16;
+
+    private final FingerprintStore store;
+    private final Path bloomPath;
+    private volatile BloomFilter bloom;
+
+    DuplicateIndex(FingerprintStore store, Path bloomPath) throws IOException {
+        this.store = store;
+        this.bloomPath = bloomPath;
+        BloomFilter saved = BloomFilter.readFrom(bloomPath);
+        long size = store.size();
+        if (saved != null && saved.entries() == size) {
+            this.bloom = saved;
+        } else {
+            this.bloom = rebuild(size);
+            if (size > 0) bloom.writeTo(bloomPath);
+        }
+    }
+
+    /** Index kept in sidecar files next to a CSV or other file-based ledger. */
+    public static DuplicateIndex forLedger(Path ledger) throws IOException {
+        String name = ledger.getFileName().toString();
+        return new DuplicateIndex(new FingerprintFile(ledger.resolveSibling(name + FINGERPRINTS_SUFFIX)),
+                ledger.resolveSibling(name + BLOOM_SUFFIX));
+    }
+
+    static Path bloomPathFor(Path ledger) {
+        return ledger.resolveSibling(ledger.getFileName() + BLOOM_SUFFIX);
+    }
+
+    public static long fingerprint(Expense e) {
+        long h = fmix(e.getDate().toEpochDay() * 0x9E3779B97F4A7C15L);
+        h = fmix(h ^ Money.toCents(e.getAmount()));
+        h = fmix(h ^ e.getCategory().ordinal());
+        // FNV-1a over the note, lower-cased, with whitespace runs as one space and none at the ends
+        String note = e.getNote();
+        boolean started = false, space = false;
+        for (int i = 0; i < note.length(); i++) {
+            char c = note.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = started;
+                continue;
+            }
+            started = true;
+            if (space) {
+                h = (h ^ ' ') * 0x100000001B3L;
+                space = false;
+            }
+            h = (h ^ Character.toLowerCase(c)) * 0x100000001B3L;
+        }
+        return fmix(h);
+    }
+
+    /** True if a row with this fingerprint was recorded before. */
+    public boolean contains(long fingerprint) throws IOException {
+        return bloom.mightContain(fingerprint) && store.contains(fingerprint);
+    }
+
+    /**
+     * Records keys[0..n), which may be unsorted and repeat, and saves the
+     * filter. The array is sorted and overwritten. Not to be called
+     * concurrently with anything else.
+     */
+    public void addAll(long[] keys, int n) throws IOException {
+        Arrays.parallelSort(keys, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if ((i == 0 || keys[i] != keys[i - 1]) && !contains(keys[i])) keys[distinct++] = keys[i];
+        }
+        if (distinct == 0) return;
+        store.addAll(keys, distinct);
+        long size = store.size();
+        if (size > bloom.capacity()) {
+            bloom = rebuild(size);
+        } else {
+            for (int i = 0; i < distinct; i++) bloom.add(keys[i]);
+        }
+        bloom.writeTo(bloomPath);
+    }
+
+    /**
+     * Inserts rows into target and records keys[0..n), their fingerprints,
+     * as one unit; see FingerprintStore.insertAll. The filter is updated but
+     * not saved (see save). The array is sorted and overwritten. Not to be
+     * called concurrently with anything else.
+     */
+    public void insertAll(ExpenseRepository target, List<Expense> rows, long[] keys, int n) throws IOException {
+        recover(target);
+        Arrays.sort(keys, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if ((i == 0 || keys[i] != keys[i - 1]) && !contains(keys[i])) keys[distinct++] = keys[i];
+        }
+        store.insertAll(target, rows, keys, distinct);
+        long size = store.size();
+        if (size > bloom.capacity()) {
+            bloom = rebuild(size);
+        } else {
+            for (int i = 0; i < distinct; i++) bloom.add(keys[i]);
+        }
+    }
+
+    /**
+     * Settles the batch of an import that stopped between recording its
+     * fingerprints and its rows: the fingerprints of rows that reached target
+     * are kept, the others dropped. Importers call this before their first lookup.
+     */
+    public void recover(ExpenseRepository target) throws IOException {
+        long before = store.size();
+        store.recover(target);
+        long size = store.size();
+        if (size != before) {
+            bloom = rebuild(size);
+            bloom.writeTo(bloomPath);
+        }
+    }
+
+    /** Saves the filter; until then a reopened index rebuilds it from the exact store. */
+    public void save() throws IOException {
+        if (store.size() > 0) bloom.writeTo(bloomPath);
+    }
+
+    /** Number of fingerprints recorded. */
+    public long size() throws IOException {
+        return store.size();
+    }
+
+    private BloomFilter rebuild(long size) throws IOException {
+        BloomFilter filter = new BloomFilter(Math.max(MIN_CAPACITY, size * 2));
+        store.forEach(filter::add);
+        return filter;
+    }
+
+    private static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB53A62E1BE85L;
+        return h ^ (h >>> 33);
+    }
+}
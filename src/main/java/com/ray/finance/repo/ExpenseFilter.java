@@ -0,0 +1,52 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Row filter for paged queries. Null bounds are open and all bounds are
+ * inclusive; an empty category set means every category.
+ */
+public record ExpenseFilter(LocalDate from, LocalDate to, Set<Category> categories,
+                            BigDecimal minAmount, BigDecimal maxAmount) {
+
+    public static final ExpenseFilter ALL = new ExpenseFilter(null, null, Set.of());
+
+    public ExpenseFilter {
+        categories = categories == null || categories.isEmpty() ? Set.of() : Set.copyOf(EnumSet.copyOf(categories));
+    }
+
+    public ExpenseFilter(LocalDate from, LocalDate to, Set<Category> categories) {
+        this(from, to, categories, null, null);
+    }
+
+    public static ExpenseFilter month(YearMonth month) {
+        return new ExpenseFilter(month.atDay(1), month.atEndOfMonth(), Set.of());
+    }
+
+    public ExpenseFilter withDates(LocalDate from, LocalDate to) {
+        return new ExpenseFilter(from, to, categories, minAmount, maxAmount);
+    }
+
+    public ExpenseFilter withCategories(Set<Category> categories) {
+        return new ExpenseFilter(from, to, categories, minAmount, maxAmount);
+    }
+
+    public ExpenseFilter withAmounts(BigDecimal minAmount, BigDecimal maxAmount) {
+        return new ExpenseFilter(from, to, categories, minAmount, maxAmount);
+    }
+
+    public boolean matches(Expense e) {
+        if (from != null && e.getDate().isBefore(from)) return false;
+        if (to != null && e.getDate().isAfter(to)) return false;
+        if (minAmount != null && e.getAmount().compareTo(minAmount) < 0) return false;
+        if (maxAmount != null && e.getAmount().compareTo(maxAmount) > 0) return false;
+        return categories.isEmpty() || categories.contains(e.getCategory());
+    }
+}
@@ -0,0 +1,58 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.IdGenerator;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Filtered query returning at most limit rows, newest first (date, then id in
+ * IdGenerator.ORDER, both descending). Pages are chained with a keyset cursor rather than an
+ * offset: the next page starts strictly after the last row returned, so rows
+ * inserted or deleted meanwhile never shift a page and each page costs the
+ * same however deep it is.
+ */
+public record ExpenseQuery(ExpenseFilter filter, int limit, Cursor after) {
+
+    /** Position of a row in query order. */
+    public record Cursor(LocalDate date, String id) {
+        public Cursor {
+            if (date == null || id == null) throw new IllegalArgumentException("date and id are required");
+        }
+
+        public static Cursor of(Expense e) {
+            return new Cursor(e.getDate(), e.getId());
+        }
+    }
+
+    public static final Comparator<Expense> ORDER =
+            Comparator.comparing(Expense::getDate).thenComparing(Expense::getId, IdGenerator.ORDER).reversed();
+
+    public ExpenseQuery {
+        if (filter == null) filter = ExpenseFilter.ALL;
+        if (limit < 0) throw new IllegalArgumentException("limit must be >= 0");
+    }
+
+    public static ExpenseQuery of(ExpenseFilter filter, int limit) {
+        return new ExpenseQuery(filter, limit, null);
+    }
+
+    /** The query for the page after page, or null if page was the last one. */
+    public ExpenseQuery next(List<Expense> page) {
+        if (page.size() < limit || page.isEmpty()) return null;
+        return new ExpenseQuery(filter, limit, Cursor.of(page.get(page.size() - 1)));
+    }
+
+    /** True if e passes the filter and comes after the cursor. */
+    public boolean matches(Expense e) {
+        return filter.matches(e) && isAfterCursor(e);
+    }
+
+    boolean isAfterCursor(Expense e) {
+        if (after == null) return true;
+        int byDate = e.getDate().compareTo(after.date());
+        return byDate < 0 || (byDate == 0 && IdGenerator.ORDER.compare(e.getId(), after.id()) < 0);
+    }
+}
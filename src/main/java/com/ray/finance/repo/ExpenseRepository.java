@@ -1,11 +1,140 @@
 package com.ray.finance.repo;
 
+import com.ray.finance.model.Category;
 import com.ray.finance.model.Expense;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
-public interface ExpenseRepository {
+public interface ExpenseRepository extends AutoCloseable {
     List<Expense> findAll() throws IOException;
     void saveAll(List<Expense> expenses) throws IOException;
+
+    // Incremental writes: callers should prefer these over findAll + saveAll
+    void insert(Expense expense) throws IOException;
+    void insertAll(List<Expense> expenses) throws IOException;
+    boolean update(Expense expense) throws IOException;
+    boolean delete(String id) throws IOException;
+
+    /**
+     * Opaque token that changes when the stored data may have been modified
+     * outside this object (another process or connection). Backends that
+     * cannot tell return a constant.
+     */
+    default long dataVersion() throws IOException {
+        return 0;
+    }
+
+    /** Releases files or connections held by the repository. */
+    @Override
+    default void close() throws IOException {}
+
+    // Queries: the defaults scan forEach, backends that can do better override them
+
+    /** Visits every expense without materializing the whole ledger where the backend allows it. */
+    default void forEach(Consumer<? super Expense> action) throws IOException {
+        findAll().forEach(action);
+    }
+
+    default Optional<Expense> findById(String id) throws IOException {
+        Expense[] found = {null};
+        forEach(e -> {
+            if (found[0] == null && e.getId().equals(id)) found[0] = e;
+        });
+        return Optional.ofNullable(found[0]);
+    }
+
+    /** Expenses with from <= date <= to, newest first. */
+    default List<Expense> findByDateRange(LocalDate from, LocalDate to) throws IOException {
+        List<Expense> out = new ArrayList<>();
+        forEach(e -> {
+            if (!e.getDate().isBefore(from) && !e.getDate().isAfter(to)) out.add(e);
+        });
+        out.sort(Comparator.comparing(Expense::getDate).reversed());
+        return out;
+    }
+
+    default int count(ExpenseFilter filter) throws IOException {
+        int[] n = {0};
+        forEach(e -> {
+            if (filter.matches(e)) n[0]++;
+        });
+        return n[0];
+    }
+
+    /**
+     * One page of the rows matching filter, in sort order. The default keeps
+     * only offset + limit rows in memory while scanning.
+     */
+    default List<Expense> findPage(ExpenseFilter filter, ExpenseSort sort, int offset, int limit) throws IOException {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must be >= 0");
+        int keep = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        List<Expense> sorted = top(filter::matches, sort.comparator(), keep);
+        return offset >= sorted.size() ? new ArrayList<>() : new ArrayList<>(sorted.subList(offset, sorted.size()));
+    }
+
+    /** Rows matching the query's filter after its cursor, newest first, at most query.limit(). */
+    default List<Expense> query(ExpenseQuery query) throws IOException {
+        return top(query::matches, ExpenseQuery.ORDER, query.limit());
+    }
+
+    /** The first keep rows accepted by test, in order; holds only keep rows while scanning. */
+    private List<Expense> top(Predicate<Expense> test, Comparator<Expense> order, int keep) throws IOException {
+        if (keep == 0) return new ArrayList<>();
+        // max-heap on sort order: the head is the row that drops out first
+        PriorityQueue<Expense> top = new PriorityQueue<>(Math.min(keep, 1024), order.reversed());
+        forEach(e -> {
+            if (!test.test(e)) return;
+            if (top.size() < keep) {
+                top.add(e);
+            } else if (order.compare(e, top.peek()) < 0) {
+                top.poll();
+                top.add(e);
+            }
+        });
+        List<Expense> sorted = new ArrayList<>(top);
+        sorted.sort(order);
+        return sorted;
+    }
+
+    /**
+     * Expenses whose note contains every word of text (each word also matches
+     * as a prefix), best match first. The default indexes a full scan on every
+     * call; backends keep a real index.
+     */
+    default List<Expense> search(String text, int offset, int limit) throws IOException {
+        List<Expense> all = findAll();
+        NoteIndex index = new NoteIndex();
+        for (int i = 0; i < all.size(); i++) index.add(i, all.get(i).getNote());
+        List<Expense> out = new ArrayList<>();
+        for (NoteIndex.Hit hit : index.search(text, offset, limit)) out.add(all.get((int) hit.ref()));
+        return out;
+    }
+
+    default BigDecimal sumByMonth(YearMonth month) throws IOException {
+        BigDecimal[] total = {BigDecimal.ZERO};
+        forEach(e -> {
+            if (YearMonth.from(e.getDate()).equals(month)) total[0] = total[0].add(e.getAmount());
+        });
+        return total[0];
+    }
+
+    default Map<Category, BigDecimal> sumByMonthAndCategory(YearMonth month) throws IOException {
+        Map<Category, BigDecimal> map = new EnumMap<>(Category.class);
+        forEach(e -> {
+            if (YearMonth.from(e.getDate()).equals(month)) map.merge(e.getCategory(), e.getAmount(), BigDecimal::add);
+        });
+        return map;
+    }
 }
@@ -0,0 +1,32 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.IdGenerator;
+
+import java.util.Comparator;
+
+/**
+ * Sort order for paged queries. Ties are broken by id in the same direction,
+ * so the order is total and pages never overlap or skip rows.
+ */
+public record ExpenseSort(Column column, boolean ascending) {
+
+    public enum Column { DATE, AMOUNT, CATEGORY, NOTE }
+
+    public static final ExpenseSort NEWEST_FIRST = new ExpenseSort(Column.DATE, false);
+
+    public ExpenseSort {
+        if (column == null) throw new IllegalArgumentException("column is required");
+    }
+
+    public Comparator<Expense> comparator() {
+        Comparator<Expense> byColumn = switch (column) {
+            case DATE -> Comparator.comparing(Expense::getDate);
+            case AMOUNT -> Comparator.comparing(Expense::getAmount);
+            case CATEGORY -> Comparator.comparing(e -> e.getCategory().name());
+            case NOTE -> Comparator.comparing(Expense::getNote);
+        };
+        Comparator<Expense> order = byColumn.thenComparing(Expense::getId, IdGenerator.ORDER);
+        return ascending ? order : order.reversed();
+    }
+}
@@ -0,0 +1,249 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Expense;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Sidecar of sorted, distinct fingerprints (big-endian longs), memory-mapped
+ * and binary-searched. Adding merges the new keys into a copy of the file in
+ * one sequential pass and swaps it in, so the cost is proportional to the
+ * file, which is why keys are added once per import rather than per row.
+ *
+ * insertAll keys instead go to a journal next to the file: an entry of the
+ * key count and the keys, synced before the rows are inserted, then a commit
+ * mark once they are in. Committed keys are also held in memory, and the
+ * journal is merged into the file when it grows large or the file is reopened.
+ * An entry without its mark belongs to a batch whose rows may or may not have
+ * gone in; recover keeps those of its keys whose rows are in the target.
+ */
+final class FingerprintFile implements FingerprintStore {
+
+    private static final long COMMIT = 0x434F4D4D49544544L; // "COMMITED"
+    private static final int MERGE_AT = 1 << 20;
+
+    private final Path path;
+    private final Path journalPath;
+    private volatile MappedByteBuffer keys; // null while the file does not exist
+    private volatile long[] journaled = new long[0]; // committed journal keys not in the file, sorted
+    private long[] uncertain = new long[0]; // keys of journal entries without a commit mark
+
+    FingerprintFile(Path path) throws IOException {
+        this.path = path;
+        this.journalPath = path.resolveSibling(path.getFileName() + ".journal");
+        remap();
+        replayJournal();
+        if (uncertain.length == 0) mergeJournal();
+    }
+
+    @Override
+    public boolean contains(long fingerprint) {
+        return inFile(fingerprint) || Arrays.binarySearch(journaled, fingerprint) >= 0;
+    }
+
+    @Override
+    public synchronized void insertAll(ExpenseRepository target, List<Expense> rows, long[] add, int n)
+            throws IOException {
+        if (uncertain.length > 0) throw new IllegalStateException("recover the last import first: " + journalPath);
+        if (n == 0) {
+            target.insertAll(rows);
+            return;
+        }
+        ByteBuffer entry = ByteBuffer.allocate((n + 1) * 8);
+        entry.putLong(n);
+        for (int i = 0; i < n; i++) entry.putLong(add[i]);
+        entry.flip();
+        try (FileChannel out = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (entry.hasRemaining()) out.write(entry);
+            out.force(false);
+            uncertain = Arrays.copyOf(add, n); // until the mark is written, the rows may be partly in
+            target.insertAll(rows);
+            out.write(ByteBuffer.allocate(8).putLong(0, COMMIT));
+            uncertain = new long[0];
+        }
+        journaled = merge(journaled, add, n);
+        if (journaled.length >= MERGE_AT) mergeJournal();
+    }
+
+    @Override
+    public synchronized void recover(ExpenseRepository target) throws IOException {
+        if (uncertain.length == 0) return;
+        long[] pending = uncertain;
+        Arrays.sort(pending);
+        boolean[] found = new boolean[pending.length];
+        target.forEach(e -> {
+            long fingerprint;
+            try {
+                fingerprint = DuplicateIndex.fingerprint(e);
+            } catch (IllegalArgumentException ex) {
+                return; // fractions of a cent: never imported
+            }
+            int i = Arrays.binarySearch(pending, fingerprint);
+            if (i >= 0) found[i] = true;
+        });
+        int kept = 0;
+        for (int i = 0; i < pending.length; i++) {
+            if (found[i] && (kept == 0 || pending[kept - 1] != pending[i]) && !contains(pending[i])) {
+                pending[kept++] = pending[i];
+            }
+        }
+        journaled = merge(journaled, pending, kept);
+        uncertain = new long[0];
+        mergeJournal();
+    }
+
+    private boolean inFile(long fingerprint) {
+        MappedByteBuffer map = keys;
+        long lo = 0, hi = count(map) - 1;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            long key = map.getLong((int) (mid * 8));
+            if (key < fingerprint) lo = mid + 1;
+            else if (key > fingerprint) hi = mid - 1;
+            else return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void addAll(long[] add, int n) throws IOException {
+        if (n == 0) return;
+        MappedByteBuffer map = keys;
+        long existing = count(map);
+        if ((existing + n) * 8 > Integer.MAX_VALUE) throw new IOException("fingerprint file is full: " + path);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+            long i = 0;
+            int j = 0;
+            while (i < existing || j < n) {
+                long a = i < existing ? map.getLong((int) (i * 8)) : Long.MAX_VALUE;
+                if (j < n && (i == existing || add[j] <= a)) {
+                    buf.putLong(add[j]);
+                    if (i < existing && add[j] == a) i++;
+                    j++;
+                } else {
+                    buf.putLong(a);
+                    i++;
+                }
+                if (!buf.hasRemaining()) drain(buf, out);
+            }
+            drain(buf, out);
+            out.force(true);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        remap();
+    }
+
+    @Override
+    public long size() {
+        return count(keys) + journaled.length;
+    }
+
+    @Override
+    public void forEach(LongConsumer action) {
+        MappedByteBuffer map = keys;
+        for (long i = 0, n = count(map); i < n; i++) action.accept(map.getLong((int) (i * 8)));
+        for (long key : journaled) action.accept(key);
+    }
+
+    /**
+     * Loads the journal. A torn last entry was never synced, so its rows were
+     * never inserted and it is dropped; an entry without its mark is uncertain.
+     */
+    private void replayJournal() throws IOException {
+        if (!Files.exists(journalPath)) return;
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+        long[] committed = new long[0];
+        long[] open = new long[0];
+        int count = log.limit() / 8;
+        int at = 0;
+        while (at < count) {
+            long n = log.getLong(at * 8);
+            if (n < 1 || n > count - at - 1) break;
+            long[] entry = new long[(int) n];
+            for (int i = 0; i < n; i++) entry[i] = log.getLong((at + 1 + i) * 8);
+            at += 1 + (int) n;
+            if (at < count && log.getLong(at * 8) == COMMIT) {
+                Arrays.sort(entry);
+                committed = merge(committed, entry, entry.length);
+                at++;
+            } else {
+                open = concat(open, entry);
+            }
+        }
+        // a merge into the file may have been cut short before the journal was deleted
+        int kept = 0;
+        for (long key : committed) {
+            if (!inFile(key)) committed[kept++] = key;
+        }
+        journaled = Arrays.copyOf(committed, kept);
+        uncertain = open;
+    }
+
+    /** Moves the committed journal keys into the file and empties the journal. */
+    private void mergeJournal() throws IOException {
+        long[] add = journaled;
+        if (add.length > 0) addAll(add, add.length);
+        journaled = new long[0];
+        Files.deleteIfExists(journalPath);
+    }
+
+    /** Sorted union of sorted a and sorted, distinct b[0..n). */
+    private static long[] merge(long[] a, long[] b, int n) {
+        long[] out = new long[a.length + n];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length || j < n) {
+            if (j == n || (i < a.length && a[i] < b[j])) out[k++] = a[i++];
+            else if (i == a.length || b[j] < a[i]) out[k++] = b[j++];
+            else {
+                out[k++] = a[i++];
+                j++;
+            }
+        }
+        return k == out.length ? out : Arrays.copyOf(out, k);
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        long[] out = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, out, a.length, b.length);
+        return out;
+    }
+
+    private void remap() throws IOException {
+        if (!Files.exists(path)) {
+            keys = null;
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            keys = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size() & ~7L);
+        }
+    }
+
+    private static void drain(ByteBuffer buf, FileChannel out) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) out.write(buf);
+        buf.clear();
+    }
+
+    private static long count(MappedByteBuffer map) {
+        return map == null ? 0 : map.capacity() / 8;
+    }
+}
@@ -0,0 +1,35 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Expense;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/** Exact set of the fingerprints a DuplicateIndex has recorded. Lookups may run concurrently. */
+interface FingerprintStore {
+
+    boolean contains(long fingerprint) throws IOException;
+
+    /** Adds keys[0..n), which are sorted and distinct; keys already present are ignored. */
+    void addAll(long[] keys, int n) throws IOException;
+
+    /**
+     * Inserts rows into target and adds keys[0..n), sorted, distinct and not
+     * yet present, so that a crash cannot keep one without the other once
+     * recover has run. The default keeps them in step only while nothing fails.
+     */
+    default void insertAll(ExpenseRepository target, List<Expense> rows, long[] keys, int n) throws IOException {
+        target.insertAll(rows);
+        addAll(keys, n);
+    }
+
+    /** Settles a batch that a crash left half recorded, against the rows that reached target. */
+    default void recover(ExpenseRepository target) throws IOException {
+    }
+
+    /** Number of distinct fingerprints stored. */
+    long size() throws IOException;
+
+    void forEach(LongConsumer action) throws IOException;
+}
@@ -0,0 +1,127 @@
+package com.ray.finance.repo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Funnels items from many writer threads through one committer thread. The
+ * committer drains whatever is queued (up to maxBatch) and hands it to the
+ * BatchWriter in a single call, so concurrent writers share one fsync or one
+ * transaction. submit() returns once the batch holding the item is committed
+ * and rethrows the writer's failure. When a shared batch fails, each caller's
+ * items are retried on their own, so one bad row does not fail its neighbours.
+ */
+final class GroupCommitter<T> implements AutoCloseable {
+
+    @FunctionalInterface
+    interface BatchWriter<T> {
+        void write(List<T> batch) throws IOException;
+    }
+
+    private record Pending<T>(List<T> items, CompletableFuture<Void> done) {}
+
+    private final LinkedBlockingQueue<Pending<T>> queue = new LinkedBlockingQueue<>();
+    private final BatchWriter<T> writer;
+    private final int maxBatch;
+    private final Thread thread;
+    private boolean closed; // guarded by queue, so nothing is queued behind close()'s poison pill
+
+    GroupCommitter(String name, int maxBatch, BatchWriter<T> writer) {
+        if (maxBatch < 1) throw new IllegalArgumentException("maxBatch must be >= 1");
+        this.writer = writer;
+        this.maxBatch = maxBatch;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void submit(T item) throws IOException {
+        submitAll(List.of(item));
+    }
+
+    /** Items of one call are always committed in the same batch. */
+    void submitAll(List<T> items) throws IOException {
+        if (items.isEmpty()) return;
+        Pending<T> pending = new Pending<>(List.copyOf(items), new CompletableFuture<>());
+        synchronized (queue) {
+            if (closed) throw new IOException("committer is closed");
+            queue.add(pending);
+        }
+        try {
+            pending.done().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for commit");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw new IOException(io.getMessage(), io);
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException("commit failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private void run() {
+        List<Pending<T>> group = new ArrayList<>();
+        List<T> batch = new ArrayList<>();
+        while (true) {
+            try {
+                Pending<T> first = queue.take();
+                if (first.items() == null) return; // poison pill from close()
+                group.add(first);
+                batch.addAll(first.items());
+
+                Pending<T> next;
+                while (batch.size() < maxBatch && (next = queue.peek()) != null && next.items() != null) {
+                    queue.poll();
+                    group.add(next);
+                    batch.addAll(next.items());
+                }
+
+                try {
+                    writer.write(batch);
+                    for (Pending<T> p : group) p.done().complete(null);
+                } catch (Throwable t) {
+                    if (group.size() == 1) {
+                        first.done().completeExceptionally(t);
+                    } else {
+                        for (Pending<T> p : group) writeAlone(p);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                group.clear();
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeAlone(Pending<T> p) {
+        try {
+            writer.write(p.items());
+            p.done().complete(null);
+        } catch (Throwable t) {
+            p.done().completeExceptionally(t);
+        }
+    }
+
+    /** Commits everything already queued, then stops the committer thread. */
+    @Override
+    public void close() {
+        synchronized (queue) {
+            if (closed) return;
+            closed = true;
+            queue.add(new Pending<>(null, null));
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.metrics.Counter;
+import com.ray.finance.metrics.MetricsRegistry;
+import com.ray.finance.metrics.Timer;
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Times every call into another repository and counts the rows it returned
+ * or wrote, under prefix.method in a MetricsRegistry (sqlite.findAll,
+ * csv.query, ...). Wrap the backend directly to see its own I/O, or wrap a
+ * CachingExpenseRepository to see what callers experience.
+ */
+public final class InstrumentedExpenseRepository implements ExpenseRepository {
+
+    private final ExpenseRepository delegate;
+    private final Timer findAll;
+    private final Timer saveAll;
+    private final Timer insert;
+    private final Timer update;
+    private final Timer delete;
+    private final Timer forEach;
+    private final Timer findById;
+    private final Timer findByDateRange;
+    private final Timer count;
+    private final Timer findPage;
+    private final Timer query;
+    private final Timer search;
+    private final Timer sumByMonth;
+    private final Timer sumByMonthAndCategory;
+    private final Counter rowsRead;
+    private final Counter rowsWritten;
+
+    public InstrumentedExpenseRepository(ExpenseRepository delegate, String prefix) {
+        this(delegate, prefix, MetricsRegistry.global());
+    }
+
+    public InstrumentedExpenseRepository(ExpenseRepository delegate, String prefix, MetricsRegistry registry) {
+        this.delegate = delegate;
+        this.findAll = registry.timer(prefix + ".findAll");
+        this.saveAll = registry.timer(prefix + ".saveAll");
+        this.insert = registry.timer(prefix + ".insert");
+        this.update = registry.timer(prefix + ".update");
+        this.delete = registry.timer(prefix + ".delete");
+        this.forEach = registry.timer(prefix + ".forEach");
+        this.findById = registry.timer(prefix + ".findById");
+        this.findByDateRange = registry.timer(prefix + ".findByDateRange");
+        this.count = registry.timer(prefix + ".count");
+        this.findPage = registry.timer(prefix + ".findPage");
+        this.query = registry.timer(prefix + ".query");
+        this.search = registry.timer(prefix + ".search");
+        this.sumByMonth = registry.timer(prefix + ".sumByMonth");
+        this.sumByMonthAndCategory = registry.timer(prefix + ".sumByMonthAndCategory");
+        this.rowsRead = registry.counter(prefix + ".rowsRead");
+        this.rowsWritten = registry.counter(prefix + ".rowsWritten");
+    }
+
+    // ---- writes
+
+    @Override
+    public void saveAll(List<Expense> expenses) throws IOException {
+        long t0 = saveAll.start();
+        delegate.saveAll(expenses);
+        saveAll.stop(t0, expenses.size());
+        rowsWritten.add(expenses.size());
+    }
+
+    @Override
+    public void insert(Expense expense) throws IOException {
+        long t0 = insert.start();
+        delegate.insert(expense);
+        insert.stop(t0, 1);
+        rowsWritten.increment();
+    }
+
+    /** Timed as insert, with the batch size as its row count. */
+    @Override
+    public void insertAll(List<Expense> expenses) throws IOException {
+        long t0 = insert.start();
+        delegate.insertAll(expenses);
+        insert.stop(t0, expenses.size());
+        rowsWritten.add(expenses.size());
+    }
+
+    @Override
+    public boolean update(Expense expense) throws IOException {
+        long t0 = update.start();
+        boolean changed = delegate.update(expense);
+        update.stop(t0, changed ? 1 : 0);
+        if (changed) rowsWritten.increment();
+        return changed;
+    }
+
+    @Override
+    public boolean delete(String id) throws IOException {
+        long t0 = delete.start();
+        boolean deleted = delegate.delete(id);
+        delete.stop(t0, deleted ? 1 : 0);
+        if (deleted) rowsWritten.increment();
+        return deleted;
+    }
+
+    // ---- reads
+
+    @Override
+    public List<Expense> findAll() throws IOException {
+        long t0 = findAll.start();
+        return read(findAll, t0, delegate.findAll());
+    }
+
+    @Override
+    public void forEach(Consumer<? super Expense> action) throws IOException {
+        long t0 = forEach.start();
+        if (t0 == 0) {
+            delegate.forEach(action);
+            return;
+        }
+        long[] n = {0};
+        delegate.forEach(e -> {
+            n[0]++;
+            action.accept(e);
+        });
+        forEach.stop(t0, n[0]);
+        rowsRead.add(n[0]);
+    }
+
+    @Override
+    public Optional<Expense> findById(String id) throws IOException {
+        long t0 = findById.start();
+        Optional<Expense> found = delegate.findById(id);
+        findById.stop(t0, found.isPresent() ? 1 : 0);
+        if (found.isPresent()) rowsRead.increment();
+        return found;
+    }
+
+    @Override
+    public List<Expense> findByDateRange(LocalDate from, LocalDate to) throws IOException {
+        long t0 = findByDateRange.start();
+        return read(findByDateRange, t0, delegate.findByDateRange(from, to));
+    }
+
+    @Override
+    public int count(ExpenseFilter filter) throws IOException {
+        long t0 = count.start();
+        int n = delegate.count(filter);
+        count.stop(t0);
+        return n;
+    }
+
+    @Override
+    public List<Expense> findPage(ExpenseFilter filter, ExpenseSort sort, int offset, int limit) throws IOException {
+        long t0 = findPage.start();
+        return read(findPage, t0, delegate.findPage(filter, sort, offset, limit));
+    }
+
+    @Override
+    public List<Expense> query(ExpenseQuery query) throws IOException {
+        long t0 = this.query.start();
+        return read(this.query, t0, delegate.query(query));
+    }
+
+    @Override
+    public List<Expense> search(String text, int offset, int limit) throws IOException {
+        long t0 = search.start();
+        return read(search, t0, delegate.search(text, offset, limit));
+    }
+
+    @Override
+    public BigDecimal sumByMonth(YearMonth month) throws IOException {
+        long t0 = sumByMonth.start();
+        BigDecimal total = delegate.sumByMonth(month);
+        sumByMonth.stop(t0);
+        return total;
+    }
+
+    @Override
+    public Map<Category, BigDecimal> sumByMonthAndCategory(YearMonth month) throws IOException {
+        long t0 = sumByMonthAndCategory.start();
+        Map<Category, BigDecimal> totals = delegate.sumByMonthAndCategory(month);
+        sumByMonthAndCategory.stop(t0);
+        return totals;
+    }
+
+    @Override
+    public long dataVersion() throws IOException {
+        return delegate.dataVersion();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private List<Expense> read(Timer timer, long t0, List<Expense> rows) {
+        timer.stop(t0, rows.size());
+        rowsRead.add(rows.size());
+        return rows;
+    }
+}
@@ -0,0 +1,726 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * CSV ledger with a write-ahead journal. Writes are appended to
+ * expenses.csv.journal and fsynced before they return; writers that arrive
+ * while a batch is being synced are committed together in the next batch, so
+ * there is one fsync per batch rather than per insert. Journaled changes are
+ * kept in memory as an overlay on the main file.
+ *
+ * Once the journal holds compactThreshold changes it is sealed
+ * (renamed to .journal.sealed, a fresh journal takes new writes) and a
+ * background thread folds it into the main file via temp file and atomic move.
+ * On open, any journals left by a crash are replayed and compacted. A batch
+ * only counts once its commit line is on disk, so a torn tail is ignored.
+ *
+ * The main file stays a plain CSV readable by CsvExpenseRepository once the
+ * repository has been closed.
+ */
+public final class JournaledCsvExpenseRepository implements ExpenseRepository {
+
+    public static final int DEFAULT_COMPACT_THRESHOLD = 10_000;
+    private static final int MAX_BATCH = 4096;
+
+    private static final char INSERT = 'I';
+    private static final char UPDATE = 'U';
+    private static final char DELETE = 'D';
+    private static final char COMMIT = 'C';
+
+    private static final class Op {
+        final char kind;
+        final Expense expense;
+        final String id;
+        // Main file generation an update or delete found its row in, or -1 to look again
+        long checked = -1;
+        // Cleared by the committer when an update or delete finds no row
+        boolean applied = true;
+
+        private Op(char kind, Expense expense, String id) {
+            this.kind = kind;
+            this.expense = expense;
+            this.id = id;
+        }
+
+        static Op upsert(char kind, Expense e) { return new Op(kind, e, e.getId()); }
+        static Op delete(String id) { return new Op(DELETE, null, id); }
+    }
+
+    /** Latest journaled state per id; replaying the same op twice is harmless. */
+    private static final class Overlay {
+        final Map<String, Expense> upserts = new LinkedHashMap<>();
+        final Set<String> deleted = new HashSet<>();
+        int ops;
+
+        void apply(Op op) {
+            ops++;
+            if (op.kind == DELETE) {
+                upserts.remove(op.id);
+                deleted.add(op.id);
+            } else {
+                deleted.remove(op.id);
+                upserts.put(op.id, op.expense);
+            }
+        }
+
+        Overlay copy() {
+            Overlay copy = new Overlay();
+            copy.upserts.putAll(upserts);
+            copy.deleted.addAll(deleted);
+            copy.ops = ops;
+            return copy;
+        }
+    }
+
+    private final Path csvPath;
+    private final Path journalPath;
+    private final Path sealedPath;
+    private final CsvExpenseRepository main;
+    private final int compactThreshold;
+
+    // Lock order: compactionLock, journalLock, state
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private final ReentrantReadWriteLock state = new ReentrantReadWriteLock();
+
+    private final GroupCommitter<Op> committer;
+    private final ExecutorService compactor;
+
+    private FileChannel journal;
+    private Overlay sealed;            // being folded into the main file, or null
+    private Overlay active = new Overlay();
+    private long generation;           // bumped whenever the main file is replaced
+    private boolean compactionQueued;
+
+    public JournaledCsvExpenseRepository(Path csvPath) throws IOException {
+        this(csvPath, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    public JournaledCsvExpenseRepository(Path csvPath, int compactThreshold) throws IOException {
+        if (compactThreshold < 1) throw new IllegalArgumentException("compactThreshold must be >= 1");
+        this.csvPath = csvPath;
+        this.journalPath = csvPath.resolveSibling(csvPath.getFileName() + ".journal");
+        this.sealedPath = csvPath.resolveSibling(csvPath.getFileName() + ".journal.sealed");
+        this.main = new CsvExpenseRepository(csvPath);
+        this.compactThreshold = compactThreshold;
+
+        recover();
+        this.journal = openJournal();
+        this.committer = new GroupCommitter<>("csv-journal", MAX_BATCH, this::commit);
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "csv-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ---- reads
+
+    @Override
+    public List<Expense> findAll() throws IOException {
+        List<Expense> expenses = new ArrayList<>();
+        forEach(expenses::add);
+        return expenses;
+    }
+
+    /**
+     * Main file rows with journaled changes applied, then journaled inserts.
+     * No lock is held while the file is scanned, so the action may write.
+     */
+    @Override
+    public void forEach(Consumer<? super Expense> action) throws IOException {
+        List<Overlay> layers = snapshot();
+        Set<String> emitted = new HashSet<>();
+        main.forEach(e -> {
+            Expense current = resolve(layers, e.getId(), e);
+            if (current != e) emitted.add(e.getId());
+            if (current != null) action.accept(current);
+        });
+        for (Overlay layer : layers) {
+            for (String id : layer.upserts.keySet()) {
+                if (!emitted.add(id)) continue;
+                Expense current = resolve(layers, id, null);
+                if (current != null) action.accept(current);
+            }
+        }
+    }
+
+    @Override
+    public Optional<Expense> findById(String id) throws IOException {
+        Lookup journaled = lookup(id);
+        return journaled.known() ? Optional.ofNullable(journaled.expense()) : main.findById(id);
+    }
+
+    @Override
+    public List<Expense> findByDateRange(LocalDate from, LocalDate to) throws IOException {
+        List<Expense> out = new ArrayList<>();
+        scan(from, to, rows -> {
+            out.addAll(rows);
+            return true;
+        });
+        return out;
+    }
+
+    /** Walks the merged date order newest first and stops as soon as the page is full. */
+    @Override
+    public List<Expense> query(ExpenseQuery query) throws IOException {
+        List<Expense> out = new ArrayList<>();
+        if (query.limit() == 0) return out;
+        LocalDate to = query.filter().to();
+        if (query.after() != null && (to == null || query.after().date().isBefore(to))) to = query.after().date();
+        scan(query.filter().from(), to, rows -> {
+            rows.sort(ExpenseQuery.ORDER);
+            for (Expense e : rows) {
+                if (!query.matches(e)) continue;
+                out.add(e);
+                if (out.size() == query.limit()) return false;
+            }
+            return true;
+        });
+        return out;
+    }
+
+    @Override
+    public int count(ExpenseFilter filter) throws IOException {
+        if (filter.from() == null && filter.to() == null) return ExpenseRepository.super.count(filter);
+        int[] n = {0};
+        scan(filter.from(), filter.to(), rows -> {
+            for (Expense e : rows) {
+                if (filter.matches(e)) n[0]++;
+            }
+            return true;
+        });
+        return n[0];
+    }
+
+    /** Date-bounded pages only read the rows in range; newest-first ones stop once the page is full. */
+    @Override
+    public List<Expense> findPage(ExpenseFilter filter, ExpenseSort sort, int offset, int limit) throws IOException {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must be >= 0");
+        boolean newestFirst = sort.equals(ExpenseSort.NEWEST_FIRST);
+        if (!newestFirst && filter.from() == null && filter.to() == null) {
+            return ExpenseRepository.super.findPage(filter, sort, offset, limit);
+        }
+        Comparator<Expense> order = sort.comparator();
+        List<Expense> rows = new ArrayList<>();
+        scan(filter.from(), filter.to(), day -> {
+            for (Expense e : day) {
+                if (filter.matches(e)) rows.add(e);
+            }
+            // Dates come newest first, so once offset + limit rows are in no later date can displace them
+            return !newestFirst || rows.size() < (long) offset + limit;
+        });
+        rows.sort(order);
+        return offset >= rows.size() ? new ArrayList<>()
+                : new ArrayList<>(rows.subList(offset, (int) Math.min(rows.size(), (long) offset + limit)));
+    }
+
+    @Override
+    public BigDecimal sumByMonth(YearMonth month) throws IOException {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Expense e : findByDateRange(month.atDay(1), month.atEndOfMonth())) total = total.add(e.getAmount());
+        return total;
+    }
+
+    @Override
+    public Map<Category, BigDecimal> sumByMonthAndCategory(YearMonth month) throws IOException {
+        Map<Category, BigDecimal> map = new EnumMap<>(Category.class);
+        for (Expense e : findByDateRange(month.atDay(1), month.atEndOfMonth())) {
+            map.merge(e.getCategory(), e.getAmount(), BigDecimal::add);
+        }
+        return map;
+    }
+
+    /**
+     * Rows with from <= date <= to (null is open), one date at a time, newest
+     * first: the main file's through its date index, less those the journal
+     * has changed, merged by date with the journal's current rows.
+     */
+    private void scan(LocalDate from, LocalDate to, CsvDateIndex.DayVisitor visitor) throws IOException {
+        List<Overlay> layers = snapshot();
+        Set<String> changed = changed(layers);
+        List<Expense> pending = new ArrayList<>();
+        for (String id : changed) {
+            Expense current = resolve(layers, id, null);
+            if (current != null && (from == null || !current.getDate().isBefore(from))
+                    && (to == null || !current.getDate().isAfter(to))) {
+                pending.add(current);
+            }
+        }
+        pending.sort(Comparator.comparing(Expense::getDate).reversed());
+
+        int[] next = {0};
+        boolean[] stopped = {false};
+        main.scan(from, to, rows -> {
+            LocalDate day = rows.get(0).getDate();
+            while (next[0] < pending.size() && pending.get(next[0]).getDate().isAfter(day)) {
+                if (!visitor.visit(sameDay(pending, next))) return !(stopped[0] = true);
+            }
+            rows.removeIf(e -> changed.contains(e.getId()));
+            while (next[0] < pending.size() && pending.get(next[0]).getDate().equals(day)) rows.add(pending.get(next[0]++));
+            stopped[0] = !rows.isEmpty() && !visitor.visit(rows);
+            return !stopped[0];
+        });
+        while (!stopped[0] && next[0] < pending.size()) {
+            if (!visitor.visit(sameDay(pending, next))) return;
+        }
+    }
+
+    /**
+     * The main file ranks with its own search index. Its hits for rows the
+     * journal has changed are dropped and the rest are ranked again together
+     * with the journal's current rows; newer rows win ties.
+     */
+    @Override
+    public List<Expense> search(String text, int offset, int limit) throws IOException {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must be >= 0");
+        List<Overlay> layers = snapshot();
+        Set<String> changed = changed(layers);
+        if (changed.isEmpty()) return main.search(text, offset, limit);
+        if (limit == 0) return new ArrayList<>();
+
+        // Every dropped hit is one of the changed rows, so this many still leaves offset + limit
+        int keep = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit + changed.size());
+        List<Expense> candidates = new ArrayList<>();
+        NoteIndex index = new NoteIndex();
+        for (Expense e : main.search(text, 0, keep)) {
+            if (changed.contains(e.getId())) continue;
+            index.add(candidates.size(), e.getNote());
+            candidates.add(e);
+        }
+        for (String id : changed) {
+            Expense current = resolve(layers, id, null);
+            if (current == null) continue;
+            index.add(candidates.size(), current.getNote());
+            candidates.add(current);
+        }
+        List<Expense> out = new ArrayList<>();
+        for (NoteIndex.Hit hit : index.search(text, offset, limit)) out.add(candidates.get((int) hit.ref()));
+        return out;
+    }
+
+    /** The rows sharing the date of rows[next], advancing next past them. */
+    private static List<Expense> sameDay(List<Expense> rows, int[] next) {
+        LocalDate day = rows.get(next[0]).getDate();
+        List<Expense> out = new ArrayList<>();
+        while (next[0] < rows.size() && rows.get(next[0]).getDate().equals(day)) out.add(rows.get(next[0]++));
+        return out;
+    }
+
+    /** Main file version combined with the journal sizes. */
+    @Override
+    public long dataVersion() throws IOException {
+        long version = main.dataVersion();
+        for (Path p : List.of(journalPath, sealedPath)) {
+            version = version * 31 + (Files.exists(p) ? Files.size(p) : 0);
+        }
+        return version;
+    }
+
+    // ---- writes
+
+    @Override
+    public void insert(Expense expense) throws IOException {
+        committer.submit(Op.upsert(INSERT, expense));
+    }
+
+    @Override
+    public void insertAll(List<Expense> expenses) throws IOException {
+        List<Op> ops = new ArrayList<>(expenses.size());
+        for (Expense e : expenses) ops.add(Op.upsert(INSERT, e));
+        committer.submitAll(ops);
+    }
+
+    @Override
+    public boolean update(Expense expense) throws IOException {
+        return submitIfPresent(Op.upsert(UPDATE, expense));
+    }
+
+    @Override
+    public boolean delete(String id) throws IOException {
+        return submitIfPresent(Op.delete(id));
+    }
+
+    /**
+     * Looks the row up here, where a miss is cheap to answer, and lets the
+     * committer confirm it is still there when the op is journaled; a row
+     * deleted in between makes the op a no-op instead of bringing it back.
+     */
+    private boolean submitIfPresent(Op op) throws IOException {
+        Lookup journaled = lookup(op.id);
+        if (journaled.known() ? journaled.expense() == null : main.findById(op.id).isEmpty()) return false;
+        op.checked = journaled.generation();
+        committer.submit(op);
+        return op.applied;
+    }
+
+    /** Rewrites the main file atomically and discards both journals. */
+    @Override
+    public void saveAll(List<Expense> expenses) throws IOException {
+        compactionLock.lock();
+        journalLock.lock();
+        try {
+            Path tmp = CsvExpenseRepository.writeTemp(csvPath, writer -> {
+                writer.write(CsvExpenseRepository.HEADER);
+                writer.newLine();
+                for (Expense e : expenses) CsvExpenseRepository.writeRow(writer, e);
+                return true;
+            });
+            state.writeLock().lock();
+            try {
+                CsvExpenseRepository.commitTemp(tmp, csvPath);
+                journal.truncate(0);
+                journal.force(true);
+                Files.deleteIfExists(sealedPath);
+                sealed = null;
+                active = new Overlay();
+                generation++;
+            } finally {
+                state.writeLock().unlock();
+            }
+        } finally {
+            journalLock.unlock();
+            compactionLock.unlock();
+        }
+    }
+
+    /** Drains pending writes, folds the journal into the main file and releases it. */
+    @Override
+    public void close() throws IOException {
+        committer.close();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            compact();
+        } finally {
+            journal.close();
+        }
+    }
+
+    /** Runs on the committer thread with everything queued since the last batch. */
+    private void commit(List<Op> batch) throws IOException {
+        boolean compactNow;
+        journalLock.lock();
+        try {
+            // Nothing else journals while this lock is held, so the checks hold until the ops are applied
+            List<Op> ops = present(batch);
+            if (ops.isEmpty()) return;
+            StringWriter text = new StringWriter(ops.size() * 64);
+            for (Op op : ops) {
+                text.write(op.kind);
+                text.write(',');
+                if (op.kind == DELETE) {
+                    text.write(quote(op.id));
+                    text.write(System.lineSeparator());
+                } else {
+                    CsvExpenseRepository.writeRow(text, op.expense);
+                }
+            }
+            text.write(COMMIT + "," + ops.size() + System.lineSeparator());
+            ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+
+            long start = journal.size();
+            try {
+                while (bytes.hasRemaining()) journal.write(bytes);
+                journal.force(false);
+                CsvExpenseRepository.BYTES_WRITTEN.add(bytes.limit());
+            } catch (IOException e) {
+                // drop the partial batch so later commit lines still line up on replay
+                journal.truncate(start);
+                throw e;
+            }
+
+            state.writeLock().lock();
+            try {
+                for (Op op : ops) active.apply(op);
+                compactNow = active.ops >= compactThreshold && !compactionQueued;
+                if (compactNow) compactionQueued = true;
+            } finally {
+                state.writeLock().unlock();
+            }
+        } finally {
+            journalLock.unlock();
+        }
+        if (compactNow) compactor.execute(this::compactInBackground);
+    }
+
+    /**
+     * The ops of batch to journal: inserts, and updates and deletes whose row
+     * exists once the ops before them in the batch are applied. The rest are
+     * marked not applied. Called with journalLock held.
+     */
+    private List<Op> present(List<Op> batch) throws IOException {
+        Map<String, Boolean> exists = new HashMap<>();
+        List<Op> ops = new ArrayList<>(batch.size());
+        for (Op op : batch) {
+            if (op.kind != INSERT) {
+                Boolean known = exists.get(op.id);
+                op.applied = known != null ? known : exists(op);
+                if (!op.applied) continue;
+            }
+            exists.put(op.id, op.kind != DELETE);
+            ops.add(op);
+        }
+        return ops;
+    }
+
+    private boolean exists(Op op) throws IOException {
+        Lookup journaled = lookup(op.id);
+        if (journaled.known()) return journaled.expense() != null;
+        // The journal does not mention the row, so if the main file is the one it was found in, it is still there
+        return op.checked == journaled.generation() || main.findById(op.id).isPresent();
+    }
+
+    // ---- compaction
+
+    private void compactInBackground() {
+        try {
+            compact();
+        } catch (IOException e) {
+            // The journals are still intact; the next threshold crossing or close() retries
+        } finally {
+            state.writeLock().lock();
+            compactionQueued = false;
+            state.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Seals the active journal unless an earlier attempt left one sealed, then
+     * writes main + sealed changes to a temp file and swaps it in. Writers only
+     * wait for the seal and the final swap, not for the rewrite.
+     */
+    private void compact() throws IOException {
+        compactionLock.lock();
+        try {
+            if (sealed == null) {
+                journalLock.lock();
+                try {
+                    state.writeLock().lock();
+                    try {
+                        if (active.ops == 0) return;
+                        journal.close();
+                        Files.move(journalPath, sealedPath, StandardCopyOption.REPLACE_EXISTING);
+                        journal = openJournal();
+                        sealed = active;
+                        active = new Overlay();
+                    } finally {
+                        state.writeLock().unlock();
+                    }
+                } finally {
+                    journalLock.unlock();
+                }
+            }
+
+            // Only compaction and saveAll replace the main file, and both hold compactionLock
+            List<Overlay> layers = List.of(sealed);
+            Path tmp = CsvExpenseRepository.writeTemp(csvPath, writer -> {
+                writer.write(CsvExpenseRepository.HEADER);
+                writer.newLine();
+                Set<String> emitted = new HashSet<>();
+                IOException[] failure = new IOException[1];
+                main.forEach(e -> {
+                    if (failure[0] != null) return;
+                    Expense current = resolve(layers, e.getId(), e);
+                    if (current != e) emitted.add(e.getId());
+                    if (current == null) return;
+                    try {
+                        CsvExpenseRepository.writeRow(writer, current);
+                    } catch (IOException ex) {
+                        failure[0] = ex;
+                    }
+                });
+                if (failure[0] != null) throw failure[0];
+                for (Expense e : sealed.upserts.values()) {
+                    if (emitted.add(e.getId())) CsvExpenseRepository.writeRow(writer, e);
+                }
+                return true;
+            });
+
+            state.writeLock().lock();
+            try {
+                CsvExpenseRepository.commitTemp(tmp, csvPath);
+                Files.deleteIfExists(sealedPath);
+                sealed = null;
+                generation++;
+            } finally {
+                state.writeLock().unlock();
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    // ---- startup
+
+    private void recover() throws IOException {
+        Overlay fromSealed = replay(sealedPath);
+        Overlay fromJournal = replay(journalPath);
+        if (fromSealed == null && fromJournal == null) return;
+
+        // Fold both into one sealed layer; the later journal wins per id
+        Overlay merged = new Overlay();
+        for (Overlay o : Arrays.asList(fromSealed, fromJournal)) {
+            if (o == null) continue;
+            for (String id : o.deleted) merged.apply(Op.delete(id));
+            for (Expense e : o.upserts.values()) merged.apply(Op.upsert(UPDATE, e));
+        }
+        if (Files.exists(journalPath)) {
+            if (fromSealed == null) {
+                Files.move(journalPath, sealedPath, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                // The merged seal is durable before the journal goes; a crash in between replays both again
+                writeJournal(sealedPath, merged);
+                Files.delete(journalPath);
+            }
+        }
+        sealed = merged;
+        compact();
+    }
+
+    /** Committed ops in a journal file, or null if there is none. */
+    private static Overlay replay(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) == 0) return null;
+
+        Overlay overlay = new Overlay();
+        List<Op> batch = new ArrayList<>();
+        // InputStreamReader replaces a torn multi-byte char instead of failing
+        try (Reader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8))) {
+            CsvTokenizer tokenizer = new CsvTokenizer(reader);
+            while (tokenizer.next()) {
+                if (tokenizer.isBlankRecord()) continue;
+                try {
+                    String kind = tokenizer.field(0);
+                    if (kind.length() != 1) break;
+                    switch (kind.charAt(0)) {
+                        case INSERT, UPDATE -> batch.add(Op.upsert(kind.charAt(0), CsvExpenseRepository.toExpense(tokenizer, 1)));
+                        case DELETE -> batch.add(Op.delete(tokenizer.field(1)));
+                        case COMMIT -> {
+                            if (Integer.parseInt(tokenizer.field(1)) != batch.size()) return overlay;
+                            for (Op op : batch) overlay.apply(op);
+                            batch.clear();
+                        }
+                        default -> {
+                            return overlay;
+                        }
+                    }
+                } catch (RuntimeException torn) {
+                    // only the last, uncommitted batch can be cut short
+                    return overlay;
+                }
+            }
+        }
+        return overlay;
+    }
+
+    private static void writeJournal(Path path, Overlay overlay) throws IOException {
+        CsvExpenseRepository.writeAtomically(path, writer -> {
+            int count = 0;
+            for (String id : overlay.deleted) {
+                writer.write(DELETE + "," + quote(id) + System.lineSeparator());
+                count++;
+            }
+            for (Expense e : overlay.upserts.values()) {
+                writer.write(UPDATE);
+                writer.write(',');
+                CsvExpenseRepository.writeRow(writer, e);
+                count++;
+            }
+            writer.write(COMMIT + "," + count + System.lineSeparator());
+            return true;
+        });
+    }
+
+    private FileChannel openJournal() throws IOException {
+        Path dir = csvPath.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        return FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    // ---- overlay lookups
+
+    /**
+     * The journal layers as of now, oldest first. The sealed layer is never
+     * changed again and the active one is copied, so they can be read without
+     * the lock; should a compaction fold the sealed layer into the main file
+     * meanwhile, applying it again on top is harmless.
+     */
+    private List<Overlay> snapshot() {
+        state.readLock().lock();
+        try {
+            Overlay current = active.copy();
+            return sealed == null ? List.of(current) : List.of(sealed, current);
+        } finally {
+            state.readLock().unlock();
+        }
+    }
+
+    /** The newest journaled state of id, if known (expense is null once deleted), and the main file generation. */
+    private record Lookup(boolean known, Expense expense, long generation) {}
+
+    private Lookup lookup(String id) {
+        state.readLock().lock();
+        try {
+            List<Overlay> layers = sealed == null ? List.of(active) : List.of(sealed, active);
+            for (int i = layers.size() - 1; i >= 0; i--) {
+                Overlay layer = layers.get(i);
+                Expense e = layer.upserts.get(id);
+                if (e != null || layer.deleted.contains(id)) return new Lookup(true, e, generation);
+            }
+            return new Lookup(false, null, generation);
+        } finally {
+            state.readLock().unlock();
+        }
+    }
+
+    /** Ids whose main file row, if any, the journal has replaced or deleted. */
+    private static Set<String> changed(List<Overlay> layers) {
+        Set<String> changed = new HashSet<>();
+        for (Overlay layer : layers) {
+            changed.addAll(layer.deleted);
+            changed.addAll(layer.upserts.keySet());
+        }
+        return changed;
+    }
+
+    /** base with the newest journaled change to id applied; null if deleted. */
+    private static Expense resolve(List<Overlay> layers, String id, Expense base) {
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            Overlay layer = layers.get(i);
+            Expense e = layer.upserts.get(id);
+            if (e != null) return e;
+            if (layer.deleted.contains(id)) return null;
+        }
+        return base;
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,404 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.FieldCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streams the rows of any ledger that match a filter out as CSV (the
+ * id,date,amount,category,note layout the CSV ledger uses) or JSON Lines,
+ * optionally gzip-compressed.
+ *
+ * Compression works like pigz: rows are encoded on the calling thread into
+ * blocks of blockSize bytes, each block is deflated on a pool into a complete
+ * gzip member of its own, and the members are written in order. Concatenated
+ * members are one valid gzip file (RFC 1952), which gunzip and GZIPInputStream
+ * read as a whole; each member restarts the dictionary, which costs well under
+ * 1% of the ratio at the default block size. At most two blocks per thread are
+ * in flight, each with its own Deflater and direct output buffer, so memory
+ * depends on the block size and parallelism, not on the size of the ledger.
+ * Rows come from the source's forEach, which every backend streams.
+ */
+public final class LedgerExporter {
+
+    public enum Format { CSV, JSONL }
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 18;
+
+    // magic, deflate, no flags, no mtime, no extra flags, OS unknown
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte[] CSV_HEADER =
+            (CsvExpenseRepository.HEADER + System.lineSeparator()).getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    public record ExportReport(long rows, long bytesIn, long bytesOut, Duration elapsed) {
+        @Override
+        public String toString() {
+            return String.format("Exported %d rows, %d bytes written as %d (%.1f%%) in %.2fs",
+                    rows, bytesIn, bytesOut, bytesIn == 0 ? 100.0 : bytesOut * 100.0 / bytesIn,
+                    elapsed.toNanos() / 1e9);
+        }
+    }
+
+    private final ExpenseRepository source;
+    private final int parallelism;
+    private final int blockSize;
+
+    public LedgerExporter(ExpenseRepository source) {
+        this(source, Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_SIZE);
+    }
+
+    public LedgerExporter(ExpenseRepository source, int parallelism, int blockSize) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be >= 1");
+        if (blockSize < 1) throw new IllegalArgumentException("blockSize must be >= 1");
+        this.source = source;
+        this.parallelism = parallelism;
+        this.blockSize = blockSize;
+    }
+
+    /** Format and compression follow the extension: .csv or .jsonl, plus .gz to compress. */
+    public ExportReport export(ExpenseFilter filter, Path target) throws IOException {
+        String name = target.getFileName().toString();
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) name = name.substring(0, name.length() - 3);
+        Format format;
+        if (name.endsWith(".csv")) format = Format.CSV;
+        else if (name.endsWith(".jsonl")) format = Format.JSONL;
+        else throw new IllegalArgumentException("Unknown export format: " + target);
+        return export(filter, format, gzip, target);
+    }
+
+    public ExportReport export(ExpenseFilter filter, Format format, boolean gzip, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            return export(filter, format, gzip, out);
+        }
+    }
+
+    /** Writes to out, which is left open. */
+    public ExportReport export(ExpenseFilter filter, Format format, boolean gzip, WritableByteChannel out)
+            throws IOException {
+        long started = System.nanoTime();
+        try (Pipeline pipeline = new Pipeline(out, gzip)) {
+            if (format == Format.CSV) pipeline.current.put(CSV_HEADER);
+            try {
+                source.forEach(e -> {
+                    if (!filter.matches(e)) return;
+                    if (format == Format.CSV) pipeline.current.csvRow(e);
+                    else pipeline.current.jsonRow(e);
+                    pipeline.rows++;
+                    if (pipeline.current.length >= blockSize) pipeline.submit();
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            pipeline.finish();
+            return new ExportReport(pipeline.rows, pipeline.bytesIn, pipeline.bytesOut,
+                    Duration.ofNanos(System.nanoTime() - started));
+        }
+    }
+
+    /** Encodes into the current block and writes finished blocks in order, compressing them on the pool. */
+    private final class Pipeline implements AutoCloseable {
+        private final WritableByteChannel out;
+        private final boolean gzip;
+        private final int window;
+        private final ForkJoinPool pool;
+        private final ArrayDeque<Future<Block>> inFlight = new ArrayDeque<>();
+        private final ArrayDeque<Block> free = new ArrayDeque<>();
+        private final List<Block> blocks = new ArrayList<>();
+        private Block current;
+        private long rows, bytesIn, bytesOut, members;
+
+        Pipeline(WritableByteChannel out, boolean gzip) {
+            this.out = out;
+            this.gzip = gzip;
+            this.window = parallelism * 2;
+            this.pool = gzip ? new ForkJoinPool(parallelism) : null;
+            this.current = newBlock();
+        }
+
+        /** Hands the current block off and starts a new one; called from inside forEach. */
+        void submit() {
+            try {
+                Block b = current;
+                bytesIn += b.length;
+                if (!gzip) {
+                    b.copyOut();
+                    write(b);
+                    return;
+                }
+                inFlight.add(pool.submit(() -> {
+                    b.compress();
+                    return b;
+                }));
+                members++;
+                if (inFlight.size() == window) drainOldest();
+                current = free.isEmpty() ? newBlock() : free.poll();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void finish() throws IOException {
+            // an empty member keeps an export with no rows a valid gzip file
+            if (current.length > 0 || (gzip && members == 0)) {
+                try {
+                    submit();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            while (!inFlight.isEmpty()) drainOldest();
+        }
+
+        private void drainOldest() throws IOException {
+            Block b = await(inFlight.poll());
+            write(b);
+            free.add(b);
+        }
+
+        private Block newBlock() {
+            Block b = new Block(blockSize, gzip);
+            blocks.add(b);
+            return b;
+        }
+
+        private void write(Block b) throws IOException {
+            ByteBuffer buf = b.out;
+            bytesOut += buf.remaining();
+            while (buf.hasRemaining()) out.write(buf);
+            b.length = 0;
+        }
+
+        private Block await(Future<Block> f) throws IOException {
+            try {
+                return f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Export interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw new IOException("Export failed: " + cause.getMessage(), cause);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (pool == null) return;
+            pool.shutdown();
+            try {
+                // Deflaters may only be ended once no task is using them
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Block b : blocks) b.deflater.end();
+        }
+    }
+
+    /** Encoded rows of one block and, once written, its bytes in a direct buffer. */
+    private static final class Block {
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final char[] scratch = new char[32];
+        private byte[] data;
+        private int length;
+        private ByteBuffer out;
+
+        Block(int blockSize, boolean gzip) {
+            this.data = new byte[blockSize + 4096];
+            this.deflater = gzip ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+            this.out = ByteBuffer.allocateDirect(gzip ? bound(data.length) : data.length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        void copyOut() {
+            if (out.capacity() < length) out = ByteBuffer.allocateDirect(data.length);
+            out.clear();
+            out.put(data, 0, length).flip();
+        }
+
+        /** Replaces out with one gzip member holding data[0..length). */
+        void compress() {
+            crc.reset();
+            crc.update(data, 0, length);
+            deflater.reset();
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            if (out.capacity() < bound(length)) {
+                out = ByteBuffer.allocateDirect(bound(length)).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            out.clear();
+            out.put(GZIP_HEADER);
+            while (!deflater.finished()) {
+                if (!out.hasRemaining()) grow();
+                deflater.deflate(out);
+            }
+            if (out.remaining() < 8) grow();
+            out.putInt((int) crc.getValue()).putInt(length).flip();
+        }
+
+        private void grow() {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(out.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            out.flip();
+            out = bigger.put(out);
+        }
+
+        /** zlib's deflateBound for raw deflate, plus the gzip header and trailer. */
+        private static int bound(int n) {
+            return n + (n >> 12) + (n >> 14) + (n >> 25) + 13 + GZIP_HEADER.length + 8;
+        }
+
+        void csvRow(Expense e) {
+            csvField(e.getId(), false);
+            ensure(64);
+            data[length++] = ',';
+            date(e);
+            data[length++] = ',';
+            amount(e);
+            data[length++] = ',';
+            ascii(e.getCategory().name());
+            data[length++] = ',';
+            // note is always quoted, as the CSV ledger writes it
+            csvField(e.getNote(), true);
+            put(LINE_SEPARATOR);
+        }
+
+        void jsonRow(Expense e) {
+            ascii("{\"id\":\"");
+            text(e.getId(), true);
+            ascii("\",\"date\":\"");
+            date(e);
+            ascii("\",\"amount\":");
+            amount(e);
+            ascii(",\"category\":\"");
+            ascii(e.getCategory().name());
+            ascii("\",\"note\":\"");
+            text(e.getNote(), true);
+            ascii("\"}\n");
+        }
+
+        void put(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, data, length, bytes.length);
+            length += bytes.length;
+        }
+
+        private void date(Expense e) {
+            int end = FieldCodec.formatDate(e.getDate(), scratch, 0);
+            if (end < 0) ascii(e.getDate().toString());
+            else chars(end);
+        }
+
+        private void amount(Expense e) {
+            int end = FieldCodec.formatAmount(e.getAmount(), scratch, 0);
+            if (end < 0) ascii(e.getAmount().toPlainString());
+            else chars(end);
+        }
+
+        private void chars(int end) {
+            ensure(end);
+            for (int i = 0; i < end; i++) data[length++] = (byte) scratch[i];
+        }
+
+        private void ascii(String s) {
+            ensure(s.length());
+            for (int i = 0; i < s.length(); i++) data[length++] = (byte) s.charAt(i);
+        }
+
+        private void csvField(String value, boolean alwaysQuote) {
+            boolean quote = alwaysQuote;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                text(value, false);
+                return;
+            }
+            ensure(1);
+            data[length++] = '"';
+            text(value, false);
+            ensure(1);
+            data[length++] = '"';
+        }
+
+        /**
+         * UTF-8 of s, with quotes doubled for CSV or escaped for JSON. Unpaired
+         * surrogates become '?', as String.getBytes writes them.
+         */
+        private void text(String s, boolean json) {
+            ensure(s.length() * 6);
+            byte[] d = data;
+            int n = length;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    if (json && (c == '"' || c == '\\')) {
+                        d[n++] = '\\';
+                    } else if (json && c < 0x20) {
+                        d[n++] = '\\';
+                        if (c == '\n') c = 'n';
+                        else if (c == '\r') c = 'r';
+                        else if (c == '\t') c = 't';
+                        else {
+                            d[n++] = 'u';
+                            d[n++] = '0';
+                            d[n++] = '0';
+                            d[n++] = HEX[c >> 4];
+                            c = (char) HEX[c & 0xF];
+                        }
+                    } else if (!json && c == '"') {
+                        d[n++] = '"';
+                    }
+                    d[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    d[n++] = (byte) (0xC0 | c >> 6);
+                    d[n++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                            && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, s.charAt(++i));
+                        d[n++] = (byte) (0xF0 | cp >> 18);
+                        d[n++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                        d[n++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                        d[n++] = (byte) (0x80 | cp & 0x3F);
+                    } else {
+                        d[n++] = '?';
+                    }
+                } else {
+                    d[n++] = (byte) (0xE0 | c >> 12);
+                    d[n++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    d[n++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            length = n;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.ray.finance.repo;
+
+/** Set of longs in one open-addressing table, without boxing. Not thread-safe. */
+final class LongHashSet {
+
+    private long[] table = new long[16];
+    private int size;
+    private boolean hasZero; // 0 marks a free slot, so it is kept aside
+
+    /** False if key was already present. */
+    boolean add(long key) {
+        if (key == 0) {
+            if (hasZero) return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (table[i] == key) return false;
+            if (table[i] == 0) {
+                table[i] = key;
+                if (++size * 2 > table.length) grow();
+                return true;
+            }
+        }
+    }
+
+    boolean contains(long key) {
+        if (key == 0) return hasZero;
+        int mask = table.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (table[i] == key) return true;
+            if (table[i] == 0) return false;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        int mask = table.length - 1;
+        for (long key : old) {
+            if (key == 0) continue;
+            int i = slot(key, mask);
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = key;
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -0,0 +1,101 @@
+package com.ray.finance.repo;
+
+import java.util.Arrays;
+
+/**
+ * Map from long keys to non-negative ints in one open-addressing table,
+ * without boxing. A value of -1 marks a free slot, so any key may be stored.
+ * Not thread-safe.
+ */
+final class LongIntMap {
+
+    static final int MISSING = -1;
+
+    private long[] keys = new long[16];
+    private int[] values = newValues(16);
+    private int size;
+
+    /** The value for key, or MISSING. */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (values[i] == MISSING) return MISSING;
+            if (keys[i] == key) return values[i];
+        }
+    }
+
+    /** Sets the value for key; value must be >= 0. */
+    void put(long key, int value) {
+        if (value < 0) throw new IllegalArgumentException("value must be >= 0");
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (values[i] == MISSING) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size * 2 > keys.length) grow();
+                return;
+            }
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+    }
+
+    /** Removes key and returns its value, or MISSING. */
+    int remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != MISSING && keys[i] != key) i = (i + 1) & mask;
+        int removed = values[i];
+        if (removed == MISSING) return MISSING;
+        size--;
+        // shift later entries of the probe run back so lookups never stop at the hole
+        for (int hole = i, j = (i + 1) & mask; ; j = (j + 1) & mask) {
+            if (values[j] == MISSING) {
+                values[hole] = MISSING;
+                return removed;
+            }
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(values, MISSING);
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = newValues(keys.length);
+        int mask = keys.length - 1;
+        for (int k = 0; k < oldKeys.length; k++) {
+            if (oldValues[k] == MISSING) continue;
+            int i = slot(oldKeys[k], mask);
+            while (values[i] != MISSING) i = (i + 1) & mask;
+            keys[i] = oldKeys[k];
+            values[i] = oldValues[k];
+        }
+    }
+
+    private static int[] newValues(int capacity) {
+        int[] values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        return values;
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -0,0 +1,200 @@
+package com.ray.finance.repo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * In-process inverted index over note text. Each document is an opaque long
+ * ref chosen by the caller (a byte offset, a row, a dictionary code). Terms
+ * live in a sorted map so a query token matches every term it is a prefix
+ * of; posting lists are primitive arrays in insertion order.
+ *
+ * A document matches when every query token matches one of its terms. Hits
+ * are ranked by BM25, and on equal score the later-added document wins.
+ * Documents are only ever appended; callers rebuild when they remove rows.
+ * Not thread-safe.
+ */
+final class NoteIndex {
+
+    record Hit(long ref, double score) {}
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final class Postings {
+        int[] docs = new int[4];
+        int[] freqs = new int[4];
+        int size;
+
+        void add(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+        }
+    }
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private long[] refs = new long[16];
+    private int[] lengths = new int[16];
+    private int docs;
+    private long totalLength;
+
+    int size() {
+        return docs;
+    }
+
+    void add(long ref, String text) {
+        if (docs == refs.length) {
+            refs = Arrays.copyOf(refs, docs * 2);
+            lengths = Arrays.copyOf(lengths, docs * 2);
+        }
+        List<String> tokens = tokenize(text);
+        int doc = docs++;
+        refs[doc] = ref;
+        lengths[doc] = tokens.size();
+        totalLength += tokens.size();
+
+        tokens.sort(null);
+        for (int i = 0; i < tokens.size(); ) {
+            int j = i;
+            while (j < tokens.size() && tokens.get(j).equals(tokens.get(i))) j++;
+            terms.computeIfAbsent(tokens.get(i), t -> new Postings()).add(doc, j - i);
+            i = j;
+        }
+    }
+
+    /** The best offset + limit hits, best first, with the first offset dropped. */
+    List<Hit> search(String query, int offset, int limit) {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must be >= 0");
+        int keep = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        List<String> tokens = distinct(tokenize(query));
+        if (tokens.isEmpty() || keep == 0 || docs == 0) return new ArrayList<>();
+
+        // Per token: the docs containing a term it prefixes, with summed frequencies
+        long[][] matches = new long[tokens.size()][];
+        for (int t = 0; t < tokens.size(); t++) {
+            matches[t] = union(terms.subMap(tokens.get(t), tokens.get(t) + Character.MAX_VALUE));
+            if (matches[t].length == 0) return new ArrayList<>();
+        }
+        Arrays.sort(matches, (a, b) -> Integer.compare(a.length, b.length));
+
+        double[] idf = new double[matches.length];
+        for (int t = 0; t < matches.length; t++) {
+            double df = matches[t].length;
+            idf[t] = Math.log(1 + (docs - df + 0.5) / (df + 0.5));
+        }
+        double avgLength = Math.max(1.0, (double) totalLength / docs);
+
+        HitOrder order = new HitOrder();
+        PriorityQueue<Hit> top = new PriorityQueue<>(Math.min(keep, 1024), order.reversed());
+        int[] cursor = new int[matches.length];
+        for (long first : matches[0]) {
+            int doc = doc(first);
+            double score = bm25(freq(first), idf[0], lengths[doc], avgLength);
+            boolean all = true;
+            for (int t = 1; t < matches.length && all; t++) {
+                long[] m = matches[t];
+                int c = cursor[t];
+                while (c < m.length && doc(m[c]) < doc) c++;
+                cursor[t] = c;
+                if (c == m.length || doc(m[c]) != doc) all = false;
+                else score += bm25(freq(m[c]), idf[t], lengths[doc], avgLength);
+            }
+            if (!all) continue;
+            if (top.size() < keep) {
+                top.add(new Hit(refs[doc], score));
+            } else if (order.compare(score, refs[doc], top.peek()) < 0) {
+                top.poll();
+                top.add(new Hit(refs[doc], score));
+            }
+        }
+        List<Hit> sorted = new ArrayList<>(top);
+        sorted.sort(order);
+        return offset >= sorted.size() ? new ArrayList<>() : new ArrayList<>(sorted.subList(offset, sorted.size()));
+    }
+
+    /** Lower-cased runs of letters and digits. */
+    static List<String> tokenize(String text) {
+        List<String> out = new ArrayList<>();
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            while (i < n && !Character.isLetterOrDigit(text.codePointAt(i))) i += Character.charCount(text.codePointAt(i));
+            int start = i;
+            while (i < n && Character.isLetterOrDigit(text.codePointAt(i))) i += Character.charCount(text.codePointAt(i));
+            if (i > start) out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        }
+        return out;
+    }
+
+    private static List<String> distinct(List<String> tokens) {
+        return new ArrayList<>(new LinkedHashSet<>(tokens));
+    }
+
+    private static double bm25(int freq, double idf, int length, double avgLength) {
+        return idf * freq * (K1 + 1) / (freq + K1 * (1 - B + B * length / avgLength));
+    }
+
+    /** Doc-ordered (doc << 32 | freq) entries of all the postings, merged per doc. */
+    private static long[] union(SortedMap<String, Postings> matching) {
+        if (matching.size() == 1) {
+            Postings p = matching.values().iterator().next();
+            long[] out = new long[p.size];
+            for (int i = 0; i < p.size; i++) out[i] = pack(p.docs[i], p.freqs[i]);
+            return out;
+        }
+        int total = 0;
+        for (Postings p : matching.values()) total += p.size;
+        long[] all = new long[total];
+        int n = 0;
+        for (Postings p : matching.values()) {
+            for (int i = 0; i < p.size; i++) all[n++] = pack(p.docs[i], p.freqs[i]);
+        }
+        Arrays.sort(all);
+        int w = 0;
+        for (int r = 0; r < n; r++) {
+            if (w > 0 && doc(all[w - 1]) == doc(all[r])) {
+                all[w - 1] = pack(doc(all[r]), freq(all[w - 1]) + freq(all[r]));
+            } else {
+                all[w++] = all[r];
+            }
+        }
+        return Arrays.copyOf(all, w);
+    }
+
+    private static long pack(int doc, int freq) {
+        return ((long) doc << 32) | freq;
+    }
+
+    private static int doc(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int freq(long entry) {
+        return (int) entry;
+    }
+
+    /** Best score first, then the highest ref. */
+    private static final class HitOrder implements Comparator<Hit> {
+        @Override
+        public int compare(Hit a, Hit b) {
+            return compare(a.score(), a.ref(), b);
+        }
+
+        int compare(double score, long ref, Hit b) {
+            int byScore = Double.compare(b.score(), score);
+            return byScore != 0 ? byScore : Long.compare(b.ref(), ref);
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Ledger split into one SQLite file per year (or month) in a directory:
+ * expenses-2024.db, expenses-2025.db and so on. Each file is a full
+ * SqliteExpenseRepository, opened on first use, so scans, index maintenance
+ * and VACUUM only ever pay for one period.
+ *
+ * Date-bounded reads go only to the partitions overlapping the range. Reads
+ * that need several partitions run on them in parallel and merge the results
+ * in the order a single database would return them; query() walks partitions
+ * newest first and stops as soon as the page is full, so the usual "latest
+ * rows" page only touches the current period. Lookups by id ask every
+ * partition, since an id says nothing about the expense's date.
+ *
+ * Ids are unique across the whole ledger: inserts are checked against every
+ * partition and refused with an IOException if the id is already stored.
+ *
+ * Periods that are over can be sealed (sealBefore): the file is vacuumed,
+ * renamed to expenses-2024.sealed.db, made read-only and from then on read
+ * without locking. Writes that would change a sealed partition fail with an
+ * IOException, and its monthly sums are cached for the lifetime of this
+ * object. unseal() reverses it, e.g. to correct an old expense.
+ *
+ * An update that moves an expense into another period inserts it there and
+ * then deletes the old row; the two steps are separate transactions, so the
+ * move is first written to expenses.move and finished when the directory is
+ * next opened if the process died in between. The first open of a directory
+ * written before ids were checked scans every partition once for ids stored
+ * twice and keeps one copy: the sealed one if there is one, else the newest.
+ * sealBefore() and unseal() must not run concurrently with other calls.
+ */
+public final class PartitionedSqliteExpenseRepository implements ExpenseRepository {
+
+    public enum Granularity {
+        YEAR, MONTH;
+
+        LocalDate first(LocalDate date) {
+            return this == YEAR ? date.withDayOfYear(1) : date.withDayOfMonth(1);
+        }
+
+        LocalDate last(LocalDate first) {
+            return this == YEAR ? first.plusYears(1).minusDays(1) : first.plusMonths(1).minusDays(1);
+        }
+
+        String key(LocalDate first) {
+            return this == YEAR ? Integer.toString(first.getYear()) : YearMonth.from(first).toString();
+        }
+
+        LocalDate parse(String key) {
+            return this == YEAR ? LocalDate.of(Integer.parseInt(key), 1, 1) : YearMonth.parse(key).atDay(1);
+        }
+    }
+
+    private static final String PREFIX = "expenses-";
+    private static final String SUFFIX = ".db";
+    private static final String SEALED_SUFFIX = ".sealed.db";
+    private static final String MOVE_JOURNAL = "expenses.move";
+    private static final String IDS_CHECKED = "expenses.ids-checked";
+    private static final System.Logger LOG = System.getLogger(PartitionedSqliteExpenseRepository.class.getName());
+
+    @FunctionalInterface
+    private interface PartitionWork<T> {
+        T run(Partition partition) throws IOException;
+    }
+
+    private record Located(Partition partition, Expense expense) {}
+
+    private final class Partition {
+        final LocalDate first;
+        final LocalDate last;
+        volatile boolean sealed;
+        private volatile SqliteExpenseRepository repo;
+
+        Partition(LocalDate first, boolean sealed) {
+            this.first = first;
+            this.last = granularity.last(first);
+            this.sealed = sealed;
+        }
+
+        SqliteExpenseRepository repo() {
+            SqliteExpenseRepository r = repo;
+            if (r == null) {
+                synchronized (this) {
+                    r = repo;
+                    if (r == null) {
+                        r = sealed
+                                ? SqliteExpenseRepository.openSealed(path(true), SqliteConnectionPool.DEFAULT_READERS)
+                                : new SqliteExpenseRepository(path(false));
+                        repo = r;
+                    }
+                }
+            }
+            return r;
+        }
+
+        Path path(boolean sealedFile) {
+            return dir.resolve(PREFIX + granularity.key(first) + (sealedFile ? SEALED_SUFFIX : SUFFIX));
+        }
+
+        SqliteExpenseRepository writable() throws IOException {
+            if (sealed) throw new IOException("Partition " + granularity.key(first) + " is sealed read-only");
+            return repo();
+        }
+
+        synchronized void close() {
+            if (repo != null) repo.close();
+            repo = null;
+        }
+    }
+
+    private final Path dir;
+    private final Granularity granularity;
+    private final ForkJoinPool pool;
+    private final ConcurrentSkipListMap<LocalDate, Partition> partitions = new ConcurrentSkipListMap<>();
+    private final Map<YearMonth, Map<Category, BigDecimal>> sealedSums = new ConcurrentHashMap<>();
+    // bumped whenever a partition is added, sealed, unsealed or dropped
+    private final AtomicLong layout = new AtomicLong();
+    // held by writes that add ids, so two of them cannot both find an id free
+    private final Object writeLock = new Object();
+
+    public PartitionedSqliteExpenseRepository(Path dir) throws IOException {
+        this(dir, Granularity.YEAR);
+    }
+
+    public PartitionedSqliteExpenseRepository(Path dir, Granularity granularity) throws IOException {
+        this(dir, granularity, ForkJoinPool.commonPool());
+    }
+
+    public PartitionedSqliteExpenseRepository(Path dir, Granularity granularity, ForkJoinPool pool) throws IOException {
+        this.dir = dir;
+        this.granularity = granularity;
+        this.pool = pool;
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                boolean sealed = name.endsWith(SEALED_SUFFIX);
+                String key = name.substring(PREFIX.length(), name.length() - (sealed ? SEALED_SUFFIX : SUFFIX).length());
+                LocalDate first;
+                try {
+                    first = granularity.parse(key);
+                } catch (DateTimeException | NumberFormatException e) {
+                    throw new IOException("Not a " + granularity + " partition: " + file, e);
+                }
+                if (partitions.put(first, new Partition(first, sealed)) != null) {
+                    throw new IOException("Partition " + key + " is both sealed and unsealed in " + dir);
+                }
+            }
+        }
+        finishMove();
+        if (!Files.exists(dir.resolve(IDS_CHECKED))) {
+            repairDuplicateIds();
+            Files.createFile(dir.resolve(IDS_CHECKED));
+        }
+    }
+
+    /** Completes a move between partitions that was cut off after the row was inserted in its new one. */
+    private void finishMove() throws IOException {
+        Path journal = dir.resolve(MOVE_JOURNAL);
+        if (!Files.exists(journal)) return;
+        List<String> move = Files.readAllLines(journal, StandardCharsets.UTF_8);
+        if (move.size() == 3) {
+            String id = move.get(0);
+            Partition from = partitions.get(granularity.parse(move.get(1)));
+            Partition to = partitions.get(granularity.parse(move.get(2)));
+            if (from != null && to != null && !to.repo().existingIds(List.of(id)).isEmpty()) {
+                from.writable().delete(id);
+            }
+        }
+        Files.delete(journal);
+    }
+
+    /** Finds ids stored in more than one partition and deletes all but one copy of each. */
+    private void repairDuplicateIds() throws IOException {
+        List<Partition> parts = overlapping(null, null);
+        LongHashSet numeric = new LongHashSet();
+        Set<String> legacy = new HashSet<>();
+        Set<String> duplicates = new HashSet<>();
+        for (Partition p : parts) {
+            p.repo().forEachId(id -> {
+                if (!numeric.add(id)) duplicates.add(Long.toString(id));
+            }, id -> {
+                if (!legacy.add(id)) duplicates.add(id);
+            });
+        }
+        if (duplicates.isEmpty()) return;
+
+        List<List<String>> found = fanOut(parts, p -> p.repo().existingIds(duplicates));
+        for (String id : duplicates) {
+            List<Partition> holders = new ArrayList<>();
+            for (int i = 0; i < parts.size(); i++) {
+                if (found.get(i).contains(id)) holders.add(parts.get(i));
+            }
+            // a sealed copy cannot be deleted; otherwise the newest period wins
+            List<Partition> sealed = holders.stream().filter(p -> p.sealed).toList();
+            Partition keep = sealed.isEmpty() ? holders.get(0) : sealed.get(0);
+            if (sealed.size() > 1) {
+                LOG.log(System.Logger.Level.WARNING, "Expense {0} is stored in {1} sealed partitions", id, sealed.size());
+            }
+            for (Partition p : holders) {
+                if (p == keep || p.sealed) continue;
+                LOG.log(System.Logger.Level.WARNING, "Expense {0} is stored in {1} and {2}; deleting the copy in {2}",
+                        id, granularity.key(keep.first), granularity.key(p.first));
+                p.repo().delete(id);
+            }
+        }
+    }
+
+    // ---- sealing
+
+    /** Seals every partition whose period ends before date; returns how many were sealed. */
+    public int sealBefore(LocalDate date) throws IOException {
+        int sealed = 0;
+        for (Partition p : partitions.headMap(date).values()) {
+            if (p.sealed || !p.last.isBefore(date)) continue;
+            p.close();
+            if (!Files.exists(p.path(false))) {
+                partitions.remove(p.first);
+                layout.incrementAndGet(); // created by a failed write, never stored anything
+                continue;
+            }
+            SqliteExpenseRepository.seal(p.path(false), p.path(true));
+            p.sealed = true;
+            sealed++;
+        }
+        layout.incrementAndGet();
+        return sealed;
+    }
+
+    /** Makes the partition holding day writable again; false if it was not sealed. */
+    public boolean unseal(LocalDate day) throws IOException {
+        Partition p = partitions.get(granularity.first(day));
+        if (p == null || !p.sealed) return false;
+        p.close();
+        SqliteExpenseRepository.unseal(p.path(true), p.path(false));
+        p.sealed = false;
+        layout.incrementAndGet();
+        sealedSums.keySet().removeIf(m -> !m.atDay(1).isBefore(p.first) && !m.atDay(1).isAfter(p.last));
+        return true;
+    }
+
+    public boolean isSealed(LocalDate day) {
+        Partition p = partitions.get(granularity.first(day));
+        return p != null && p.sealed;
+    }
+
+    /** Duplicate detection for imports, kept in sidecar files in the partition directory. */
+    public DuplicateIndex duplicateIndex() throws IOException {
+        return DuplicateIndex.forLedger(dir.resolve("expenses"));
+    }
+
+    // ---- reads
+
+    @Override
+    public List<Expense> findAll() throws IOException {
+        List<Expense> out = new ArrayList<>();
+        for (List<Expense> part : fanOut(overlapping(null, null), p -> p.repo().findAll())) out.addAll(part);
+        return out;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Expense> action) throws IOException {
+        for (Partition p : overlapping(null, null)) p.repo().forEach(action);
+    }
+
+    @Override
+    public Optional<Expense> findById(String id) throws IOException {
+        Located found = locate(id);
+        return found == null ? Optional.empty() : Optional.of(found.expense());
+    }
+
+    @Override
+    public List<Expense> findByDateRange(LocalDate from, LocalDate to) throws IOException {
+        List<Expense> out = new ArrayList<>();
+        for (List<Expense> part : fanOut(overlapping(from, to), p -> p.repo().findByDateRange(from, to))) out.addAll(part);
+        return out;
+    }
+
+    @Override
+    public int count(ExpenseFilter filter) throws IOException {
+        int n = 0;
+        for (int part : fanOut(overlapping(filter.from(), filter.to()), p -> p.repo().count(filter))) n += part;
+        return n;
+    }
+
+    @Override
+    public List<Expense> findPage(ExpenseFilter filter, ExpenseSort sort, int offset, int limit) throws IOException {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must be >= 0");
+        List<Partition> parts = overlapping(filter.from(), filter.to());
+        if (parts.size() == 1) return parts.get(0).repo().findPage(filter, sort, offset, limit);
+        int keep = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        return merge(fanOut(parts, p -> p.repo().findPage(filter, sort, 0, keep)), sort.comparator(), offset, limit);
+    }
+
+    @Override
+    public List<Expense> query(ExpenseQuery query) throws IOException {
+        LocalDate to = query.filter().to();
+        if (query.after() != null && (to == null || query.after().date().isBefore(to))) to = query.after().date();
+        List<Expense> out = new ArrayList<>();
+        for (Partition p : overlapping(query.filter().from(), to)) {
+            int remaining = query.limit() - out.size();
+            if (remaining == 0) break;
+            out.addAll(p.repo().query(new ExpenseQuery(query.filter(), remaining, query.after())));
+        }
+        return out;
+    }
+
+    /**
+     * Each partition ranks with its own FTS index, whose scores are not
+     * comparable across files, so the best offset + limit of every partition
+     * are ranked again together; newer rows win ties.
+     */
+    @Override
+    public List<Expense> search(String text, int offset, int limit) throws IOException {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must be >= 0");
+        List<Partition> parts = overlapping(null, null);
+        if (parts.size() == 1) return parts.get(0).repo().search(text, offset, limit);
+        if (limit == 0) return new ArrayList<>();
+        int keep = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        List<List<Expense>> found = fanOut(parts, p -> p.repo().search(text, 0, keep));
+        List<Expense> candidates = new ArrayList<>();
+        NoteIndex index = new NoteIndex();
+        for (int i = found.size() - 1; i >= 0; i--) {
+            for (Expense e : found.get(i)) {
+                index.add(candidates.size(), e.getNote());
+                candidates.add(e);
+            }
+        }
+        List<Expense> out = new ArrayList<>();
+        for (NoteIndex.Hit hit : index.search(text, offset, limit)) out.add(candidates.get((int) hit.ref()));
+        return out;
+    }
+
+    @Override
+    public BigDecimal sumByMonth(YearMonth month) throws IOException {
+        Partition p = partitions.get(granularity.first(month.atDay(1)));
+        if (p == null) return BigDecimal.ZERO;
+        if (!p.sealed) return p.repo().sumByMonth(month);
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal amount : sealedSums(p, month).values()) total = total.add(amount);
+        return total;
+    }
+
+    @Override
+    public Map<Category, BigDecimal> sumByMonthAndCategory(YearMonth month) throws IOException {
+        Partition p = partitions.get(granularity.first(month.atDay(1)));
+        if (p == null) return new EnumMap<>(Category.class);
+        if (!p.sealed) return p.repo().sumByMonthAndCategory(month);
+        Map<Category, BigDecimal> sums = sealedSums(p, month);
+        return sums.isEmpty() ? new EnumMap<>(Category.class) : new EnumMap<>(sums);
+    }
+
+    private Map<Category, BigDecimal> sealedSums(Partition p, YearMonth month) throws IOException {
+        Map<Category, BigDecimal> sums = sealedSums.get(month);
+        if (sums == null) {
+            sums = Collections.unmodifiableMap(p.repo().sumByMonthAndCategory(month));
+            sealedSums.putIfAbsent(month, sums);
+        }
+        return sums;
+    }
+
+    /**
+     * Changes whenever an open, unsealed partition is changed by another
+     * connection or a partition is added, sealed or unsealed. Sealed
+     * partitions never change, and partitions not opened yet have served
+     * nothing a caller could have cached, so neither is opened here.
+     */
+    @Override
+    public long dataVersion() throws IOException {
+        long version = layout.get();
+        for (Partition p : partitions.values()) {
+            SqliteExpenseRepository r = p.repo;
+            if (!p.sealed && r != null) version = version * 31 + r.dataVersion();
+        }
+        return version;
+    }
+
+    // ---- writes
+
+    /** Replaces the whole ledger, so it is refused once any partition is sealed. */
+    @Override
+    public void saveAll(List<Expense> expenses) throws IOException {
+        for (Partition p : partitions.values()) p.writable();
+        synchronized (writeLock) {
+            rejectRepeatedIds(expenses);
+            Map<Partition, List<Expense>> groups = group(expenses);
+            for (Partition p : partitions.values()) groups.putIfAbsent(p, List.of());
+            fanOut(new ArrayList<>(groups.keySet()), p -> {
+                p.repo().saveAll(groups.get(p));
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void insert(Expense expense) throws IOException {
+        synchronized (writeLock) {
+            rejectExistingIds(List.of(expense));
+            partitionFor(expense.getDate()).writable().insert(expense);
+        }
+    }
+
+    @Override
+    public void insertAll(List<Expense> expenses) throws IOException {
+        synchronized (writeLock) {
+            rejectExistingIds(expenses);
+            Map<Partition, List<Expense>> groups = group(expenses);
+            for (Partition p : groups.keySet()) p.writable();
+            fanOut(new ArrayList<>(groups.keySet()), p -> {
+                p.repo().insertAll(groups.get(p));
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public boolean update(Expense expense) throws IOException {
+        // Most updates keep the expense in its period
+        Partition target = partitions.get(granularity.first(expense.getDate()));
+        if (target != null && !target.sealed && target.repo().update(expense)) return true;
+
+        synchronized (writeLock) {
+            Located old = locate(expense.getId());
+            if (old == null) return false;
+            Partition from = old.partition();
+            from.writable();
+            Partition to = partitionFor(expense.getDate());
+            if (to == from) return from.repo().update(expense); // moved back by a racing update
+            to.writable();
+            Path journal = dir.resolve(MOVE_JOURNAL);
+            Files.write(journal, List.of(expense.getId(), granularity.key(from.first), granularity.key(to.first)),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+            to.repo().insert(expense);
+            from.repo().delete(expense.getId());
+            Files.delete(journal);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean delete(String id) throws IOException {
+        Located old = locate(id);
+        return old != null && old.partition().writable().delete(id);
+    }
+
+    @Override
+    public void close() {
+        for (Partition p : partitions.values()) p.close();
+    }
+
+    // ---- partitions
+
+    private Partition partitionFor(LocalDate date) {
+        return partitions.computeIfAbsent(granularity.first(date), first -> {
+            layout.incrementAndGet();
+            return new Partition(first, false);
+        });
+    }
+
+    /** Partitions overlapping [from, to], newest first; null bounds are open. */
+    private List<Partition> overlapping(LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) return List.of();
+        NavigableMap<LocalDate, Partition> range = partitions;
+        if (from != null) range = range.tailMap(granularity.first(from), true);
+        if (to != null) range = range.headMap(to, true);
+        return new ArrayList<>(range.descendingMap().values());
+    }
+
+    private Map<Partition, List<Expense>> group(List<Expense> expenses) {
+        Map<Partition, List<Expense>> groups = new LinkedHashMap<>();
+        for (Expense e : expenses) groups.computeIfAbsent(partitionFor(e.getDate()), p -> new ArrayList<>()).add(e);
+        return groups;
+    }
+
+    private static void rejectRepeatedIds(List<Expense> expenses) throws IOException {
+        Set<String> ids = new HashSet<>();
+        for (Expense e : expenses) {
+            if (!ids.add(e.getId())) throw new IOException("Expense id " + e.getId() + " appears twice");
+        }
+    }
+
+    /** Fails if an id repeats within expenses or is stored in any partition; caller holds writeLock. */
+    private void rejectExistingIds(List<Expense> expenses) throws IOException {
+        rejectRepeatedIds(expenses);
+        List<String> ids = new ArrayList<>(expenses.size());
+        for (Expense e : expenses) ids.add(e.getId());
+        for (List<String> found : fanOut(overlapping(null, null), p -> p.repo().existingIds(ids))) {
+            if (!found.isEmpty()) throw new IOException("Expense id " + found.get(0) + " already exists");
+        }
+    }
+
+    private Located locate(String id) throws IOException {
+        List<Partition> parts = overlapping(null, null);
+        List<Optional<Expense>> found = fanOut(parts, p -> p.repo().findById(id));
+        for (int i = 0; i < parts.size(); i++) {
+            if (found.get(i).isPresent()) return new Located(parts.get(i), found.get(i).get());
+        }
+        return null;
+    }
+
+    /** Runs work on each partition, in parallel when there are several; results in the same order. */
+    private <T> List<T> fanOut(List<Partition> parts, PartitionWork<T> work) throws IOException {
+        if (parts.size() == 1) return Collections.singletonList(work.run(parts.get(0)));
+        List<Callable<T>> tasks = new ArrayList<>(parts.size());
+        for (Partition p : parts) tasks.add(() -> work.run(p));
+        List<T> out = new ArrayList<>(parts.size());
+        try {
+            for (Future<T> f : pool.invokeAll(tasks)) out.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Partitioned query interrupted", e);
+        } catch (ExecutionException e) {
+            // ForkJoinPool wraps checked exceptions from a Callable in RuntimeExceptions
+            for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+                if (t instanceof IOException io) throw io;
+            }
+            throw new IOException("Partitioned query failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        return out;
+    }
+
+    /** K-way merge of lists each sorted by order, keeping each list's own order among equal rows. */
+    private static List<Expense> merge(List<List<Expense>> lists, Comparator<Expense> order, int offset, int limit) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+            int c = order.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1]));
+            return c != 0 ? c : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) heads.add(new int[] {i, 0});
+        }
+        List<Expense> out = new ArrayList<>(Math.min(limit, 1024));
+        for (int taken = 0; taken < (long) offset + limit && !heads.isEmpty(); taken++) {
+            int[] head = heads.poll();
+            List<Expense> list = lists.get(head[0]);
+            if (taken >= offset) out.add(list.get(head[1]));
+            if (++head[1] < list.size()) heads.add(head);
+        }
+        return out;
+    }
+}
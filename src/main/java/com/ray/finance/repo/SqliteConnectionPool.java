@@ -0,0 +1,212 @@
+package com.ray.finance.repo;
+
+import org.sqlite.SQLiteConfig;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Long-lived connections for one SQLite file: a single writer (SQLite allows only
+ * one at a time anyway) and a small pool of read-only connections. In WAL mode
+ * readers never block the writer. Each connection keeps its prepared statements
+ * so hot queries are compiled once. One more read-only connection is kept
+ * aside for dataVersion(), so polling for changes never waits on a write.
+ *
+ * An immutable pool is for files that no process will change again: it has no
+ * writer, and readers open the file with immutable=1, which skips locking and
+ * change detection entirely.
+ */
+final class SqliteConnectionPool implements AutoCloseable {
+
+    static final int DEFAULT_READERS = 4;
+
+    // negative cache_size is in KiB
+    private static final int CACHE_SIZE_KIB = -16_000;
+    private static final long MMAP_SIZE = 256L * 1024 * 1024;
+    private static final int BUSY_TIMEOUT_MS = 5_000;
+
+    @FunctionalInterface
+    interface SqlWork<T> {
+        T run(PooledConnection conn) throws SQLException;
+    }
+
+    static final class PooledConnection {
+        private final Connection conn;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private PooledConnection(Connection conn) {
+            this.conn = conn;
+        }
+
+        Connection connection() { return conn; }
+
+        /** Returns a cached statement; callers must not close it. */
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null) {
+                ps = conn.prepareStatement(sql);
+                statements.put(sql, ps);
+            } else {
+                ps.clearParameters();
+            }
+            return ps;
+        }
+
+        private void close() {
+            for (PreparedStatement ps : statements.values()) {
+                try { ps.close(); } catch (SQLException ignored) { }
+            }
+            statements.clear();
+            try { conn.close(); } catch (SQLException ignored) { }
+        }
+    }
+
+    private final String jdbcUrl;
+    private final boolean immutable;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Semaphore readPermits;
+    private final ConcurrentLinkedQueue<PooledConnection> idleReaders = new ConcurrentLinkedQueue<>();
+    private PooledConnection writer;
+    private volatile boolean walReady; // the writer has created the file and switched it to WAL
+    private PooledConnection watcher; // guarded by this; used only by dataVersion()
+    private volatile boolean closed;
+
+    SqliteConnectionPool(String jdbcUrl, int readers) {
+        this(jdbcUrl, readers, false);
+    }
+
+    private SqliteConnectionPool(String jdbcUrl, int readers, boolean immutable) {
+        if (readers < 1) throw new IllegalArgumentException("readers must be >= 1");
+        this.jdbcUrl = jdbcUrl;
+        this.immutable = immutable;
+        this.readPermits = new Semaphore(readers);
+    }
+
+    /** Read-only pool over a file that must not change while it is open. */
+    static SqliteConnectionPool immutable(Path file, int readers) {
+        return new SqliteConnectionPool("jdbc:sqlite:" + file.toUri() + "?immutable=1", readers, true);
+    }
+
+    /** Runs work inside a transaction on the writer connection. */
+    <T> T write(SqlWork<T> work) throws SQLException {
+        writeLock.lock();
+        try {
+            PooledConnection conn = writer();
+            try {
+                T result = work.run(conn);
+                conn.conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.conn.rollback();
+                throw e;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    <T> T read(SqlWork<T> work) throws SQLException {
+        ensureOpen();
+        readPermits.acquireUninterruptibly();
+        PooledConnection conn = idleReaders.poll();
+        try {
+            if (conn == null) conn = openReader();
+            return work.run(conn);
+        } finally {
+            if (conn != null) release(conn);
+            readPermits.release();
+        }
+    }
+
+    /** Returns a reader to the pool, or closes it if the pool was closed while it was out. */
+    private void release(PooledConnection conn) {
+        if (closed) {
+            conn.close();
+            return;
+        }
+        idleReaders.offer(conn);
+        // close() may have drained the idle readers between the check and the offer
+        if (closed && idleReaders.remove(conn)) conn.close();
+    }
+
+    /**
+     * PRAGMA data_version on the connection kept for it: moves whenever any
+     * other connection, including this pool's writer, commits.
+     */
+    synchronized long dataVersion() throws SQLException {
+        ensureOpen();
+        if (watcher == null) watcher = openReader();
+        try (ResultSet rs = watcher.prepare("PRAGMA data_version").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+
+    private PooledConnection writer() throws SQLException {
+        ensureOpen();
+        if (immutable) throw new SQLException("database is sealed read-only");
+        if (writer == null) {
+            SQLiteConfig config = baseConfig();
+            config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+            Connection conn = DriverManager.getConnection(jdbcUrl, config.toProperties());
+            conn.setAutoCommit(false);
+            writer = new PooledConnection(conn);
+            walReady = true;
+        }
+        return writer;
+    }
+
+    private PooledConnection openReader() throws SQLException {
+        // The writer creates the file and switches it to WAL before any reader opens it
+        if (!immutable && !walReady) {
+            writeLock.lock();
+            try {
+                writer();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        SQLiteConfig config = baseConfig();
+        config.setReadOnly(true);
+        return new PooledConnection(DriverManager.getConnection(jdbcUrl, config.toProperties()));
+    }
+
+    private static SQLiteConfig baseConfig() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setCacheSize(CACHE_SIZE_KIB);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, Long.toString(MMAP_SIZE));
+        return config;
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) throw new SQLException("connection pool is closed");
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        writeLock.lock();
+        try {
+            if (writer != null) writer.close();
+            writer = null;
+        } finally {
+            writeLock.unlock();
+        }
+        synchronized (this) {
+            if (watcher != null) watcher.close();
+            watcher = null;
+        }
+        // readers still in use are closed as they are released
+        for (PooledConnection conn; (conn = idleReaders.poll()) != null; ) conn.close();
+    }
+}
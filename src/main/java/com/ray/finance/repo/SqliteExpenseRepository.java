@@ -2,67 +2,563 @@ package com.ray.finance.repo;
 
 import com.ray.finance.model.Category;
 import com.ray.finance.model.Expense;
+import com.ray.finance.model.IdGenerator;
+import com.ray.finance.model.Money;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
+/**
+ * Schema (user_version 4): date is stored as an epoch day and amount as integer
+ * cents, so range filters use the date indexes and sums happen inside SQLite.
+ * The id is the rowid (INTEGER PRIMARY KEY); generated ids increase with time,
+ * so inserts append to the end of the table's B-tree. Ids that are not
+ * canonical decimals, such as the 8-character ids of older versions, are kept
+ * in legacy_id and get negative rowids in the string order of their ids, so
+ * ordering by rowid is IdGenerator.ORDER (see legacyRowid). Databases with an
+ * older schema are migrated on open.
+ *
+ * Nothing touches the file until the first operation, which opens the
+ * connections and creates or migrates the schema; the constructor is cheap
+ * enough to call before a window is shown. Connections are then held open
+ * for the lifetime of the repository; call close() when done with it.
+ *
+ * Inserts from any number of threads are queued to one writer thread, which
+ * commits whatever has accumulated in a single transaction.
+ *
+ * A file that will not change again can be sealed: vacuumed, made read-only
+ * and opened with openSealed(), which reads it without any locking.
+ */
 public final class SqliteExpenseRepository implements ExpenseRepository {
 
-    private final String jdbcUrl;
+    static final int SCHEMA_VERSION = 4;
+
+    private static final System.Logger LOG = System.getLogger(SqliteExpenseRepository.class.getName());
+
+    private static final String COLUMNS = "coalesce(legacy_id, id), date, amount_cents, category, note";
+    private static final long FIRST_LEGACY_ROWID = Long.MIN_VALUE / 2;
+    private static final long LEGACY_ROWID_GAP = 1L << 32;
+    private static final int MAX_INSERT_BATCH = 1000;
+
+    private final Path dbPath;
+    private final SqliteConnectionPool pool;
+    private final boolean sealed;
+    private final GroupCommitter<Expense> inserts; // null when sealed
+    private final Object schemaLock = new Object();
+    private volatile boolean schemaReady;
 
     public SqliteExpenseRepository(Path dbPath) {
+        this(dbPath, SqliteConnectionPool.DEFAULT_READERS);
+    }
+
+    public SqliteExpenseRepository(Path dbPath, int readConnections) {
+        // Example: jdbc:sqlite:data/finance.db
+        this(dbPath, new SqliteConnectionPool("jdbc:sqlite:" + dbPath.toString(), readConnections), false);
+    }
+
+    private SqliteExpenseRepository(Path dbPath, SqliteConnectionPool pool, boolean sealed) {
+        if (!sealed) {
+            try {
+                Files.createDirectories(dbPath.getParent());
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to create DB directory: " + e.getMessage(), e);
+            }
+        }
+        this.dbPath = dbPath;
+        this.pool = pool;
+        this.sealed = sealed;
+        this.inserts = sealed ? null : new GroupCommitter<>("sqlite-writer", MAX_INSERT_BATCH, this::writeInserts);
+    }
+
+    /** Opens a file prepared by seal(). Reads skip all locking; every write fails. */
+    static SqliteExpenseRepository openSealed(Path dbPath, int readConnections) {
+        return new SqliteExpenseRepository(dbPath, SqliteConnectionPool.immutable(dbPath, readConnections), true);
+    }
+
+    /**
+     * Migrates the database at dbPath if needed, folds its WAL back into the
+     * main file, vacuums it one last time and moves it to sealedPath, which is
+     * made read-only. Nothing may have the file open.
+     */
+    static void seal(Path dbPath, Path sealedPath) throws IOException {
+        SqliteExpenseRepository repo = new SqliteExpenseRepository(dbPath, 1);
         try {
-            Files.createDirectories(dbPath.getParent());
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to create DB directory: " + e.getMessage(), e);
+            repo.db();
+        } catch (SQLException e) {
+            throw new IOException("DB write failed: " + e.getMessage(), e);
+        } finally {
+            repo.close();
         }
-        // Example: jdbc:sqlite:data/finance.db
-        this.jdbcUrl = "jdbc:sqlite:" + dbPath.toString();
-        initSchema();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+             Statement st = conn.createStatement()) {
+            st.execute("PRAGMA journal_mode = DELETE");
+            st.execute("VACUUM");
+        } catch (SQLException e) {
+            throw new IOException("DB write failed: " + e.getMessage(), e);
+        }
+        Files.move(dbPath, sealedPath, StandardCopyOption.ATOMIC_MOVE);
+        if (!sealedPath.toFile().setReadOnly()) throw new IOException("Could not make " + sealedPath + " read-only");
+    }
+
+    /** Undoes seal(): makes sealedPath writable again and moves it back to dbPath. */
+    static void unseal(Path sealedPath, Path dbPath) throws IOException {
+        if (!sealedPath.toFile().setWritable(true)) throw new IOException("Could not make " + sealedPath + " writable");
+        Files.move(sealedPath, dbPath, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** The pool, once the schema has been created or migrated by the first caller. */
+    private SqliteConnectionPool db() throws SQLException {
+        if (!schemaReady) {
+            synchronized (schemaLock) {
+                if (!schemaReady) {
+                    if (sealed) checkSealedSchema();
+                    else initSchema();
+                    schemaReady = true;
+                }
+            }
+        }
+        return pool;
+    }
+
+    private void initSchema() throws SQLException {
+        pool.write(pc -> {
+            Connection conn = pc.connection();
+            int version = userVersion(conn);
+            if (version < SCHEMA_VERSION && hasColumn(conn, "expenses", "amount")) {
+                migrate(pc, "SELECT id, date, amount, category, note FROM expenses ORDER BY id", rs ->
+                        // Converted in Java rather than with CAST so amounts keep exact decimal semantics
+                        new Expense(rs.getString(1), LocalDate.parse(rs.getString(2)),
+                                legacyAmount(rs.getString(1), rs.getString(3)),
+                                Category.fromString(rs.getString(4)), rs.getString(5)));
+            } else if (version < 3 && hasColumn(conn, "expenses", "amount_cents")) {
+                migrate(pc, "SELECT id, date, amount_cents, category, note FROM expenses ORDER BY id",
+                        SqliteExpenseRepository::readRow);
+            } else {
+                createTables(conn, "expenses");
+                // schema 3 numbered legacy ids in arrival order
+                if (version == 3) renumberLegacyRows(pc, "expenses");
+            }
+            try (Statement st = conn.createStatement()) {
+                // (date, id) serves keyset pages without a sort step; (date, category, amount_cents)
+                // covers filtered counts and sums without touching the table. Both lead with
+                // date, so the old single-column index is redundant.
+                st.execute("CREATE INDEX IF NOT EXISTS idx_expenses_date_id ON expenses(date, id)");
+                st.execute("CREATE INDEX IF NOT EXISTS idx_expenses_date_category ON expenses(date, category, amount_cents)");
+                st.execute("DROP INDEX IF EXISTS idx_expenses_date");
+                st.execute("CREATE TABLE IF NOT EXISTS import_fingerprints (fingerprint INTEGER PRIMARY KEY)");
+                st.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+            }
+            createSearchIndex(conn);
+            return null;
+        });
     }
 
-    private void initSchema() {
+    /**
+     * A sealed file cannot be migrated in place; it has to be unsealed first.
+     * Schema 3 reads the same unless legacy ids were added out of order.
+     */
+    private void checkSealedSchema() throws SQLException {
+        int version = pool.read(conn -> userVersion(conn.connection()));
+        if (version == 3 && pool.read(SqliteExpenseRepository::legacyRowsInOrder)) return;
+        if (version != SCHEMA_VERSION) {
+            throw new SQLException("sealed database " + dbPath + " has schema version " + version
+                    + ", expected " + SCHEMA_VERSION + "; unseal it to migrate");
+        }
+    }
+
+    /**
+     * PRAGMA data_version as seen by a read-only connection kept for it. It
+     * changes whenever another connection commits, this repository's own
+     * writes included, and never waits for a write in progress.
+     */
+    @Override
+    public long dataVersion() throws IOException {
+        if (sealed) return 0;
+        try {
+            return db().dataVersion();
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (inserts != null) inserts.close();
+        pool.close();
+    }
+
+    private static void createTables(Connection conn, String table) throws SQLException {
         String sql = """
-                CREATE TABLE IF NOT EXISTS expenses (
-                  id TEXT PRIMARY KEY,
-                  date TEXT NOT NULL,
-                  amount TEXT NOT NULL,
+                CREATE TABLE IF NOT EXISTS %s (
+                  id INTEGER PRIMARY KEY,
+                  legacy_id TEXT UNIQUE,
+                  date INTEGER NOT NULL,
+                  amount_cents INTEGER NOT NULL,
                   category TEXT NOT NULL,
                   note TEXT NOT NULL
                 );
-                """;
-        try (Connection conn = DriverManager.getConnection(jdbcUrl);
-             Statement st = conn.createStatement()) {
+                """.formatted(table);
+        try (Statement st = conn.createStatement()) {
             st.execute(sql);
-        } catch (SQLException e) {
-            throw new RuntimeException("Failed to init schema: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * FTS5 index over notes. It is an external-content table, so note text is
+     * not stored twice, and triggers keep it in step with every write.
+     */
+    private static void createSearchIndex(Connection conn) throws SQLException {
+        boolean existed = hasTable(conn, "expenses_fts");
+        try (Statement st = conn.createStatement()) {
+            // remove_diacritics 0 matches how NoteIndex tokenizes for the other backends
+            st.execute("""
+                    CREATE VIRTUAL TABLE IF NOT EXISTS expenses_fts USING fts5(
+                      note, content = 'expenses', content_rowid = 'rowid',
+                      tokenize = 'unicode61 remove_diacritics 0')""");
+            st.execute("""
+                    CREATE TRIGGER IF NOT EXISTS expenses_fts_insert AFTER INSERT ON expenses BEGIN
+                      INSERT INTO expenses_fts(rowid, note) VALUES (new.rowid, new.note);
+                    END""");
+            st.execute("""
+                    CREATE TRIGGER IF NOT EXISTS expenses_fts_delete AFTER DELETE ON expenses BEGIN
+                      INSERT INTO expenses_fts(expenses_fts, rowid, note) VALUES ('delete', old.rowid, old.note);
+                    END""");
+            st.execute("""
+                    CREATE TRIGGER IF NOT EXISTS expenses_fts_update AFTER UPDATE OF note ON expenses BEGIN
+                      INSERT INTO expenses_fts(expenses_fts, rowid, note) VALUES ('delete', old.rowid, old.note);
+                      INSERT INTO expenses_fts(rowid, note) VALUES (new.rowid, new.note);
+                    END""");
+            if (!existed) st.execute("INSERT INTO expenses_fts(expenses_fts) VALUES ('rebuild')");
+        }
+    }
+
+    private interface RowReader {
+        Expense read(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Copies the rows of an older schema into a new table and swaps it in. The
+     * note index is keyed by rowid, which changes, so it is dropped here and
+     * rebuilt by createSearchIndex.
+     */
+    private static void migrate(SqliteConnectionPool.PooledConnection pc, String select, RowReader reader)
+            throws SQLException {
+        Connection conn = pc.connection();
+        createTables(conn, "expenses_new");
+        List<Expense> rows = new ArrayList<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(select)) {
+            while (rs.next()) rows.add(reader.read(rs));
+        }
+        insertRows(pc, "expenses_new", rows);
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS expenses_fts");
+            st.execute("DROP TABLE expenses");
+            st.execute("ALTER TABLE expenses_new RENAME TO expenses");
+        }
+    }
+
+    /**
+     * A TEXT amount of the first schema, which did not check its scale. Cents
+     * cannot hold a fraction of a cent, so such an amount is rounded half-even
+     * and logged rather than failing the migration and with it every open.
+     */
+    private static BigDecimal legacyAmount(String id, String text) {
+        BigDecimal amount = new BigDecimal(text.trim());
+        if (amount.stripTrailingZeros().scale() <= Money.SCALE) return amount;
+        BigDecimal rounded = amount.setScale(Money.SCALE, RoundingMode.HALF_EVEN);
+        LOG.log(System.Logger.Level.WARNING, "Migrating expense {0}: amount {1} rounded to {2}", id, text, rounded);
+        return rounded;
+    }
+
+    private static int userVersion(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static boolean hasTable(Connection conn, String table) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM sqlite_master WHERE name = ?")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return true;
+            }
+            return false;
         }
     }
 
     @Override
     public List<Expense> findAll() throws IOException {
-        String sql = "SELECT id, date, amount, category, note FROM expenses ORDER BY date DESC";
-        List<Expense> out = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(jdbcUrl);
-             PreparedStatement ps = conn.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
+        String sql = "SELECT " + COLUMNS + " FROM expenses ORDER BY date DESC";
+        try {
+            return db().read(conn -> {
+                try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+                    return readRows(rs);
+                }
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
 
-            while (rs.next()) {
-                String id = rs.getString("id");
-                LocalDate date = LocalDate.parse(rs.getString("date"));
-                BigDecimal amount = new BigDecimal(rs.getString("amount"));
-                Category category = Category.fromString(rs.getString("category"));
-                String note = rs.getString("note");
-                out.add(new Expense(id, date, amount, category, note));
+    @Override
+    public void forEach(Consumer<? super Expense> action) throws IOException {
+        String sql = "SELECT " + COLUMNS + " FROM expenses ORDER BY date DESC";
+        try {
+            db().read(conn -> {
+                try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+                    while (rs.next()) action.accept(readRow(rs));
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<Expense> findById(String id) throws IOException {
+        String sql = "SELECT " + COLUMNS + " FROM expenses WHERE " + idColumn(id) + " = ?";
+        try {
+            return db().read(conn -> {
+                PreparedStatement ps = conn.prepare(sql);
+                bindId(ps, 1, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? Optional.of(readRow(rs)) : Optional.empty();
+                }
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
+
+    /** Those of ids that are stored here, looked up through the primary key and the legacy_id index. */
+    List<String> existingIds(Collection<String> ids) throws IOException {
+        List<Object> numeric = new ArrayList<>();
+        List<Object> legacy = new ArrayList<>();
+        for (String id : ids) {
+            long n = IdGenerator.numeric(id);
+            if (n >= 0) numeric.add(n);
+            else legacy.add(id);
+        }
+        try {
+            return db().read(conn -> {
+                List<String> found = new ArrayList<>();
+                findIn(conn, "id", numeric, found);
+                findIn(conn, "legacy_id", legacy, found);
+                return found;
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static void findIn(SqliteConnectionPool.PooledConnection conn, String column, List<Object> keys,
+                               List<String> found) throws SQLException {
+        int chunk = 256;
+        // one statement shape per column: short chunks repeat their last key
+        String sql = "SELECT " + column + " FROM expenses WHERE " + column + " IN ("
+                + String.join(", ", Collections.nCopies(chunk, "?")) + ")";
+        for (int from = 0; from < keys.size(); from += chunk) {
+            PreparedStatement ps = conn.prepare(sql);
+            for (int i = 0; i < chunk; i++) ps.setObject(i + 1, keys.get(Math.min(from + i, keys.size() - 1)));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) found.add(rs.getString(1));
             }
-            return out;
+        }
+    }
+
+    /** Every numeric id, ascending, then every legacy id. */
+    void forEachId(LongConsumer numeric, Consumer<String> legacy) throws IOException {
+        try {
+            db().read(conn -> {
+                try (ResultSet rs = conn.prepare("SELECT id FROM expenses WHERE id >= 0 ORDER BY id").executeQuery()) {
+                    while (rs.next()) numeric.accept(rs.getLong(1));
+                }
+                try (ResultSet rs = conn.prepare("SELECT legacy_id FROM expenses WHERE legacy_id IS NOT NULL")
+                        .executeQuery()) {
+                    while (rs.next()) legacy.accept(rs.getString(1));
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<Expense> findByDateRange(LocalDate from, LocalDate to) throws IOException {
+        String sql = "SELECT " + COLUMNS + " FROM expenses WHERE date BETWEEN ? AND ? ORDER BY date DESC";
+        try {
+            return db().read(conn -> {
+                PreparedStatement ps = conn.prepare(sql);
+                ps.setLong(1, from.toEpochDay());
+                ps.setLong(2, to.toEpochDay());
+                try (ResultSet rs = ps.executeQuery()) {
+                    return readRows(rs);
+                }
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int count(ExpenseFilter filter) throws IOException {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM expenses" + where(filter, params);
+        try {
+            return db().read(conn -> {
+                PreparedStatement ps = conn.prepare(sql);
+                bindAll(ps, params);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<Expense> findPage(ExpenseFilter filter, ExpenseSort sort, int offset, int limit) throws IOException {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must be >= 0");
+        List<Object> params = new ArrayList<>();
+        String dir = sort.ascending() ? " ASC" : " DESC";
+        String sql = "SELECT " + COLUMNS + " FROM expenses" + where(filter, params)
+                + " ORDER BY " + sortColumn(sort.column()) + dir + ", id" + dir + " LIMIT ? OFFSET ?";
+        params.add(limit);
+        params.add(offset);
+        try {
+            return db().read(conn -> {
+                PreparedStatement ps = conn.prepare(sql);
+                bindAll(ps, params);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return readRows(rs);
+                }
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
 
+    @Override
+    public List<Expense> query(ExpenseQuery query) throws IOException {
+        List<Object> params = new ArrayList<>();
+        String where = where(query.filter(), params);
+        if (query.after() != null) {
+            // row-value comparison lets SQLite seek idx_expenses_date_id straight to the cursor. A
+            // legacy cursor is bounded by the rowid of the legacy id just below it, which needs
+            // neither the cursor row itself, which may have been deleted, nor its rowid.
+            long after = IdGenerator.numeric(query.after().id());
+            where += (where.isEmpty() ? " WHERE " : " AND ") + (after >= 0 ? "(date, id) < (?, ?)"
+                    : "(date, id) <= (?, coalesce((SELECT id FROM expenses WHERE legacy_id < ?"
+                    + " ORDER BY legacy_id DESC LIMIT 1), " + Long.MIN_VALUE + "))");
+            params.add(query.after().date().toEpochDay());
+            params.add(after >= 0 ? (Object) after : query.after().id());
+        }
+        String sql = "SELECT " + COLUMNS + " FROM expenses" + where + " ORDER BY date DESC, id DESC LIMIT ?";
+        params.add(query.limit());
+        try {
+            return db().read(conn -> {
+                PreparedStatement ps = conn.prepare(sql);
+                bindAll(ps, params);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return readRows(rs);
+                }
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
+
+    /** Ranked by FTS5's bm25, newest first on ties. Each word is matched as a prefix. */
+    @Override
+    public List<Expense> search(String text, int offset, int limit) throws IOException {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must be >= 0");
+        List<String> words = NoteIndex.tokenize(text);
+        if (words.isEmpty() || limit == 0) return new ArrayList<>();
+
+        StringBuilder match = new StringBuilder();
+        for (String w : words) {
+            if (match.length() > 0) match.append(' ');
+            match.append('"').append(w.replace("\"", "\"\"")).append("\"*");
+        }
+        String sql = "SELECT coalesce(e.legacy_id, e.id), e.date, e.amount_cents, e.category, e.note"
+                + " FROM expenses_fts JOIN expenses e ON e.rowid = expenses_fts.rowid"
+                + " WHERE expenses_fts MATCH ? ORDER BY rank, e.date DESC, e.rowid DESC LIMIT ? OFFSET ?";
+        try {
+            return db().read(conn -> {
+                PreparedStatement ps = conn.prepare(sql);
+                ps.setString(1, match.toString());
+                ps.setInt(2, limit);
+                ps.setInt(3, offset);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return readRows(rs);
+                }
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public BigDecimal sumByMonth(YearMonth month) throws IOException {
+        String sql = "SELECT COALESCE(SUM(amount_cents), 0) FROM expenses WHERE date BETWEEN ? AND ?";
+        try {
+            return db().read(conn -> {
+                PreparedStatement ps = conn.prepare(sql);
+                bindMonth(ps, month);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return Money.fromCents(rs.next() ? rs.getLong(1) : 0L);
+                }
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB read failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<Category, BigDecimal> sumByMonthAndCategory(YearMonth month) throws IOException {
+        String sql = "SELECT category, SUM(amount_cents) FROM expenses WHERE date BETWEEN ? AND ? GROUP BY category";
+        try {
+            return db().read(conn -> {
+                PreparedStatement ps = conn.prepare(sql);
+                bindMonth(ps, month);
+                Map<Category, BigDecimal> map = new EnumMap<>(Category.class);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        map.merge(Category.fromString(rs.getString(1)), Money.fromCents(rs.getLong(2)), BigDecimal::add);
+                    }
+                }
+                return map;
+            });
         } catch (SQLException e) {
             throw new IOException("DB read failed: " + e.getMessage(), e);
         }
@@ -71,31 +567,341 @@ public final class SqliteExpenseRepository implements ExpenseRepository {
     @Override
     public void saveAll(List<Expense> expenses) throws IOException {
         // Simple approach: replace all rows (fine for small personal app)
-        String delete = "DELETE FROM expenses";
-        String insert = "INSERT INTO expenses (id, date, amount, category, note) VALUES (?, ?, ?, ?, ?)";
+        try {
+            db().write(conn -> {
+                conn.prepare("DELETE FROM expenses").executeUpdate();
+                insertRows(conn, expenses);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB write failed: " + e.getMessage(), e);
+        }
+    }
 
-        try (Connection conn = DriverManager.getConnection(jdbcUrl)) {
-            conn.setAutoCommit(false);
+    @Override
+    public void insert(Expense expense) throws IOException {
+        if (inserts == null) writeInserts(List.of(expense));
+        else inserts.submit(expense);
+    }
 
-            try (Statement st = conn.createStatement()) {
-                st.execute(delete);
-            }
+    @Override
+    public void insertAll(List<Expense> expenses) throws IOException {
+        if (inserts == null) writeInserts(expenses);
+        else inserts.submitAll(expenses);
+    }
 
-            try (PreparedStatement ps = conn.prepareStatement(insert)) {
-                for (Expense e : expenses) {
-                    ps.setString(1, e.getId());
-                    ps.setString(2, e.getDate().toString());
-                    ps.setString(3, e.getAmount().toPlainString());
-                    ps.setString(4, e.getCategory().name());
-                    ps.setString(5, e.getNote());
-                    ps.addBatch();
-                }
-                ps.executeBatch();
-            }
+    /** Runs on the writer thread with the inserts of every waiting caller. */
+    private void writeInserts(List<Expense> expenses) throws IOException {
+        try {
+            db().write(conn -> {
+                insertRows(conn, expenses);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB write failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean update(Expense expense) throws IOException {
+        String sql = "UPDATE expenses SET date = ?, amount_cents = ?, category = ?, note = ? WHERE "
+                + idColumn(expense.getId()) + " = ?";
+        try {
+            return db().write(conn -> {
+                PreparedStatement ps = conn.prepare(sql);
+                ps.setLong(1, expense.getDate().toEpochDay());
+                ps.setLong(2, Money.toCents(expense.getAmount()));
+                ps.setString(3, expense.getCategory().name());
+                ps.setString(4, expense.getNote());
+                bindId(ps, 5, expense.getId());
+                return ps.executeUpdate() > 0;
+            });
+        } catch (SQLException e) {
+            throw new IOException("DB write failed: " + e.getMessage(), e);
+        }
+    }
 
-            conn.commit();
+    @Override
+    public boolean delete(String id) throws IOException {
+        String sql = "DELETE FROM expenses WHERE " + idColumn(id) + " = ?";
+        try {
+            return db().write(conn -> {
+                PreparedStatement ps = conn.prepare(sql);
+                bindId(ps, 1, id);
+                return ps.executeUpdate() > 0;
+            });
         } catch (SQLException e) {
             throw new IOException("DB write failed: " + e.getMessage(), e);
         }
     }
+
+    private static void insertRows(SqliteConnectionPool.PooledConnection conn, List<Expense> expenses) throws SQLException {
+        insertRows(conn, "expenses", expenses);
+    }
+
+    private static void insertRows(SqliteConnectionPool.PooledConnection conn, String table, List<Expense> expenses)
+            throws SQLException {
+        PreparedStatement ps = conn.prepare("INSERT INTO " + table
+                + " (id, legacy_id, date, amount_cents, category, note) VALUES (?, ?, ?, ?, ?, ?)");
+        if (expenses.size() == 1 && IdGenerator.numeric(expenses.get(0).getId()) >= 0) {
+            bindRow(ps, expenses.get(0), 0);
+            ps.executeUpdate();
+            return;
+        }
+        boolean batched = false;
+        for (Expense e : expenses) {
+            if (IdGenerator.numeric(e.getId()) >= 0) {
+                bindRow(ps, e, 0);
+                ps.addBatch();
+                batched = true;
+                continue;
+            }
+            // a legacy rowid depends on the rows already in the table, so the batch goes in first
+            if (batched) ps.executeBatch();
+            batched = false;
+            bindRow(ps, e, legacyRowid(conn, table, e.getId()));
+            ps.executeUpdate();
+        }
+        if (batched) ps.executeBatch();
+    }
+
+    /**
+     * A rowid for a new legacy id that keeps legacy rowids in the string order
+     * of their ids: halfway between the rowids of the ids either side of it,
+     * or one gap past the last. Migrated rows arrive in id order and so are a
+     * gap apart; once two neighbours have no room between them, every legacy
+     * row is renumbered.
+     */
+    private static long legacyRowid(SqliteConnectionPool.PooledConnection conn, String table, String legacyId)
+            throws SQLException {
+        for (boolean renumbered = false; ; renumbered = true) {
+            long below = legacyNeighbour(conn, "SELECT id FROM " + table
+                    + " WHERE legacy_id < ? ORDER BY legacy_id DESC LIMIT 1", legacyId, FIRST_LEGACY_ROWID - LEGACY_ROWID_GAP);
+            long above = legacyNeighbour(conn, "SELECT id FROM " + table
+                    + " WHERE legacy_id > ? ORDER BY legacy_id LIMIT 1", legacyId, 0);
+            long rowid = above == 0 && below < -LEGACY_ROWID_GAP ? below + LEGACY_ROWID_GAP : below + (above - below) / 2;
+            if (rowid > below && rowid < above) return rowid;
+            if (renumbered) throw new SQLException("no legacy rowid left for " + legacyId + " in " + table);
+            renumberLegacyRows(conn, table);
+        }
+    }
+
+    private static long legacyNeighbour(SqliteConnectionPool.PooledConnection conn, String sql, String legacyId,
+                                        long none) throws SQLException {
+        PreparedStatement ps = conn.prepare(sql);
+        ps.setString(1, legacyId);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : none;
+        }
+    }
+
+    /**
+     * Gives the legacy rows rowids a gap apart in id order. The rows are first
+     * moved below FIRST_LEGACY_ROWID, so no new rowid collides with an old one,
+     * and the note index, which is keyed by rowid, is rebuilt.
+     */
+    private static void renumberLegacyRows(SqliteConnectionPool.PooledConnection pc, String table) throws SQLException {
+        Connection conn = pc.connection();
+        try (Statement st = conn.createStatement()) {
+            st.execute("UPDATE " + table + " SET id = id + " + FIRST_LEGACY_ROWID + " WHERE id < 0");
+            st.execute("CREATE TEMP TABLE legacy_rank (old INTEGER PRIMARY KEY, rank INTEGER NOT NULL)");
+            st.execute("INSERT INTO legacy_rank SELECT id, row_number() OVER (ORDER BY legacy_id) - 1 FROM "
+                    + table + " WHERE id < " + FIRST_LEGACY_ROWID);
+            st.execute("UPDATE " + table + " SET id = " + FIRST_LEGACY_ROWID + " + " + LEGACY_ROWID_GAP
+                    + " * (SELECT rank FROM legacy_rank WHERE old = " + table + ".id) WHERE id < " + FIRST_LEGACY_ROWID);
+            st.execute("DROP TABLE legacy_rank");
+            if (table.equals("expenses") && hasTable(conn, "expenses_fts")) {
+                st.execute("INSERT INTO expenses_fts(expenses_fts) VALUES ('rebuild')");
+            }
+        }
+    }
+
+    /** True if the legacy rows' rowids are in the order of their ids, as schema 4 keeps them. */
+    private static boolean legacyRowsInOrder(SqliteConnectionPool.PooledConnection pc) throws SQLException {
+        try (Statement st = pc.connection().createStatement();
+             ResultSet rs = st.executeQuery("SELECT 1 FROM (SELECT id, lag(id) OVER (ORDER BY legacy_id) AS prev"
+                     + " FROM expenses WHERE legacy_id IS NOT NULL) WHERE id < prev LIMIT 1")) {
+            return !rs.next();
+        }
+    }
+
+    private static String idColumn(String id) {
+        return IdGenerator.numeric(id) >= 0 ? "id" : "legacy_id";
+    }
+
+    private static void bindId(PreparedStatement ps, int index, String id) throws SQLException {
+        long numeric = IdGenerator.numeric(id);
+        if (numeric >= 0) ps.setLong(index, numeric);
+        else ps.setString(index, id);
+    }
+
+    /**
+     * Duplicate detection for imports into this database. The exact set is the
+     * import_fingerprints table, whose key is the fingerprint, written in the
+     * transaction that inserts each import batch; the Bloom filter is saved
+     * next to the database file.
+     */
+    public DuplicateIndex duplicateIndex() throws IOException {
+        return new DuplicateIndex(new Fingerprints(), DuplicateIndex.bloomPathFor(dbPath));
+    }
+
+    private final class Fingerprints implements FingerprintStore {
+        @Override
+        public boolean contains(long fingerprint) throws IOException {
+            try {
+                return db().read(conn -> {
+                    PreparedStatement ps = conn.prepare("SELECT 1 FROM import_fingerprints WHERE fingerprint = ?");
+                    ps.setLong(1, fingerprint);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        return rs.next();
+                    }
+                });
+            } catch (SQLException e) {
+                throw new IOException("DB read failed: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void addAll(long[] keys, int n) throws IOException {
+            try {
+                db().write(conn -> {
+                    insertFingerprints(conn, keys, n);
+                    return null;
+                });
+            } catch (SQLException e) {
+                throw new IOException("DB write failed: " + e.getMessage(), e);
+            }
+        }
+
+        /** Rows for this database go in the same transaction as their fingerprints. */
+        @Override
+        public void insertAll(ExpenseRepository target, List<Expense> rows, long[] keys, int n) throws IOException {
+            if (target != SqliteExpenseRepository.this) {
+                FingerprintStore.super.insertAll(target, rows, keys, n);
+                return;
+            }
+            try {
+                db().write(conn -> {
+                    insertRows(conn, rows);
+                    insertFingerprints(conn, keys, n);
+                    return null;
+                });
+            } catch (SQLException e) {
+                throw new IOException("DB write failed: " + e.getMessage(), e);
+            }
+        }
+
+        private void insertFingerprints(SqliteConnectionPool.PooledConnection conn, long[] keys, int n)
+                throws SQLException {
+            if (n == 0) return;
+            PreparedStatement ps = conn.prepare("INSERT OR IGNORE INTO import_fingerprints (fingerprint) VALUES (?)");
+            for (int i = 0; i < n; i++) {
+                ps.setLong(1, keys[i]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        @Override
+        public long size() throws IOException {
+            try {
+                return db().read(conn -> {
+                    try (ResultSet rs = conn.prepare("SELECT COUNT(*) FROM import_fingerprints").executeQuery()) {
+                        return rs.next() ? rs.getLong(1) : 0L;
+                    }
+                });
+            } catch (SQLException e) {
+                throw new IOException("DB read failed: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void forEach(LongConsumer action) throws IOException {
+            try {
+                db().read(conn -> {
+                    try (ResultSet rs = conn.prepare("SELECT fingerprint FROM import_fingerprints").executeQuery()) {
+                        while (rs.next()) action.accept(rs.getLong(1));
+                    }
+                    return null;
+                });
+            } catch (SQLException e) {
+                throw new IOException("DB read failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static List<Expense> readRows(ResultSet rs) throws SQLException {
+        List<Expense> out = new ArrayList<>();
+        while (rs.next()) out.add(readRow(rs));
+        return out;
+    }
+
+    private static Expense readRow(ResultSet rs) throws SQLException {
+        String id = rs.getString(1);
+        LocalDate date = LocalDate.ofEpochDay(rs.getLong(2));
+        BigDecimal amount = Money.fromCents(rs.getLong(3));
+        Category category = Category.fromString(rs.getString(4));
+        String note = rs.getString(5);
+        return new Expense(id, date, amount, category, note);
+    }
+
+    private static String where(ExpenseFilter filter, List<Object> params) {
+        List<String> clauses = new ArrayList<>();
+        if (filter.from() != null) {
+            clauses.add("date >= ?");
+            params.add(filter.from().toEpochDay());
+        }
+        if (filter.to() != null) {
+            clauses.add("date <= ?");
+            params.add(filter.to().toEpochDay());
+        }
+        if (!filter.categories().isEmpty()) {
+            clauses.add("category IN (" + String.join(", ", Collections.nCopies(filter.categories().size(), "?")) + ")");
+            filter.categories().stream().map(Category::name).sorted().forEach(params::add);
+        }
+        // Bounds are rounded inward to whole cents, the only amounts stored
+        if (filter.minAmount() != null) {
+            clauses.add("amount_cents >= ?");
+            params.add(filter.minAmount().movePointRight(Money.SCALE).setScale(0, RoundingMode.CEILING).longValueExact());
+        }
+        if (filter.maxAmount() != null) {
+            clauses.add("amount_cents <= ?");
+            params.add(filter.maxAmount().movePointRight(Money.SCALE).setScale(0, RoundingMode.FLOOR).longValueExact());
+        }
+        return clauses.isEmpty() ? "" : " WHERE " + String.join(" AND ", clauses);
+    }
+
+    private static String sortColumn(ExpenseSort.Column column) {
+        return switch (column) {
+            case DATE -> "date";
+            case AMOUNT -> "amount_cents";
+            case CATEGORY -> "category";
+            case NOTE -> "note";
+        };
+    }
+
+    private static void bindAll(PreparedStatement ps, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) ps.setObject(i + 1, params.get(i));
+    }
+
+    private static void bindMonth(PreparedStatement ps, YearMonth month) throws SQLException {
+        ps.setLong(1, month.atDay(1).toEpochDay());
+        ps.setLong(2, month.atEndOfMonth().toEpochDay());
+    }
+
+    /** legacyRowid is the rowid for an id that is not numeric, and ignored otherwise. */
+    private static void bindRow(PreparedStatement ps, Expense e, long legacyRowid) throws SQLException {
+        long numeric = IdGenerator.numeric(e.getId());
+        if (numeric >= 0) {
+            ps.setLong(1, numeric);
+            ps.setNull(2, Types.VARCHAR);
+        } else {
+            ps.setLong(1, legacyRowid);
+            ps.setString(2, e.getId());
+        }
+        ps.setLong(3, e.getDate().toEpochDay());
+        ps.setLong(4, Money.toCents(e.getAmount()));
+        ps.setString(5, e.getCategory().name());
+        ps.setString(6, e.getNote());
+    }
 }
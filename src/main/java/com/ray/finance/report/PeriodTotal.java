@@ -0,0 +1,76 @@
+package com.ray.finance.report;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Money;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+
+/** Spending in one period of a rollup, in cents per category. Immutable. */
+public final class PeriodTotal {
+
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final String label;
+    private final LocalDate start;
+    private final LocalDate end;
+    private final long[] cents;
+    private final long totalCents;
+
+    PeriodTotal(String label, LocalDate start, LocalDate end, long[] cents) {
+        this.label = label;
+        this.start = start;
+        this.end = end;
+        this.cents = cents.clone();
+        long total = 0;
+        for (long c : cents) total += c;
+        this.totalCents = total;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    /** First day counted; may be later than the calendar start where the report range clips it. */
+    public LocalDate start() {
+        return start;
+    }
+
+    public LocalDate end() {
+        return end;
+    }
+
+    public long totalCents() {
+        return totalCents;
+    }
+
+    public long cents(Category category) {
+        return cents[category.ordinal()];
+    }
+
+    public BigDecimal total() {
+        return Money.fromCents(totalCents);
+    }
+
+    /** Categories with spending, in declaration order. */
+    public Map<Category, BigDecimal> byCategory() {
+        Map<Category, BigDecimal> out = new EnumMap<>(Category.class);
+        for (Category c : CATEGORIES) {
+            if (cents[c.ordinal()] != 0) out.put(c, Money.fromCents(cents[c.ordinal()]));
+        }
+        return out;
+    }
+
+    /** Relative change of the total against previous (0.25 is +25%); NaN if previous is zero. */
+    public double changeFrom(PeriodTotal previous) {
+        if (previous == null || previous.totalCents == 0) return Double.NaN;
+        return (double) (totalCents - previous.totalCents) / previous.totalCents;
+    }
+
+    @Override
+    public String toString() {
+        return label + ": " + total();
+    }
+}
@@ -0,0 +1,32 @@
+package com.ray.finance.report;
+
+import java.util.List;
+import java.util.Map;
+
+/** The result of a ReportRequest: for each requested rollup, its periods in date order. */
+public record Report(ReportRequest request, Map<Rollup, List<PeriodTotal>> rollups) {
+
+    public Report {
+        rollups = Map.copyOf(rollups);
+    }
+
+    /** Periods of rollup, oldest first; empty if it was not requested. */
+    public List<PeriodTotal> periods(Rollup rollup) {
+        return rollups.getOrDefault(rollup, List.of());
+    }
+
+    /**
+     * The period to compare periods(rollup).get(i) with for year over year:
+     * the one a year earlier (52 periods back for WEEK), or null.
+     */
+    public PeriodTotal yearAgo(Rollup rollup, int i) {
+        int back = switch (rollup) {
+            case WEEK -> 52;
+            case QUARTER -> 4;
+            case YEAR -> 1;
+            default -> 12; // months and rolling windows ending each month
+        };
+        List<PeriodTotal> periods = periods(rollup);
+        return i - back >= 0 ? periods.get(i - back) : null;
+    }
+}
@@ -0,0 +1,169 @@
+package com.ray.finance.report;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.Money;
+import com.ray.finance.repo.ExpenseRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes every rollup of a ReportRequest from one read of its date range.
+ *
+ * The range is split fork-join style into date slices of about a quarter;
+ * each slice is read with findByDateRange (from a date index in the CSV,
+ * journaled CSV and SQLite backends; the columnar and binary ones compare a
+ * primitive date column and only decode rows in range) and
+ * summed into its own rows of a per-day, per-category long[] of cents, so
+ * the slices never share an accumulator and need no merge. The rollups are
+ * then folded from the day totals, which for ten years is some 30k longs,
+ * however many expenses there are.
+ *
+ * Slices run on a pool of the engine's own, created per report, so a long
+ * report does not hold up other users of the common pool. The repository
+ * must allow concurrent reads, which all backends do.
+ */
+public final class ReportEngine {
+
+    private static final int CATEGORIES = Category.values().length;
+    private static final int SLICE_DAYS = 92;
+
+    private final ExpenseRepository repo;
+    private final int parallelism;
+
+    public ReportEngine(ExpenseRepository repo) {
+        this(repo, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ReportEngine(ExpenseRepository repo, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be >= 1");
+        this.repo = repo;
+        this.parallelism = parallelism;
+    }
+
+    public Report run(ReportRequest request) throws IOException {
+        LocalDate base = request.readFrom();
+        int days = (int) ChronoUnit.DAYS.between(base, request.to()) + 1;
+        long[] daily = new long[days * CATEGORIES];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Slice(base, 0, days, daily));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<Rollup, List<PeriodTotal>> out = new EnumMap<>(Rollup.class);
+        for (Rollup rollup : request.rollups()) {
+            out.put(rollup, rollup.isRolling()
+                    ? rolling(rollup, request, base, daily)
+                    : calendar(rollup, request, base, daily));
+        }
+        return new Report(request, out);
+    }
+
+    /** Reads days [first, end) relative to base into daily, splitting while the span is large. */
+    private final class Slice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final LocalDate base;
+        private final int first;
+        private final int end;
+        private final long[] daily;
+
+        Slice(LocalDate base, int first, int end, long[] daily) {
+            this.base = base;
+            this.first = first;
+            this.end = end;
+            this.daily = daily;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - first > SLICE_DAYS) {
+                int mid = (first + end) >>> 1;
+                invokeAll(new Slice(base, first, mid, daily), new Slice(base, mid, end, daily));
+                return;
+            }
+            List<Expense> rows;
+            try {
+                rows = repo.findByDateRange(base.plusDays(first), base.plusDays(end - 1L));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            long baseDay = base.toEpochDay();
+            for (Expense e : rows) {
+                long day = e.getDate().toEpochDay() - baseDay;
+                if (day < first || day >= end) continue;
+                daily[(int) day * CATEGORIES + e.getCategory().ordinal()] += Money.toCents(e.getAmount());
+            }
+        }
+    }
+
+    private static List<PeriodTotal> calendar(Rollup rollup, ReportRequest request, LocalDate base, long[] daily) {
+        List<PeriodTotal> out = new ArrayList<>();
+        long[] cents = new long[CATEGORIES];
+        LocalDate periodStart = request.from();
+        LocalDate key = rollup.periodStart(periodStart);
+        int day = (int) ChronoUnit.DAYS.between(base, request.from());
+        for (LocalDate d = request.from(); !d.isAfter(request.to()); d = d.plusDays(1), day++) {
+            LocalDate dayKey = rollup.periodStart(d);
+            if (!dayKey.equals(key)) {
+                out.add(new PeriodTotal(rollup.label(key), periodStart, d.minusDays(1), cents));
+                cents = new long[CATEGORIES];
+                key = dayKey;
+                periodStart = d;
+            }
+            addDay(daily, day, cents);
+        }
+        out.add(new PeriodTotal(rollup.label(key), periodStart, request.to(), cents));
+        return List.copyOf(out);
+    }
+
+    /** One window per month of the range; every window is whole months, read back from base. */
+    private static List<PeriodTotal> rolling(Rollup rollup, ReportRequest request, LocalDate base, long[] daily) {
+        YearMonth firstMonth = YearMonth.from(base);
+        YearMonth lastMonth = YearMonth.from(request.to());
+        int months = (int) ChronoUnit.MONTHS.between(firstMonth, lastMonth) + 1;
+        long[][] monthly = new long[months][CATEGORIES];
+        for (int m = 0; m < months; m++) {
+            YearMonth month = firstMonth.plusMonths(m);
+            int from = (int) ChronoUnit.DAYS.between(base, month.atDay(1));
+            int to = (int) ChronoUnit.DAYS.between(base, m == months - 1 ? request.to() : month.atEndOfMonth());
+            for (int day = from; day <= to; day++) addDay(daily, day, monthly[m]);
+        }
+
+        int window = rollup.windowMonths();
+        int firstReported = (int) ChronoUnit.MONTHS.between(firstMonth, YearMonth.from(request.from()));
+        List<PeriodTotal> out = new ArrayList<>();
+        long[] sum = new long[CATEGORIES];
+        for (int m = 0; m < months; m++) {
+            for (int c = 0; c < CATEGORIES; c++) {
+                sum[c] += monthly[m][c];
+                if (m >= window) sum[c] -= monthly[m - window][c];
+            }
+            if (m < firstReported) continue;
+            YearMonth last = firstMonth.plusMonths(m);
+            YearMonth first = last.minusMonths(window - 1L);
+            LocalDate end = m == months - 1 ? request.to() : last.atEndOfMonth();
+            out.add(new PeriodTotal(first + ".." + last, first.atDay(1), end, sum));
+        }
+        return List.copyOf(out);
+    }
+
+    private static void addDay(long[] daily, int day, long[] into) {
+        int at = day * CATEGORIES;
+        for (int c = 0; c < CATEGORIES; c++) into[c] += daily[at + c];
+    }
+}
@@ -0,0 +1,45 @@
+package com.ray.finance.report;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Money;
+
+import java.util.List;
+import java.util.Locale;
+
+/** Plain-text tables of a Report, one per rollup, for the CLI. */
+public final class ReportFormatter {
+
+    private static final Category[] CATEGORIES = Category.values();
+
+    private ReportFormatter() {}
+
+    public static String format(Report report) {
+        StringBuilder sb = new StringBuilder();
+        for (Rollup rollup : Rollup.values()) {
+            if (!report.rollups().containsKey(rollup)) continue;
+            sb.append("\n--- ").append(rollup).append(' ')
+                    .append(report.request().from()).append(" to ").append(report.request().to()).append(" ---\n");
+            sb.append(String.format("%-18s %12s %8s", "Period", "Total", "YoY"));
+            for (Category c : CATEGORIES) sb.append(String.format(" %14s", c));
+            sb.append('\n');
+
+            List<PeriodTotal> periods = report.periods(rollup);
+            for (int i = 0; i < periods.size(); i++) {
+                PeriodTotal p = periods.get(i);
+                sb.append(String.format("%-18s %12s %8s", p.label(), p.total().toPlainString(),
+                        formatChange(p.changeFrom(report.yearAgo(rollup, i)))));
+                for (Category c : CATEGORIES) {
+                    sb.append(String.format(" %14s", Money.fromCents(p.cents(c)).toPlainString()));
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /** +12.5%, -3.0%, or blank when there is nothing to compare with. */
+    public static String formatChange(double change) {
+        if (Double.isNaN(change)) return "";
+        return String.format(Locale.ROOT, "%+.1f%%", change * 100);
+    }
+}
@@ -0,0 +1,35 @@
+package com.ray.finance.report;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.EnumSet;
+import java.util.Set;
+
+/** The rollups to compute over from..to, both inclusive. */
+public record ReportRequest(LocalDate from, LocalDate to, Set<Rollup> rollups) {
+
+    /** Upper bound on the span, which keeps the per-day accumulator small. */
+    public static final int MAX_YEARS = 100;
+
+    public ReportRequest {
+        if (from == null || to == null) throw new IllegalArgumentException("from and to are required");
+        if (from.isAfter(to)) throw new IllegalArgumentException("from must not be after to");
+        if (from.plusYears(MAX_YEARS).isBefore(to)) {
+            throw new IllegalArgumentException("a report covers at most " + MAX_YEARS + " years");
+        }
+        if (rollups == null || rollups.isEmpty()) throw new IllegalArgumentException("at least one rollup is required");
+        rollups = Set.copyOf(EnumSet.copyOf(rollups));
+    }
+
+    /** The last years calendar years up to and including the one containing today. */
+    public static ReportRequest lastYears(int years, LocalDate today, Set<Rollup> rollups) {
+        return new ReportRequest(today.minusYears(years - 1L).withDayOfYear(1), today, rollups);
+    }
+
+    /** First day that has to be read: rolling windows reach back before from. */
+    LocalDate readFrom() {
+        int window = rollups.stream().mapToInt(Rollup::windowMonths).max().orElse(0);
+        if (window == 0) return from;
+        return YearMonth.from(from).minusMonths(window - 1L).atDay(1);
+    }
+}
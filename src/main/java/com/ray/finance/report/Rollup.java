@@ -0,0 +1,59 @@
+package com.ray.finance.report;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * How a report groups days. Calendar rollups split the range into ISO weeks,
+ * months, quarters or years; rolling rollups give, for every month in the
+ * range, the total of the window of months ending with it.
+ */
+public enum Rollup {
+    WEEK(0),
+    MONTH(0),
+    QUARTER(0),
+    YEAR(0),
+    ROLLING_3_MONTHS(3),
+    ROLLING_12_MONTHS(12);
+
+    private final int windowMonths;
+
+    Rollup(int windowMonths) {
+        this.windowMonths = windowMonths;
+    }
+
+    /** Months per rolling window, 0 for calendar rollups. */
+    public int windowMonths() {
+        return windowMonths;
+    }
+
+    public boolean isRolling() {
+        return windowMonths > 0;
+    }
+
+    /** First day of the calendar period containing date. */
+    LocalDate periodStart(LocalDate date) {
+        return switch (this) {
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> date.withDayOfMonth(1);
+            case QUARTER -> date.withMonth((date.getMonthValue() - 1) / 3 * 3 + 1).withDayOfMonth(1);
+            case YEAR -> date.withDayOfYear(1);
+            default -> throw new IllegalStateException(this + " is not a calendar rollup");
+        };
+    }
+
+    /** Label of the calendar period starting at start: 2026-W07, 2026-02, 2026-Q1, 2026. */
+    String label(LocalDate start) {
+        return switch (this) {
+            case WEEK -> String.format("%d-W%02d", start.get(IsoFields.WEEK_BASED_YEAR),
+                    start.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            case MONTH -> YearMonth.from(start).toString();
+            case QUARTER -> start.getYear() + "-Q" + start.get(IsoFields.QUARTER_OF_YEAR);
+            case YEAR -> Integer.toString(start.getYear());
+            default -> throw new IllegalStateException(this + " is not a calendar rollup");
+        };
+    }
+}
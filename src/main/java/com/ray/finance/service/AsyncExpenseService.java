@@ -0,0 +1,133 @@
+package com.ray.finance.service;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs ExpenseService calls on a background worker and completes the returned
+ * futures on a callback executor (Platform::runLater in the UI), so dependent
+ * stages can touch UI state directly.
+ *
+ * refresh() calls coalesce: while one is queued and not yet started, further
+ * calls retarget it and share its future. summary() is latest-wins: starting a
+ * new one cancels the previous if it has not been published yet.
+ *
+ * The worker is a single daemon thread, which also keeps writes and the
+ * refreshes that follow them in submission order.
+ */
+public final class AsyncExpenseService implements AutoCloseable {
+
+    private final ExpenseService service;
+    private final Executor callbackExecutor;
+    private final ExecutorService worker;
+
+    private final Object lock = new Object();
+    private PendingRefresh pendingRefresh;
+    private CompletableFuture<MonthSummary> latestSummary;
+
+    private static final class PendingRefresh {
+        final CompletableFuture<MonthSummary> future = new CompletableFuture<>();
+        YearMonth month;
+    }
+
+    public AsyncExpenseService(ExpenseService service, Executor callbackExecutor) {
+        this.service = service;
+        this.callbackExecutor = callbackExecutor;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "expense-service");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public CompletableFuture<Expense> addExpense(LocalDate date, BigDecimal amount, Category category, String note) {
+        return supply(() -> service.addExpense(date, amount, category, note));
+    }
+
+    public CompletableFuture<Boolean> updateExpense(Expense expense) {
+        return supply(() -> service.updateExpense(expense));
+    }
+
+    public CompletableFuture<Boolean> deleteExpense(String id) {
+        return supply(() -> service.deleteExpense(id));
+    }
+
+    /** Month summary; cancels the previous summary() call if it has not completed. */
+    public CompletableFuture<MonthSummary> summary(YearMonth month) {
+        CompletableFuture<MonthSummary> future = supply(() -> loadSummary(month));
+        CompletableFuture<MonthSummary> previous;
+        synchronized (lock) {
+            previous = latestSummary;
+            latestSummary = future;
+        }
+        if (previous != null) previous.cancel(false);
+        return future;
+    }
+
+    /**
+     * Month summary for a refresh. Calls made before the queued refresh starts
+     * are merged into it (the last month wins) and get the same future.
+     */
+    public CompletableFuture<MonthSummary> refresh(YearMonth month) {
+        synchronized (lock) {
+            if (pendingRefresh != null) {
+                pendingRefresh.month = month;
+                return pendingRefresh.future;
+            }
+            PendingRefresh pending = new PendingRefresh();
+            pending.month = month;
+            pendingRefresh = pending;
+            worker.execute(() -> {
+                YearMonth target;
+                synchronized (lock) {
+                    target = pending.month;
+                    pendingRefresh = null;
+                }
+                run(pending.future, () -> loadSummary(target));
+            });
+            return pending.future;
+        }
+    }
+
+    /** Runs any repository-bound work on the worker; completes on the callback executor. */
+    public <T> CompletableFuture<T> supply(Callable<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        worker.execute(() -> run(future, work));
+        return future;
+    }
+
+    private <T> void run(CompletableFuture<T> future, Callable<T> work) {
+        if (future.isDone()) return; // cancelled while queued
+        try {
+            T value = work.call();
+            callbackExecutor.execute(() -> future.complete(value));
+        } catch (Exception ex) {
+            callbackExecutor.execute(() -> future.completeExceptionally(ex));
+        }
+    }
+
+    private MonthSummary loadSummary(YearMonth month) throws Exception {
+        return service.monthSummary(month);
+    }
+
+    /** Lets queued work finish for up to five seconds; an interrupt stops the wait and stays set. */
+    @Override
+    public void close() {
+        worker.shutdown();
+        try {
+            worker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
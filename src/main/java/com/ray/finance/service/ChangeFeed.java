@@ -0,0 +1,144 @@
+package com.ray.finance.service;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Delivers ExpenseChanges to subscribers in batches. Each subscriber has a
+ * bounded buffer and at most one delivery queued or running on its executor;
+ * a delivery hands over everything buffered, so changes made while the
+ * subscriber is busy (or while the FX thread is rendering) arrive as one
+ * list, in the order they were published.
+ *
+ * When a subscriber's buffer is full, publish() waits until that subscriber
+ * takes the next batch: a slow subscriber slows writers down rather than
+ * growing memory. Writes must therefore not be made on a subscriber's own
+ * executor thread unless that executor runs tasks inline.
+ */
+public final class ChangeFeed {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /** Stops deliveries; a batch already being delivered still completes. */
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong position = new AtomicLong();
+
+    public Subscription subscribe(Executor executor, Consumer<List<ExpenseChange>> listener) {
+        return subscribe(executor, listener, DEFAULT_CAPACITY);
+    }
+
+    public Subscription subscribe(Executor executor, Consumer<List<ExpenseChange>> listener, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1");
+        Subscriber s = new Subscriber(executor, listener, capacity);
+        subscribers.add(s);
+        return s;
+    }
+
+    /** Position for the next change; taken while the write is still excluded from summaries. */
+    long nextPosition() {
+        return position.incrementAndGet();
+    }
+
+    /** Position of the last change numbered so far, 0 before the first. */
+    long position() {
+        return position.get();
+    }
+
+    boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    void publish(ExpenseChange change) throws InterruptedIOException {
+        for (Subscriber s : subscribers) {
+            try {
+                s.offer(change);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting for a change subscriber");
+            }
+        }
+    }
+
+    private final class Subscriber implements Subscription {
+        private final Executor executor;
+        private final Consumer<List<ExpenseChange>> listener;
+        private final int capacity;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private List<ExpenseChange> buffer = new ArrayList<>();
+        private boolean scheduled;
+        private volatile boolean closed;
+
+        Subscriber(Executor executor, Consumer<List<ExpenseChange>> listener, int capacity) {
+            this.executor = executor;
+            this.listener = listener;
+            this.capacity = capacity;
+        }
+
+        void offer(ExpenseChange change) throws InterruptedException {
+            lock.lock();
+            try {
+                while (buffer.size() >= capacity && !closed) notFull.await();
+                if (closed) return;
+                buffer.add(change);
+                if (scheduled) return;
+                scheduled = true;
+            } finally {
+                lock.unlock();
+            }
+            executor.execute(this::deliver);
+        }
+
+        private void deliver() {
+            List<ExpenseChange> batch;
+            lock.lock();
+            try {
+                batch = buffer;
+                buffer = new ArrayList<>();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                if (!closed && !batch.isEmpty()) listener.accept(Collections.unmodifiableList(batch));
+            } finally {
+                boolean more;
+                lock.lock();
+                try {
+                    more = !closed && !buffer.isEmpty();
+                    scheduled = more;
+                } finally {
+                    lock.unlock();
+                }
+                // changes published while the listener ran go out as the next batch
+                if (more) executor.execute(this::deliver);
+            }
+        }
+
+        @Override
+        public void close() {
+            subscribers.remove(this);
+            lock.lock();
+            try {
+                closed = true;
+                buffer.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.ray.finance.service;
+
+import com.ray.finance.model.Expense;
+
+/**
+ * One write made through ExpenseService: before is null for inserts, after is
+ * null for deletes. position numbers the service's writes from 1; a
+ * MonthSummary counts exactly the changes at or before its own position.
+ */
+public record ExpenseChange(long position, Kind kind, Expense before, Expense after) {
+
+    public enum Kind { INSERT, UPDATE, DELETE }
+
+    static ExpenseChange inserted(long position, Expense e) {
+        return new ExpenseChange(position, Kind.INSERT, null, e);
+    }
+
+    static ExpenseChange updated(long position, Expense before, Expense after) {
+        return new ExpenseChange(position, Kind.UPDATE, before, after);
+    }
+
+    static ExpenseChange deleted(long position, Expense before) {
+        return new ExpenseChange(position, Kind.DELETE, before, null);
+    }
+}
@@ -1,21 +1,96 @@
 package com.ray.finance.service;
 
+import com.ray.finance.metrics.Counter;
+import com.ray.finance.metrics.MetricsRegistry;
+import com.ray.finance.metrics.Timer;
 import com.ray.finance.model.Category;
 import com.ray.finance.model.Expense;
+import com.ray.finance.model.IdGenerator;
+import com.ray.finance.model.Money;
+import com.ray.finance.report.Report;
+import com.ray.finance.report.ReportEngine;
+import com.ray.finance.report.ReportRequest;
+import com.ray.finance.repo.ExpenseQuery;
 import com.ray.finance.repo.ExpenseRepository;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * By default monthly summaries come from an in-memory aggregate that is built
+ * with one scan on first use and then kept current by add/update/delete, so a
+ * summary costs a map lookup. Writes made to the repository behind the
+ * service's back are not seen until rebuildAggregates().
+ *
+ * Safe for concurrent use as long as the repository is. Writers run in
+ * parallel: updates and deletes lock a stripe chosen by id so the
+ * read-modify-write of one expense is not interleaved, and the aggregate
+ * buckets lock per month. Only (re)building the aggregates excludes writers,
+ * so the scan cannot miss or double count a concurrent write.
+ *
+ * Every add, update and delete is published on changes() once it is in the
+ * repository, so views can apply it instead of re-reading the ledger. Events
+ * for one id are published in the order the writes happened, and each carries
+ * a position that monthSummary results are tagged with.
+ *
+ * Operations are timed under service.* in the global MetricsRegistry;
+ * service.aggregates.hitRatio is the share of summaries served from memory.
+ */
 public final class ExpenseService {
+    private static final int ID_STRIPES = 64;
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.global();
+    private static final Timer ADD = METRICS.timer("service.addExpense");
+    private static final Timer UPDATE = METRICS.timer("service.updateExpense");
+    private static final Timer DELETE = METRICS.timer("service.deleteExpense");
+    private static final Timer SUMMARY = METRICS.timer("service.summary");
+    private static final Timer SCAN = METRICS.timer("service.aggregates.scan");
+    private static final Timer SEARCH = METRICS.timer("service.search");
+    private static final Timer QUERY = METRICS.timer("service.query");
+    private static final Timer REPORT = METRICS.timer("service.report");
+    private static final Counter AGGREGATE_HITS = METRICS.counter("service.aggregates.hits");
+    private static final Counter AGGREGATE_MISSES = METRICS.counter("service.aggregates.misses");
+
+    static {
+        METRICS.ratio("service.aggregates.hitRatio", AGGREGATE_HITS, AGGREGATE_MISSES);
+    }
+
     private final ExpenseRepository repo;
+    private final boolean cacheAggregates;
+    // read side: any write; write side: scanning the repository into aggregates
+    private final ReentrantReadWriteLock scanLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] idLocks = new ReentrantLock[ID_STRIPES];
+    private final ChangeFeed changes = new ChangeFeed();
+    private volatile MonthlyAggregates aggregates;
 
     public ExpenseService(ExpenseRepository repo) {
+        this(repo, true);
+    }
+
+    /** With cacheAggregates false every summary is answered by the repository. */
+    public ExpenseService(ExpenseRepository repo, boolean cacheAggregates) {
         this.repo = repo;
+        this.cacheAggregates = cacheAggregates;
+        for (int i = 0; i < ID_STRIPES; i++) idLocks[i] = new ReentrantLock();
+    }
+
+    /** Inserts, updates and deletes made through this service, batched per subscriber. */
+    public ChangeFeed changes() {
+        return changes;
     }
 
     public List<Expense> listAll() throws IOException {
@@ -25,36 +100,243 @@ public final class ExpenseService {
     public Expense addExpense(LocalDate date, BigDecimal amount, Category category, String note) throws IOException {
         validate(date, amount, category);
 
-        List<Expense> expenses = repo.findAll();
-        String id = UUID.randomUUID().toString().substring(0, 8);
+        String id = IdGenerator.global().next();
         Expense expense = new Expense(id, date, amount, category, note);
-        expenses.add(expense);
-        repo.saveAll(expenses);
+        long t0 = ADD.start();
+        long position;
+        scanLock.readLock().lock();
+        try {
+            repo.insert(expense);
+            MonthlyAggregates a = aggregates;
+            if (a != null) a.add(expense);
+            position = changes.nextPosition();
+        } finally {
+            scanLock.readLock().unlock();
+        }
+        ADD.stop(t0, 1);
+        // outside the scan lock, so a subscriber applying back-pressure never holds up a rebuild
+        changes.publish(ExpenseChange.inserted(position, expense));
         return expense;
     }
 
+    public boolean updateExpense(Expense expense) throws IOException {
+        validate(expense.getDate(), expense.getAmount(), expense.getCategory());
+
+        long t0 = UPDATE.start();
+        ReentrantLock idLock = idLock(expense.getId());
+        idLock.lock();
+        try {
+            Expense previous;
+            long position;
+            scanLock.readLock().lock();
+            try {
+                MonthlyAggregates a = aggregates;
+                if (a == null && !changes.hasSubscribers()) return repo.update(expense);
+
+                previous = repo.findById(expense.getId()).orElse(null);
+                if (previous == null || !repo.update(expense)) return false;
+                if (a != null) {
+                    a.remove(previous);
+                    a.add(expense);
+                }
+                position = changes.nextPosition();
+            } finally {
+                scanLock.readLock().unlock();
+            }
+            changes.publish(ExpenseChange.updated(position, previous, expense));
+            return true;
+        } finally {
+            idLock.unlock();
+            UPDATE.stop(t0);
+        }
+    }
+
+    public boolean deleteExpense(String id) throws IOException {
+        if (id == null || id.isBlank()) throw new IllegalArgumentException("id is required");
+
+        long t0 = DELETE.start();
+        ReentrantLock idLock = idLock(id);
+        idLock.lock();
+        try {
+            Expense previous;
+            long position;
+            scanLock.readLock().lock();
+            try {
+                MonthlyAggregates a = aggregates;
+                if (a == null && !changes.hasSubscribers()) return repo.delete(id);
+
+                previous = repo.findById(id).orElse(null);
+                if (previous == null || !repo.delete(id)) return false;
+                if (a != null) a.remove(previous);
+                position = changes.nextPosition();
+            } finally {
+                scanLock.readLock().unlock();
+            }
+            changes.publish(ExpenseChange.deleted(position, previous));
+            return true;
+        } finally {
+            idLock.unlock();
+            DELETE.stop(t0);
+        }
+    }
+
     public BigDecimal monthlyTotal(YearMonth month) throws IOException {
-        return repo.findAll().stream()
-                .filter(e -> YearMonth.from(e.getDate()).equals(month))
-                .map(Expense::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        long t0 = SUMMARY.start();
+        BigDecimal total = cacheAggregates ? aggregates().total(month) : repo.sumByMonth(month);
+        SUMMARY.stop(t0);
+        return total;
     }
 
     public Map<Category, BigDecimal> monthlyByCategory(YearMonth month) throws IOException {
-        Map<Category, BigDecimal> map = new EnumMap<>(Category.class);
+        long t0 = SUMMARY.start();
+        Map<Category, BigDecimal> totals = cacheAggregates ? aggregates().byCategory(month) : repo.sumByMonthAndCategory(month);
+        SUMMARY.stop(t0);
+        return totals;
+    }
+
+    /**
+     * The month's total and per-category totals, read with writes held off and
+     * tagged with the position of the last change they include, so a view can
+     * apply exactly the changes published after it.
+     */
+    public MonthSummary monthSummary(YearMonth month) throws IOException {
+        scanLock.writeLock().lock();
+        try {
+            return new MonthSummary(month, monthlyTotal(month), monthlyByCategory(month),
+                    changes.position());
+        } finally {
+            scanLock.writeLock().unlock();
+        }
+    }
 
-        for (Expense e : repo.findAll()) {
-            if (!YearMonth.from(e.getDate()).equals(month)) continue;
-            map.put(e.getCategory(), map.getOrDefault(e.getCategory(), BigDecimal.ZERO).add(e.getAmount()));
+    /** Discards the cached totals and rebuilds them with one scan of the repository. */
+    public void rebuildAggregates() throws IOException {
+        scanLock.writeLock().lock();
+        try {
+            aggregates = null;
+            if (cacheAggregates) aggregates = scanAggregates();
+        } finally {
+            scanLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Seeds the aggregates from a file written by saveAggregateSnapshot, so
+     * summaries are answered at once instead of after a full scan. The
+     * snapshot is provisional: it misses whatever changed in the repository
+     * since it was saved, so callers should follow up with rebuildAggregates()
+     * in the background. Returns false, changing nothing, if there is no
+     * usable snapshot or the aggregates are already built or disabled.
+     */
+    public boolean loadAggregateSnapshot(Path file) throws IOException {
+        if (!cacheAggregates || !Files.exists(file)) return false;
+        MonthlyAggregates loaded;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            loaded = MonthlyAggregates.readFrom(in);
+        } catch (EOFException truncated) {
+            return false;
+        }
+        if (loaded == null) return false;
+        scanLock.writeLock().lock();
+        try {
+            if (aggregates != null) return false;
+            aggregates = loaded;
+            return true;
+        } finally {
+            scanLock.writeLock().unlock();
+        }
+    }
+
+    /** Persists the current aggregates, if built, for the next loadAggregateSnapshot. */
+    public void saveAggregateSnapshot(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        scanLock.writeLock().lock();
+        try {
+            if (aggregates == null) return;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                aggregates.writeTo(out);
+            }
+        } finally {
+            scanLock.writeLock().unlock();
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Compares the cached totals against a fresh scan of the repository.
+     * Always true when the cache is disabled or not built yet.
+     */
+    public boolean verifyAggregates() throws IOException {
+        scanLock.writeLock().lock();
+        try {
+            return aggregates == null || aggregates.sameAs(scanAggregates());
+        } finally {
+            scanLock.writeLock().unlock();
         }
-        return map;
     }
 
     public List<Expense> listMonth(YearMonth month) throws IOException {
-        return repo.findAll().stream()
-                .filter(e -> YearMonth.from(e.getDate()).equals(month))
-                .sorted(Comparator.comparing(Expense::getDate).reversed())
-                .collect(Collectors.toList());
+        return repo.findByDateRange(month.atDay(1), month.atEndOfMonth());
+    }
+
+    /** Expenses whose notes match every word of text, best match first. */
+    public List<Expense> search(String text, int offset, int limit) throws IOException {
+        long t0 = SEARCH.start();
+        List<Expense> hits = repo.search(text, offset, limit);
+        SEARCH.stop(t0, hits.size());
+        return hits;
+    }
+
+    /** One page of a keyset-paginated query; pass query.next(page) to get the following one. */
+    public List<Expense> query(ExpenseQuery query) throws IOException {
+        long t0 = QUERY.start();
+        List<Expense> page = repo.query(query);
+        QUERY.stop(t0, page.size());
+        return page;
+    }
+
+    /** Weekly to yearly and rolling rollups over a date range, read straight from the repository. */
+    public Report report(ReportRequest request) throws IOException {
+        long t0 = REPORT.start();
+        Report report = new ReportEngine(repo).run(request);
+        REPORT.stop(t0);
+        return report;
+    }
+
+    private MonthlyAggregates aggregates() throws IOException {
+        MonthlyAggregates a = aggregates;
+        if (a != null) {
+            AGGREGATE_HITS.increment();
+            return a;
+        }
+        AGGREGATE_MISSES.increment();
+        scanLock.writeLock().lock();
+        try {
+            if (aggregates == null) aggregates = scanAggregates();
+            return aggregates;
+        } finally {
+            scanLock.writeLock().unlock();
+        }
+    }
+
+    private ReentrantLock idLock(String id) {
+        return idLocks[(id.hashCode() & Integer.MAX_VALUE) % ID_STRIPES];
+    }
+
+    private MonthlyAggregates scanAggregates() throws IOException {
+        long t0 = SCAN.start();
+        MonthlyAggregates fresh = new MonthlyAggregates();
+        long[] rows = {0};
+        repo.forEach(e -> {
+            fresh.add(e);
+            rows[0]++;
+        });
+        SCAN.stop(t0, rows[0]);
+        return fresh;
     }
 
     private void validate(LocalDate date, BigDecimal amount, Category category) {
@@ -63,6 +345,9 @@ public final class ExpenseService {
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("amount must be > 0");
         }
+        if (amount.stripTrailingZeros().scale() > Money.SCALE) {
+            throw new IllegalArgumentException("amount must have at most " + Money.SCALE + " decimal places");
+        }
         if (category == null) throw new IllegalArgumentException("category is required");
     }
 }
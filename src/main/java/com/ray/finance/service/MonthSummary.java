@@ -0,0 +1,59 @@
+package com.ray.finance.service;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.Money;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Totals of a month as read at position (see ExpenseChange). Applying
+ * changes keeps the position: changes after it may be published out of
+ * order, so only the read itself marks what is already counted.
+ */
+public record MonthSummary(YearMonth month, BigDecimal total, Map<Category, BigDecimal> byCategory, long position) {
+
+    /**
+     * This summary with the amounts of changes in its month added or taken
+     * away; this if none are. Changes at or before position are already
+     * counted and are skipped, so a batch may overlap the summary.
+     */
+    public MonthSummary apply(List<ExpenseChange> changes) {
+        Map<Category, BigDecimal> map = new EnumMap<>(Category.class);
+        map.putAll(byCategory);
+        BigDecimal newTotal = total;
+        boolean touched = false;
+        for (ExpenseChange c : changes) {
+            if (c.position() <= position) continue;
+            if (inMonth(c.before())) {
+                BigDecimal amount = amount(c.before());
+                newTotal = newTotal.subtract(amount);
+                map.merge(c.before().getCategory(), amount.negate(), BigDecimal::add);
+                touched = true;
+            }
+            if (inMonth(c.after())) {
+                BigDecimal amount = amount(c.after());
+                newTotal = newTotal.add(amount);
+                map.merge(c.after().getCategory(), amount, BigDecimal::add);
+                touched = true;
+            }
+        }
+        if (!touched) return this;
+        // amounts are positive, so a category that sums to zero has no expenses left
+        map.values().removeIf(v -> v.signum() == 0);
+        return new MonthSummary(month, newTotal, map, position);
+    }
+
+    private boolean inMonth(Expense e) {
+        return e != null && YearMonth.from(e.getDate()).equals(month);
+    }
+
+    /** At the scale summaries are reported in. */
+    private static BigDecimal amount(Expense e) {
+        return Money.fromCents(Money.toCents(e.getAmount()));
+    }
+}
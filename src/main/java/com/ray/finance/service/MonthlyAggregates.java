@@ -0,0 +1,146 @@
+package com.ray.finance.service;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.Money;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Running totals per month and category, in cents. Each add/remove is a map
+ * lookup plus two array updates; row counts are kept alongside so a category
+ * whose last expense was removed drops out of the breakdown.
+ *
+ * Thread-safe. Each month's bucket is its own lock, so writers to different
+ * months never contend and a reader sees a month's categories consistently.
+ */
+final class MonthlyAggregates {
+    private static final Category[] CATEGORIES = Category.values();
+    private static final int SNAPSHOT_MAGIC = 0x45584147; // "EXAG"
+
+    private static final class Bucket {
+        final long[] cents = new long[CATEGORIES.length];
+        final int[] counts = new int[CATEGORIES.length];
+    }
+
+    private final Map<YearMonth, Bucket> buckets = new ConcurrentHashMap<>();
+
+    void add(Expense e) {
+        apply(e, 1);
+    }
+
+    void remove(Expense e) {
+        apply(e, -1);
+    }
+
+    private void apply(Expense e, int sign) {
+        YearMonth month = YearMonth.from(e.getDate());
+        Bucket b = buckets.computeIfAbsent(month, m -> new Bucket());
+        int c = e.getCategory().ordinal();
+        long cents = sign * Money.toCents(e.getAmount());
+        synchronized (b) {
+            b.cents[c] += cents;
+            b.counts[c] += sign;
+        }
+    }
+
+    BigDecimal total(YearMonth month) {
+        Bucket b = buckets.get(month);
+        long total = 0;
+        if (b != null) {
+            synchronized (b) {
+                for (long cents : b.cents) total += cents;
+            }
+        }
+        return Money.fromCents(total);
+    }
+
+    Map<Category, BigDecimal> byCategory(YearMonth month) {
+        Map<Category, BigDecimal> map = new EnumMap<>(Category.class);
+        Bucket b = buckets.get(month);
+        if (b == null) return map;
+        synchronized (b) {
+            for (int c = 0; c < CATEGORIES.length; c++) {
+                if (b.counts[c] > 0) map.put(CATEGORIES[c], Money.fromCents(b.cents[c]));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Writes every bucket: a header naming the categories, then per month its
+     * epoch month and the cents and count of each category. Writers must be
+     * excluded by the caller for the result to be a consistent snapshot.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(CATEGORIES.length);
+        for (Category c : CATEGORIES) out.writeUTF(c.name());
+        out.writeInt(buckets.size());
+        for (Map.Entry<YearMonth, Bucket> e : buckets.entrySet()) {
+            out.writeInt(e.getKey().getYear() * 12 + e.getKey().getMonthValue() - 1);
+            Bucket b = e.getValue();
+            synchronized (b) {
+                for (int c = 0; c < CATEGORIES.length; c++) {
+                    out.writeLong(b.cents[c]);
+                    out.writeInt(b.counts[c]);
+                }
+            }
+        }
+    }
+
+    /** The aggregates written by writeTo, or null if they were written for other categories. */
+    static MonthlyAggregates readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != CATEGORIES.length) return null;
+        for (Category c : CATEGORIES) {
+            if (!in.readUTF().equals(c.name())) return null;
+        }
+        MonthlyAggregates out = new MonthlyAggregates();
+        int months = in.readInt();
+        for (int i = 0; i < months; i++) {
+            int epochMonth = in.readInt();
+            Bucket b = new Bucket();
+            for (int c = 0; c < CATEGORIES.length; c++) {
+                b.cents[c] = in.readLong();
+                b.counts[c] = in.readInt();
+            }
+            out.buckets.put(YearMonth.of(Math.floorDiv(epochMonth, 12), Math.floorMod(epochMonth, 12) + 1), b);
+        }
+        return out;
+    }
+
+    /** True if both hold the same totals and row counts for every month. */
+    boolean sameAs(MonthlyAggregates other) {
+        for (YearMonth month : union(other)) {
+            Bucket a = buckets.get(month);
+            Bucket b = other.buckets.get(month);
+            for (int c = 0; c < CATEGORIES.length; c++) {
+                if (cents(a, c) != cents(b, c) || count(a, c) != count(b, c)) return false;
+            }
+        }
+        return true;
+    }
+
+    private Set<YearMonth> union(MonthlyAggregates other) {
+        Set<YearMonth> months = new HashSet<>(buckets.keySet());
+        months.addAll(other.buckets.keySet());
+        return months;
+    }
+
+    private static long cents(Bucket b, int c) {
+        return b == null ? 0 : b.cents[c];
+    }
+
+    private static int count(Bucket b, int c) {
+        return b == null ? 0 : b.counts[c];
+    }
+}
@@ -5,13 +5,22 @@ import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
 public final class ExpenseRow {
+    /** Placeholder for a row that is no longer in the repository. */
+    static final ExpenseRow EMPTY = new ExpenseRow();
+
+    private final Expense expense; // null for EMPTY
     private final StringProperty id = new SimpleStringProperty();
     private final StringProperty date = new SimpleStringProperty();
     private final StringProperty amount = new SimpleStringProperty();
     private final StringProperty category = new SimpleStringProperty();
     private final StringProperty note = new SimpleStringProperty();
 
+    private ExpenseRow() {
+        this.expense = null;
+    }
+
     public ExpenseRow(Expense e) {
+        this.expense = e;
         id.set(e.getId());
         date.set(e.getDate().toString());
         amount.set(e.getAmount().toPlainString());
@@ -19,6 +28,8 @@ public final class ExpenseRow {
         note.set(e.getNote());
     }
 
+    Expense expense() { return expense; }
+
     public StringProperty idProperty() { return id; }
     public StringProperty dateProperty() { return date; }
     public StringProperty amountProperty() { return amount; }
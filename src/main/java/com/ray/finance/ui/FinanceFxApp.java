@@ -1,11 +1,22 @@
 package com.ray.finance.ui;
 
+import com.ray.finance.metrics.MetricsRegistry;
+import com.ray.finance.metrics.Timer;
 import com.ray.finance.model.Category;
+import com.ray.finance.repo.CachingExpenseRepository;
+import com.ray.finance.repo.ExpenseFilter;
+import com.ray.finance.repo.ExpenseRepository;
+import com.ray.finance.repo.ExpenseSort;
+import com.ray.finance.repo.InstrumentedExpenseRepository;
 import com.ray.finance.repo.SqliteExpenseRepository;
+import com.ray.finance.service.AsyncExpenseService;
+import com.ray.finance.service.ChangeFeed;
+import com.ray.finance.service.ExpenseChange;
 import com.ray.finance.service.ExpenseService;
+import com.ray.finance.service.MonthSummary;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -13,43 +24,111 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
 
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Desktop UI. Startup is kept off the critical path: opening the repository
+ * does no I/O, the current month's summary comes from the aggregate snapshot
+ * saved at the last exit, and the table count and the aggregate rebuild run
+ * on the background worker after the window is shown. The times to window
+ * and to table are recorded as startup.* metrics; with
+ * -Dfinance.startup.exit=true they are also printed and the app exits once
+ * the table is ready (used to measure startup and to train the CDS archive).
+ *
+ * Saves do not reload anything: the service's change feed delivers each
+ * batch of writes on the FX thread, the table applies them as row diffs and
+ * the summary adds or subtracts their amounts. A summary read on the worker
+ * records the feed position it was read at; changes delivered while it was
+ * on its way are applied to it on arrival, except those it already counts.
+ */
 public class FinanceFxApp extends Application {
 
+    private static final String ALL_CATEGORIES = "All categories";
+    private static final Path DB_PATH = Path.of("data", "finance.db");
+    private static final Path SNAPSHOT_PATH = Path.of("data", "finance.db.summary");
+
+    private ExpenseRepository repo;
     private ExpenseService service;
-    private final ObservableList<ExpenseRow> rows = FXCollections.observableArrayList();
+    private AsyncExpenseService async;
+    private PagedExpenseList rows;
+    private MetricsPanel metricsPanel;
+    private ChangeFeed.Subscription changes;
+    private MonthSummary shownSummary;
+    // changes delivered while summaries are being read, which those may or may not count
+    private final List<ExpenseChange> changesSinceRequest = new ArrayList<>();
+    private int pendingSummaries;
 
     private final Label totalLabel = new Label("Total: $0.00");
     private final TextArea breakdownArea = new TextArea();
 
     @Override
     public void start(Stage stage) throws Exception {
-        // DB location
-        Path dbPath = Path.of("data", "finance.db");
-        this.service = new ExpenseService(new SqliteExpenseRepository(dbPath));
+        // Timed below the cache, so the sqlite.* timers show database I/O only
+        MetricsRegistry metrics = MetricsRegistry.global();
+        CachingExpenseRepository cache = new CachingExpenseRepository(
+                new InstrumentedExpenseRepository(new SqliteExpenseRepository(DB_PATH), "sqlite", metrics));
+        cache.registerMetrics(metrics, "cache");
+        this.repo = cache;
+        this.service = new ExpenseService(repo);
+        this.async = new AsyncExpenseService(service, Platform::runLater);
+        this.rows = new PagedExpenseList(repo, async, ex -> showError(ex));
+        this.changes = service.changes().subscribe(Platform::runLater, batch -> {
+            rows.apply(batch);
+            if (pendingSummaries > 0) changesSinceRequest.addAll(batch);
+            if (shownSummary != null) showSummary(shownSummary.apply(batch));
+        });
+        boolean fromSnapshot = loadSnapshot();
 
-        // Table
+        // Table: rows are paged in from the repository, which also sorts and filters
         TableView<ExpenseRow> table = new TableView<>(rows);
-        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+        table.setFixedCellSize(24);
 
         TableColumn<ExpenseRow, String> dateCol = new TableColumn<>("Date");
         dateCol.setCellValueFactory(c -> c.getValue().dateProperty());
+        dateCol.setUserData(ExpenseSort.Column.DATE);
 
         TableColumn<ExpenseRow, String> amtCol = new TableColumn<>("Amount");
         amtCol.setCellValueFactory(c -> c.getValue().amountProperty());
+        amtCol.setUserData(ExpenseSort.Column.AMOUNT);
 
         TableColumn<ExpenseRow, String> catCol = new TableColumn<>("Category");
         catCol.setCellValueFactory(c -> c.getValue().categoryProperty());
+        catCol.setUserData(ExpenseSort.Column.CATEGORY);
 
         TableColumn<ExpenseRow, String> noteCol = new TableColumn<>("Note");
         noteCol.setCellValueFactory(c -> c.getValue().noteProperty());
+        noteCol.setUserData(ExpenseSort.Column.NOTE);
+
+        table.getColumns().setAll(List.of(dateCol, amtCol, catCol, noteCol));
+        table.setSortPolicy(t -> {
+            ExpenseSort sort = ExpenseSort.NEWEST_FIRST;
+            if (!t.getSortOrder().isEmpty()) {
+                TableColumn<ExpenseRow, ?> col = t.getSortOrder().get(0);
+                sort = new ExpenseSort((ExpenseSort.Column) col.getUserData(),
+                        col.getSortType() == TableColumn.SortType.ASCENDING);
+            }
+            rows.setSort(sort).exceptionally(ex -> showError(ex));
+            return true;
+        });
 
-        table.getColumns().addAll(dateCol, amtCol, catCol, noteCol);
+        // Table filters
+        ComboBox<String> categoryFilter = new ComboBox<>();
+        categoryFilter.getItems().add(ALL_CATEGORIES);
+        for (Category c : Category.values()) categoryFilter.getItems().add(c.name());
+        categoryFilter.setValue(ALL_CATEGORIES);
+        CheckBox monthOnly = new CheckBox("Selected month only");
 
         // Form inputs
         DatePicker datePicker = new DatePicker(LocalDate.now());
@@ -66,23 +145,29 @@ public class FinanceFxApp extends Application {
         Label status = new Label();
 
         addBtn.setOnAction(e -> {
+            LocalDate date = datePicker.getValue();
+            BigDecimal amount;
             try {
-                LocalDate date = datePicker.getValue();
-                BigDecimal amount = new BigDecimal(amountField.getText().trim());
-                Category cat = categoryBox.getValue();
-                String note = noteField.getText();
-
-                service.addExpense(date, amount, cat, note);
-
-                // clear inputs
-                amountField.clear();
-                noteField.clear();
-                status.setText("Saved ✅");
-                refreshTableAndSummary();
-
+                amount = new BigDecimal(amountField.getText().trim());
             } catch (Exception ex) {
                 status.setText("Error: " + ex.getMessage());
+                return;
             }
+            Category cat = categoryBox.getValue();
+            String note = noteField.getText();
+
+            addBtn.setDisable(true);
+            async.addExpense(date, amount, cat, note).whenComplete((created, ex) -> {
+                addBtn.setDisable(false);
+                if (ex != null) {
+                    status.setText("Error: " + rootCause(ex).getMessage());
+                    return;
+                }
+                // clear inputs; the table and summary pick the expense up from the change feed
+                amountField.clear();
+                noteField.clear();
+                status.setText("Saved ✅");
+            });
         });
 
         GridPane form = new GridPane();
@@ -114,26 +199,63 @@ public class FinanceFxApp extends Application {
         TextField monthField = new TextField(YearMonth.now().toString()); // YYYY-MM
         monthField.setPromptText("YYYY-MM");
         Button refreshBtn = new Button("Refresh");
+        Button reportsBtn = new Button("Reports…");
 
         breakdownArea.setEditable(false);
         breakdownArea.setPrefRowCount(8);
 
         refreshBtn.setOnAction(e -> refreshTableAndSummary(monthField.getText().trim()));
+        ReportWindow reports = new ReportWindow(service, async);
+        reportsBtn.setOnAction(e -> reports.show(stage));
 
-        HBox summaryTop = new HBox(10, new Label("Month:"), monthField, refreshBtn);
+        Runnable applyFilter = () -> {
+            try {
+                ExpenseFilter filter = monthOnly.isSelected()
+                        ? ExpenseFilter.month(YearMonth.parse(monthField.getText().trim()))
+                        : ExpenseFilter.ALL;
+                String cat = categoryFilter.getValue();
+                if (cat != null && !ALL_CATEGORIES.equals(cat)) {
+                    filter = filter.withCategories(Set.of(Category.valueOf(cat)));
+                }
+                rows.setFilter(filter).exceptionally(ex -> showError(ex));
+            } catch (Exception ex) {
+                breakdownArea.setText("Error: " + ex.getMessage());
+            }
+        };
+        categoryFilter.setOnAction(e -> applyFilter.run());
+        monthOnly.setOnAction(e -> applyFilter.run());
+
+        // Typing a month re-queries the summary; a newer month cancels the older query
+        monthField.textProperty().addListener((obs, old, text) -> {
+            YearMonth month;
+            try {
+                month = YearMonth.parse(text.trim());
+            } catch (Exception ex) {
+                return; // incomplete input
+            }
+            requestSummary(async.summary(month));
+            if (monthOnly.isSelected()) applyFilter.run();
+        });
+
+        HBox summaryTop = new HBox(10, new Label("Month:"), monthField, refreshBtn, reportsBtn);
         summaryTop.setPadding(new Insets(0, 0, 6, 0));
 
         VBox summaryBox = new VBox(8, summaryTop, totalLabel, new Label("By Category:"), breakdownArea);
         summaryBox.setPadding(new Insets(10));
         summaryBox.setStyle("-fx-border-color: #ddd; -fx-border-radius: 6; -fx-background-radius: 6;");
 
-        VBox leftPane = new VBox(12, form, summaryBox);
+        metricsPanel = new MetricsPanel(metrics);
+
+        VBox leftPane = new VBox(12, form, summaryBox, metricsPanel);
         leftPane.setPadding(new Insets(10));
         leftPane.setPrefWidth(360);
 
         BorderPane root = new BorderPane();
         root.setLeft(leftPane);
-        root.setCenter(new VBox(10, new Label("Expenses"), table));
+        HBox tableTop = new HBox(10, new Label("Expenses"), categoryFilter, monthOnly);
+        VBox center = new VBox(10, tableTop, table);
+        VBox.setVgrow(table, Priority.ALWAYS);
+        root.setCenter(center);
         BorderPane.setMargin(root.getCenter(), new Insets(10));
 
         Scene scene = new Scene(root, 980, 560);
@@ -141,41 +263,115 @@ public class FinanceFxApp extends Application {
         stage.setScene(scene);
         stage.show();
 
-        refreshTableAndSummary();
+        YearMonth month = YearMonth.now();
+        if (fromSnapshot) {
+            // A map lookup, so it is fine on the FX thread; the rebuild below corrects it if stale
+            showSummary(service.monthSummary(month));
+        }
+        long shown = sinceLaunch(metrics.timer("startup.windowShown"));
+        metrics.registerMBean(); // starting the platform MBean server is not free, so after the window
+
+        rows.reload().whenComplete((v, ex) -> {
+            if (ex != null) showError(ex);
+            long loaded = sinceLaunch(metrics.timer("startup.tableLoaded"));
+            if (Boolean.getBoolean("finance.startup.exit")) {
+                System.out.printf("Startup: window shown after %d ms, table loaded after %d ms%n", shown, loaded);
+                Platform.exit();
+            }
+        });
+        if (fromSnapshot) {
+            async.supply(() -> {
+                service.rebuildAggregates();
+                return null;
+            }).thenRun(() -> refreshTableAndSummary(monthField.getText().trim(), false));
+        } else {
+            refreshTableAndSummary(month.toString(), false);
+        }
+    }
+
+    private boolean loadSnapshot() {
+        try {
+            return service.loadAggregateSnapshot(SNAPSHOT_PATH);
+        } catch (Exception ex) {
+            return false; // unreadable snapshot: summaries fall back to a scan
+        }
     }
 
-    private void refreshTableAndSummary() {
-        refreshTableAndSummary(YearMonth.now().toString());
+    /** Milliseconds since the JVM started, also recorded in timer. */
+    private static long sinceLaunch(Timer timer) {
+        long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        timer.record(millis * 1_000_000, 0);
+        return millis;
     }
 
     private void refreshTableAndSummary(String monthText) {
-        try {
-            rows.clear();
-            var all = service.listAll();
-            for (var e : all) rows.add(new ExpenseRow(e));
-
-            YearMonth month = YearMonth.parse(monthText);
-            var total = service.monthlyTotal(month);
-            Map<Category, BigDecimal> byCat = service.monthlyByCategory(month);
-
-            totalLabel.setText("Total: $" + total.toPlainString());
-
-            StringBuilder sb = new StringBuilder();
-            if (byCat.isEmpty()) {
-                sb.append("(No expenses for this month)");
-            } else {
-                for (var entry : byCat.entrySet()) {
-                    sb.append(entry.getKey().name())
-                            .append(": $")
-                            .append(entry.getValue().toPlainString())
-                            .append("\n");
-                }
-            }
-            breakdownArea.setText(sb.toString());
+        refreshTableAndSummary(monthText, true);
+    }
 
+    private void refreshTableAndSummary(String monthText, boolean reloadTable) {
+        YearMonth month;
+        try {
+            month = YearMonth.parse(monthText);
         } catch (Exception ex) {
             breakdownArea.setText("Error: " + ex.getMessage());
+            return;
+        }
+        if (reloadTable) rows.reload().exceptionally(ex -> showError(ex));
+        requestSummary(async.refresh(month));
+    }
+
+    /** Shows the summary once it arrives, brought up to date with the changes delivered meanwhile. */
+    private void requestSummary(CompletableFuture<MonthSummary> request) {
+        pendingSummaries++;
+        request.whenComplete((summary, ex) -> {
+            if (summary != null) showSummary(summary.apply(changesSinceRequest));
+            else if (!(ex instanceof CancellationException)) showError(ex);
+            if (--pendingSummaries == 0) changesSinceRequest.clear();
+        });
+    }
+
+    private void showSummary(MonthSummary summary) {
+        shownSummary = summary;
+        totalLabel.setText("Total: $" + summary.total().toPlainString());
+
+        Map<Category, BigDecimal> byCat = summary.byCategory();
+        StringBuilder sb = new StringBuilder();
+        if (byCat.isEmpty()) {
+            sb.append("(No expenses for this month)");
+        } else {
+            for (var entry : byCat.entrySet()) {
+                sb.append(entry.getKey().name())
+                        .append(": $")
+                        .append(entry.getValue().toPlainString())
+                        .append("\n");
+            }
+        }
+        breakdownArea.setText(sb.toString());
+    }
+
+    private Void showError(Throwable ex) {
+        breakdownArea.setText("Error: " + rootCause(ex).getMessage());
+        return null;
+    }
+
+    private static Throwable rootCause(Throwable ex) {
+        while (ex instanceof CompletionException && ex.getCause() != null) ex = ex.getCause();
+        return ex;
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (metricsPanel != null) metricsPanel.stop();
+        if (changes != null) changes.close();
+        if (async != null) async.close();
+        if (service != null) {
+            try {
+                service.saveAggregateSnapshot(SNAPSHOT_PATH);
+            } catch (Exception ex) {
+                System.err.println("Could not save summary snapshot: " + ex.getMessage());
+            }
         }
+        if (repo != null) repo.close();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,17 @@
+package com.ray.finance.ui;
+
+import javafx.application.Application;
+
+/**
+ * Entry point for running the desktop app from a plain classpath (java -cp),
+ * as the CDS training run does. The java launcher refuses a main class that
+ * extends Application unless JavaFX is on the module path.
+ */
+public final class FinanceFxLauncher {
+
+    private FinanceFxLauncher() {}
+
+    public static void main(String[] args) {
+        Application.launch(FinanceFxApp.class, args);
+    }
+}
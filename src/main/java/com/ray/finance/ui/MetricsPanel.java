@@ -0,0 +1,76 @@
+package com.ray.finance.ui;
+
+import com.ray.finance.metrics.MetricsRegistry;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TitledPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+
+import java.util.Map;
+
+/**
+ * Collapsible view of a MetricsRegistry: a switch to turn collection on and
+ * off, a reset, and every value, refreshed every two seconds while expanded.
+ */
+final class MetricsPanel extends TitledPane {
+
+    private final MetricsRegistry registry;
+    private final TextArea values = new TextArea();
+    private final Timeline refresh = new Timeline(new KeyFrame(Duration.seconds(2), e -> refresh()));
+
+    MetricsPanel(MetricsRegistry registry) {
+        this.registry = registry;
+        setText("Metrics");
+        setExpanded(false);
+
+        CheckBox enabled = new CheckBox("Collect");
+        enabled.setSelected(registry.isEnabled());
+        enabled.setOnAction(e -> {
+            registry.setEnabled(enabled.isSelected());
+            refresh();
+        });
+        Button reset = new Button("Reset");
+        reset.setOnAction(e -> {
+            registry.reset();
+            refresh();
+        });
+
+        values.setEditable(false);
+        values.setPrefRowCount(12);
+        values.setStyle("-fx-font-family: monospace;");
+        setContent(new VBox(6, new HBox(10, enabled, reset), values));
+
+        refresh.setCycleCount(Timeline.INDEFINITE);
+        expandedProperty().addListener((obs, was, expanded) -> {
+            if (expanded) {
+                refresh();
+                refresh.play();
+            } else {
+                refresh.stop();
+            }
+        });
+    }
+
+    private void refresh() {
+        if (!registry.isEnabled()) {
+            values.setText("(collection is off)");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Double> e : registry.getValues().entrySet()) {
+            // idle timers and counters are noise
+            if (e.getValue() == 0 && !e.getKey().endsWith(".count")) continue;
+            sb.append(String.format("%-40s %s%n", e.getKey(), MetricsRegistry.format(e.getValue())));
+        }
+        values.setText(sb.toString());
+    }
+
+    void stop() {
+        refresh.stop();
+    }
+}
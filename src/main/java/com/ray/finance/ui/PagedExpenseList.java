@@ -0,0 +1,270 @@
+package com.ray.finance.ui;
+
+import com.ray.finance.model.Expense;
+import com.ray.finance.repo.ExpenseFilter;
+import com.ray.finance.repo.ExpenseRepository;
+import com.ray.finance.repo.ExpenseSort;
+import com.ray.finance.service.AsyncExpenseService;
+import com.ray.finance.service.ExpenseChange;
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Read-only table model that fetches rows from the repository one page at a
+ * time as the TableView asks for them. Only a handful of pages (and their
+ * ExpenseRows) are held at once; sorting and filtering are done by the
+ * repository query, not in memory.
+ *
+ * Queries run on the AsyncExpenseService worker. Until a page arrives its
+ * rows read as blank, then an update is fired for that range. A page that
+ * fails to load is reported to onFetchError and stays uncached, so the next
+ * get() on it tries again. Must be used from the FX application thread.
+ *
+ * Writes are applied as diffs (apply): a change is placed among the cached
+ * pages by the current sort and fired as a single add or remove, so adding
+ * one expense costs a few hundred row moves at most, not a re-count and
+ * re-fetch.
+ */
+final class PagedExpenseList extends ObservableListBase<ExpenseRow> {
+    static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 8;
+
+    private final ExpenseRepository repo;
+    private final AsyncExpenseService async;
+    private final Consumer<Throwable> onFetchError;
+    private final Map<Integer, List<ExpenseRow>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<ExpenseRow>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    private final Set<Integer> loading = new HashSet<>();
+
+    private ExpenseFilter filter = ExpenseFilter.ALL;
+    private ExpenseSort sort = ExpenseSort.NEWEST_FIRST;
+    private int size;
+    // bumped on every reload so pages fetched for an older query are dropped
+    private int generation;
+    // bumped whenever cached rows move, so pages fetched before the move are dropped
+    private int pageEpoch;
+
+    PagedExpenseList(ExpenseRepository repo, AsyncExpenseService async, Consumer<Throwable> onFetchError) {
+        this.repo = repo;
+        this.async = async;
+        this.onFetchError = onFetchError;
+    }
+
+    ExpenseFilter getFilter() { return filter; }
+    ExpenseSort getSort() { return sort; }
+
+    CompletableFuture<Void> setFilter(ExpenseFilter filter) {
+        this.filter = filter;
+        return reload();
+    }
+
+    CompletableFuture<Void> setSort(ExpenseSort sort) {
+        this.sort = sort;
+        return reload();
+    }
+
+    /** Re-counts and drops cached pages; visible rows are fetched again on demand. */
+    CompletableFuture<Void> reload() {
+        int gen = ++generation;
+        ExpenseFilter f = filter;
+        return async.supply(() -> repo.count(f)).thenAccept(count -> {
+            if (gen != generation) return;
+            int oldSize = size;
+            size = count;
+            pages.clear();
+            loading.clear();
+
+            beginChange();
+            if (oldSize > 0) nextRemove(0, Collections.nCopies(oldSize, null));
+            if (size > 0) nextAdd(0, size);
+            endChange();
+        });
+    }
+
+    /**
+     * Applies changes made since the rows were fetched. Cached pages after a
+     * change shift by one row; a page whose new first or last row is not
+     * cached is dropped, or fetched again if it stays in place. Large batches
+     * and deletes of rows that are not cached fall back to reload().
+     */
+    void apply(List<ExpenseChange> changes) {
+        if (changes.size() > PAGE_SIZE) {
+            reload();
+            return;
+        }
+        Set<Integer> refetch = new HashSet<>(loading);
+        refetch.retainAll(pages.keySet());
+        pageEpoch++;
+        loading.clear();
+
+        boolean lost = false;
+        beginChange();
+        try {
+            for (ExpenseChange c : changes) {
+                if (c.before() != null && filter.matches(c.before()) && !remove(c.before())) {
+                    lost = true;
+                    break;
+                }
+                if (c.after() != null && filter.matches(c.after())) insert(c.after());
+            }
+        } finally {
+            endChange();
+        }
+        if (lost) {
+            reload();
+            return;
+        }
+        for (int page : refetch) {
+            if (pages.containsKey(page)) fetch(page);
+        }
+    }
+
+    private void insert(Expense e) {
+        Comparator<Expense> order = sort.comparator();
+        List<Integer> cached = cachedPages();
+        int at = size; // after every cached row unless a page says otherwise
+        boolean known = true;
+        for (int p : cached) {
+            List<ExpenseRow> rows = pages.get(p);
+            if (rows.isEmpty() || order.compare(e, rows.get(rows.size() - 1).expense()) > 0) continue;
+            int pos = 0;
+            while (order.compare(e, rows.get(pos).expense()) > 0) pos++;
+            at = p * PAGE_SIZE + pos;
+            // before the first row of a page whose predecessor is not cached: somewhere in that gap
+            known = pos > 0 || p == 0 || pages.containsKey(p - 1);
+            break;
+        }
+
+        size++;
+        ExpenseRow carry = null;
+        int carryPage = -2;
+        for (int p : cached) {
+            int start = p * PAGE_SIZE;
+            if (start + PAGE_SIZE <= at) continue;
+            List<ExpenseRow> rows = pages.get(p);
+            if (at >= start && known && at - start <= rows.size()) {
+                rows.add(at - start, new ExpenseRow(e));
+            } else if (carry != null && p == carryPage + 1 && !rows.isEmpty()) {
+                rows.add(0, carry);
+            } else {
+                pages.remove(p);
+                carry = null;
+                continue;
+            }
+            carry = rows.size() > PAGE_SIZE ? rows.remove(PAGE_SIZE) : null;
+            carryPage = p;
+        }
+        nextAdd(at, at + 1);
+    }
+
+    /** False if the row is not cached, so its position is unknown. */
+    private boolean remove(Expense e) {
+        List<Integer> cached = cachedPages();
+        int hitPage = -1;
+        int hitPos = -1;
+        for (int p : cached) {
+            List<ExpenseRow> rows = pages.get(p);
+            for (int i = 0; i < rows.size() && hitPage < 0; i++) {
+                if (rows.get(i).expense().getId().equals(e.getId())) {
+                    hitPage = p;
+                    hitPos = i;
+                }
+            }
+        }
+        if (hitPage < 0) return false;
+
+        ExpenseRow removed = null;
+        List<ExpenseRow> tail = null;
+        int tailPage = -2;
+        for (int p : cached) {
+            if (p < hitPage) continue;
+            List<ExpenseRow> rows = pages.get(p);
+            if (p == hitPage) {
+                removed = rows.remove(hitPos);
+            } else if (p == tailPage + 1 && !rows.isEmpty()) {
+                tail.add(rows.remove(0));
+            } else {
+                pages.remove(p);
+                continue;
+            }
+            tail = rows;
+            tailPage = p;
+        }
+        size--;
+        // the last page kept is now a row short unless it is the end of the list
+        if (tail.size() < Math.min(PAGE_SIZE, size - tailPage * PAGE_SIZE)) fetch(tailPage);
+        nextRemove(hitPage * PAGE_SIZE + hitPos, removed);
+        return true;
+    }
+
+    private List<Integer> cachedPages() {
+        return new ArrayList<>(new TreeSet<>(pages.keySet()));
+    }
+
+    @Override
+    public ExpenseRow get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        int page = index / PAGE_SIZE;
+        List<ExpenseRow> rows = pages.get(page);
+        if (rows == null) {
+            fetch(page);
+            return ExpenseRow.EMPTY;
+        }
+        int offset = index % PAGE_SIZE;
+        // The ledger may have shrunk since the last count; show a blank row until reload
+        return offset < rows.size() ? rows.get(offset) : ExpenseRow.EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** True if the rows of page are held, so get() on them starts no fetch. */
+    boolean isCached(int page) {
+        return pages.containsKey(page);
+    }
+
+    private void fetch(int page) {
+        if (!loading.add(page)) return;
+        int gen = generation;
+        int epoch = pageEpoch;
+        ExpenseFilter f = filter;
+        ExpenseSort s = sort;
+        async.supply(() -> {
+            List<Expense> expenses = repo.findPage(f, s, page * PAGE_SIZE, PAGE_SIZE);
+            List<ExpenseRow> rows = new ArrayList<>(expenses.size());
+            for (Expense e : expenses) rows.add(new ExpenseRow(e));
+            return rows;
+        }).whenComplete((rows, ex) -> {
+            if (gen != generation || epoch != pageEpoch) return;
+            loading.remove(page);
+            if (ex != null) {
+                onFetchError.accept(ex);
+                return;
+            }
+            pages.put(page, rows);
+
+            int from = page * PAGE_SIZE;
+            int to = Math.min(size, from + PAGE_SIZE);
+            beginChange();
+            for (int i = from; i < to; i++) nextSet(i, ExpenseRow.EMPTY);
+            endChange();
+        });
+    }
+}
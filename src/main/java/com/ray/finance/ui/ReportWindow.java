@@ -0,0 +1,127 @@
+package com.ray.finance.ui;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Money;
+import com.ray.finance.report.PeriodTotal;
+import com.ray.finance.report.Report;
+import com.ray.finance.report.ReportFormatter;
+import com.ray.finance.report.ReportRequest;
+import com.ray.finance.report.Rollup;
+import com.ray.finance.service.AsyncExpenseService;
+import com.ray.finance.service.ExpenseService;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.Stage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Rollup reports in their own window: pick a range and a rollup, and the
+ * periods are listed with their total, the change against a year earlier and
+ * one column per category. All rollups are computed in one run, so switching
+ * between them does not go back to the repository.
+ */
+final class ReportWindow {
+
+    private final ExpenseService service;
+    private final AsyncExpenseService async;
+    private final Stage stage = new Stage();
+    private final TableView<Integer> table = new TableView<>();
+    private final ComboBox<Rollup> rollupBox = new ComboBox<>(FXCollections.observableArrayList(Rollup.values()));
+    private final Label status = new Label();
+    private Report report;
+
+    ReportWindow(ExpenseService service, AsyncExpenseService async) {
+        this.service = service;
+        this.async = async;
+
+        DatePicker fromPicker = new DatePicker(LocalDate.now().minusYears(9).withDayOfYear(1));
+        DatePicker toPicker = new DatePicker(LocalDate.now());
+        rollupBox.setValue(Rollup.YEAR);
+        rollupBox.setOnAction(e -> show());
+        Button runBtn = new Button("Run");
+        runBtn.setOnAction(e -> run(fromPicker.getValue(), toPicker.getValue(), runBtn));
+
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+        table.getColumns().add(column("Period", p -> p.label()));
+        table.getColumns().add(column("Total", p -> p.total().toPlainString()));
+        TableColumn<Integer, String> yoy = new TableColumn<>("YoY");
+        yoy.setCellValueFactory(c -> new ReadOnlyStringWrapper(ReportFormatter.formatChange(
+                period(c.getValue()).changeFrom(report.yearAgo(rollupBox.getValue(), c.getValue())))));
+        yoy.setSortable(false);
+        table.getColumns().add(yoy);
+        for (Category category : Category.values()) {
+            table.getColumns().add(column(category.name(), p -> Money.fromCents(p.cents(category)).toPlainString()));
+        }
+
+        HBox top = new HBox(10, new Label("From:"), fromPicker, new Label("To:"), toPicker,
+                new Label("Rollup:"), rollupBox, runBtn, status);
+        BorderPane root = new BorderPane(table);
+        root.setTop(top);
+        BorderPane.setMargin(top, new Insets(0, 0, 8, 0));
+        root.setPadding(new Insets(10));
+
+        stage.setTitle("Reports");
+        stage.setScene(new Scene(root, 1100, 520));
+    }
+
+    void show(Stage owner) {
+        if (stage.getOwner() == null) stage.initOwner(owner);
+        stage.show();
+        stage.toFront();
+    }
+
+    private void run(LocalDate from, LocalDate to, Button runBtn) {
+        ReportRequest request;
+        try {
+            request = new ReportRequest(from, to, EnumSet.allOf(Rollup.class));
+        } catch (IllegalArgumentException ex) {
+            status.setText("Error: " + ex.getMessage());
+            return;
+        }
+        runBtn.setDisable(true);
+        status.setText("Running…");
+        long start = System.nanoTime();
+        async.supply(() -> service.report(request)).whenComplete((result, ex) -> {
+            runBtn.setDisable(false);
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                status.setText("Error: " + cause.getMessage());
+                return;
+            }
+            report = result;
+            status.setText("Done in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            show();
+        });
+    }
+
+    /** Rows are indexes into the selected rollup's periods, so the YoY column can look back. */
+    private void show() {
+        if (report == null) return;
+        int n = report.periods(rollupBox.getValue()).size();
+        List<Integer> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) rows.add(i);
+        table.setItems(FXCollections.observableArrayList(rows));
+    }
+
+    private PeriodTotal period(int i) {
+        return report.periods(rollupBox.getValue()).get(i);
+    }
+
+    private TableColumn<Integer, String> column(String title, Function<PeriodTotal, String> value) {
+        TableColumn<Integer, String> col = new TableColumn<>(title);
+        col.setCellValueFactory(c -> new ReadOnlyStringWrapper(value.apply(period(c.getValue()))));
+        col.setSortable(false);
+        return col;
+    }
+}
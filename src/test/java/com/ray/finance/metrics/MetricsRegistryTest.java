@@ -0,0 +1,76 @@
+package com.ray.finance.metrics;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.repo.CsvExpenseRepository;
+import com.ray.finance.repo.ExpenseRepository;
+import com.ray.finance.repo.InstrumentedExpenseRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.JMX;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void recordsNothingWhileDisabled() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry(false);
+        ExpenseRepository repo = new InstrumentedExpenseRepository(
+                new CsvExpenseRepository(tempDir.resolve("timed.csv")), "csv", registry);
+        repo.insert(expense("a"));
+        assertEquals(0.0, registry.getValues().get("csv.insert.count"));
+    }
+
+    @Test
+    void recordsCallsRowsAndLatencyWhileEnabled() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry(true);
+        ExpenseRepository repo = new InstrumentedExpenseRepository(
+                new CsvExpenseRepository(tempDir.resolve("timed.csv")), "csv", registry);
+        repo.insert(expense("a"));
+        repo.insert(expense("b"));
+        assertEquals(2, repo.findAll().size());
+
+        Map<String, Double> values = registry.getValues();
+        assertEquals(2.0, values.get("csv.insert.count"));
+        assertEquals(2.0, values.get("csv.findAll.rows"));
+        assertEquals(2.0, values.get("csv.rowsRead"));
+        assertTrue(values.get("csv.findAll.p99Micros") >= values.get("csv.findAll.p50Micros"));
+        assertTrue(values.get("csv.findAll.maxMicros") > 0);
+    }
+
+    @Test
+    void globalValuesAreReadableOverJmx() throws Exception {
+        MetricsRegistry global = MetricsRegistry.global();
+        boolean wasEnabled = global.isEnabled();
+        global.setEnabled(true);
+        try {
+            global.reset();
+            CsvExpenseRepository repo = new CsvExpenseRepository(tempDir.resolve("jmx.csv"));
+            repo.insert(expense("a"));
+            repo.findAll();
+
+            global.registerMBean();
+            Map<String, Double> viaJmx = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                    new ObjectName(MetricsRegistry.OBJECT_NAME), MetricsMXBean.class).getValues();
+            assertTrue(viaJmx.get("csv.bytesRead") > 0);
+            assertTrue(viaJmx.get("csv.bytesWritten") > 0);
+        } finally {
+            global.setEnabled(wasEnabled);
+        }
+    }
+
+    private static Expense expense(String id) {
+        return new Expense(id, LocalDate.of(2026, 9, 1), new BigDecimal("5"), Category.OTHER, "");
+    }
+}
@@ -0,0 +1,63 @@
+package com.ray.finance.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FieldCodecTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2026-02-28", "2024-02-29", "0001-01-01", "9999-12-31", "1970-01-01"})
+    void datesAgreeWithLocalDate(String date) {
+        LocalDate expected = LocalDate.parse(date);
+        assertEquals(expected, FieldCodec.parseDate(date.toCharArray(), 0, date.length()));
+        byte[] bytes = (" " + date + " ").getBytes(StandardCharsets.US_ASCII);
+        assertEquals(expected, FieldCodec.parseDate(bytes, 1, date.length()));
+        assertEquals(expected.toEpochDay(), FieldCodec.parseEpochDay(bytes, 1, date.length()));
+        char[] out = new char[10];
+        assertEquals(10, FieldCodec.formatDate(expected, out, 0));
+        assertEquals(date, new String(out));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2026-02-29", "2026-13-01", "2026-1-01", "2026/01/01", ""})
+    void invalidDatesAreRejected(String bad) {
+        assertThrows(DateTimeParseException.class, () -> FieldCodec.parseDate(bad.toCharArray(), 0, bad.length()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "12", "12.5", "12.50", "-3.07", "+4", ".5", "7.", "1.500", "1E+3", "123456789012345678.25"})
+    void amountsAgreeWithBigDecimal(String amount) {
+        BigDecimal expected = new BigDecimal(amount);
+        BigDecimal parsed = FieldCodec.parseAmount(amount.toCharArray(), 0, amount.length());
+        assertEquals(expected, parsed); // equals also compares the scale
+        assertEquals(expected, FieldCodec.parseAmount(amount.getBytes(StandardCharsets.US_ASCII), 0, amount.length()));
+        char[] out = new char[22];
+        int end = FieldCodec.formatAmount(parsed, out, 0);
+        if (end >= 0) assertEquals(expected.toPlainString(), new String(out, 0, end));
+    }
+
+    @Test
+    void aLoneSignIsNotAnAmount() {
+        assertThrows(NumberFormatException.class, () -> FieldCodec.parseAmount("-".toCharArray(), 0, 1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"groceries", " Utilities ", "TRANSPORTATION", "rent", "Other", "unknown", "", "UTILITIEZ"})
+    void categoriesAgreeWithCategoryFromString(String name) {
+        Category expected = Category.OTHER;
+        for (Category c : Category.values()) {
+            if (c.name().equalsIgnoreCase(name.trim())) expected = c;
+        }
+        assertEquals(expected, Category.fromString(name));
+        assertEquals(expected, FieldCodec.parseCategory(name.toCharArray(), 0, name.length()));
+        assertEquals(expected, FieldCodec.parseCategory(name.getBytes(StandardCharsets.US_ASCII), 0, name.length()));
+    }
+}
@@ -0,0 +1,35 @@
+package com.ray.finance.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdGeneratorTest {
+
+    @Test
+    void idsIncreaseEvenWhenTheClockStepsBack() {
+        long[] clock = {IdGenerator.EPOCH_MILLIS + 1_000};
+        IdGenerator ids = new IdGenerator(7, () -> clock[0]);
+        long first = ids.nextId();
+        clock[0] -= 500;
+        long second = ids.nextId();
+        clock[0] += 10_000;
+        long third = ids.nextId();
+        assertTrue(first < second && second < third);
+        assertEquals(clock[0], IdGenerator.timestamp(third).toEpochMilli());
+    }
+
+    @Test
+    void onlyCanonicalDecimalIdsAreNumeric() {
+        assertEquals(1234567890123L, IdGenerator.numeric("1234567890123"));
+        assertEquals(-1, IdGenerator.numeric("0a1b2c3d"));
+        assertEquals(-1, IdGenerator.numeric("01234567"));
+    }
+
+    @Test
+    void legacyIdsSortByStringBeforeNumericIdsByValue() {
+        assertTrue(IdGenerator.ORDER.compare("0f3c9d11", "b7e1a0c2") < 0);
+        assertTrue(IdGenerator.ORDER.compare("b7e1a0c2", "9") < 0);
+        assertTrue(IdGenerator.ORDER.compare("9", "10") < 0);
+    }
+}
@@ -0,0 +1,141 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryExpenseRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private CsvExpenseRepository csv;
+    private Path bin;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        csv = new CsvExpenseRepository(tempDir.resolve("source.csv"));
+        csv.insertAll(List.of(
+                new Expense("a", LocalDate.of(2026, 9, 1), new BigDecimal("12.34"), Category.GROCERIES, "café, \"bio\""),
+                new Expense("b", LocalDate.of(2026, 9, 2), new BigDecimal("800"), Category.RENT, ""),
+                new Expense("c", LocalDate.of(2026, 10, 1), new BigDecimal("1"), Category.OTHER, "x")));
+        bin = tempDir.resolve("ledger.bin");
+    }
+
+    @Test
+    void loadsACsvLedgerAndKeepsTextExactly() throws Exception {
+        try (BinaryExpenseRepository binary = new BinaryExpenseRepository(bin)) {
+            binary.load(csv);
+            assertEquals(3, binary.size());
+            Expense first = binary.findById("a").orElseThrow();
+            assertEquals("café, \"bio\"", first.getNote());
+            assertEquals(new BigDecimal("12.34"), first.getAmount());
+        }
+    }
+
+    @Test
+    void updatesAndDeletesSurviveReopening() throws Exception {
+        try (BinaryExpenseRepository binary = new BinaryExpenseRepository(bin)) {
+            binary.load(csv);
+            assertTrue(binary.delete("c"));
+            assertTrue(binary.update(new Expense("a", LocalDate.of(2026, 9, 1), new BigDecimal("10"), Category.OTHER, "edited")));
+        }
+        try (BinaryExpenseRepository reopened = new BinaryExpenseRepository(bin)) {
+            assertEquals(2, reopened.size());
+            assertEquals("edited", reopened.findAll().get(0).getNote());
+            assertTrue(reopened.findById("c").isEmpty());
+        }
+    }
+
+    @Test
+    void sumsAndCountsByMonthCategoryAndAmount() throws Exception {
+        try (BinaryExpenseRepository binary = new BinaryExpenseRepository(bin)) {
+            binary.load(csv);
+            assertEquals(new BigDecimal("812.34"), binary.sumByMonth(YearMonth.of(2026, 9)));
+            assertEquals(Map.of(Category.GROCERIES, new BigDecimal("12.34"), Category.RENT, new BigDecimal("800.00")),
+                    binary.sumByMonthAndCategory(YearMonth.of(2026, 9)));
+            assertEquals(2, binary.count(new ExpenseFilter(null, null, Set.of(), new BigDecimal("9.999"), null)));
+        }
+    }
+
+    @Test
+    void flushesIntoAnotherBackendInDateOrder() throws Exception {
+        try (BinaryExpenseRepository binary = new BinaryExpenseRepository(bin);
+             SqliteExpenseRepository sqlite = new SqliteExpenseRepository(tempDir.resolve("copy.db"))) {
+            binary.load(csv);
+            binary.flushTo(sqlite);
+            assertEquals(ids(binary.findByDateRange(LocalDate.MIN, LocalDate.MAX)),
+                    ids(sqlite.findByDateRange(LocalDate.of(2000, 1, 1), LocalDate.of(2100, 1, 1))));
+        }
+    }
+
+    @Test
+    void rowsCountedButNeverWrittenAreDroppedOnOpen() throws Exception {
+        try (BinaryExpenseRepository binary = new BinaryExpenseRepository(bin)) {
+            binary.load(csv);
+        }
+        // as if the header reached the disk but the last record did not
+        try (FileChannel records = FileChannel.open(bin, StandardOpenOption.WRITE)) {
+            records.truncate(records.size() - 16);
+        }
+        try (BinaryExpenseRepository reopened = new BinaryExpenseRepository(bin)) {
+            assertEquals(List.of("a", "b"), ids(reopened.findAll()));
+            reopened.insert(new Expense("d", LocalDate.of(2026, 9, 3), BigDecimal.ONE, Category.OTHER, "after"));
+        }
+        try (BinaryExpenseRepository reopened = new BinaryExpenseRepository(bin)) {
+            assertEquals(List.of("a", "b", "d"), ids(reopened.findAll()));
+        }
+    }
+
+    @Test
+    void aFailedLoadLeavesTheOldLedgerInPlace() throws Exception {
+        Path bad = tempDir.resolve("bad.csv");
+        Files.writeString(bad, "id,date,amount,category,note\nx,2026-09-01,1,OTHER,\ny,2026-09-02,1.005,OTHER,\n");
+        try (BinaryExpenseRepository binary = new BinaryExpenseRepository(bin)) {
+            binary.load(csv);
+            // the second row has a fraction of a cent, which the binary format cannot hold
+            assertThrows(IllegalArgumentException.class, () -> binary.load(new CsvExpenseRepository(bad)));
+            assertEquals(3, binary.size());
+        }
+        try (BinaryExpenseRepository reopened = new BinaryExpenseRepository(bin)) {
+            assertEquals(List.of("a", "b", "c"), ids(reopened.findAll()));
+        }
+        try (var files = Files.list(tempDir)) {
+            assertTrue(files.noneMatch(p -> p.getFileName().toString().startsWith("ledger.bin.tmp")));
+        }
+    }
+
+    @Test
+    void aRejectedInsertAllWritesNothing() throws Exception {
+        Expense d = new Expense("d", LocalDate.of(2026, 9, 3), BigDecimal.ONE, Category.OTHER, "");
+        try (BinaryExpenseRepository binary = new BinaryExpenseRepository(bin)) {
+            binary.load(csv);
+            // no lookup by id yet, so the id index has not been built
+            assertThrows(IllegalArgumentException.class, () -> binary.insertAll(List.of(d, csv.findById("a").orElseThrow())));
+            assertThrows(IllegalArgumentException.class, () -> binary.insertAll(List.of(d, d)));
+            assertEquals(3, binary.size());
+        }
+        try (BinaryExpenseRepository reopened = new BinaryExpenseRepository(bin)) {
+            assertEquals(List.of("a", "b", "c"), ids(reopened.findAll()));
+        }
+    }
+
+    private static List<String> ids(List<Expense> expenses) {
+        return expenses.stream().map(Expense::getId).toList();
+    }
+}
@@ -0,0 +1,149 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingExpenseRepositoryTest {
+
+    private static final YearMonth MAY = YearMonth.of(2026, 5);
+    private static final YearMonth JUNE = YearMonth.of(2026, 6);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void repeatedReadsAreServedFromTheCache() throws Exception {
+        ColumnarExpenseRepository store = new ColumnarExpenseRepository();
+        store.insertAll(List.of(expense("a", 1, "4.00"), expense("b", 2, "6.00")));
+        CachingExpenseRepository cache = new CachingExpenseRepository(store);
+
+        assertEquals("a", cache.findById("a").orElseThrow().getId());
+        assertEquals("a", cache.findById("a").orElseThrow().getId());
+        assertEquals(new BigDecimal("10.00"), cache.sumByMonth(MAY));
+        assertEquals(new BigDecimal("10.00"), cache.sumByMonthAndCategory(MAY).get(Category.OTHER));
+        assertEquals(2, cache.findByDateRange(MAY.atDay(1), MAY.atEndOfMonth()).size());
+
+        CachingExpenseRepository.CacheStats stats = cache.stats();
+        assertEquals(2, stats.misses()); // id "a" and the May slice
+        assertEquals(3, stats.hits());
+        assertEquals(2, stats.entries());
+    }
+
+    @Test
+    void writesThroughTheCacheAreSeenByTheNextRead() throws Exception {
+        ColumnarExpenseRepository store = new ColumnarExpenseRepository();
+        CachingExpenseRepository cache = new CachingExpenseRepository(store);
+        cache.insert(expense("a", 1, "4.00"));
+        assertEquals(new BigDecimal("4.00"), cache.sumByMonth(MAY));
+
+        assertTrue(cache.update(expense("a", 1, "5.00")));
+        cache.insert(expense("b", 3, "1.00"));
+        assertEquals(new BigDecimal("6.00"), cache.sumByMonth(MAY));
+        assertEquals(new BigDecimal("5.00"), cache.findById("a").orElseThrow().getAmount());
+
+        assertTrue(cache.delete("a"));
+        assertTrue(cache.findById("a").isEmpty());
+        assertEquals(List.of("b"), cache.findAll().stream().map(Expense::getId).toList());
+    }
+
+    @Test
+    void theLeastRecentlyUsedEntryIsEvictedPastTheEntryLimit() throws Exception {
+        ColumnarExpenseRepository store = new ColumnarExpenseRepository();
+        store.insertAll(List.of(expense("a", 1, "1.00"), expense("b", 2, "1.00"), expense("c", 3, "1.00")));
+        CachingExpenseRepository cache = new CachingExpenseRepository(store, 2, Long.MAX_VALUE);
+
+        cache.findById("a");
+        cache.findById("b");
+        cache.findById("a"); // b is now the eldest
+        cache.findById("c");
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(2, cache.stats().entries());
+
+        long misses = cache.stats().misses();
+        cache.findById("a");
+        assertEquals(misses, cache.stats().misses());
+        cache.findById("b");
+        assertEquals(misses + 1, cache.stats().misses());
+    }
+
+    @Test
+    void entriesAreEvictedToStayWithinTheByteBudget() throws Exception {
+        ColumnarExpenseRepository store = new ColumnarExpenseRepository();
+        store.insertAll(List.of(expense("a", 1, "1.00"), expense("b", 2, "1.00"), expense("c", 3, "1.00")));
+        // room for two single expenses, not for a month of three
+        CachingExpenseRepository cache = new CachingExpenseRepository(store, 100, 500);
+
+        cache.findById("a");
+        cache.findById("b");
+        cache.findById("c");
+        assertEquals(2, cache.stats().entries());
+        assertTrue(cache.stats().estimatedBytes() <= 500);
+        assertEquals(1, cache.stats().evictions());
+
+        cache.sumByMonth(MAY);
+        cache.sumByMonth(MAY);
+        assertEquals(2, cache.stats().entries()); // the slice was too big to keep
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void writesByAnotherConnectionFlushTheCache() throws Exception {
+        Path db = tempDir.resolve("shared.db");
+        try (SqliteExpenseRepository mine = new SqliteExpenseRepository(db);
+             SqliteExpenseRepository theirs = new SqliteExpenseRepository(db)) {
+            CachingExpenseRepository cache = new CachingExpenseRepository(mine);
+            cache.insert(expense("1", 1, "4.00"));
+            assertEquals(new BigDecimal("4.00"), cache.sumByMonth(MAY));
+            assertEquals(new BigDecimal("4.00"), cache.sumByMonth(MAY));
+            assertEquals(1, cache.stats().hits());
+
+            theirs.insert(expense("2", 2, "3.00"));
+            theirs.update(expense("1", 1, "5.00"));
+            assertEquals(new BigDecimal("8.00"), cache.sumByMonth(MAY));
+            assertEquals(new BigDecimal("5.00"), cache.findById("1").orElseThrow().getAmount());
+        }
+    }
+
+    @Test
+    void aWriteAfterAnotherConnectionsWriteFlushesEveryMonth() throws Exception {
+        Path db = tempDir.resolve("shared.db");
+        try (SqliteExpenseRepository mine = new SqliteExpenseRepository(db);
+             SqliteExpenseRepository theirs = new SqliteExpenseRepository(db)) {
+            CachingExpenseRepository cache = new CachingExpenseRepository(mine);
+            assertEquals(new BigDecimal("0"), cache.sumByMonth(JUNE));
+
+            theirs.insert(new Expense("2", JUNE.atDay(2), new BigDecimal("3.00"), Category.OTHER, ""));
+            cache.insert(expense("1", 1, "4.00")); // May only, but June changed before it
+            assertEquals(new BigDecimal("3.00"), cache.sumByMonth(JUNE));
+        }
+    }
+
+    @Test
+    void ownWritesKeepOtherMonthsCached() throws Exception {
+        try (SqliteExpenseRepository db = new SqliteExpenseRepository(tempDir.resolve("own.db"))) {
+            CachingExpenseRepository cache = new CachingExpenseRepository(db);
+            cache.sumByMonth(JUNE);
+            long misses = cache.stats().misses();
+
+            cache.insert(expense("1", 1, "4.00"));
+            cache.insertAll(List.of(expense("2", 2, "1.00")));
+            assertTrue(cache.update(expense("1", 1, "5.00")));
+            cache.sumByMonth(JUNE);
+            assertEquals(misses, cache.stats().misses()); // June, and id 1 for update, were still cached
+            assertEquals(new BigDecimal("6.00"), cache.sumByMonth(MAY));
+        }
+    }
+
+    private static Expense expense(String id, int day, String amount) {
+        return new Expense(id, MAY.atDay(day), new BigDecimal(amount), Category.OTHER, "");
+    }
+}
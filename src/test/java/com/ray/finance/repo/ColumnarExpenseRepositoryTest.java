@@ -0,0 +1,119 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarExpenseRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void generatedAndLegacyIdsRoundTrip() {
+        ColumnarExpenseRepository repo = new ColumnarExpenseRepository();
+        repo.insertAll(List.of(expense("123456789012345", 1), expense("0f3c9d11", 2), expense("0", 3),
+                expense("007", 4)));
+
+        assertEquals(List.of("123456789012345", "0f3c9d11", "0", "007"), ids(repo.findAll()));
+        assertEquals(LocalDate.of(2026, 1, 4), repo.findById("007").orElseThrow().getDate());
+        assertTrue(repo.findById("7").isEmpty()); // "007" is a legacy id, not the number 7
+        assertTrue(repo.delete("0f3c9d11"));
+        assertTrue(repo.findById("0f3c9d11").isEmpty());
+        repo.insert(expense("0f3c9d11", 5));
+        assertEquals(LocalDate.of(2026, 1, 5), repo.findById("0f3c9d11").orElseThrow().getDate());
+    }
+
+    @Test
+    void lookupsFollowRowsThroughDeletesAndCompaction() {
+        ColumnarExpenseRepository repo = new ColumnarExpenseRepository();
+        Map<String, Expense> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int round = 0; round < 5_000; round++) {
+            String id = random.nextBoolean() ? Long.toString(1 + random.nextInt(2_000)) : "x" + random.nextInt(500);
+            if (expected.containsKey(id)) {
+                if (random.nextBoolean()) {
+                    assertTrue(repo.delete(id));
+                    expected.remove(id);
+                } else {
+                    Expense edited = expense(id, 1 + random.nextInt(28));
+                    assertTrue(repo.update(edited));
+                    expected.put(id, edited);
+                }
+            } else {
+                Expense added = expense(id, 1 + random.nextInt(28));
+                repo.insert(added);
+                expected.put(id, added);
+            }
+        }
+        assertEquals(expected.size(), repo.size());
+        for (Expense e : expected.values()) {
+            assertEquals(e.toString(), repo.findById(e.getId()).orElseThrow().toString());
+        }
+        assertEquals(sorted(new ArrayList<>(expected.values())), sorted(repo.findAll()));
+    }
+
+    @Test
+    void aRejectedSaveAllKeepsTheOldContents() {
+        ColumnarExpenseRepository repo = new ColumnarExpenseRepository();
+        repo.insertAll(List.of(expense("1", 1), expense("2", 2)));
+
+        assertThrows(IllegalArgumentException.class, () -> repo.saveAll(List.of(expense("3", 3), expense("3", 4))));
+        assertThrows(IllegalArgumentException.class, () -> repo.saveAll(List.of(expense("3", 3),
+                new Expense("4", LocalDate.of(2026, 1, 4), new BigDecimal("1.005"), Category.OTHER, ""))));
+        assertEquals(List.of("1", "2"), ids(repo.findAll()));
+
+        repo.saveAll(List.of(expense("2", 5)));
+        assertEquals(List.of("2"), ids(repo.findAll()));
+        assertTrue(repo.findById("1").isEmpty());
+    }
+
+    @Test
+    void aRejectedInsertAllAddsNothing() {
+        ColumnarExpenseRepository repo = new ColumnarExpenseRepository();
+        repo.insert(expense("1", 1));
+
+        assertThrows(IllegalArgumentException.class, () -> repo.insertAll(List.of(expense("2", 2), expense("1", 3))));
+        assertEquals(List.of("1"), ids(repo.findAll()));
+        assertTrue(repo.findById("2").isEmpty());
+    }
+
+    @Test
+    void aFailedLoadKeepsTheOldContents() throws Exception {
+        Path bad = tempDir.resolve("bad.csv");
+        Files.writeString(bad, "id,date,amount,category,note\n7,2026-01-07,1.00,OTHER,\n8,2026-13-01,1.00,OTHER,\n");
+        ColumnarExpenseRepository repo = new ColumnarExpenseRepository();
+        repo.insertAll(List.of(expense("1", 1), expense("2", 2)));
+
+        assertThrows(DateTimeParseException.class, () -> repo.load(new CsvExpenseRepository(bad)));
+        assertEquals(List.of("1", "2"), ids(repo.findAll()));
+        assertTrue(repo.findById("7").isEmpty());
+    }
+
+    private static Expense expense(String id, int day) {
+        return new Expense(id, LocalDate.of(2026, 1, day), new BigDecimal("2.50"), Category.OTHER, "note " + day % 3);
+    }
+
+    private static List<String> sorted(List<Expense> expenses) {
+        return expenses.stream().sorted(Comparator.comparing(Expense::getId)).map(Expense::toString).toList();
+    }
+
+    private static List<String> ids(List<Expense> expenses) {
+        return expenses.stream().map(Expense::getId).toList();
+    }
+}
@@ -0,0 +1,130 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvBulkImporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3, 7, 16, 61, 4096})
+    void quotedFieldsSurviveChunkBoundariesAnywhere(long chunkSize) throws Exception {
+        List<Expense> rows = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String note = switch (i % 4) {
+                case 0 -> "line one\nline two, with a comma";
+                case 1 -> "say \"hi\"\r\nand \"\"bye\"\"";
+                case 2 -> "";
+                default -> "plain " + i;
+            };
+            rows.add(new Expense("r" + i, LocalDate.of(2026, 3, 1 + i % 28), BigDecimal.valueOf(i + 1, 2),
+                    Category.OTHER, note));
+        }
+        Path file = write("quoted.csv", rows);
+
+        ColumnarExpenseRepository target = new ColumnarExpenseRepository();
+        CsvBulkImporter.ImportReport report = new CsvBulkImporter(target, 3, 5, null, chunkSize).importFile(file);
+        assertEquals(40, report.rows());
+        assertEquals(0, report.badRows());
+        assertEquals(byId(rows), byId(target.findAll()));
+    }
+
+    @Test
+    void chunksThatStartInsideAQuotedFieldSkipToTheNextRecord() throws Exception {
+        // one note long enough to hold whole chunks, made of lines that look like records
+        StringBuilder note = new StringBuilder();
+        for (int i = 0; i < 20; i++) note.append("\nfake").append(i).append(",2026-01-01,1,OTHER,\"x\"");
+        List<Expense> rows = List.of(
+                new Expense("a", LocalDate.of(2026, 1, 1), new BigDecimal("1.00"), Category.OTHER, "before"),
+                new Expense("b", LocalDate.of(2026, 1, 2), new BigDecimal("10.00"), Category.RENT, note.toString()),
+                new Expense("c", LocalDate.of(2026, 1, 3), new BigDecimal("1.00"), Category.OTHER, "after"));
+        Path file = write("long.csv", rows);
+
+        ColumnarExpenseRepository target = new ColumnarExpenseRepository();
+        CsvBulkImporter.ImportReport report = new CsvBulkImporter(target, 2, 100, null, 16).importFile(file);
+        assertEquals(3, report.rows());
+        assertEquals(byId(rows), byId(target.findAll()));
+    }
+
+    @Test
+    void aFailedInsertStopsTheImportAndKeepsTheBatchesBeforeIt() throws Exception {
+        List<Expense> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(new Expense("r" + i, LocalDate.of(2026, 5, 1), BigDecimal.ONE, Category.OTHER, ""));
+        }
+        Path file = write("failing.csv", rows);
+
+        FailingRepository target = new FailingRepository(2);
+        IOException failure = assertThrows(IOException.class,
+                () -> new CsvBulkImporter(target, 1, 10, null, 0).importFile(file));
+        assertEquals("disk full", failure.getMessage());
+        assertEquals(20, target.findAll().size());
+    }
+
+    private Path write(String name, List<Expense> rows) throws IOException {
+        Path file = tempDir.resolve(name);
+        new CsvExpenseRepository(file).insertAll(rows);
+        return file;
+    }
+
+    private static List<String> byId(List<Expense> expenses) {
+        return expenses.stream().sorted(Comparator.comparing(Expense::getId)).map(Expense::toString).toList();
+    }
+
+    /** Accepts the first batches, then fails every insert. */
+    private static final class FailingRepository implements ExpenseRepository {
+        private final ColumnarExpenseRepository rows = new ColumnarExpenseRepository();
+        private int batchesLeft;
+
+        FailingRepository(int batches) {
+            this.batchesLeft = batches;
+        }
+
+        @Override
+        public List<Expense> findAll() {
+            return rows.findAll();
+        }
+
+        @Override
+        public void saveAll(List<Expense> expenses) throws IOException {
+            rows.saveAll(expenses);
+        }
+
+        @Override
+        public void insert(Expense expense) throws IOException {
+            insertAll(List.of(expense));
+        }
+
+        @Override
+        public void insertAll(List<Expense> expenses) throws IOException {
+            if (batchesLeft-- <= 0) throw new IOException("disk full");
+            rows.insertAll(expenses);
+        }
+
+        @Override
+        public boolean update(Expense expense) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean delete(String id) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvExpenseRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void amountsAreKeptAsWrittenAndCategoriesAreLenient() throws Exception {
+        Path csv = tempDir.resolve("codec.csv");
+        Files.writeString(csv, "id,date,amount,category,note\na,2026-03-04,12.5, rent ,\"x\"\n");
+        Expense e = new CsvExpenseRepository(csv).findById("a").orElseThrow();
+        assertEquals(new BigDecimal("12.5"), e.getAmount());
+        assertEquals(Category.RENT, e.getCategory());
+        assertEquals("a | 2026-03-04 | $12.5 | RENT | x", e.toString());
+    }
+
+    @Test
+    void rowsAppendedAfterTheIndexWasBuiltAreMergedIntoIt() throws Exception {
+        CsvExpenseRepository repo = new CsvExpenseRepository(tempDir.resolve("grown.csv"));
+        repo.insertAll(List.of(expense("a", 3, "x"), expense("b", 5, "y"), expense("c", 5, "z")));
+        assertEquals(List.of("b", "c", "a"), ids(repo.findByDateRange(LocalDate.of(2026, 4, 1), LocalDate.of(2026, 4, 30))));
+
+        repo.insertAll(List.of(expense("d", 4, "two\nlines, \"quoted\""), expense("e", 5, ""), expense("f", 1, "")));
+        List<Expense> april = repo.findByDateRange(LocalDate.of(2026, 4, 2), LocalDate.of(2026, 4, 30));
+        assertEquals(List.of("b", "c", "e", "d", "a"), ids(april));
+        assertEquals("two\nlines, \"quoted\"", april.get(3).getNote());
+        assertEquals(6, repo.count(ExpenseFilter.ALL.withDates(LocalDate.of(2026, 4, 1), null)));
+    }
+
+    @Test
+    void aRewriteInPlaceThatGrowsTheFileIsIndexedAgain() throws Exception {
+        Path csv = tempDir.resolve("rewritten.csv");
+        CsvExpenseRepository repo = new CsvExpenseRepository(csv);
+        repo.insertAll(List.of(expense("a", 3, "x"), expense("b", 5, "y")));
+        assertEquals(List.of("b"), ids(repo.findByDateRange(LocalDate.of(2026, 4, 4), LocalDate.of(2026, 4, 30))));
+
+        // same file key, larger size: looks like an append, but the rows before the old end changed
+        Files.writeString(csv, "id,date,amount,category,note\n"
+                + "b,2026-04-01,1,OTHER,moved\na,2026-04-09,1,OTHER,moved\nc,2026-04-07,1,OTHER,new\n");
+        assertEquals(List.of("a", "c"), ids(repo.findByDateRange(LocalDate.of(2026, 4, 4), LocalDate.of(2026, 4, 30))));
+        assertEquals("moved", repo.findByDateRange(LocalDate.of(2026, 4, 1), LocalDate.of(2026, 4, 1)).get(0).getNote());
+    }
+
+    @Test
+    void rangeReadsRejectAMalformedDateLikeFullScans() throws Exception {
+        Path csv = tempDir.resolve("malformed.csv");
+        Files.writeString(csv, "id,date,amount,category,note\na,2026-04-03,1,OTHER,\nb,04/05/2026,1,OTHER,\n");
+        CsvExpenseRepository repo = new CsvExpenseRepository(csv);
+        assertThrows(DateTimeParseException.class, repo::findAll);
+        assertThrows(DateTimeParseException.class,
+                () -> repo.findByDateRange(LocalDate.of(2026, 4, 1), LocalDate.of(2026, 4, 30)));
+    }
+
+    private static Expense expense(String id, int day, String note) {
+        return new Expense(id, LocalDate.of(2026, 4, day), BigDecimal.ONE, Category.OTHER, note);
+    }
+
+    private static List<String> ids(List<Expense> expenses) {
+        return expenses.stream().map(Expense::getId).toList();
+    }
+}
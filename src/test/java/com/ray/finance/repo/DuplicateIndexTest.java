@@ -0,0 +1,140 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicateIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path january;
+    private Path overlap;
+
+    @BeforeEach
+    void writeStatements() throws Exception {
+        january = tempDir.resolve("january.csv");
+        Files.writeString(january, """
+                id,date,amount,category,note
+                j1,2026-01-05,3.50,OTHER,Bus fare
+                j2,2026-01-05,3.50,OTHER,Bus fare
+                j3,2026-01-20,1400,RENT,Landlord
+                """);
+        // overlaps January: the same rows under other ids, amounts and notes written differently
+        overlap = tempDir.resolve("overlap.csv");
+        Files.writeString(overlap, """
+                id,date,amount,category,note
+                o1,2026-01-20,1400.00,rent,"  landlord "
+                o2,2026-01-05,3.5,OTHER,BUS   FARE
+                o3,2026-02-01,1400,RENT,Landlord
+                """);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "db"})
+    void reimportSkipsRowsAnEarlierImportLoaded(String backend) throws Exception {
+        Path ledger = tempDir.resolve("dedup." + backend);
+        try (ExpenseRepository repo = backend.equals("csv") ? new CsvExpenseRepository(ledger)
+                : new SqliteExpenseRepository(ledger)) {
+            DuplicateIndex index = repo instanceof SqliteExpenseRepository sqlite
+                    ? sqlite.duplicateIndex() : DuplicateIndex.forLedger(ledger);
+            CsvBulkImporter.ImportReport first = new CsvBulkImporter(repo, index).importFile(january);
+            assertEquals(3, first.rows()); // identical rows within one statement both load
+            assertEquals(0, first.duplicates());
+
+            CsvBulkImporter.ImportReport second = new CsvBulkImporter(repo, index).importFile(overlap);
+            assertEquals(1, second.rows());
+            assertEquals(2, second.duplicates());
+            assertEquals(4, repo.count(ExpenseFilter.ALL));
+            assertEquals(3, index.size());
+        }
+    }
+
+    @Test
+    void theExactStoreAnswersWithoutTheBloomFilter() throws Exception {
+        Path csv = tempDir.resolve("dedup.csv");
+        new CsvBulkImporter(new CsvExpenseRepository(csv), DuplicateIndex.forLedger(csv)).importFile(overlap);
+
+        Files.delete(tempDir.resolve("dedup.csv.bloom"));
+        DuplicateIndex reopened = DuplicateIndex.forLedger(csv);
+        assertTrue(reopened.contains(DuplicateIndex.fingerprint(
+                new Expense("x", LocalDate.of(2026, 2, 1), new BigDecimal("1400"), Category.RENT, "landlord"))));
+        assertFalse(reopened.contains(DuplicateIndex.fingerprint(
+                new Expense("x", LocalDate.of(2026, 2, 2), new BigDecimal("1400"), Category.RENT, "landlord"))));
+        assertTrue(Files.exists(tempDir.resolve("dedup.csv.bloom")));
+    }
+
+    @Test
+    void aFailedBatchRecordsNoFingerprintsInSqlite() throws Exception {
+        Path statement = tempDir.resolve("clash.csv");
+        Files.writeString(statement, """
+                id,date,amount,category,note
+                a,2026-03-01,1.00,OTHER,first
+                b,2026-03-02,2.00,OTHER,second
+                a,2026-03-03,3.00,OTHER,same id
+                """);
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(tempDir.resolve("clash.db"))) {
+            DuplicateIndex index = repo.duplicateIndex();
+            assertThrows(IOException.class, () -> new CsvBulkImporter(repo, 1, 1, index).importFile(statement));
+            assertEquals(2, repo.count(ExpenseFilter.ALL));
+            assertEquals(2, index.size());
+
+            Files.writeString(statement, """
+                    id,date,amount,category,note
+                    a,2026-03-01,1.00,OTHER,first
+                    b,2026-03-02,2.00,OTHER,second
+                    c,2026-03-03,3.00,OTHER,same id
+                    """);
+            CsvBulkImporter.ImportReport retry = new CsvBulkImporter(repo, 1, 1, index).importFile(statement);
+            assertEquals(1, retry.rows());
+            assertEquals(2, retry.duplicates());
+        }
+    }
+
+    @Test
+    void anInterruptedBatchKeepsTheFingerprintsOfRowsThatWentIn() throws Exception {
+        Path csv = tempDir.resolve("journal.csv");
+        CsvExpenseRepository repo = new CsvExpenseRepository(csv);
+        new CsvBulkImporter(repo, 1, 1, DuplicateIndex.forLedger(csv)).importFile(january);
+
+        // a crash after journaling a batch of two rows, of which only the first went in
+        Expense in = new Expense("in", LocalDate.of(2026, 4, 1), new BigDecimal("5.00"), Category.OTHER, "in");
+        Expense lost = new Expense("lost", LocalDate.of(2026, 4, 2), new BigDecimal("6.00"), Category.OTHER, "lost");
+        repo.insert(in);
+        Path journal = tempDir.resolve("journal.csv.fingerprints.journal");
+        Files.write(journal, ByteBuffer.allocate(24).putLong(2).putLong(DuplicateIndex.fingerprint(in))
+                .putLong(DuplicateIndex.fingerprint(lost)).array(), StandardOpenOption.APPEND);
+
+        DuplicateIndex reopened = DuplicateIndex.forLedger(csv);
+        assertEquals(2, reopened.size()); // the first import's committed batches
+        reopened.recover(repo);
+        assertTrue(reopened.contains(DuplicateIndex.fingerprint(in)));
+        assertFalse(reopened.contains(DuplicateIndex.fingerprint(lost)));
+        assertEquals(3, reopened.size());
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    void fingerprintsFoldCaseWhitespaceAndAmountScale() {
+        Expense a = new Expense("1", LocalDate.of(2026, 1, 5), new BigDecimal("3.5"), Category.OTHER, "  Bus   FARE ");
+        Expense b = new Expense("2", LocalDate.of(2026, 1, 5), new BigDecimal("3.50"), Category.OTHER, "bus fare");
+        Expense c = new Expense("3", LocalDate.of(2026, 1, 5), new BigDecimal("3.50"), Category.OTHER, "busfare");
+        assertEquals(DuplicateIndex.fingerprint(a), DuplicateIndex.fingerprint(b));
+        assertNotEquals(DuplicateIndex.fingerprint(b), DuplicateIndex.fingerprint(c));
+    }
+}
@@ -0,0 +1,89 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpenseQueryTest {
+
+    private static final ExpenseFilter FILTER = new ExpenseFilter(LocalDate.of(2026, 1, 2), LocalDate.of(2026, 3, 4),
+            Set.of(Category.GROCERIES, Category.UTILITIES), new BigDecimal("5"), new BigDecimal("50.50"));
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "journaled", "db"})
+    void keysetPagesMatchAFilteredScan(String backend) throws Exception {
+        List<Expense> ledger = ledger();
+        try (ExpenseRepository repo = open(backend)) {
+            repo.insertAll(ledger);
+            assertEquals(expectedIds(ledger), pagedIds(repo, 4));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "journaled", "db"})
+    void pagesSeeRowsAppendedAfterTheIndexWasBuilt(String backend) throws Exception {
+        List<Expense> ledger = ledger();
+        try (ExpenseRepository repo = open(backend)) {
+            repo.insertAll(ledger.subList(0, 30));
+            repo.query(ExpenseQuery.of(FILTER, 1)); // builds the CSV index before the rest is appended
+            repo.insertAll(ledger.subList(30, 60));
+            assertEquals(expectedIds(ledger), pagedIds(repo, 4));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "journaled", "db"})
+    void countAgreesWithTheFilter(String backend) throws Exception {
+        List<Expense> ledger = ledger();
+        try (ExpenseRepository repo = open(backend)) {
+            repo.insertAll(ledger);
+            assertEquals(expectedIds(ledger).size(), repo.count(FILTER));
+            assertEquals(60, repo.count(ExpenseFilter.ALL));
+        }
+    }
+
+    private ExpenseRepository open(String backend) throws Exception {
+        return switch (backend) {
+            case "csv" -> new CsvExpenseRepository(tempDir.resolve("query.csv"));
+            case "journaled" -> new JournaledCsvExpenseRepository(tempDir.resolve("journaled.csv"));
+            default -> new SqliteExpenseRepository(tempDir.resolve("query.db"));
+        };
+    }
+
+    private static List<Expense> ledger() {
+        List<Expense> ledger = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            ledger.add(new Expense(String.format("e%02d", i), LocalDate.of(2026, 1 + i % 3, 1 + i % 5),
+                    new BigDecimal(i + ".50"), Category.values()[i % 4], "row " + i));
+        }
+        return ledger;
+    }
+
+    private static List<String> expectedIds(List<Expense> ledger) {
+        return ledger.stream().filter(FILTER::matches).sorted(ExpenseQuery.ORDER).map(Expense::getId).toList();
+    }
+
+    private static List<String> pagedIds(ExpenseRepository repo, int pageSize) throws Exception {
+        List<String> paged = new ArrayList<>();
+        for (ExpenseQuery q = ExpenseQuery.of(FILTER, pageSize); q != null; ) {
+            List<Expense> page = repo.query(q);
+            page.forEach(e -> paged.add(e.getId()));
+            q = q.next(page);
+        }
+        return paged;
+    }
+}
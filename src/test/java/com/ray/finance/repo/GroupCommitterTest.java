@@ -0,0 +1,49 @@
+package com.ray.finance.repo;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupCommitterTest {
+
+    @Test
+    void aSubmitRacingCloseIsCommittedOrRefusedNeverLeftWaiting() {
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+                for (int round = 0; round < 200; round++) {
+                    List<Integer> written = new CopyOnWriteArrayList<>();
+                    GroupCommitter<Integer> committer = new GroupCommitter<>("test-committer", 16, written::addAll);
+                    List<Future<Boolean>> submits = new ArrayList<>();
+                    for (int t = 0; t < 3; t++) {
+                        int item = t;
+                        submits.add(threads.submit(() -> {
+                            try {
+                                committer.submit(item);
+                                return true;
+                            } catch (IOException e) {
+                                assertEquals("committer is closed", e.getMessage());
+                                return false;
+                            }
+                        }));
+                    }
+                    committer.close();
+                    int committed = 0;
+                    for (Future<Boolean> f : submits) if (f.get()) committed++;
+                    assertEquals(committed, written.size());
+                }
+            });
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournaledCsvExpenseRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void replaysCommittedConcurrentWritesAfterACrash() throws Exception {
+        Path csv = tempDir.resolve("journaled.csv");
+        JournaledCsvExpenseRepository crashed = new JournaledCsvExpenseRepository(csv, 50);
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            done.add(writers.submit(() -> {
+                for (int i = 0; i < 40; i++) {
+                    crashed.insert(new Expense(thread + "-" + i, LocalDate.of(2026, 6, 1 + i % 28),
+                            new BigDecimal("1.25"), Category.OTHER, "n, " + i));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : done) f.get();
+        writers.shutdown();
+        assertTrue(crashed.update(new Expense("0-0", LocalDate.of(2026, 6, 1), new BigDecimal("9"), Category.RENT, "")));
+        assertTrue(crashed.delete("0-1"));
+
+        // never closed: the journal is all that is left
+        try (JournaledCsvExpenseRepository reopened = new JournaledCsvExpenseRepository(csv)) {
+            assertEquals(319, reopened.findAll().size());
+            assertEquals(new BigDecimal("9"), reopened.findById("0-0").orElseThrow().getAmount());
+            assertTrue(reopened.findById("0-1").isEmpty());
+        }
+    }
+
+    @Test
+    void ignoresATornUncommittedTail() throws Exception {
+        Path csv = tempDir.resolve("torn.csv");
+        JournaledCsvExpenseRepository crashed = new JournaledCsvExpenseRepository(csv);
+        crashed.insert(expense("a", 1));
+        Files.writeString(csv.resolveSibling("torn.csv.journal"), "I,late,2026-06-0", StandardOpenOption.APPEND);
+
+        try (JournaledCsvExpenseRepository reopened = new JournaledCsvExpenseRepository(csv)) {
+            assertEquals(List.of("a"), ids(reopened.findAll()));
+            assertTrue(reopened.findById("late").isEmpty());
+        }
+    }
+
+    @Test
+    void closingFoldsTheJournalIntoAPlainCsv() throws Exception {
+        Path csv = tempDir.resolve("folded.csv");
+        try (JournaledCsvExpenseRepository repo = new JournaledCsvExpenseRepository(csv)) {
+            repo.insertAll(List.of(expense("a", 1), expense("b", 2)));
+            assertTrue(repo.delete("a"));
+        }
+        assertEquals(List.of("b"), ids(new CsvExpenseRepository(csv).findAll()));
+        assertEquals(0, Files.size(csv.resolveSibling("folded.csv.journal")));
+    }
+
+    @Test
+    void forEachCallbacksMayWrite() throws Exception {
+        try (JournaledCsvExpenseRepository repo = new JournaledCsvExpenseRepository(tempDir.resolve("nested.csv"))) {
+            repo.insertAll(List.of(expense("a", 1), expense("b", 2)));
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> repo.forEach(e -> {
+                try {
+                    repo.insert(expense(e.getId() + "-copy", 3));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }));
+            assertEquals(4, repo.findAll().size());
+        }
+    }
+
+    @Test
+    void anUpdateRacingADeleteDoesNotBringTheRowBack() throws Exception {
+        try (JournaledCsvExpenseRepository repo = new JournaledCsvExpenseRepository(tempDir.resolve("race.csv"))) {
+            List<Expense> rows = new ArrayList<>();
+            for (int i = 0; i < 200; i++) rows.add(expense("r" + i, 1 + i % 28));
+            repo.insertAll(rows);
+
+            ExecutorService writers = Executors.newFixedThreadPool(2);
+            Future<?> updates = writers.submit(() -> {
+                for (Expense e : rows) repo.update(new Expense(e.getId(), e.getDate(), BigDecimal.TEN, Category.RENT, ""));
+                return null;
+            });
+            Future<?> deletes = writers.submit(() -> {
+                for (Expense e : rows) assertTrue(repo.delete(e.getId()));
+                return null;
+            });
+            updates.get();
+            deletes.get();
+            writers.shutdown();
+
+            assertEquals(List.of(), repo.findAll());
+            assertFalse(repo.update(rows.get(0)));
+            assertFalse(repo.delete(rows.get(0).getId()));
+        }
+    }
+
+    @Test
+    void rangeReadsMergeTheJournalWithTheMainFile() throws Exception {
+        Path csv = tempDir.resolve("ranges.csv");
+        try (JournaledCsvExpenseRepository repo = new JournaledCsvExpenseRepository(csv)) {
+            repo.insertAll(List.of(expense("a", 1), expense("b", 2), expense("c", 2), expense("d", 3)));
+        }
+        try (JournaledCsvExpenseRepository repo = new JournaledCsvExpenseRepository(csv)) {
+            // main file: a b c d; journal: b moves to the 5th, c is deleted, e is new on the 2nd
+            assertTrue(repo.update(new Expense("b", LocalDate.of(2026, 6, 5), new BigDecimal("4"), Category.RENT, "")));
+            assertTrue(repo.delete("c"));
+            repo.insert(expense("e", 2));
+
+            LocalDate from = LocalDate.of(2026, 6, 2);
+            LocalDate to = LocalDate.of(2026, 6, 30);
+            assertEquals(List.of("b", "d", "e"), ids(repo.findByDateRange(from, to)));
+            assertEquals(List.of("b", "d"), ids(repo.query(ExpenseQuery.of(ExpenseFilter.ALL, 2))));
+            assertEquals(List.of("e", "a"), ids(repo.query(new ExpenseQuery(ExpenseFilter.ALL, 5,
+                    new ExpenseQuery.Cursor(LocalDate.of(2026, 6, 3), "d")))));
+            assertEquals(3, repo.count(ExpenseFilter.ALL.withDates(from, to)));
+            assertEquals(List.of("d", "e"), ids(repo.findPage(ExpenseFilter.ALL, ExpenseSort.NEWEST_FIRST, 1, 2)));
+            assertEquals(List.of("d", "e"), ids(repo.findPage(ExpenseFilter.ALL.withDates(from, to),
+                    new ExpenseSort(ExpenseSort.Column.AMOUNT, true), 0, 2)));
+            assertEquals(new BigDecimal("7.75"), repo.sumByMonth(YearMonth.of(2026, 6)));
+            assertEquals(new BigDecimal("4"), repo.sumByMonthAndCategory(YearMonth.of(2026, 6)).get(Category.RENT));
+        }
+    }
+
+    private static Expense expense(String id, int day) {
+        return new Expense(id, LocalDate.of(2026, 6, day), new BigDecimal("1.25"), Category.OTHER, "");
+    }
+
+    private static List<String> ids(List<Expense> expenses) {
+        return expenses.stream().map(Expense::getId).toList();
+    }
+}
@@ -0,0 +1,89 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerExporterTest {
+
+    private static final ExpenseFilter EARLY_RENT =
+            new ExpenseFilter(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 10), Set.of(Category.RENT));
+
+    @TempDir
+    Path tempDir;
+
+    private Path ledger;
+    private LedgerExporter exporter;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ledger = tempDir.resolve("ledger.csv");
+        CsvExpenseRepository repo = new CsvExpenseRepository(ledger);
+        List<Expense> rows = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            rows.add(new Expense("id" + i, LocalDate.of(2025, 1, 1).plusDays(i), new BigDecimal(i + ".25"),
+                    i % 2 == 0 ? Category.GROCERIES : Category.RENT, "note " + i + ", \"quoted\"\n café 😀"));
+        }
+        repo.saveAll(rows);
+        // small blocks on three threads, so a file is many members written in order
+        exporter = new LedgerExporter(repo, 3, 1024);
+    }
+
+    @Test
+    void gzipCsvDecompressesToTheLedgerFile() throws Exception {
+        Path csv = tempDir.resolve("out.csv.gz");
+        LedgerExporter.ExportReport report = exporter.export(ExpenseFilter.ALL, csv);
+        assertEquals(500, report.rows());
+        assertEquals(Files.size(csv), report.bytesOut());
+        assertArrayEquals(Files.readAllBytes(ledger), gunzip(csv));
+    }
+
+    @Test
+    void jsonLinesHoldOnlyFilteredRowsWithEscapedText() throws Exception {
+        Path jsonl = tempDir.resolve("out.jsonl.gz");
+        assertEquals(5, exporter.export(EARLY_RENT, jsonl).rows());
+        String[] lines = new String(gunzip(jsonl), StandardCharsets.UTF_8).split("\n");
+        assertEquals(5, lines.length);
+        assertEquals("{\"id\":\"id1\",\"date\":\"2025-01-02\",\"amount\":1.25,\"category\":\"RENT\","
+                + "\"note\":\"note 1, \\\"quoted\\\"\\n café 😀\"}", lines[0]);
+    }
+
+    @Test
+    void anExportWithNoRowsIsEmptyOrAnEmptyGzipFile() throws Exception {
+        ExpenseFilter none = EARLY_RENT.withDates(LocalDate.of(2030, 1, 1), null);
+        Path plain = tempDir.resolve("none.jsonl");
+        assertEquals(0, exporter.export(none, plain).rows());
+        assertEquals(0, Files.size(plain));
+
+        Path empty = tempDir.resolve("none.jsonl.gz");
+        exporter.export(none, empty);
+        assertEquals(0, gunzip(empty).length);
+    }
+
+    @Test
+    void unknownExtensionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> exporter.export(ExpenseFilter.ALL, tempDir.resolve("out.xml")));
+    }
+
+    private static byte[] gunzip(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NoteSearchTest {
+
+    private static final List<Expense> LEDGER = List.of(
+            new Expense("a", LocalDate.of(2026, 8, 1), new BigDecimal("4"), Category.OTHER, "Coffee at Blue Bottle"),
+            new Expense("b", LocalDate.of(2026, 8, 2), new BigDecimal("9"), Category.GROCERIES, "milk, eggs and coffee beans"),
+            new Expense("c", LocalDate.of(2026, 8, 3), new BigDecimal("3"), Category.OTHER, "coffee coffee"),
+            new Expense("d", LocalDate.of(2026, 8, 4), new BigDecimal("60"), Category.UTILITIES, "City Power & Light"));
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "journaled", "binary", "db", "columnar"})
+    void ranksPrefixMatchesByRelevance(String backend) throws Exception {
+        try (ExpenseRepository repo = open(backend)) {
+            repo.insertAll(LEDGER);
+            assertEquals(List.of("c", "a", "b"), ids(repo.search("coff", 0, 10)));
+            assertEquals(List.of("b"), ids(repo.search("coffee bean", 0, 10)));
+            assertEquals(List.of("d"), ids(repo.search("power light", 0, 10)));
+            assertTrue(repo.search("  ", 0, 10).isEmpty());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "journaled", "binary", "db", "columnar"})
+    void indexFollowsLaterWrites(String backend) throws Exception {
+        try (ExpenseRepository repo = open(backend)) {
+            repo.insertAll(LEDGER.subList(0, 3));
+            assertEquals(3, repo.search("coffee", 0, 10).size());
+
+            repo.insert(LEDGER.get(3));
+            repo.update(new Expense("a", LocalDate.of(2026, 8, 1), new BigDecimal("4"), Category.OTHER, "tea"));
+            assertEquals(List.of("c", "b"), ids(repo.search("COFFEE", 0, 10)));
+            assertEquals(List.of("b"), ids(repo.search("coffee", 1, 10)));
+            assertEquals(List.of("d"), ids(repo.search("power", 0, 10)));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv", "journaled", "binary", "db", "columnar"})
+    void anUnboundedLimitPastAnOffsetReturnsTheRest(String backend) throws Exception {
+        try (ExpenseRepository repo = open(backend)) {
+            repo.insertAll(LEDGER);
+            // offset + limit does not fit in an int
+            assertEquals(List.of("a", "b"), ids(repo.search("coffee", 1, Integer.MAX_VALUE)));
+            assertEquals(List.of("b", "c", "d"),
+                    ids(repo.findPage(ExpenseFilter.ALL, new ExpenseSort(ExpenseSort.Column.DATE, true), 1, Integer.MAX_VALUE)));
+        }
+    }
+
+    private ExpenseRepository open(String backend) throws Exception {
+        return switch (backend) {
+            case "csv" -> new CsvExpenseRepository(tempDir.resolve("search.csv"));
+            case "journaled" -> new JournaledCsvExpenseRepository(tempDir.resolve("search.csv"), 2);
+            case "binary" -> new BinaryExpenseRepository(tempDir.resolve("search.bin"));
+            case "db" -> new SqliteExpenseRepository(tempDir.resolve("search.db"));
+            default -> new ColumnarExpenseRepository();
+        };
+    }
+
+    private static List<String> ids(List<Expense> expenses) {
+        return expenses.stream().map(Expense::getId).toList();
+    }
+}
@@ -0,0 +1,157 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedSqliteExpenseRepositoryTest {
+
+    private static final Expense OLD = new Expense("1", LocalDate.of(2024, 3, 10), new BigDecimal("40.00"),
+            Category.GROCERIES, "Groceries");
+    private static final Expense LATE = new Expense("2", LocalDate.of(2024, 12, 31), new BigDecimal("9.99"),
+            Category.OTHER, "Streaming");
+    private static final Expense CURRENT = new Expense("3", LocalDate.of(2026, 1, 2), new BigDecimal("15.00"),
+            Category.GROCERIES, "Groceries again");
+
+    @TempDir
+    Path tempDir;
+
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dir = tempDir.resolve("ledger.d");
+        try (PartitionedSqliteExpenseRepository repo = new PartitionedSqliteExpenseRepository(dir)) {
+            repo.insertAll(List.of(OLD, LATE, CURRENT));
+        }
+    }
+
+    @Test
+    void rowsAreRoutedToOneFilePerYear() {
+        assertTrue(Files.exists(dir.resolve("expenses-2024.db")));
+        assertTrue(Files.exists(dir.resolve("expenses-2026.db")));
+        assertFalse(Files.exists(dir.resolve("expenses-2025.db")));
+    }
+
+    @Test
+    void queriesSpanPartitionsInOrder() throws Exception {
+        try (PartitionedSqliteExpenseRepository repo = new PartitionedSqliteExpenseRepository(dir)) {
+            assertEquals(List.of("3", "2", "1"), ids(repo.findAll()));
+            assertEquals(List.of("2", "1"), ids(repo.findByDateRange(LocalDate.of(2024, 1, 1), LocalDate.of(2025, 6, 30))));
+            assertEquals(List.of("3", "2"), ids(repo.query(ExpenseQuery.of(ExpenseFilter.ALL, 2))));
+            assertEquals(List.of("1"), ids(repo.query(new ExpenseQuery(ExpenseFilter.ALL, 2, ExpenseQuery.Cursor.of(LATE)))));
+            assertEquals(List.of("1", "3"), ids(repo.findPage(ExpenseFilter.ALL,
+                    new ExpenseSort(ExpenseSort.Column.AMOUNT, false), 0, 2)));
+            assertEquals(List.of("1", "3"), ids(repo.search("groceries", 0, 10))); // the shorter note ranks first
+        }
+    }
+
+    @Test
+    void anUpdateThatChangesTheYearMovesTheRow() throws Exception {
+        try (PartitionedSqliteExpenseRepository repo = new PartitionedSqliteExpenseRepository(dir)) {
+            assertTrue(repo.update(new Expense("2", LocalDate.of(2025, 1, 1), new BigDecimal("9.99"), Category.OTHER, "Streaming")));
+            assertEquals(1, repo.count(new ExpenseFilter(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31), Set.of())));
+            assertEquals(1, repo.count(new ExpenseFilter(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), Set.of())));
+            assertEquals(3, repo.count(ExpenseFilter.ALL));
+        }
+    }
+
+    @Test
+    void sealedYearsAnswerReadsAndRefuseWrites() throws Exception {
+        try (PartitionedSqliteExpenseRepository repo = new PartitionedSqliteExpenseRepository(dir)) {
+            assertEquals(1, repo.sealBefore(LocalDate.of(2026, 1, 1)));
+            assertTrue(repo.isSealed(LocalDate.of(2024, 6, 1)));
+            assertFalse(repo.isSealed(LocalDate.of(2026, 6, 1)));
+            assertTrue(Files.exists(dir.resolve("expenses-2024.sealed.db")));
+            assertEquals(new BigDecimal("40.00"), repo.sumByMonth(YearMonth.of(2024, 3)));
+            assertThrows(IOException.class, () -> repo.insert(
+                    new Expense("4", LocalDate.of(2024, 5, 1), BigDecimal.ONE, Category.OTHER, "")));
+            assertThrows(IOException.class, () -> repo.delete("1"));
+            assertTrue(repo.delete("3"));
+        }
+    }
+
+    @Test
+    void anUnsealedYearTakesWritesAgainAfterReopening() throws Exception {
+        try (PartitionedSqliteExpenseRepository repo = new PartitionedSqliteExpenseRepository(dir)) {
+            repo.sealBefore(LocalDate.of(2026, 1, 1));
+        }
+        try (PartitionedSqliteExpenseRepository reopened = new PartitionedSqliteExpenseRepository(dir)) {
+            assertTrue(reopened.isSealed(LocalDate.of(2024, 1, 1)));
+            assertTrue(reopened.unseal(LocalDate.of(2024, 1, 1)));
+            assertTrue(reopened.delete("1"));
+            assertEquals(0, reopened.sumByMonth(YearMonth.of(2024, 3)).signum());
+        }
+    }
+
+    @Test
+    void dataVersionLeavesUnopenedPartitionsClosed() throws Exception {
+        try (PartitionedSqliteExpenseRepository repo = new PartitionedSqliteExpenseRepository(dir)) {
+            long version = repo.dataVersion();
+            assertEquals(version, repo.dataVersion());
+            assertFalse(Files.exists(dir.resolve("expenses-2024.db-wal")));
+
+            repo.findByDateRange(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31));
+            assertTrue(Files.exists(dir.resolve("expenses-2024.db-wal")));
+            repo.insert(new Expense("4", LocalDate.of(2025, 2, 1), BigDecimal.ONE, Category.OTHER, ""));
+            assertNotEquals(version, repo.dataVersion());
+        }
+    }
+
+    @Test
+    void anIdStoredInAnotherPartitionIsRefused() throws Exception {
+        try (PartitionedSqliteExpenseRepository repo = new PartitionedSqliteExpenseRepository(dir)) {
+            IOException e = assertThrows(IOException.class, () -> repo.insert(
+                    new Expense("1", LocalDate.of(2026, 5, 1), BigDecimal.ONE, Category.OTHER, "")));
+            assertEquals("Expense id 1 already exists", e.getMessage());
+            assertThrows(IOException.class, () -> repo.insertAll(List.of(
+                    new Expense("5", LocalDate.of(2025, 5, 1), BigDecimal.ONE, Category.OTHER, ""),
+                    new Expense("5", LocalDate.of(2026, 5, 1), BigDecimal.ONE, Category.OTHER, ""))));
+            assertEquals(List.of("3", "2", "1"), ids(repo.findAll()));
+        }
+    }
+
+    @Test
+    void idsStoredTwiceBeforeTheyWereCheckedKeepTheNewestCopy() throws Exception {
+        try (SqliteExpenseRepository year = new SqliteExpenseRepository(dir.resolve("expenses-2025.db"))) {
+            year.insert(new Expense("1", LocalDate.of(2025, 3, 10), new BigDecimal("40.00"), Category.GROCERIES, ""));
+        }
+        Files.delete(dir.resolve("expenses.ids-checked"));
+
+        try (PartitionedSqliteExpenseRepository repo = new PartitionedSqliteExpenseRepository(dir)) {
+            assertEquals(List.of("3", "1", "2"), ids(repo.findAll()));
+            assertEquals(LocalDate.of(2025, 3, 10), repo.findById("1").orElseThrow().getDate());
+        }
+    }
+
+    @Test
+    void aMoveCutOffAfterTheInsertIsFinishedOnOpen() throws Exception {
+        try (SqliteExpenseRepository year = new SqliteExpenseRepository(dir.resolve("expenses-2025.db"))) {
+            year.insert(new Expense("2", LocalDate.of(2025, 1, 1), new BigDecimal("9.99"), Category.OTHER, "Streaming"));
+        }
+        Files.write(dir.resolve("expenses.move"), List.of("2", "2024", "2025"));
+
+        try (PartitionedSqliteExpenseRepository repo = new PartitionedSqliteExpenseRepository(dir)) {
+            assertEquals(List.of("3", "2", "1"), ids(repo.findAll()));
+            assertEquals(LocalDate.of(2025, 1, 1), repo.findById("2").orElseThrow().getDate());
+        }
+        assertFalse(Files.exists(dir.resolve("expenses.move")));
+    }
+
+    private static List<String> ids(List<Expense> expenses) {
+        return expenses.stream().map(Expense::getId).toList();
+    }
+}
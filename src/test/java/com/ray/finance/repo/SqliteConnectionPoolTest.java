@@ -0,0 +1,159 @@
+package com.ray.finance.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqliteConnectionPoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SqliteConnectionPool pool;
+    private ExecutorService threads;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool = new SqliteConnectionPool("jdbc:sqlite:" + tempDir.resolve("pool.db"), 3);
+        pool.write(conn -> {
+            try (Statement st = conn.connection().createStatement()) {
+                st.execute("CREATE TABLE t (n INTEGER NOT NULL)");
+            }
+            return null;
+        });
+        threads = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        threads.shutdownNow();
+        pool.close();
+    }
+
+    @Test
+    void readersNeverSeeHalfATransaction() throws Exception {
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Future<?> writer = threads.submit(() -> {
+            for (int i = 0; i < 300; i++) {
+                pool.write(conn -> {
+                    // two rows per transaction: a reader that sees an odd count saw one commit in half
+                    conn.prepare("INSERT INTO t VALUES (1)").executeUpdate();
+                    conn.prepare("INSERT INTO t VALUES (1)").executeUpdate();
+                    return null;
+                });
+            }
+            writing.set(false);
+            return null;
+        });
+        List<Future<Integer>> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            readers.add(threads.submit(() -> {
+                int reads = 0;
+                while (writing.get() || reads == 0) {
+                    int count = count();
+                    assertEquals(0, count % 2, "reader saw " + count + " rows");
+                    reads++;
+                }
+                return reads;
+            }));
+        }
+        writer.get();
+        for (Future<Integer> reader : readers) assertTrue(reader.get() > 0);
+        assertEquals(600, count());
+    }
+
+    @Test
+    void readsAndDataVersionDoNotWaitForAWriteInProgress() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Future<?> writer = threads.submit(() -> pool.write(conn -> {
+            conn.prepare("INSERT INTO t VALUES (1)").executeUpdate();
+            writing.countDown();
+            await(finish);
+            return null;
+        }));
+        writing.await();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            // three reads at once: each needs a reader of its own, opened while the write holds the lock
+            List<Future<Integer>> reads = new ArrayList<>();
+            CountDownLatch allIn = new CountDownLatch(3);
+            for (int r = 0; r < 3; r++) {
+                reads.add(threads.submit(() -> pool.read(conn -> {
+                    allIn.countDown();
+                    await(allIn);
+                    return countOn(conn);
+                })));
+            }
+            for (Future<Integer> read : reads) assertEquals(0, read.get());
+            pool.dataVersion();
+        });
+        long before = pool.dataVersion();
+        finish.countDown();
+        writer.get();
+        assertNotEquals(before, pool.dataVersion());
+        assertEquals(1, count());
+    }
+
+    @Test
+    void aReaderReleasedAfterCloseIsClosed() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Connection[] used = new Connection[2];
+        Future<?> read = threads.submit(() -> pool.read(conn -> {
+            used[1] = conn.connection();
+            reading.countDown();
+            await(finish);
+            return null;
+        }));
+        reading.await();
+        pool.read(conn -> used[0] = conn.connection()); // a second reader, idle again by close()
+
+        pool.close();
+        assertTrue(used[0].isClosed());
+        assertFalse(used[1].isClosed());
+        finish.countDown();
+        read.get();
+        assertTrue(used[1].isClosed());
+        assertThrows(SQLException.class, () -> pool.read(conn -> null));
+        assertThrows(SQLException.class, () -> pool.write(conn -> null));
+    }
+
+    /** For waiting inside SqlWork, which may only throw SQLException. */
+    private static void await(CountDownLatch latch) throws SQLException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+    }
+
+    private int count() throws SQLException {
+        return pool.read(SqliteConnectionPoolTest::countOn);
+    }
+
+    private static int countOn(SqliteConnectionPool.PooledConnection conn) throws SQLException {
+        try (ResultSet rs = conn.prepare("SELECT count(*) FROM t").executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
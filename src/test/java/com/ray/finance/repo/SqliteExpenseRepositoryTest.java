@@ -0,0 +1,153 @@
+package com.ray.finance.repo;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.model.IdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqliteExpenseRepositoryTest {
+
+    private static final LocalDate APRIL_1 = LocalDate.of(2026, 4, 1);
+
+    @TempDir
+    Path tempDir;
+
+    private Path legacy;
+
+    /** A database in the schema 2 layout: TEXT ids, with its note index. */
+    @BeforeEach
+    void writeLegacyDatabase() throws Exception {
+        legacy = tempDir.resolve("legacy.db");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + legacy);
+             Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE expenses (id TEXT PRIMARY KEY, date INTEGER NOT NULL, amount_cents INTEGER NOT NULL,"
+                    + " category TEXT NOT NULL, note TEXT NOT NULL)");
+            st.execute("CREATE VIRTUAL TABLE expenses_fts USING fts5(note, content = 'expenses', content_rowid = 'rowid')");
+            long day = APRIL_1.toEpochDay();
+            st.execute("INSERT INTO expenses VALUES ('b7e1a0c2', " + day + ", 1250, 'RENT', 'april rent'),"
+                    + " ('0f3c9d11', " + day + ", 399, 'OTHER', 'coffee'), ('12345678', " + (day + 1) + ", 100, 'OTHER', '')");
+            st.execute("INSERT INTO expenses_fts(expenses_fts) VALUES ('rebuild')");
+            st.execute("PRAGMA user_version = 2");
+        }
+    }
+
+    @Test
+    void legacyIdsKeepTheirQueryOrderAfterTheIntegerKeyMigration() throws Exception {
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(legacy)) {
+            assertEquals(List.of("12345678", "b7e1a0c2", "0f3c9d11"), ids(repo.query(ExpenseQuery.of(ExpenseFilter.ALL, 10))));
+            assertEquals(List.of("0f3c9d11"), ids(repo.search("coffee", 0, 10)));
+        }
+    }
+
+    @Test
+    void legacyRowsCanStillBeUpdatedAndDeleted() throws Exception {
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(legacy)) {
+            assertTrue(repo.update(new Expense("b7e1a0c2", APRIL_1, new BigDecimal("13.00"), Category.RENT, "april rent")));
+            assertTrue(repo.delete("0f3c9d11"));
+            assertEquals(new BigDecimal("13.00"), repo.findById("b7e1a0c2").orElseThrow().getAmount());
+            assertTrue(repo.search("coffee", 0, 10).isEmpty());
+        }
+    }
+
+    @Test
+    void generatedIdsSortAfterLegacyIdsOfTheSameDay() throws Exception {
+        IdGenerator generator = IdGenerator.global();
+        String added = Long.toString(generator.nextId());
+        String later = Long.toString(generator.nextId());
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(legacy)) {
+            repo.insert(new Expense(added, APRIL_1, new BigDecimal("2"), Category.OTHER, "coffee again"));
+            repo.insert(new Expense(later, APRIL_1, new BigDecimal("3"), Category.OTHER, ""));
+            assertEquals(List.of(later, added, "b7e1a0c2", "0f3c9d11"),
+                    ids(repo.query(ExpenseQuery.of(new ExpenseFilter(APRIL_1, APRIL_1, Set.of()), 10))));
+        }
+    }
+
+    @Test
+    void legacyIdsAddedAfterTheMigrationSortByIdNotByArrival() throws Exception {
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(legacy)) {
+            // each id sorts just above 0f3c9d11 and below the one before, until the rowids between run out
+            for (int i = 0; i < 40; i++) {
+                repo.insert(new Expense("0f3c9d11" + (char) ('z' - i), APRIL_1, BigDecimal.ONE, Category.OTHER, "split " + i));
+            }
+            repo.insert(new Expense("ffffffff", APRIL_1, BigDecimal.ONE, Category.OTHER, ""));
+            repo.insert(new Expense("00000000", APRIL_1, BigDecimal.ONE, Category.OTHER, ""));
+
+            List<Expense> expected = repo.findAll().stream().sorted(ExpenseQuery.ORDER).toList();
+            List<Expense> paged = new ArrayList<>();
+            for (ExpenseQuery q = ExpenseQuery.of(ExpenseFilter.ALL, 7); q != null; ) {
+                List<Expense> page = repo.query(q);
+                paged.addAll(page);
+                q = q.next(page);
+            }
+            assertEquals(ids(expected), ids(paged));
+            assertEquals(ids(expected), ids(repo.findPage(ExpenseFilter.ALL, ExpenseSort.NEWEST_FIRST, 0, 100)));
+            assertEquals(List.of("0f3c9d11S"), ids(repo.search("split 39", 0, 10)));
+        }
+    }
+
+    @Test
+    void aDeletedLegacyCursorRowStillLeadsToTheNextPage() throws Exception {
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(legacy)) {
+            ExpenseQuery first = ExpenseQuery.of(ExpenseFilter.ALL, 2);
+            List<Expense> page = repo.query(first);
+            assertEquals(List.of("12345678", "b7e1a0c2"), ids(page));
+            assertTrue(repo.delete("b7e1a0c2"));
+            assertEquals(List.of("0f3c9d11"), ids(repo.query(first.next(page))));
+        }
+    }
+
+    @Test
+    void schemaThreeLegacyRowsAreRenumberedInIdOrder() throws Exception {
+        Path three = tempDir.resolve("three.db");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + three);
+             Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE expenses (id INTEGER PRIMARY KEY, legacy_id TEXT UNIQUE, date INTEGER NOT NULL,"
+                    + " amount_cents INTEGER NOT NULL, category TEXT NOT NULL, note TEXT NOT NULL)");
+            // schema 3 numbered legacy ids in arrival order: b came first
+            long day = APRIL_1.toEpochDay();
+            st.execute("INSERT INTO expenses VALUES (-100, 'b', " + day + ", 100, 'OTHER', 'bee'),"
+                    + " (-99, 'a', " + day + ", 100, 'OTHER', 'ay')");
+            st.execute("PRAGMA user_version = 3");
+        }
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(three)) {
+            assertEquals(List.of("b", "a"), ids(repo.query(ExpenseQuery.of(ExpenseFilter.ALL, 10))));
+            assertEquals(List.of("a"), ids(repo.search("ay", 0, 10)));
+        }
+    }
+
+    @Test
+    void firstSchemaAmountsWithFractionsOfACentAreRoundedWhenMigrated() throws Exception {
+        Path first = tempDir.resolve("first.db");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + first);
+             Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE expenses (id TEXT PRIMARY KEY, date TEXT NOT NULL, amount TEXT NOT NULL,"
+                    + " category TEXT NOT NULL, note TEXT)");
+            st.execute("INSERT INTO expenses VALUES ('a', '2026-04-01', '12.345', 'RENT', ''),"
+                    + " ('b', '2026-04-02', '0.015', 'OTHER', ''), ('c', '2026-04-03', '7.5', 'OTHER', '')");
+        }
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(first)) {
+            assertEquals(new BigDecimal("12.34"), repo.findById("a").orElseThrow().getAmount());
+            assertEquals(new BigDecimal("0.02"), repo.findById("b").orElseThrow().getAmount());
+            assertEquals(new BigDecimal("7.50"), repo.findById("c").orElseThrow().getAmount());
+            assertEquals(3, repo.count(ExpenseFilter.ALL));
+        }
+    }
+
+    private static List<String> ids(List<Expense> expenses) {
+        return expenses.stream().map(Expense::getId).toList();
+    }
+}
@@ -0,0 +1,90 @@
+package com.ray.finance.report;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.repo.CsvExpenseRepository;
+import com.ray.finance.repo.ExpenseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ExpenseRepository repo;
+    private Report report;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repo = new CsvExpenseRepository(tempDir.resolve("report.csv"));
+        repo.insertAll(List.of(
+                expense("1", LocalDate.of(2024, 12, 15), "100", Category.GROCERIES),
+                expense("2", LocalDate.of(2025, 1, 1), "800", Category.RENT),
+                expense("3", LocalDate.of(2025, 2, 3), "10.50", Category.OTHER),
+                expense("4", LocalDate.of(2026, 1, 5), "900", Category.RENT),
+                expense("5", LocalDate.of(2026, 3, 31), "20.25", Category.GROCERIES)));
+        report = new ReportEngine(repo).run(new ReportRequest(LocalDate.of(2025, 1, 1), LocalDate.of(2026, 3, 31),
+                EnumSet.allOf(Rollup.class)));
+    }
+
+    @Test
+    void yearsCarryTotalsCategoriesAndYearOverYearChange() {
+        List<PeriodTotal> years = report.periods(Rollup.YEAR);
+        assertEquals(List.of("2025", "2026"), years.stream().map(PeriodTotal::label).toList());
+        assertEquals(new BigDecimal("810.50"), years.get(0).total());
+        assertEquals(Map.of(Category.RENT, new BigDecimal("900.00"), Category.GROCERIES, new BigDecimal("20.25")),
+                years.get(1).byCategory());
+        assertEquals((920.25 - 810.50) / 810.50, years.get(1).changeFrom(report.yearAgo(Rollup.YEAR, 1)), 1e-9);
+    }
+
+    @Test
+    void quartersLineUpWithTheSameQuarterAYearAgo() {
+        List<PeriodTotal> quarters = report.periods(Rollup.QUARTER);
+        assertEquals(5, quarters.size());
+        assertEquals("2026-Q1", quarters.get(4).label());
+        assertSame(quarters.get(0), report.yearAgo(Rollup.QUARTER, 4));
+    }
+
+    @Test
+    void weeksAreClippedToTheRequestedRange() {
+        List<PeriodTotal> weeks = report.periods(Rollup.WEEK);
+        assertEquals("2025-W01", weeks.get(0).label());
+        assertEquals(LocalDate.of(2025, 1, 1), weeks.get(0).start());
+        assertEquals(80000, weeks.get(0).totalCents());
+        assertEquals(LocalDate.of(2026, 3, 31), weeks.get(weeks.size() - 1).end());
+    }
+
+    @Test
+    void rollingWindowsReachBackBeforeTheRange() {
+        List<PeriodTotal> rolling3 = report.periods(Rollup.ROLLING_3_MONTHS);
+        assertEquals(15, rolling3.size());
+        assertEquals("2024-11..2025-01", rolling3.get(0).label());
+        assertEquals(90000, rolling3.get(0).totalCents());
+        assertEquals(91050, rolling3.get(1).totalCents());
+        assertEquals(81050, rolling3.get(2).totalCents());
+        assertEquals(92025, report.periods(Rollup.ROLLING_12_MONTHS).get(14).totalCents());
+    }
+
+    @Test
+    void monthsMatchTheRepositorySums() throws Exception {
+        for (PeriodTotal month : report.periods(Rollup.MONTH)) {
+            assertEquals(0, repo.sumByMonth(YearMonth.parse(month.label())).compareTo(month.total()), month.label());
+        }
+    }
+
+    private static Expense expense(String id, LocalDate date, String amount, Category category) {
+        return new Expense(id, date, new BigDecimal(amount), category, "");
+    }
+}
@@ -0,0 +1,122 @@
+package com.ray.finance.service;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.repo.CsvExpenseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedTest {
+
+    private static final YearMonth MARCH = YearMonth.of(2026, 3);
+
+    @TempDir
+    Path tempDir;
+
+    private ExpenseService service;
+    // stands in for the FX thread: nothing is delivered until the test runs it
+    private final ConcurrentLinkedQueue<Runnable> uiThread = new ConcurrentLinkedQueue<>();
+    private final List<List<ExpenseChange>> batches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        service = new ExpenseService(new CsvExpenseRepository(tempDir.resolve("expenses.csv")));
+    }
+
+    @Test
+    void writesMadeBeforeADeliveryRunsShareOneBatch() throws Exception {
+        service.changes().subscribe(uiThread::add, batches::add);
+        service.addExpense(LocalDate.of(2026, 3, 1), new BigDecimal("10.00"), Category.GROCERIES, "");
+        service.addExpense(LocalDate.of(2026, 3, 2), new BigDecimal("700"), Category.RENT, "");
+        assertEquals(1, uiThread.size());
+
+        drain();
+        assertEquals(1, batches.size());
+        assertEquals(List.of(ExpenseChange.Kind.INSERT, ExpenseChange.Kind.INSERT),
+                batches.get(0).stream().map(ExpenseChange::kind).toList());
+    }
+
+    @Test
+    void aFullBufferMakesTheWriterWait() throws Exception {
+        service.changes().subscribe(uiThread::add, batches::add, 2);
+        Expense food = service.addExpense(LocalDate.of(2026, 3, 1), new BigDecimal("10.00"), Category.GROCERIES, "");
+        service.addExpense(LocalDate.of(2026, 3, 2), new BigDecimal("700"), Category.RENT, "");
+
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> delete = writer.submit(() -> service.deleteExpense(food.getId()));
+            assertThrows(TimeoutException.class, () -> delete.get(200, TimeUnit.MILLISECONDS));
+            uiThread.poll().run();
+            assertTrue(delete.get(5, TimeUnit.SECONDS));
+        } finally {
+            writer.shutdown();
+        }
+        drain();
+        assertEquals(ExpenseChange.Kind.DELETE, batches.get(1).get(0).kind());
+        assertEquals(food.getId(), batches.get(1).get(0).before().getId());
+    }
+
+    @Test
+    void aClosedSubscriptionGetsNothing() throws Exception {
+        ChangeFeed.Subscription subscription = service.changes().subscribe(uiThread::add, batches::add);
+        subscription.close();
+        service.addExpense(LocalDate.of(2026, 3, 1), new BigDecimal("10.00"), Category.GROCERIES, "");
+        assertTrue(uiThread.isEmpty());
+    }
+
+    @Test
+    void monthSummariesApplyTheDeltasOfTheirMonthOnly() throws Exception {
+        service.changes().subscribe(uiThread::add, batches::add);
+        Expense food = service.addExpense(LocalDate.of(2026, 3, 1), new BigDecimal("10.00"), Category.GROCERIES, "");
+        Expense rent = service.addExpense(LocalDate.of(2026, 3, 2), new BigDecimal("700"), Category.RENT, "");
+        service.deleteExpense(food.getId());
+        service.updateExpense(new Expense(rent.getId(), rent.getDate(), new BigDecimal("650"), Category.RENT, ""));
+        drain();
+
+        MonthSummary summary = new MonthSummary(MARCH, new BigDecimal("0.00"), Map.of(), 0);
+        for (List<ExpenseChange> batch : batches) summary = summary.apply(batch);
+        assertEquals(service.monthlyTotal(MARCH), summary.total());
+        assertEquals(service.monthlyByCategory(MARCH), summary.byCategory());
+        assertSame(summary, summary.apply(List.of(ExpenseChange.inserted(99,
+                new Expense("x", LocalDate.of(2026, 4, 1), BigDecimal.ONE, Category.OTHER, "")))));
+    }
+
+    @Test
+    void aSummarySkipsTheChangesItWasReadAfter() throws Exception {
+        service.changes().subscribe(uiThread::add, batches::add);
+        Expense food = service.addExpense(LocalDate.of(2026, 3, 1), new BigDecimal("10.00"), Category.GROCERIES, "");
+        service.addExpense(LocalDate.of(2026, 3, 2), new BigDecimal("700"), Category.RENT, "");
+        MonthSummary summary = service.monthSummary(MARCH);
+        assertEquals(2, summary.position());
+        service.deleteExpense(food.getId());
+        service.addExpense(LocalDate.of(2026, 3, 3), new BigDecimal("5.00"), Category.OTHER, "");
+        drain();
+
+        // the summary was read between the writes, so the batch overlaps it
+        assertEquals(1, batches.size());
+        summary = summary.apply(batches.get(0));
+        assertEquals(service.monthlyTotal(MARCH), summary.total());
+        assertEquals(service.monthlyByCategory(MARCH), summary.byCategory());
+    }
+
+    private void drain() {
+        while (!uiThread.isEmpty()) uiThread.poll().run();
+    }
+}
@@ -0,0 +1,214 @@
+package com.ray.finance.service;
+
+import com.ray.finance.metrics.MetricsRegistry;
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.report.PeriodTotal;
+import com.ray.finance.report.Report;
+import com.ray.finance.report.ReportRequest;
+import com.ray.finance.report.Rollup;
+import com.ray.finance.repo.CsvExpenseRepository;
+import com.ray.finance.repo.ExpenseFilter;
+import com.ray.finance.repo.SqliteExpenseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpenseServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ExpenseService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ExpenseService(new CsvExpenseRepository(tempDir.resolve("expenses.csv")));
+    }
+
+    @Test
+    void addExpenseAppendsWithoutLosingExistingRows() throws Exception {
+        service.addExpense(LocalDate.of(2026, 1, 5), new BigDecimal("12.50"), Category.GROCERIES, "milk, eggs\nand bread");
+        service.addExpense(LocalDate.of(2026, 1, 9), new BigDecimal("900"), Category.RENT, "say \"hi\"");
+
+        List<Expense> all = service.listAll();
+        assertEquals(2, all.size());
+        assertEquals("milk, eggs\nand bread", all.get(0).getNote());
+        assertEquals("say \"hi\"", all.get(1).getNote());
+    }
+
+    @Test
+    void rejectsNonPositiveAmounts() {
+        assertThrows(IllegalArgumentException.class,
+                () -> service.addExpense(LocalDate.now(), BigDecimal.ZERO, Category.OTHER, ""));
+    }
+
+    @Test
+    void updateAndDeleteChangeOnlyTheTargetRow() throws Exception {
+        Expense keep = service.addExpense(LocalDate.of(2026, 2, 1), new BigDecimal("10"), Category.OTHER, "keep");
+        Expense edit = service.addExpense(LocalDate.of(2026, 2, 2), new BigDecimal("20"), Category.OTHER, "edit");
+
+        Expense edited = new Expense(edit.getId(), edit.getDate(), new BigDecimal("25"), Category.HEALTHCARE, "edited");
+        assertTrue(service.updateExpense(edited));
+        assertEquals(new BigDecimal("35.00"), service.monthlyTotal(YearMonth.of(2026, 2)));
+
+        assertTrue(service.deleteExpense(keep.getId()));
+        assertFalse(service.deleteExpense(keep.getId()));
+
+        Map<Category, BigDecimal> byCat = service.monthlyByCategory(YearMonth.of(2026, 2));
+        assertEquals(Map.of(Category.HEALTHCARE, new BigDecimal("25.00")), byCat);
+        assertTrue(service.verifyAggregates());
+    }
+
+    @Test
+    void sqliteSummariesAreComputedInTheDatabase() throws Exception {
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(tempDir.resolve("finance.db"))) {
+            ExpenseService sqlite = new ExpenseService(repo);
+            sqlite.addExpense(LocalDate.of(2026, 3, 1), new BigDecimal("10.10"), Category.GROCERIES, "");
+            sqlite.addExpense(LocalDate.of(2026, 3, 31), new BigDecimal("4.90"), Category.GROCERIES, "");
+            sqlite.addExpense(LocalDate.of(2026, 3, 15), new BigDecimal("700"), Category.RENT, "");
+            sqlite.addExpense(LocalDate.of(2026, 4, 1), new BigDecimal("1"), Category.RENT, "");
+
+            YearMonth march = YearMonth.of(2026, 3);
+            assertEquals(new BigDecimal("715.00"), sqlite.monthlyTotal(march));
+            assertEquals(new BigDecimal("15.00"), sqlite.monthlyByCategory(march).get(Category.GROCERIES));
+            assertEquals(LocalDate.of(2026, 3, 31), sqlite.listMonth(march).get(0).getDate());
+            assertEquals(3, sqlite.listMonth(march).size());
+        }
+    }
+
+    @Test
+    void rejectsFractionsOfACent() {
+        assertThrows(IllegalArgumentException.class,
+                () -> service.addExpense(LocalDate.now(), new BigDecimal("1.005"), Category.OTHER, ""));
+    }
+
+    @Test
+    void aggregatesDetectWritesMadeBehindTheServicesBack() throws Exception {
+        CsvExpenseRepository repo = new CsvExpenseRepository(tempDir.resolve("shared.csv"));
+        ExpenseService cached = new ExpenseService(repo);
+        cached.addExpense(LocalDate.of(2026, 5, 1), new BigDecimal("5"), Category.OTHER, "");
+        assertEquals(new BigDecimal("5.00"), cached.monthlyTotal(YearMonth.of(2026, 5)));
+
+        new ExpenseService(repo, false).addExpense(LocalDate.of(2026, 5, 2), new BigDecimal("1"), Category.OTHER, "");
+        assertFalse(cached.verifyAggregates());
+
+        cached.rebuildAggregates();
+        assertEquals(new BigDecimal("6.00"), cached.monthlyTotal(YearMonth.of(2026, 5)));
+    }
+
+    @Test
+    void concurrentWritersLoseNoUpdates() throws Exception {
+        int threads = 8;
+        int perThread = 250;
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(tempDir.resolve("stress.db"))) {
+            ExpenseService shared = new ExpenseService(repo);
+            YearMonth month = YearMonth.of(2026, 7);
+            shared.monthlyTotal(month); // build the aggregates before the writers start
+
+            List<Expense> added = new CopyOnWriteArrayList<>();
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                done.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        Category category = Category.values()[(thread + i) % Category.values().length];
+                        added.add(shared.addExpense(month.atDay(1 + i % 28), new BigDecimal("1.00"), category, ""));
+                    }
+                    // every thread rewrites the same expenses, so updates of one id race each other
+                    for (int i = 0; i < 200; i++) {
+                        Expense e = added.get(i);
+                        shared.updateExpense(new Expense(e.getId(), e.getDate(), new BigDecimal(thread + 1), e.getCategory(), ""));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : done) f.get();
+            pool.shutdown();
+
+            assertEquals(threads * perThread, repo.count(ExpenseFilter.ALL));
+            assertTrue(shared.verifyAggregates());
+            assertEquals(repo.sumByMonth(month), shared.monthlyTotal(month));
+        }
+    }
+
+    @Test
+    void summariesStartFromASavedSnapshotWithoutTouchingTheDatabase() throws Exception {
+        Path db = tempDir.resolve("lazy.db");
+        Path snapshot = tempDir.resolve("lazy.db.summary");
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(db)) {
+            assertFalse(Files.exists(db)); // the schema is created by the first operation
+            service = new ExpenseService(repo);
+            assertFalse(service.loadAggregateSnapshot(snapshot));
+            service.addExpense(LocalDate.of(2026, 9, 1), new BigDecimal("40"), Category.RENT, "");
+            service.addExpense(LocalDate.of(2026, 9, 2), new BigDecimal("2.50"), Category.OTHER, "");
+            assertEquals(new BigDecimal("42.50"), service.monthlyTotal(YearMonth.of(2026, 9)));
+            service.saveAggregateSnapshot(snapshot);
+            repo.insert(new Expense("outside", LocalDate.of(2026, 9, 3), new BigDecimal("1"), Category.OTHER, ""));
+        }
+
+        try (SqliteExpenseRepository repo = new SqliteExpenseRepository(db)) {
+            service = new ExpenseService(repo);
+            assertTrue(service.loadAggregateSnapshot(snapshot));
+            assertEquals(new BigDecimal("42.50"), service.monthlyTotal(YearMonth.of(2026, 9)));
+            assertEquals(Map.of(Category.RENT, new BigDecimal("40.00"), Category.OTHER, new BigDecimal("2.50")),
+                    service.monthlyByCategory(YearMonth.of(2026, 9)));
+            assertFalse(service.verifyAggregates()); // provisional: misses the row written behind its back
+
+            service.rebuildAggregates();
+            assertEquals(new BigDecimal("43.50"), service.monthlyTotal(YearMonth.of(2026, 9)));
+        }
+    }
+
+    @Test
+    void aggregateLookupsAreCountedAsHitsAndMisses() throws Exception {
+        MetricsRegistry global = MetricsRegistry.global();
+        boolean wasEnabled = global.isEnabled();
+        global.setEnabled(true);
+        try {
+            global.reset();
+            service.addExpense(LocalDate.of(2026, 9, 2), new BigDecimal("6"), Category.OTHER, "");
+            service.monthlyTotal(YearMonth.of(2026, 9));
+            service.monthlyTotal(YearMonth.of(2026, 9));
+
+            Map<String, Double> values = global.getValues();
+            assertEquals(1.0, values.get("service.aggregates.misses"));
+            assertEquals(0.5, values.get("service.aggregates.hitRatio"));
+        } finally {
+            global.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    void reportMonthsAgreeWithMonthlyTotals() throws Exception {
+        service.addExpense(LocalDate.of(2025, 1, 1), new BigDecimal("800"), Category.RENT, "");
+        service.addExpense(LocalDate.of(2025, 2, 3), new BigDecimal("10.50"), Category.OTHER, "");
+
+        Report report = service.report(new ReportRequest(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 3, 31),
+                EnumSet.of(Rollup.MONTH)));
+        for (PeriodTotal month : report.periods(Rollup.MONTH)) {
+            assertEquals(service.monthlyTotal(YearMonth.parse(month.label())), month.total());
+        }
+    }
+}
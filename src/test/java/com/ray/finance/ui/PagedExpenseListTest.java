@@ -0,0 +1,223 @@
+package com.ray.finance.ui;
+
+import com.ray.finance.model.Category;
+import com.ray.finance.model.Expense;
+import com.ray.finance.repo.ColumnarExpenseRepository;
+import com.ray.finance.repo.ExpenseFilter;
+import com.ray.finance.repo.ExpenseRepository;
+import com.ray.finance.repo.ExpenseSort;
+import com.ray.finance.service.AsyncExpenseService;
+import com.ray.finance.service.ExpenseService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PagedExpenseListTest {
+
+    private final ColumnarExpenseRepository repo = new ColumnarExpenseRepository();
+    private final ExpenseService service = new ExpenseService(repo, false);
+    // stands in for the FX thread: callbacks and change batches wait here until settle() runs them
+    private final ConcurrentLinkedQueue<Runnable> uiThread = new ConcurrentLinkedQueue<>();
+    private AsyncExpenseService async;
+    private PagedExpenseList list;
+    private final Random random = new Random(42);
+    private final List<Throwable> errors = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        async = new AsyncExpenseService(service, uiThread::add);
+        list = new PagedExpenseList(repo, async, errors::add);
+        service.changes().subscribe(uiThread::add, list::apply);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        async.close();
+    }
+
+    @Test
+    void appliedChangesKeepTheCachedPagesEqualToFreshPages() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5 * PagedExpenseList.PAGE_SIZE; i++) ids.add(add().getId());
+        list.reload();
+        settle();
+
+        ExpenseSort[] sorts = {ExpenseSort.NEWEST_FIRST, new ExpenseSort(ExpenseSort.Column.AMOUNT, true),
+                new ExpenseSort(ExpenseSort.Column.CATEGORY, false)};
+        ExpenseFilter[] filters = {ExpenseFilter.ALL,
+                ExpenseFilter.ALL.withCategories(Set.of(Category.GROCERIES, Category.RENT))};
+        int checked = 0;
+        for (int round = 0; round < 150; round++) {
+            if (round % 50 == 0) {
+                list.setSort(sorts[round / 50]);
+                list.setFilter(filters[random.nextInt(filters.length)]);
+                settle();
+            }
+            touchRandomPages();
+            settle();
+
+            for (int op = 1 + random.nextInt(3); op > 0; op--) {
+                int roll = random.nextInt(10);
+                if (roll < 4 || ids.isEmpty()) {
+                    ids.add(add().getId());
+                } else if (roll < 8) {
+                    Expense old = repo.findById(ids.get(random.nextInt(ids.size()))).orElseThrow();
+                    assertTrue(service.updateExpense(new Expense(old.getId(), date(), amount(), category(), "edited")));
+                } else {
+                    assertTrue(service.deleteExpense(ids.remove(random.nextInt(ids.size()))));
+                }
+            }
+            settle();
+            checked += assertMatchesRepository(round);
+        }
+        assertTrue(checked > 100 * PagedExpenseList.PAGE_SIZE, "only " + checked + " cached rows were compared");
+        assertEquals(List.of(), errors);
+    }
+
+    @Test
+    void aPageThatFailsToLoadIsReportedAndFetchedAgain() throws Exception {
+        for (int i = 0; i < 3 * PagedExpenseList.PAGE_SIZE; i++) add();
+        FailingPages failing = new FailingPages(repo);
+        PagedExpenseList paged = new PagedExpenseList(failing, async, errors::add);
+        paged.reload();
+        settle();
+
+        failing.failuresLeft = 1;
+        assertSame(ExpenseRow.EMPTY, paged.get(PagedExpenseList.PAGE_SIZE));
+        settle();
+        assertEquals(1, errors.size());
+        assertEquals("disk gone", errors.get(0).getMessage());
+        assertFalse(paged.isCached(1));
+
+        assertSame(ExpenseRow.EMPTY, paged.get(PagedExpenseList.PAGE_SIZE));
+        settle();
+        assertTrue(paged.isCached(1));
+        Expense first = repo.findPage(ExpenseFilter.ALL, ExpenseSort.NEWEST_FIRST, PagedExpenseList.PAGE_SIZE, 1).get(0);
+        assertEquals(first.getId(), paged.get(PagedExpenseList.PAGE_SIZE).expense().getId());
+        assertEquals(1, errors.size());
+    }
+
+    private void touchRandomPages() {
+        int pages = (list.size() + PagedExpenseList.PAGE_SIZE - 1) / PagedExpenseList.PAGE_SIZE;
+        for (int i = 0; i < 3 && pages > 0; i++) list.get(random.nextInt(pages) * PagedExpenseList.PAGE_SIZE);
+    }
+
+    /** Every row the list holds is the row a fresh query returns at that index; returns how many it holds. */
+    private int assertMatchesRepository(int round) throws Exception {
+        List<Expense> expected = repo.findPage(list.getFilter(), list.getSort(), 0, Integer.MAX_VALUE);
+        assertEquals(expected.size(), list.size(), "size after round " + round);
+        int checked = 0;
+        for (int page = 0; page * PagedExpenseList.PAGE_SIZE < list.size(); page++) {
+            // only pages already held: get() on any other row would start a fetch
+            if (!list.isCached(page)) continue;
+            for (int i = page * PagedExpenseList.PAGE_SIZE;
+                 i < Math.min(list.size(), (page + 1) * PagedExpenseList.PAGE_SIZE); i++) {
+                assertEquals(expected.get(i).getId(), list.get(i).expense().getId(), "row " + i + " after round " + round);
+                checked++;
+            }
+        }
+        return checked;
+    }
+
+    /** Runs worker tasks and UI callbacks until neither has anything left to do. */
+    private void settle() throws InterruptedException {
+        int ran;
+        do {
+            // the worker is one thread, so the marker completes after everything queued before it
+            CompletableFuture<Object> marker = async.supply(() -> null);
+            ran = 0;
+            while (!marker.isDone()) {
+                Runnable task = uiThread.poll();
+                if (task == null) {
+                    Thread.sleep(1);
+                } else {
+                    task.run();
+                    ran++;
+                }
+            }
+        } while (ran > 1); // more than the marker itself: what ran may have queued more work
+    }
+
+    /** Fails findPage while failuresLeft is positive; everything else goes to the delegate. */
+    private static final class FailingPages implements ExpenseRepository {
+        private final ExpenseRepository delegate;
+        int failuresLeft;
+
+        FailingPages(ExpenseRepository delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<Expense> findPage(ExpenseFilter filter, ExpenseSort sort, int offset, int limit) throws IOException {
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new IOException("disk gone");
+            }
+            return delegate.findPage(filter, sort, offset, limit);
+        }
+
+        @Override
+        public int count(ExpenseFilter filter) throws IOException {
+            return delegate.count(filter);
+        }
+
+        @Override
+        public List<Expense> findAll() throws IOException {
+            return delegate.findAll();
+        }
+
+        @Override
+        public void saveAll(List<Expense> expenses) throws IOException {
+            delegate.saveAll(expenses);
+        }
+
+        @Override
+        public void insert(Expense expense) throws IOException {
+            delegate.insert(expense);
+        }
+
+        @Override
+        public void insertAll(List<Expense> expenses) throws IOException {
+            delegate.insertAll(expenses);
+        }
+
+        @Override
+        public boolean update(Expense expense) throws IOException {
+            return delegate.update(expense);
+        }
+
+        @Override
+        public boolean delete(String id) throws IOException {
+            return delegate.delete(id);
+        }
+    }
+
+    private Expense add() throws Exception {
+        return service.addExpense(date(), amount(), category(), "");
+    }
+
+    private LocalDate date() {
+        return LocalDate.of(2026, 1, 1).plusDays(random.nextInt(60));
+    }
+
+    private BigDecimal amount() {
+        // two decimals, as the columnar store keeps them, with plenty of ties
+        return BigDecimal.valueOf(1 + random.nextInt(50) * 100L, 2);
+    }
+
+    private Category category() {
+        return Category.values()[random.nextInt(Category.values().length)];
+    }
+}